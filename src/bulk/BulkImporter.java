@@ -0,0 +1,425 @@
+package bulk;
+
+import history.HistoryEntry;
+import history.HistoryStore;
+import ingest.TransactionType;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lsm.LsmAccountRegistry;
+import utility.*;
+
+/**
+ * Loads accounts and transaction history from flat files in bulk.
+ *
+ * <p>The input is split into chunks of about {@link ImportSettings#getChunkSize()}
+ * bytes, each ending at a line break, and the chunks are memory-mapped and
+ * parsed in parallel. A {@link FieldScanner} finds the fields of each line as
+ * byte ranges of the mapping, and the common case is checked on those bytes:
+ * an ASCII ID or holder name that is not blank, or an amount of plain digits.
+ * Only a row that fails that check, or holds non-ASCII text, is decoded and
+ * passed through the constructors of the value classes, exactly as
+ * {@link ingest.Transaction#parse(String)} would; the row is rejected with the
+ * message of the exception they throw. The rules are therefore those of the
+ * value classes, while valid rows are turned into store keys without
+ * constructing them.
+ *
+ * <p>Parsed chunks are loaded by the calling thread in file order, while the
+ * next chunks are still being parsed, so the result does not depend on
+ * timing: of two rows opening the same account, the first in the file wins.
+ */
+public final class BulkImporter {
+
+    private static final String[] ACCOUNT_COLUMNS = {"id", "holder", "balance"};
+    private static final int ID = 0;
+    private static final int HOLDER = 1;
+    private static final int BALANCE = 2;
+
+    private static final String[] TRANSACTION_COLUMNS = {"timestamp", "type", "account", "amount", "counterparty"};
+    private static final int TIMESTAMP = 0;
+    private static final int TYPE = 1;
+    private static final int ACCOUNT = 2;
+    private static final int AMOUNT = 3;
+    private static final int COUNTERPARTY = 4;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+    private static final int LOAD_BATCH = 4096;
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_NAMES[i] = TYPES[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private BulkImporter() {
+    }
+
+    /**
+     * Opens the accounts listed in a file, each with its opening balance. Each
+     * row holds {@code id,holder,balance}, the balance in cents. A row is rejected
+     * if a field breaks the rules of {@link AccountID}, {@link AccountHolder} or
+     * {@link Money}, or if the account already exists.
+     *
+     * @param file     The input file. Must not be null.
+     * @param format   The file format. Must not be null.
+     * @param registry The registry to open the accounts in. Nothing else may open accounts in it meanwhile.
+     * @param settings Parallelism, chunk size and reject reporting. Must not be null.
+     * @return The rows imported and rejected, and the import rate.
+     * @throws IOException if the file cannot be read or the registry cannot be written.
+     */
+    public static ImportReport importAccounts(Path file, InputFormat format, LsmAccountRegistry registry,
+                                              ImportSettings settings) throws IOException {
+        Objects.requireNonNull(registry, "Registry must not be null.");
+        return run(file, format, settings, BulkImporter::parseAccounts, (chunk, rejected) -> {
+            long imported = 0;
+            for (int from = 0; from < chunk.count; from += LOAD_BATCH) {
+                int count = Math.min(LOAD_BATCH, chunk.count - from);
+                boolean[] opened = registry.load(Arrays.copyOfRange(chunk.ids, from, from + count),
+                        Arrays.copyOfRange(chunk.holders, from, from + count),
+                        Arrays.copyOfRange(chunk.balances, from, from + count), count);
+                for (int i = 0; i < count; i++) {
+                    if (opened[i]) {
+                        imported++;
+                    } else {
+                        rejected.add(new RejectedRow(chunk.offsets[from + i], "Account already exists: "
+                                + new String(chunk.ids[from + i], StandardCharsets.UTF_8)));
+                    }
+                }
+            }
+            return imported;
+        });
+    }
+
+    /**
+     * Appends the transactions listed in a file to a history store, in file order.
+     * Each row holds {@code timestamp,type,account,amount[,counterparty]}, the
+     * timestamp in epoch milliseconds and the amount in cents. A row is rejected if
+     * a field breaks the rules of {@link TransactionType}, {@link AccountID},
+     * {@link Money} or {@link HistoryEntry}.
+     *
+     * @param file     The input file. Must not be null.
+     * @param format   The file format. Must not be null.
+     * @param store    The store to append to. Must not be null.
+     * @param settings Parallelism, chunk size and reject reporting. Must not be null.
+     * @return The rows imported and rejected, and the import rate.
+     * @throws IOException if the file cannot be read or the store cannot be written.
+     */
+    public static ImportReport importTransactions(Path file, InputFormat format, HistoryStore store,
+                                                  ImportSettings settings) throws IOException {
+        Objects.requireNonNull(store, "Store must not be null.");
+        return run(file, format, settings, BulkImporter::parseTransactions, (chunk, rejected) -> {
+            store.appendAll(chunk.entries);
+            return chunk.entries.size();
+        });
+    }
+
+    private static <C extends ParsedChunk> ImportReport run(Path file, InputFormat format, ImportSettings settings,
+                                                            ChunkParser<C> parser, ChunkLoader<C> loader)
+            throws IOException {
+        Objects.requireNonNull(file, "Path must not be null.");
+        Objects.requireNonNull(format, "Format must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        long start = System.nanoTime();
+        long rows = 0;
+        long imported = 0;
+        long rejectedCount = 0;
+        List<RejectedRow> reported = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ExecutorService workers = Executors.newFixedThreadPool(settings.getParallelism())) {
+            long[] bounds = split(channel, settings.getChunkSize());
+            Deque<Future<C>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            for (int loaded = 0; loaded < bounds.length - 1; loaded++) {
+                while (next < bounds.length - 1 && inFlight.size() < 2 * settings.getParallelism()) {
+                    long from = bounds[next];
+                    long to = bounds[next + 1];
+                    inFlight.add(workers.submit(() -> parser.parse(
+                            channel.map(FileChannel.MapMode.READ_ONLY, from, to - from), from, format)));
+                    next++;
+                }
+                C chunk = await(inFlight.poll());
+                List<RejectedRow> rejected = new ArrayList<>(chunk.rejected);
+                imported += loader.load(chunk, rejected);
+                rows += chunk.rows;
+                rejectedCount += rejected.size();
+                rejected.sort(Comparator.comparingLong(RejectedRow::getOffset));
+                for (RejectedRow row : rejected) {
+                    if (reported.size() < settings.getMaxReportedRejects()) {
+                        reported.add(row);
+                    }
+                }
+            }
+            return new ImportReport(rows, imported, rejectedCount, reported, channel.size(), bounds.length - 1,
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Splits a file into chunks that each end just after a line break, or at the end of the file.
+     *
+     * @return The chunk boundaries: chunk {@code i} is {@code [bounds[i], bounds[i + 1])}.
+     */
+    static long[] split(FileChannel channel, int chunkSize) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = 0;
+        while (size - position > chunkSize) {
+            long candidate = position + chunkSize;
+            long lineEnd = -1;
+            while (lineEnd < 0 && candidate < size) {
+                probe.clear();
+                int read = channel.read(probe, candidate);
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        lineEnd = candidate + i + 1;
+                        break;
+                    }
+                }
+                candidate += Math.max(read, 0);
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            bounds.add(lineEnd);
+            position = lineEnd;
+        }
+        if (size > 0) {
+            bounds.add(size);
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static AccountChunk parseAccounts(ByteBuffer buffer, long offset, InputFormat format) {
+        FieldScanner fields = new FieldScanner(buffer, format, ACCOUNT_COLUMNS.length, ACCOUNT_COLUMNS);
+        AccountChunk chunk = new AccountChunk();
+        forEachLine(buffer, offset, fields, chunk, lineOffset -> {
+            if (!fields.has(ID) || !fields.has(HOLDER) || !fields.has(BALANCE)) {
+                return missing(fields, ACCOUNT_COLUMNS, 3);
+            }
+            long balance = fields.parseLong(BALANCE);
+            if (isPlainText(fields, ID) && isPlainText(fields, HOLDER) && balance >= 0) {
+                chunk.add(lineOffset, fields.bytes(ID), fields.bytes(HOLDER), balance);
+                return null;
+            }
+            String id = fields.string(ID);
+            String holder = fields.string(HOLDER);
+            try {
+                new AccountID(id);
+                new AccountHolder(holder);
+                balance = Money.ofCents(Long.parseLong(fields.string(BALANCE))).getAmountInCents();
+            } catch (RuntimeException e) {
+                return e.getMessage();
+            }
+            chunk.add(lineOffset, id.getBytes(StandardCharsets.UTF_8), holder.getBytes(StandardCharsets.UTF_8),
+                    balance);
+            return null;
+        });
+        return chunk;
+    }
+
+    private static TransactionChunk parseTransactions(ByteBuffer buffer, long offset, InputFormat format) {
+        FieldScanner fields = new FieldScanner(buffer, format, 4, TRANSACTION_COLUMNS);
+        TransactionChunk chunk = new TransactionChunk();
+        IdCache ids = new IdCache();
+        forEachLine(buffer, offset, fields, chunk, lineOffset -> {
+            if (!fields.has(TIMESTAMP) || !fields.has(TYPE) || !fields.has(ACCOUNT) || !fields.has(AMOUNT)) {
+                return missing(fields, TRANSACTION_COLUMNS, 4);
+            }
+            long timestamp = fields.parseLong(TIMESTAMP);
+            TransactionType type = null;
+            for (int i = 0; i < TYPES.length && type == null; i++) {
+                if (fields.equalsBytes(TYPE, TYPE_NAMES[i])) {
+                    type = TYPES[i];
+                }
+            }
+            long amount = fields.parseLong(AMOUNT);
+            boolean transfer = type == TransactionType.TRANSFER;
+            if (timestamp != Long.MIN_VALUE && type != null && amount >= 0 && isPlainText(fields, ACCOUNT)
+                    && (fields.has(COUNTERPARTY) ? isPlainText(fields, COUNTERPARTY) : !transfer)) {
+                chunk.entries.add(new HistoryEntry(timestamp, type, ids.get(fields, ACCOUNT),
+                        fields.has(COUNTERPARTY) ? ids.get(fields, COUNTERPARTY) : null, Money.ofCents(amount)));
+                return null;
+            }
+            try {
+                String counterparty = fields.string(COUNTERPARTY);
+                chunk.entries.add(new HistoryEntry(Long.parseLong(fields.string(TIMESTAMP)),
+                        TransactionType.valueOf(fields.string(TYPE)), new AccountID(fields.string(ACCOUNT)),
+                        counterparty == null ? null : new AccountID(counterparty),
+                        Money.ofCents(Long.parseLong(fields.string(AMOUNT)))));
+                return null;
+            } catch (RuntimeException e) {
+                return e.getMessage();
+            }
+        });
+        return chunk;
+    }
+
+    /**
+     * Scans every non-blank line of a chunk and passes it to {@code row}, which
+     * returns null if it took the row or the reason for rejecting it. On the first
+     * chunk, a CSV header line is skipped.
+     */
+    private static void forEachLine(ByteBuffer buffer, long offset, FieldScanner fields, ParsedChunk chunk,
+                                    RowHandler row) {
+        int limit = buffer.limit();
+        int start = 0;
+        boolean first = offset == 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            int content = start;
+            while (content < end && buffer.get(content) >= 0 && buffer.get(content) <= ' ') {
+                content++;
+            }
+            if (content < end) {
+                if (first && fields.isHeader(start, end)) {
+                    first = false;
+                } else {
+                    first = false;
+                    chunk.rows++;
+                    String reason = fields.scan(start, end) ? row.accept(offset + start) : fields.error();
+                    if (reason != null) {
+                        chunk.rejected.add(new RejectedRow(offset + start, reason));
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Checks the common case of a valid text field: present, not empty, ASCII and
+     * without escapes, so not blank. A field failing this may still be valid and
+     * is decided by the value class.
+     */
+    private static boolean isPlainText(FieldScanner fields, int column) {
+        return fields.has(column) && !fields.isEmpty(column) && !fields.isEscaped(column) && fields.isAscii(column);
+    }
+
+    private static String missing(FieldScanner fields, String[] columns, int required) {
+        for (int column = 0; column < required; column++) {
+            if (!fields.has(column)) {
+                return "Missing field: " + columns[column] + ".";
+            }
+        }
+        return null;
+    }
+
+    private static <C> C await(Future<C> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import was interrupted.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Import failed.", cause);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkParser<C> {
+        C parse(ByteBuffer chunk, long offset, InputFormat format) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ChunkLoader<C> {
+        /**
+         * Loads a parsed chunk, adding rows the store refuses to {@code rejected}.
+         *
+         * @return The number of rows loaded.
+         */
+        long load(C chunk, List<RejectedRow> rejected) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        String accept(long offset);
+    }
+
+    /**
+     * The rows of one chunk that passed validation, and those that did not.
+     */
+    private abstract static class ParsedChunk {
+        final List<RejectedRow> rejected = new ArrayList<>();
+        int rows;
+    }
+
+    private static final class AccountChunk extends ParsedChunk {
+        long[] offsets = new long[1024];
+        byte[][] ids = new byte[1024][];
+        byte[][] holders = new byte[1024][];
+        long[] balances = new long[1024];
+        int count;
+
+        void add(long offset, byte[] id, byte[] holder, long balance) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                ids = Arrays.copyOf(ids, count * 2);
+                holders = Arrays.copyOf(holders, count * 2);
+                balances = Arrays.copyOf(balances, count * 2);
+            }
+            offsets[count] = offset;
+            ids[count] = id;
+            holders[count] = holder;
+            balances[count] = balance;
+            count++;
+        }
+    }
+
+    private static final class TransactionChunk extends ParsedChunk {
+        final List<HistoryEntry> entries = new ArrayList<>();
+    }
+
+    /**
+     * Reuses the {@link AccountID} of recently seen ID bytes, since a transaction
+     * file names the same accounts over and over. Direct-mapped: a new ID evicts
+     * the one in its slot. Only plain ASCII fields are cached.
+     */
+    private static final class IdCache {
+        private static final int SIZE = 1 << 14;
+
+        private final byte[][] keys = new byte[SIZE][];
+        private final AccountID[] values = new AccountID[SIZE];
+
+        AccountID get(FieldScanner fields, int column) {
+            int hash = fields.asciiHash(column);
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            byte[] key = keys[slot];
+            if (key != null && fields.equalsBytes(column, key)) {
+                return values[slot];
+            }
+            key = fields.bytes(column);
+            AccountID id = new AccountID(new String(key, StandardCharsets.US_ASCII));
+            keys[slot] = key;
+            values[slot] = id;
+            return id;
+        }
+    }
+}
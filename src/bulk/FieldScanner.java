@@ -0,0 +1,458 @@
+package bulk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits one line of a mapped input chunk into named fields without copying.
+ * After {@link #scan(int, int)} each column is a byte range of the chunk, with
+ * surrounding whitespace trimmed as {@link String#trim()} would; bytes are only
+ * copied or decoded when a field is read as a string, an array or a number.
+ * One scanner is reused for every line of a chunk, by one thread.
+ */
+final class FieldScanner {
+
+    private static final int ABSENT = -1;
+
+    private final ByteBuffer chunk;
+    private final InputFormat format;
+    private final byte[][] names;
+    private final int requiredColumns;
+    private final int[] starts;
+    private final int[] ends;
+    private final boolean[] escaped;
+    private String error;
+
+    /**
+     * @param chunk           The mapped input, indexed from 0.
+     * @param format          The line format.
+     * @param requiredColumns The number of leading columns a CSV line must have; later ones may be left out.
+     * @param columns         The column names, in CSV column order.
+     */
+    FieldScanner(ByteBuffer chunk, InputFormat format, int requiredColumns, String... columns) {
+        this.chunk = chunk;
+        this.format = format;
+        this.requiredColumns = requiredColumns;
+        this.names = new byte[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        this.starts = new int[columns.length];
+        this.ends = new int[columns.length];
+        this.escaped = new boolean[columns.length];
+    }
+
+    /**
+     * Finds the fields of the line {@code [start, end)}, which excludes the line break.
+     *
+     * @return false if the line is malformed; {@link #error()} then says why.
+     */
+    boolean scan(int start, int end) {
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = ABSENT;
+            escaped[i] = false;
+        }
+        error = null;
+        return format == InputFormat.CSV ? scanCsv(start, end) : scanJson(start, end);
+    }
+
+    String error() {
+        return error;
+    }
+
+    /**
+     * Checks whether the line is the CSV header, naming every column in order.
+     */
+    boolean isHeader(int start, int end) {
+        if (format != InputFormat.CSV || !scanCsv(start, end)) {
+            return false;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (escaped[i] || !equalsIgnoreCase(starts[i], ends[i], names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean has(int column) {
+        return starts[column] != ABSENT;
+    }
+
+    /**
+     * Checks whether a present field is empty or only ASCII whitespace, which
+     * means it is blank. A field with other bytes may still be blank by the rules
+     * of {@link String#isBlank()} if it holds non-ASCII whitespace; see {@link #isAscii(int)}.
+     */
+    boolean isEmpty(int column) {
+        return starts[column] == ends[column];
+    }
+
+    boolean isAscii(int column) {
+        for (int i = starts[column]; i < ends[column]; i++) {
+            if (chunk.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a field of plain decimal digits, optionally negative.
+     *
+     * @return The value, or {@link Long#MIN_VALUE} if the field is not such a number or overflows.
+     */
+    long parseLong(int column) {
+        int i = starts[column];
+        int end = ends[column];
+        boolean negative = i < end && chunk.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chunk.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Copies a field's UTF-8 bytes, resolving escapes.
+     */
+    byte[] bytes(int column) {
+        if (escaped[column]) {
+            return string(column).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[ends[column] - starts[column]];
+        chunk.get(starts[column], bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes a field, resolving escapes.
+     */
+    String string(int column) {
+        if (!has(column)) {
+            return null;
+        }
+        String raw = new String(bytes(column, starts[column], ends[column]), StandardCharsets.UTF_8);
+        if (!escaped[column]) {
+            return raw;
+        }
+        return format == InputFormat.CSV ? raw.replace("\"\"", "\"") : unescapeJson(raw);
+    }
+
+    /**
+     * Gets the hash {@link String#hashCode()} would give the decoded field, for an unescaped ASCII field.
+     */
+    int asciiHash(int column) {
+        int hash = 0;
+        for (int i = starts[column]; i < ends[column]; i++) {
+            hash = 31 * hash + chunk.get(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Compares an unescaped field with bytes, without decoding it.
+     */
+    boolean equalsBytes(int column, byte[] other) {
+        int length = ends[column] - starts[column];
+        if (escaped[column] || length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(starts[column] + i) != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isEscaped(int column) {
+        return escaped[column];
+    }
+
+    private boolean scanCsv(int start, int end) {
+        int column = 0;
+        int i = start;
+        while (true) {
+            if (column == names.length) {
+                error = "Expected " + expectedFields() + " fields but found more.";
+                return false;
+            }
+            while (i < end && isSpace(chunk.get(i))) {
+                i++;
+            }
+            int fieldEnd;
+            if (i < end && chunk.get(i) == '"') {
+                int contentStart = ++i;
+                boolean hasEscape = false;
+                while (true) {
+                    if (i >= end) {
+                        error = "Unterminated quoted field.";
+                        return false;
+                    }
+                    if (chunk.get(i) == '"') {
+                        if (i + 1 < end && chunk.get(i + 1) == '"') {
+                            hasEscape = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                set(column, contentStart, i, hasEscape, false);
+                i++;
+                while (i < end && isSpace(chunk.get(i))) {
+                    i++;
+                }
+                if (i < end && chunk.get(i) != ',') {
+                    error = "Unexpected text after quoted field.";
+                    return false;
+                }
+                fieldEnd = i;
+            } else {
+                fieldEnd = i;
+                while (fieldEnd < end && chunk.get(fieldEnd) != ',') {
+                    fieldEnd++;
+                }
+                set(column, i, fieldEnd, false, true);
+            }
+            column++;
+            if (fieldEnd >= end) {
+                break;
+            }
+            i = fieldEnd + 1;
+        }
+        if (column < requiredColumns) {
+            error = "Expected " + expectedFields() + " fields but found " + column + ".";
+            return false;
+        }
+        return true;
+    }
+
+    private String expectedFields() {
+        return requiredColumns == names.length ? String.valueOf(names.length) : requiredColumns + " to " + names.length;
+    }
+
+    private boolean scanJson(int start, int end) {
+        int i = skipSpace(start, end);
+        if (i >= end || chunk.get(i) != '{') {
+            error = "Expected a JSON object.";
+            return false;
+        }
+        i = skipSpace(i + 1, end);
+        if (i < end && chunk.get(i) == '}') {
+            return trailing(i + 1, end);
+        }
+        while (true) {
+            if (i >= end || chunk.get(i) != '"') {
+                error = "Expected a member name.";
+                return false;
+            }
+            int nameStart = i + 1;
+            i = endOfString(nameStart, end);
+            if (i < 0) {
+                return false;
+            }
+            int column = columnOf(nameStart, i);
+            i = skipSpace(i + 1, end);
+            if (i >= end || chunk.get(i) != ':') {
+                error = "Expected ':' after a member name.";
+                return false;
+            }
+            i = skipSpace(i + 1, end);
+            if (i >= end) {
+                error = "Expected a member value.";
+                return false;
+            }
+            byte first = chunk.get(i);
+            if (first == '"') {
+                int valueStart = i + 1;
+                i = endOfString(valueStart, end);
+                if (i < 0) {
+                    return false;
+                }
+                if (column >= 0) {
+                    set(column, valueStart, i, hasBackslash(valueStart, i), false);
+                }
+                i++;
+            } else if (first == '-' || (first >= '0' && first <= '9')) {
+                int valueStart = i;
+                while (i < end && isNumberByte(chunk.get(i))) {
+                    i++;
+                }
+                if (column >= 0) {
+                    set(column, valueStart, i, false, false);
+                }
+            } else if (matches(i, end, "null")) {
+                i += 4;
+            } else if (matches(i, end, "true") || matches(i, end, "false")) {
+                int valueStart = i;
+                i += chunk.get(i) == 't' ? 4 : 5;
+                if (column >= 0) {
+                    set(column, valueStart, i, false, false);
+                }
+            } else {
+                error = "Unsupported JSON value.";
+                return false;
+            }
+            i = skipSpace(i, end);
+            if (i < end && chunk.get(i) == ',') {
+                i = skipSpace(i + 1, end);
+                continue;
+            }
+            if (i < end && chunk.get(i) == '}') {
+                return trailing(i + 1, end);
+            }
+            error = "Expected ',' or '}' after a member.";
+            return false;
+        }
+    }
+
+    private boolean trailing(int i, int end) {
+        if (skipSpace(i, end) != end) {
+            error = "Unexpected text after the JSON object.";
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the closing quote of a JSON string whose content starts at {@code i}.
+     *
+     * @return The index of the quote, or -1 with {@link #error} set.
+     */
+    private int endOfString(int i, int end) {
+        while (i < end) {
+            byte b = chunk.get(i);
+            if (b == '"') {
+                return i;
+            }
+            i += b == '\\' ? 2 : 1;
+        }
+        error = "Unterminated JSON string.";
+        return -1;
+    }
+
+    private int columnOf(int start, int end) {
+        for (int column = 0; column < names.length; column++) {
+            byte[] name = names[column];
+            int length = name.length;
+            if (end - start != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && chunk.get(start + i) == name[i]) {
+                i++;
+            }
+            if (i == length) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private void set(int column, int start, int end, boolean hasEscape, boolean trim) {
+        if (trim) {
+            while (end > start && isSpace(chunk.get(end - 1))) {
+                end--;
+            }
+        }
+        starts[column] = start;
+        ends[column] = end;
+        escaped[column] = hasEscape;
+    }
+
+    private boolean hasBackslash(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chunk.get(i) == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(int i, int end, String literal) {
+        if (end - i < literal.length()) {
+            return false;
+        }
+        for (int j = 0; j < literal.length(); j++) {
+            if (chunk.get(i + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsIgnoreCase(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (Character.toLowerCase(chunk.get(start + i)) != Character.toLowerCase(expected[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipSpace(int i, int end) {
+        while (i < end && isSpace(chunk.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private byte[] bytes(int column, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        chunk.get(start, bytes);
+        return bytes;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private static String unescapeJson(String raw) {
+        StringBuilder out = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 == raw.length()) {
+                out.append(c);
+                continue;
+            }
+            char next = raw.charAt(++i);
+            switch (next) {
+                case 'b' -> out.append('\b');
+                case 'f' -> out.append('\f');
+                case 'n' -> out.append('\n');
+                case 'r' -> out.append('\r');
+                case 't' -> out.append('\t');
+                case 'u' -> {
+                    try {
+                        out.append((char) Integer.parseInt(raw, i + 1, i + 5, 16));
+                        i += 4;
+                    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                        out.append(next);
+                    }
+                }
+                default -> out.append(next);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package bulk;
+
+import history.HistoryEntry;
+import history.HistoryStore;
+import ingest.TransactionType;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import lsm.LsmAccountRegistry;
+import lsm.LsmSettings;
+import utility.*;
+
+public class ImportBenchmark {
+
+    /**
+     * Writes account and transaction files in both formats, then compares
+     * {@link BulkImporter} with reading the same CSV files line by line through
+     * the value class constructors and the one-at-a-time store methods.
+     *
+     * @param args Optional: number of accounts, number of transactions, then parsing threads.
+     */
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("--- Bulk Import Benchmark ---");
+        System.out.printf("%,d accounts, %,d transactions, %d parsing threads%n", accounts, transactions, parallelism);
+        Path directory = Files.createTempDirectory("import-bench");
+        try {
+            Path accountCsv = directory.resolve("accounts.csv");
+            Path accountJson = directory.resolve("accounts.ndjson");
+            Path transactionCsv = directory.resolve("transactions.csv");
+            Path transactionJson = directory.resolve("transactions.ndjson");
+            writeAccounts(accountCsv, accountJson, accounts);
+            writeTransactions(transactionCsv, transactionJson, accounts, transactions);
+            ImportSettings settings = new ImportSettings(parallelism, 4 << 20, 10);
+
+            System.out.printf("%-26s%14s%12s%10s%n", "import", "rows/s", "MB/s", "rejected");
+            long start = System.nanoTime();
+            try (LsmAccountRegistry registry = LsmAccountRegistry.open(directory.resolve("naive"),
+                    LsmSettings.defaults());
+                 BufferedReader reader = Files.newBufferedReader(accountCsv)) {
+                reader.readLine();
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] fields = line.split(",", -1);
+                    AccountID id = new AccountID(fields[0].trim());
+                    registry.open(new AccountHolder(fields[1].trim()), id);
+                    registry.deposit(id, Money.ofCents(Long.parseLong(fields[2].trim())));
+                }
+            }
+            report("accounts, line by line", accounts, Files.size(accountCsv), 0, System.nanoTime() - start);
+            for (Path file : new Path[] {accountCsv, accountJson}) {
+                try (LsmAccountRegistry registry = LsmAccountRegistry.open(
+                        directory.resolve("bulk-" + file.getFileName()), LsmSettings.defaults())) {
+                    ImportReport result = BulkImporter.importAccounts(file, InputFormat.forFile(file), registry,
+                            settings);
+                    report("accounts, bulk " + InputFormat.forFile(file), result.getRows(), result.getBytes(),
+                            result.getRejected(), result.getElapsedNanos());
+                }
+            }
+
+            start = System.nanoTime();
+            try (HistoryStore store = HistoryStore.open(directory.resolve("naive.hist"));
+                 BufferedReader reader = Files.newBufferedReader(transactionCsv)) {
+                reader.readLine();
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] fields = line.split(",", -1);
+                    store.append(new HistoryEntry(Long.parseLong(fields[0].trim()),
+                            TransactionType.valueOf(fields[1].trim()), new AccountID(fields[2].trim()),
+                            fields.length > 4 ? new AccountID(fields[4].trim()) : null,
+                            Money.ofCents(Long.parseLong(fields[3].trim()))));
+                }
+            }
+            report("transactions, line by line", transactions, Files.size(transactionCsv), 0,
+                    System.nanoTime() - start);
+            for (Path file : new Path[] {transactionCsv, transactionJson}) {
+                try (HistoryStore store = HistoryStore.open(directory.resolve("bulk-" + file.getFileName() + ".hist"))) {
+                    ImportReport result = BulkImporter.importTransactions(file, InputFormat.forFile(file), store,
+                            settings);
+                    report("transactions, bulk " + InputFormat.forFile(file), result.getRows(), result.getBytes(),
+                            result.getRejected(), result.getElapsedNanos());
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void writeAccounts(Path csv, Path json, int accounts) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter csvOut = Files.newBufferedWriter(csv); BufferedWriter jsonOut = Files.newBufferedWriter(json)) {
+            csvOut.write("id,holder,balance\n");
+            for (int i = 0; i < accounts; i++) {
+                long balance = random.nextInt(1_000_000);
+                csvOut.write("ACC" + i + ",Holder " + i + "," + balance + "\n");
+                jsonOut.write("{\"id\":\"ACC" + i + "\",\"holder\":\"Holder " + i + "\",\"balance\":" + balance + "}\n");
+            }
+        }
+    }
+
+    private static void writeTransactions(Path csv, Path json, int accounts, int transactions) throws IOException {
+        Random random = new Random(7);
+        TransactionType[] types = TransactionType.values();
+        long timestamp = 1_600_000_000_000L;
+        try (BufferedWriter csvOut = Files.newBufferedWriter(csv); BufferedWriter jsonOut = Files.newBufferedWriter(json)) {
+            csvOut.write("timestamp,type,account,amount,counterparty\n");
+            for (int i = 0; i < transactions; i++) {
+                timestamp += random.nextInt(1000);
+                TransactionType type = types[random.nextInt(types.length)];
+                String account = "ACC" + random.nextInt(accounts);
+                int amount = 1 + random.nextInt(100_000);
+                String counterparty = type == TransactionType.TRANSFER ? "ACC" + random.nextInt(accounts) : null;
+                csvOut.write(timestamp + "," + type + "," + account + "," + amount
+                        + (counterparty == null ? "" : "," + counterparty) + "\n");
+                jsonOut.write("{\"timestamp\":" + timestamp + ",\"type\":\"" + type + "\",\"account\":\"" + account
+                        + "\",\"amount\":" + amount
+                        + (counterparty == null ? "" : ",\"counterparty\":\"" + counterparty + "\"") + "}\n");
+            }
+        }
+    }
+
+    private static void report(String label, long rows, long bytes, long rejected, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-26s%,14.0f%12.1f%,10d%n", label, rows / seconds, bytes / 1048576.0 / seconds, rejected);
+    }
+}
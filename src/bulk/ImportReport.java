@@ -0,0 +1,82 @@
+package bulk;
+
+import java.util.List;
+
+/**
+ * The outcome of one {@link BulkImporter} run. This class is immutable.
+ */
+public final class ImportReport {
+
+    private final long rows;
+    private final long imported;
+    private final long rejected;
+    private final List<RejectedRow> rejectedRows;
+    private final long bytes;
+    private final int chunks;
+    private final long elapsedNanos;
+
+    ImportReport(long rows, long imported, long rejected, List<RejectedRow> rejectedRows, long bytes, int chunks,
+                 long elapsedNanos) {
+        this.rows = rows;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.rejectedRows = List.copyOf(rejectedRows);
+        this.bytes = bytes;
+        this.chunks = chunks;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of data rows read, not counting blank lines and a CSV header.
+     *
+     * @return The number of rows.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Gets the first rejected rows, in file order, up to the limit of the settings.
+     *
+     * @return The rejected rows.
+     */
+    public List<RejectedRow> getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1e9);
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes / 1048576.0 / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport[rows=" + rows +
+               ", imported=" + imported +
+               ", rejected=" + rejected +
+               ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package bulk;
+
+/**
+ * Parallelism, chunk size and reject reporting of a {@link BulkImporter}. This class is immutable.
+ */
+public final class ImportSettings {
+
+    private static final int MIN_CHUNK_SIZE = 4096;
+
+    private final int parallelism;
+    private final int chunkSize;
+    private final int maxReportedRejects;
+
+    /**
+     * @param parallelism        Number of threads parsing chunks. Must be positive.
+     * @param chunkSize          Bytes of input per chunk, before moving its end to a line break. Must be at least 4 KiB.
+     * @param maxReportedRejects Rejected rows listed in the report; all are counted. Must not be negative.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public ImportSettings(int parallelism, int chunkSize, int maxReportedRejects) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be at least " + MIN_CHUNK_SIZE + " bytes.");
+        }
+        if (maxReportedRejects < 0) {
+            throw new IllegalArgumentException("Maximum reported rejects must not be negative.");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.maxReportedRejects = maxReportedRejects;
+    }
+
+    /**
+     * Creates settings with one parsing thread per processor, 4 MiB chunks and up to 1,000 listed rejects.
+     *
+     * @return The default settings.
+     */
+    public static ImportSettings defaults() {
+        return new ImportSettings(Runtime.getRuntime().availableProcessors(), 4 << 20, 1_000);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getMaxReportedRejects() {
+        return maxReportedRejects;
+    }
+}
@@ -0,0 +1,44 @@
+package bulk;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The flat-file formats a {@link BulkImporter} reads. Both hold one record per
+ * line, so a file can be split at any line break.
+ */
+public enum InputFormat {
+
+    /**
+     * Comma-separated fields in a fixed column order. A field may be enclosed in
+     * double quotes, with a quote inside written as two; it must not contain a
+     * line break. A first line holding the column names is skipped.
+     */
+    CSV,
+
+    /**
+     * One JSON object per line, with string and integer members named after the
+     * columns. Other members are ignored; nested objects and arrays are rejected.
+     */
+    NDJSON;
+
+    /**
+     * Chooses the format from a file name extension: {@code .csv}, or {@code .ndjson}, {@code .jsonl} or {@code .json}.
+     *
+     * @param file The input file. Must not be null.
+     * @return The format.
+     * @throws IllegalArgumentException if the extension is not recognized.
+     */
+    public static InputFormat forFile(Path file) {
+        String name = Objects.requireNonNull(file, "Path must not be null.").getFileName().toString()
+                .toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unknown input format: " + file);
+    }
+}
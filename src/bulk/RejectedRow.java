@@ -0,0 +1,33 @@
+package bulk;
+
+/**
+ * An input row that was not imported. This class is immutable.
+ */
+public final class RejectedRow {
+
+    private final long offset;
+    private final String reason;
+
+    RejectedRow(long offset, String reason) {
+        this.offset = offset;
+        this.reason = reason;
+    }
+
+    /**
+     * Gets the byte offset of the start of the row in the input file.
+     *
+     * @return The offset.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "RejectedRow[offset=" + offset + ", reason=" + reason + "]";
+    }
+}
@@ -1,5 +1,6 @@
 package clean;
 
+import java.util.List;
 import java.util.Objects;
 import utility.*;
 
@@ -27,27 +28,15 @@ public class BankAccount {
     }
 
 
-    /**
-     * Validates if the given amount is positive or not.
-     * 
-     * @param amount The given amount.
-     * @throws IllegalArgumentException if the amount is not positive.
-     */
-    private void validatePositiveAmount(Money amount) {
-        if (!amount.isPositive()) {
-            throw new IllegalArgumentException("Amount must be positive.");
-        }
-    }
-
     /**
      * Deposits a specified amount into the account.
      * The amount must be a positive value.
      *
      * @param amount The amount to deposit.
+     * @throws IllegalArgumentException if the amount is not positive.
      */
     public void deposit(Money amount) {
-        validatePositiveAmount(amount);
-        this.balance = this.balance.add(amount);
+        tryDeposit(amount).throwIfFailed();
     }
 
     /**
@@ -55,10 +44,11 @@ public class BankAccount {
      * The amount must be positive and not exceed the current balance.
      *
      * @param amount The amount to withdraw.
+     * @throws IllegalArgumentException if the amount is not positive.
+     * @throws IllegalStateException    if the account has insufficient funds.
      */
     public void withdraw(Money amount) {
-        validatePositiveAmount(amount);
-        this.balance = this.balance.subtract(amount);
+        tryWithdraw(amount).throwIfFailed();
     }
 
     /**
@@ -71,10 +61,88 @@ public class BankAccount {
      * @throws IllegalArgumentException if the amount is not positive.
      */
     public void transferTo(BankAccount otherAccount, Money amount) {
+        tryTransferTo(otherAccount, amount).throwIfFailed();
+    }
+
+    /**
+     * Settles a batch of transfers by netting: each account involved is updated
+     * once with its net position. Either every transfer is applied or none is.
+     *
+     * @param transfers The transfers to settle. Must not be null.
+     * @throws IllegalArgumentException if any amount is not positive.
+     * @throws IllegalStateException    if any account would end up with a negative balance.
+     */
+    public static void transferBatch(List<Transfer> transfers) {
+        transferBatch(transfers, new NettingEngine());
+    }
+
+    /**
+     * Settles a batch of transfers by netting with a given engine, whose working
+     * arrays are reused from earlier batches. Either every transfer is applied or none is.
+     *
+     * @param transfers The transfers to settle. Must not be null.
+     * @param engine    The engine to settle with. Must not be null or in use by another thread.
+     * @throws IllegalArgumentException if any amount is not positive.
+     * @throws IllegalStateException    if any account would end up with a negative balance.
+     */
+    public static void transferBatch(List<Transfer> transfers, NettingEngine engine) {
+        Objects.requireNonNull(transfers, "Transfers must not be null.");
+        Objects.requireNonNull(engine, "Netting engine must not be null.");
+        engine.settle(transfers).throwIfFailed();
+    }
+
+    /**
+     * Deposits a specified amount into the account without throwing on invalid input.
+     *
+     * @param amount The amount to deposit.
+     * @return {@link TransactionStatus#SUCCESS}, or {@link TransactionStatus#INVALID_AMOUNT}
+     *         if the amount is not positive.
+     */
+    public TransactionStatus tryDeposit(Money amount) {
+        if (!amount.isPositive()) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+        this.balance = this.balance.add(amount);
+        return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Withdraws a specified amount from the account without throwing when it is declined.
+     * A declined withdrawal leaves the balance unchanged.
+     *
+     * @param amount The amount to withdraw.
+     * @return {@link TransactionStatus#SUCCESS}, {@link TransactionStatus#INVALID_AMOUNT}
+     *         or {@link TransactionStatus#INSUFFICIENT_FUNDS}.
+     */
+    public TransactionStatus tryWithdraw(Money amount) {
+        if (!amount.isPositive()) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+        if (this.balance.isLessThan(amount)) {
+            return TransactionStatus.INSUFFICIENT_FUNDS;
+        }
+        this.balance = this.balance.subtract(amount);
+        return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Transfers a specified amount to another account without throwing when it is declined.
+     * A declined transfer leaves both balances unchanged.
+     *
+     * @param otherAccount The account to transfer money to. Must not be null.
+     * @param amount       The amount to transfer.
+     * @return {@link TransactionStatus#SUCCESS}, {@link TransactionStatus#INVALID_AMOUNT}
+     *         or {@link TransactionStatus#INSUFFICIENT_FUNDS}.
+     * @throws NullPointerException if otherAccount is null.
+     */
+    public TransactionStatus tryTransferTo(BankAccount otherAccount, Money amount) {
         Objects.requireNonNull(otherAccount, "Destination account must not be null.");
 
-        this.withdraw(amount);
-        otherAccount.deposit(amount);
+        TransactionStatus status = this.tryWithdraw(amount);
+        if (status.isSuccess()) {
+            otherAccount.tryDeposit(amount);
+        }
+        return status;
     }
 
     /**
@@ -0,0 +1,123 @@
+package clean;
+
+import java.util.Arrays;
+import java.util.List;
+import utility.*;
+
+/**
+ * Settles a batch of transfers by multilateral netting.
+ * Instead of a withdrawal and a deposit per transfer, the engine computes the
+ * net position of every account involved, checks that no resulting balance
+ * would be negative, and then updates each account once.
+ * The batch is all-or-nothing: if any check fails, no account is changed.
+ *
+ * <p>Accounts are numbered in the order they first appear in a batch through a
+ * linear-probing table keyed by identity hash code, and positions are summed in
+ * a {@code long} array indexed by that number, so a transfer allocates nothing.
+ * An engine reuses its working arrays between batches and is not thread-safe.
+ */
+public final class NettingEngine {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private BankAccount[] accounts = new BankAccount[INITIAL_CAPACITY];
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private int[] slotOf = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int count;
+
+    /**
+     * Settles a batch of transfers.
+     *
+     * @param transfers The transfers to settle. Must not be null.
+     * @return {@link TransactionStatus#SUCCESS}, {@link TransactionStatus#INVALID_AMOUNT} if
+     *         any amount is not positive, or {@link TransactionStatus#INSUFFICIENT_FUNDS} if any
+     *         account would end up negative.
+     */
+    public TransactionStatus settle(List<Transfer> transfers) {
+        try {
+            for (Transfer transfer : transfers) {
+                long cents = transfer.getAmount().getAmountInCents();
+                if (cents <= 0) {
+                    return TransactionStatus.INVALID_AMOUNT;
+                }
+                int from = indexOf(transfer.getFrom());
+                int to = indexOf(transfer.getTo());
+                positions[from] -= cents;
+                positions[to] += cents;
+            }
+            for (int i = 0; i < count; i++) {
+                if (accounts[i].getBalance().getAmountInCents() + positions[i] < 0) {
+                    return TransactionStatus.INSUFFICIENT_FUNDS;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                apply(accounts[i], positions[i]);
+            }
+            return TransactionStatus.SUCCESS;
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Finds an account's number in the batch, numbering it if it is new.
+     * A slot holds the account's number plus one; 0 marks a free slot.
+     */
+    private int indexOf(BankAccount account) {
+        int mask = slots.length - 1;
+        int slot = hash(account) & mask;
+        for (int index = slots[slot] - 1; index >= 0; index = slots[slot] - 1) {
+            if (accounts[index] == account) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (count == accounts.length) {
+            accounts = Arrays.copyOf(accounts, count * 2);
+            positions = Arrays.copyOf(positions, count * 2);
+            slotOf = Arrays.copyOf(slotOf, count * 2);
+            resize(count * 4);
+            return indexOf(account);
+        }
+        accounts[count] = account;
+        slots[slot] = count + 1;
+        slotOf[count] = slot;
+        return count++;
+    }
+
+    private void resize(int tableSize) {
+        slots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int index = 0; index < count; index++) {
+            int slot = hash(accounts[index]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+            slotOf[index] = slot;
+        }
+    }
+
+    private static int hash(BankAccount account) {
+        int hash = System.identityHashCode(account) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void apply(BankAccount account, long position) {
+        if (position > 0) {
+            account.tryDeposit(Money.ofCents(position));
+        } else if (position < 0) {
+            account.tryWithdraw(Money.ofCents(-position));
+        }
+    }
+
+    private void reset() {
+        for (int index = 0; index < count; index++) {
+            slots[slotOf[index]] = 0;
+        }
+        Arrays.fill(accounts, 0, count, null);
+        Arrays.fill(positions, 0, count, 0);
+        count = 0;
+    }
+}
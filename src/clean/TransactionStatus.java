@@ -0,0 +1,40 @@
+package clean;
+
+/**
+ * The outcome of a non-throwing {@link BankAccount} operation.
+ * The constants are shared, so reporting an outcome never allocates.
+ */
+public enum TransactionStatus {
+
+    SUCCESS {
+        @Override
+        public void throwIfFailed() {
+        }
+    },
+
+    INVALID_AMOUNT {
+        @Override
+        public void throwIfFailed() {
+            throw new IllegalArgumentException("Amount must be positive.");
+        }
+    },
+
+    INSUFFICIENT_FUNDS {
+        @Override
+        public void throwIfFailed() {
+            throw new IllegalStateException("Insufficient funds for this operation.");
+        }
+    };
+
+    /**
+     * Converts a failed outcome into the exception the throwing API reports.
+     *
+     * @throws IllegalArgumentException if the amount was not positive.
+     * @throws IllegalStateException    if the account had insufficient funds.
+     */
+    public abstract void throwIfFailed();
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
@@ -0,0 +1,39 @@
+package clean;
+
+import java.util.Objects;
+import utility.*;
+
+/**
+ * A request to move an amount from one account to another. This class is immutable.
+ */
+public final class Transfer {
+
+    private final BankAccount from;
+    private final BankAccount to;
+    private final Money amount;
+
+    public Transfer(BankAccount from, BankAccount to, Money amount) {
+        this.from = Objects.requireNonNull(from, "Source account must not be null.");
+        this.to = Objects.requireNonNull(to, "Destination account must not be null.");
+        this.amount = Objects.requireNonNull(amount, "Amount must not be null.");
+    }
+
+    public BankAccount getFrom() {
+        return from;
+    }
+
+    public BankAccount getTo() {
+        return to;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "Transfer[from=" + from.getAccountId() +
+               ", to=" + to.getAccountId() +
+               ", amount=" + amount + " cents]";
+    }
+}
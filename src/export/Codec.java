@@ -0,0 +1,9 @@
+package export;
+
+/**
+ * How the encoded column chunks of an export file are compressed.
+ */
+public enum Codec {
+    NONE,
+    DEFLATE
+}
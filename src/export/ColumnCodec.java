@@ -0,0 +1,277 @@
+package export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes single column chunks.
+ *
+ * <p>An {@link ColumnType#INT64} chunk is one zig-zag varint per row, the
+ * difference from the previous row. A {@link ColumnType#STRING} chunk starts
+ * with an encoding byte: {@value #PLAIN} for a varint length plus one (zero
+ * for null) and the UTF-8 bytes of each row, or {@value #DICTIONARY} for the
+ * distinct values, each a varint length and UTF-8 bytes, followed by a varint
+ * code plus one (zero for null) per row. The dictionary is used when it at
+ * least halves the number of strings stored.
+ */
+final class ColumnCodec {
+
+    static final byte PLAIN = 0;
+    static final byte DICTIONARY = 1;
+
+    private ColumnCodec() {
+    }
+
+    /**
+     * An encoded and possibly compressed chunk, with its statistics and the CRC32C of the stored bytes.
+     */
+    static final class Chunk {
+        final byte[] stored;
+        final ColumnStats stats;
+        final int crc;
+
+        Chunk(byte[] stored, ColumnStats stats) {
+            this.stored = stored;
+            this.stats = stats;
+            this.crc = crc(stored);
+        }
+    }
+
+    static int crc(byte[] stored) {
+        CRC32C crc = new CRC32C();
+        crc.update(stored);
+        return (int) crc.getValue();
+    }
+
+    static Chunk encodeLongs(long[] values, int rows, Codec codec) {
+        Output out = new Output(rows * 3 + 16);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            long value = values[i];
+            out.writeVarLong(zigZag(value - previous));
+            previous = value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        byte[] encoded = out.toByteArray();
+        byte[] stored = compress(encoded, codec);
+        return new Chunk(stored, new ColumnStats(min, max, null, null, 0, stored.length, encoded.length));
+    }
+
+    static Chunk encodeStrings(String[] values, int rows, Codec codec) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        String min = null;
+        String max = null;
+        int nulls = 0;
+        for (int i = 0; i < rows; i++) {
+            String value = values[i];
+            if (value == null) {
+                nulls++;
+                continue;
+            }
+            if (codes.putIfAbsent(value, dictionary.size()) == null) {
+                dictionary.add(value);
+                if (min == null || value.compareTo(min) < 0) {
+                    min = value;
+                }
+                if (max == null || value.compareTo(max) > 0) {
+                    max = value;
+                }
+            }
+        }
+        Output out = new Output(rows * 8 + 16);
+        if (dictionary.size() * 2 <= rows - nulls) {
+            out.writeByte(DICTIONARY);
+            out.writeVarLong(dictionary.size());
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(bytes.length);
+                out.write(bytes);
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeVarLong(values[i] == null ? 0 : codes.get(values[i]) + 1);
+            }
+        } else {
+            out.writeByte(PLAIN);
+            for (int i = 0; i < rows; i++) {
+                if (values[i] == null) {
+                    out.writeVarLong(0);
+                } else {
+                    byte[] bytes = values[i].getBytes(StandardCharsets.UTF_8);
+                    out.writeVarLong(bytes.length + 1L);
+                    out.write(bytes);
+                }
+            }
+        }
+        byte[] encoded = out.toByteArray();
+        byte[] stored = compress(encoded, codec);
+        return new Chunk(stored, new ColumnStats(Long.MAX_VALUE, Long.MIN_VALUE, min, max, nulls, stored.length,
+                encoded.length));
+    }
+
+    static long[] decodeLongs(byte[] encoded, int rows) throws IOException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(encoded);
+            long[] values = new long[rows];
+            long previous = 0;
+            for (int i = 0; i < rows; i++) {
+                previous += unZigZag(readVarLong(in));
+                values[i] = previous;
+            }
+            return values;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated INT64 column chunk.", e);
+        }
+    }
+
+    static String[] decodeStrings(byte[] encoded, int rows) throws IOException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(encoded);
+            String[] values = new String[rows];
+            byte encoding = in.get();
+            if (encoding == DICTIONARY) {
+                String[] dictionary = new String[(int) readVarLong(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = readString(in, (int) readVarLong(in));
+                }
+                for (int i = 0; i < rows; i++) {
+                    int code = (int) readVarLong(in);
+                    values[i] = code == 0 ? null : dictionary[code - 1];
+                }
+            } else if (encoding == PLAIN) {
+                for (int i = 0; i < rows; i++) {
+                    int length = (int) readVarLong(in);
+                    values[i] = length == 0 ? null : readString(in, length - 1);
+                }
+            } else {
+                throw new IOException("Unknown string encoding " + encoding);
+            }
+            return values;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed STRING column chunk.", e);
+        }
+    }
+
+    static byte[] decompress(byte[] stored, int encodedLength, Codec codec) throws IOException {
+        if (codec == Codec.NONE) {
+            return stored;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] encoded = new byte[encodedLength];
+            int length = 0;
+            while (length < encodedLength && !inflater.finished()) {
+                int inflated = inflater.inflate(encoded, length, encodedLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != encodedLength) {
+                throw new IOException("Column chunk inflated to " + length + " bytes, expected " + encodedLength);
+            }
+            return encoded;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed column chunk.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] compress(byte[] encoded, Codec codec) {
+        if (codec == Codec.NONE) {
+            return encoded;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(encoded);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length / 2 + 64);
+            byte[] buffer = new byte[1 << 16];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String readString(ByteBuffer in, int length) {
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long.");
+    }
+
+    private static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        private Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void writeByte(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void write(byte[] values) {
+            if (size + values.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + values.length));
+            }
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package export;
+
+/**
+ * The name and type of one column of an exported table. This class is immutable.
+ */
+public final class ColumnInfo {
+
+    private final String name;
+    private final ColumnType type;
+    private final boolean nullable;
+
+    ColumnInfo(String name, ColumnType type, boolean nullable) {
+        this.name = name;
+        this.type = type;
+        this.nullable = nullable;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ColumnType getType() {
+        return type;
+    }
+
+    /**
+     * Checks whether rows may have no value in this column. Only string columns can.
+     *
+     * @return true if the column may hold nulls.
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + type + (nullable ? "" : " NOT NULL");
+    }
+}
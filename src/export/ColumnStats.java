@@ -0,0 +1,86 @@
+package export;
+
+/**
+ * The statistics and size of one column chunk: one column of one row group.
+ * A reader can skip a row group whose minimum and maximum rule out a match
+ * without reading its data. This class is immutable.
+ */
+public final class ColumnStats {
+
+    private final long minLong;
+    private final long maxLong;
+    private final String minString;
+    private final String maxString;
+    private final int nullCount;
+    private final int storedBytes;
+    private final int encodedBytes;
+
+    ColumnStats(long minLong, long maxLong, String minString, String maxString, int nullCount, int storedBytes,
+                int encodedBytes) {
+        this.minLong = minLong;
+        this.maxLong = maxLong;
+        this.minString = minString;
+        this.maxString = maxString;
+        this.nullCount = nullCount;
+        this.storedBytes = storedBytes;
+        this.encodedBytes = encodedBytes;
+    }
+
+    /**
+     * Gets the smallest value of an {@link ColumnType#INT64} chunk.
+     *
+     * @return The minimum, or {@link Long#MAX_VALUE} for a string chunk.
+     */
+    public long getMinLong() {
+        return minLong;
+    }
+
+    /**
+     * Gets the largest value of an {@link ColumnType#INT64} chunk.
+     *
+     * @return The maximum, or {@link Long#MIN_VALUE} for a string chunk.
+     */
+    public long getMaxLong() {
+        return maxLong;
+    }
+
+    /**
+     * Gets the smallest value of a {@link ColumnType#STRING} chunk, in {@link String#compareTo} order.
+     *
+     * @return The minimum, or null if the chunk holds no strings.
+     */
+    public String getMinString() {
+        return minString;
+    }
+
+    /**
+     * Gets the largest value of a {@link ColumnType#STRING} chunk, in {@link String#compareTo} order.
+     *
+     * @return The maximum, or null if the chunk holds no strings.
+     */
+    public String getMaxString() {
+        return maxString;
+    }
+
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    /**
+     * Gets the size of the chunk in the file, after compression.
+     *
+     * @return The stored size in bytes.
+     */
+    public int getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * Gets the size of the chunk before compression.
+     *
+     * @return The encoded size in bytes.
+     */
+    public int getEncodedBytes() {
+        return encodedBytes;
+    }
+}
@@ -0,0 +1,18 @@
+package export;
+
+/**
+ * The value types of columns in a columnar export file.
+ */
+public enum ColumnType {
+
+    /**
+     * 64-bit integers, stored as zig-zag varint deltas from the previous row.
+     */
+    INT64,
+
+    /**
+     * UTF-8 strings, stored plain or, when a row group repeats values, as a
+     * dictionary followed by one varint code per row.
+     */
+    STRING
+}
@@ -0,0 +1,330 @@
+package export;
+
+import history.HistoryEntry;
+import history.HistoryStore;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ledger.LedgerSnapshot;
+
+/**
+ * Writes the account book to a self-describing columnar file for analytics.
+ *
+ * <p>Layout: an 8-byte header (magic, format version), then the column chunks
+ * of every row group of every table, then a footer and finally the footer's
+ * length, its CRC32C and the magic again. The footer holds the snapshot
+ * sequence and, per table, its columns and, per row group, its row count and
+ * for each column the chunk's offset, stored and encoded size, codec, CRC32C,
+ * null count and minimum and maximum. Chunks are encoded by {@link ColumnCodec}.
+ *
+ * <p>The {@value #ACCOUNTS} table holds every account of a {@link LedgerSnapshot},
+ * sorted by ID, so ID ranges can be skipped by statistics. The {@value #HISTORY}
+ * table holds the entries of a {@link HistoryStore} present when the export
+ * starts, in append order. Row groups are encoded and compressed in parallel
+ * and written in order; the file is written to a temporary name, forced and
+ * renamed, so it is either complete or absent.
+ */
+public final class ColumnarExporter {
+
+    public static final String ACCOUNTS = "accounts";
+    public static final String HISTORY = "history";
+    static final int MAGIC = 0x41434F4C;
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 12;
+    static final List<ColumnInfo> ACCOUNT_COLUMNS = List.of(
+            new ColumnInfo("id", ColumnType.STRING, false),
+            new ColumnInfo("holder", ColumnType.STRING, false),
+            new ColumnInfo("balance", ColumnType.INT64, false));
+    static final List<ColumnInfo> HISTORY_COLUMNS = List.of(
+            new ColumnInfo("timestamp", ColumnType.INT64, false),
+            new ColumnInfo("type", ColumnType.STRING, false),
+            new ColumnInfo("account", ColumnType.STRING, false),
+            new ColumnInfo("counterparty", ColumnType.STRING, true),
+            new ColumnInfo("amount", ColumnType.INT64, false));
+
+    private final FileChannel channel;
+    private final ExportSettings settings;
+    private final ExecutorService workers;
+    private final ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+    private final DataOutputStream footer = new DataOutputStream(footerBytes);
+    private final Deque<Future<ColumnCodec.Chunk[]>> inFlight = new ArrayDeque<>();
+    private final List<ColumnCodec.Chunk[]> tableGroups = new ArrayList<>();
+    private final List<long[]> tableOffsets = new ArrayList<>();
+    private final List<Integer> tableRows = new ArrayList<>();
+    private long position = HEADER_SIZE;
+    private long encodedBytes;
+
+    private ColumnarExporter(FileChannel channel, ExportSettings settings, ExecutorService workers) {
+        this.channel = channel;
+        this.settings = settings;
+        this.workers = workers;
+    }
+
+    /**
+     * Exports the accounts of a snapshot and, optionally, a history store.
+     *
+     * @param file     The file to write. Must not be null; an existing file is replaced.
+     * @param snapshot The accounts to export. Must not be null; it is not closed.
+     * @param history  The history to export, or null for none.
+     * @param settings Row group size, compression and parallelism. Must not be null.
+     * @return The rows and bytes written.
+     * @throws IOException if the file cannot be written or the history cannot be read.
+     */
+    public static ExportStats export(Path file, LedgerSnapshot snapshot, HistoryStore history,
+                                     ExportSettings settings) throws IOException {
+        Objects.requireNonNull(file, "Path must not be null.");
+        Objects.requireNonNull(snapshot, "Snapshot must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        long start = System.nanoTime();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long accountRows;
+        long historyRows = 0;
+        long encoded;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             ExecutorService workers = Executors.newFixedThreadPool(settings.getParallelism())) {
+            ColumnarExporter exporter = new ColumnarExporter(channel, settings, workers);
+            exporter.footer.writeLong(snapshot.getSequence());
+            exporter.footer.writeInt(history == null ? 1 : 2);
+            accountRows = exporter.writeAccounts(snapshot);
+            if (history != null) {
+                historyRows = exporter.writeHistory(history);
+            }
+            exporter.finish();
+            encoded = exporter.encodedBytes;
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new ExportStats(snapshot.getSequence(), accountRows, historyRows, encoded, Files.size(file),
+                System.nanoTime() - start);
+    }
+
+    private long writeAccounts(LedgerSnapshot snapshot) throws IOException {
+        List<Object[]> accounts = new ArrayList<>();
+        snapshot.forEach((id, holder, balance) ->
+                accounts.add(new Object[] {id.getValue(), holder.getName(), balance.getAmountInCents()}));
+        accounts.sort(Comparator.comparing(account -> (String) account[0]));
+        beginTable(ACCOUNTS, ACCOUNT_COLUMNS);
+        int groupRows = settings.getRowGroupRows();
+        for (int first = 0; first < accounts.size(); first += groupRows) {
+            int rows = Math.min(groupRows, accounts.size() - first);
+            String[] ids = new String[rows];
+            String[] holders = new String[rows];
+            long[] balances = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                Object[] account = accounts.get(first + i);
+                ids[i] = (String) account[0];
+                holders[i] = (String) account[1];
+                balances[i] = (Long) account[2];
+            }
+            submit(rows, () -> new ColumnCodec.Chunk[] {
+                    ColumnCodec.encodeStrings(ids, rows, settings.getCodec()),
+                    ColumnCodec.encodeStrings(holders, rows, settings.getCodec()),
+                    ColumnCodec.encodeLongs(balances, rows, settings.getCodec())});
+        }
+        endTable(ACCOUNT_COLUMNS);
+        return accounts.size();
+    }
+
+    private long writeHistory(HistoryStore history) throws IOException {
+        long total = history.getEntryCount();
+        beginTable(HISTORY, HISTORY_COLUMNS);
+        HistoryBuffer buffer = new HistoryBuffer(settings.getRowGroupRows());
+        long[] seen = new long[1];
+        try {
+            history.scan(Long.MIN_VALUE, Long.MAX_VALUE, entry -> {
+                if (seen[0]++ >= total) {
+                    return;
+                }
+                buffer.add(entry);
+                if (buffer.rows == settings.getRowGroupRows()) {
+                    submitHistory(buffer);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (buffer.rows > 0) {
+            submitHistory(buffer);
+        }
+        endTable(HISTORY_COLUMNS);
+        return Math.min(seen[0], total);
+    }
+
+    private void submitHistory(HistoryBuffer buffer) {
+        int rows = buffer.rows;
+        long[] timestamps = Arrays.copyOf(buffer.timestamps, rows);
+        String[] types = Arrays.copyOf(buffer.types, rows);
+        String[] accounts = Arrays.copyOf(buffer.accounts, rows);
+        String[] counterparties = Arrays.copyOf(buffer.counterparties, rows);
+        long[] amounts = Arrays.copyOf(buffer.amounts, rows);
+        buffer.rows = 0;
+        try {
+            submit(rows, () -> new ColumnCodec.Chunk[] {
+                    ColumnCodec.encodeLongs(timestamps, rows, settings.getCodec()),
+                    ColumnCodec.encodeStrings(types, rows, settings.getCodec()),
+                    ColumnCodec.encodeStrings(accounts, rows, settings.getCodec()),
+                    ColumnCodec.encodeStrings(counterparties, rows, settings.getCodec()),
+                    ColumnCodec.encodeLongs(amounts, rows, settings.getCodec())});
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void beginTable(String name, List<ColumnInfo> columns) throws IOException {
+        footer.writeUTF(name);
+        footer.writeInt(columns.size());
+        for (ColumnInfo column : columns) {
+            footer.writeUTF(column.getName());
+            footer.writeByte(column.getType().ordinal());
+            footer.writeBoolean(column.isNullable());
+        }
+        tableGroups.clear();
+        tableOffsets.clear();
+        tableRows.clear();
+    }
+
+    /**
+     * Queues a row group for encoding, first writing finished groups while too many are queued.
+     */
+    private void submit(int rows, Callable<ColumnCodec.Chunk[]> encoder) throws IOException {
+        while (inFlight.size() >= 2 * settings.getParallelism()) {
+            writeGroup(await(inFlight.poll()));
+        }
+        tableRows.add(rows);
+        inFlight.add(workers.submit(encoder));
+    }
+
+    private void writeGroup(ColumnCodec.Chunk[] chunks) throws IOException {
+        long[] offsets = new long[chunks.length];
+        for (int column = 0; column < chunks.length; column++) {
+            offsets[column] = position;
+            ByteBuffer data = ByteBuffer.wrap(chunks[column].stored);
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+            encodedBytes += chunks[column].stats.getEncodedBytes();
+        }
+        tableGroups.add(chunks);
+        tableOffsets.add(offsets);
+    }
+
+    private void endTable(List<ColumnInfo> columns) throws IOException {
+        while (!inFlight.isEmpty()) {
+            writeGroup(await(inFlight.poll()));
+        }
+        footer.writeInt(tableGroups.size());
+        for (int group = 0; group < tableGroups.size(); group++) {
+            footer.writeInt(tableRows.get(group));
+            for (int column = 0; column < columns.size(); column++) {
+                ColumnStats stats = tableGroups.get(group)[column].stats;
+                footer.writeLong(tableOffsets.get(group)[column]);
+                footer.writeInt(stats.getStoredBytes());
+                footer.writeInt(stats.getEncodedBytes());
+                footer.writeByte(settings.getCodec().ordinal());
+                footer.writeInt(tableGroups.get(group)[column].crc);
+                footer.writeInt(stats.getNullCount());
+                if (columns.get(column).getType() == ColumnType.INT64) {
+                    footer.writeLong(stats.getMinLong());
+                    footer.writeLong(stats.getMaxLong());
+                } else {
+                    writeString(footer, stats.getMinString());
+                    writeString(footer, stats.getMaxString());
+                }
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        footer.flush();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        byte[] footerData = footerBytes.toByteArray();
+        ByteBuffer tail = ByteBuffer.allocate(footerData.length + TRAILER_SIZE)
+                .put(footerData).putInt(footerData.length).putInt(ColumnCodec.crc(footerData)).putInt(MAGIC).flip();
+        while (tail.hasRemaining()) {
+            position += channel.write(tail, position);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export was interrupted.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Export failed.", cause);
+        }
+    }
+
+    /**
+     * The columns of the history row group being filled.
+     */
+    private static final class HistoryBuffer {
+        final long[] timestamps;
+        final String[] types;
+        final String[] accounts;
+        final String[] counterparties;
+        final long[] amounts;
+        int rows;
+
+        HistoryBuffer(int capacity) {
+            timestamps = new long[capacity];
+            types = new String[capacity];
+            accounts = new String[capacity];
+            counterparties = new String[capacity];
+            amounts = new long[capacity];
+        }
+
+        void add(HistoryEntry entry) {
+            timestamps[rows] = entry.getTimestampMillis();
+            types[rows] = entry.getType().name();
+            accounts[rows] = entry.getAccount().getValue();
+            counterparties[rows] = entry.getCounterparty() == null ? null : entry.getCounterparty().getValue();
+            amounts[rows] = entry.getAmount().getAmountInCents();
+            rows++;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package export;
+
+import history.HistoryEntry;
+import ingest.TransactionType;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import ledger.VersionedLedger.AccountVisitor;
+import utility.*;
+
+/**
+ * Reads a file written by {@link ColumnarExporter}.
+ *
+ * <p>Opening reads only the footer. Each column chunk is then read and decoded
+ * on demand, so a query touching two columns reads two columns, and
+ * {@link TableInfo#getStats(int, int)} lets it skip row groups without reading
+ * them. Chunks are read with positional reads, so one reader can serve
+ * several threads, each decoding different row groups. This class is thread-safe.
+ */
+public final class ColumnarReader implements AutoCloseable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long sequence;
+    private final Map<String, TableInfo> tables;
+
+    private ColumnarReader(Path path, FileChannel channel, long sequence, Map<String, TableInfo> tables) {
+        this.path = path;
+        this.channel = channel;
+        this.sequence = sequence;
+        this.tables = tables;
+    }
+
+    /**
+     * Opens an export file and reads its footer.
+     *
+     * @param path The file. Must not be null.
+     * @return The open reader.
+     * @throws IOException if the file cannot be read or is not a columnar export.
+     */
+    public static ColumnarReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(Objects.requireNonNull(path, "Path must not be null."),
+                StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < ColumnarExporter.HEADER_SIZE + ColumnarExporter.TRAILER_SIZE) {
+                throw new IOException("Not a columnar export: " + path);
+            }
+            ByteBuffer header = read(channel, 0, ColumnarExporter.HEADER_SIZE);
+            ByteBuffer trailer = read(channel, size - ColumnarExporter.TRAILER_SIZE, ColumnarExporter.TRAILER_SIZE);
+            if (header.getInt() != ColumnarExporter.MAGIC || trailer.getInt(8) != ColumnarExporter.MAGIC) {
+                throw new IOException("Not a columnar export: " + path);
+            }
+            int version = header.getInt();
+            if (version != ColumnarExporter.FORMAT_VERSION) {
+                throw new IOException("Unsupported export format " + version + " in " + path);
+            }
+            int footerLength = trailer.getInt(0);
+            long footerOffset = size - ColumnarExporter.TRAILER_SIZE - footerLength;
+            if (footerLength < 0 || footerOffset < ColumnarExporter.HEADER_SIZE) {
+                throw new IOException("Corrupt footer in " + path);
+            }
+            ByteBuffer footer = read(channel, footerOffset, footerLength);
+            if (ColumnCodec.crc(footer.array()) != trailer.getInt(4)) {
+                throw new IOException("Corrupt footer in " + path);
+            }
+            long sequence = footer.getLong();
+            int tableCount = footer.getInt();
+            Map<String, TableInfo> tables = new LinkedHashMap<>();
+            for (int t = 0; t < tableCount; t++) {
+                TableInfo table = readTable(footer);
+                tables.put(table.getName(), table);
+            }
+            return new ColumnarReader(path, channel, sequence, tables);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            channel.close();
+            throw new IOException("Corrupt footer in " + path, e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the commit sequence number of the snapshot the accounts were exported from.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<String> getTableNames() {
+        return List.copyOf(tables.keySet());
+    }
+
+    /**
+     * Gets the schema and statistics of a table.
+     *
+     * @param name The table name.
+     * @return The table.
+     * @throws IllegalArgumentException if the file has no such table.
+     */
+    public TableInfo getTable(String name) {
+        TableInfo table = tables.get(name);
+        if (table == null) {
+            throw new IllegalArgumentException("Unknown table: " + name);
+        }
+        return table;
+    }
+
+    /**
+     * Reads one {@link ColumnType#INT64} column of one row group.
+     *
+     * @param table    The table name.
+     * @param column   The column name.
+     * @param rowGroup The row group.
+     * @return The values, one per row.
+     * @throws IllegalArgumentException if the table or column does not exist or the column is not INT64.
+     * @throws IOException              if the chunk cannot be read or is corrupt.
+     */
+    public long[] readLongs(String table, String column, int rowGroup) throws IOException {
+        TableInfo info = getTable(table);
+        int index = info.columnIndex(column);
+        requireType(info, index, ColumnType.INT64);
+        return ColumnCodec.decodeLongs(readChunk(info, rowGroup, index), info.getRowCount(rowGroup));
+    }
+
+    /**
+     * Reads one {@link ColumnType#STRING} column of one row group.
+     *
+     * @param table    The table name.
+     * @param column   The column name.
+     * @param rowGroup The row group.
+     * @return The values, one per row; null where a row has no value.
+     * @throws IllegalArgumentException if the table or column does not exist or the column is not STRING.
+     * @throws IOException              if the chunk cannot be read or is corrupt.
+     */
+    public String[] readStrings(String table, String column, int rowGroup) throws IOException {
+        TableInfo info = getTable(table);
+        int index = info.columnIndex(column);
+        requireType(info, index, ColumnType.STRING);
+        return ColumnCodec.decodeStrings(readChunk(info, rowGroup, index), info.getRowCount(rowGroup));
+    }
+
+    /**
+     * Visits every exported account, in ID order.
+     *
+     * @param visitor Receives each account and its balance. Must not be null.
+     * @throws IOException if a chunk cannot be read or is corrupt.
+     */
+    public void forEachAccount(AccountVisitor visitor) throws IOException {
+        Objects.requireNonNull(visitor, "Visitor must not be null.");
+        TableInfo table = getTable(ColumnarExporter.ACCOUNTS);
+        for (int group = 0; group < table.getRowGroupCount(); group++) {
+            String[] ids = readStrings(ColumnarExporter.ACCOUNTS, "id", group);
+            String[] holders = readStrings(ColumnarExporter.ACCOUNTS, "holder", group);
+            long[] balances = readLongs(ColumnarExporter.ACCOUNTS, "balance", group);
+            for (int i = 0; i < ids.length; i++) {
+                visitor.visit(new AccountID(ids[i]), new AccountHolder(holders[i]), Money.ofCents(balances[i]));
+            }
+        }
+    }
+
+    /**
+     * Visits every exported history entry, in append order.
+     *
+     * @param consumer Receives each entry. Must not be null.
+     * @throws IllegalArgumentException if the file has no history table.
+     * @throws IOException              if a chunk cannot be read or is corrupt.
+     */
+    public void forEachHistoryEntry(Consumer<HistoryEntry> consumer) throws IOException {
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        TableInfo table = getTable(ColumnarExporter.HISTORY);
+        for (int group = 0; group < table.getRowGroupCount(); group++) {
+            long[] timestamps = readLongs(ColumnarExporter.HISTORY, "timestamp", group);
+            String[] types = readStrings(ColumnarExporter.HISTORY, "type", group);
+            String[] accounts = readStrings(ColumnarExporter.HISTORY, "account", group);
+            String[] counterparties = readStrings(ColumnarExporter.HISTORY, "counterparty", group);
+            long[] amounts = readLongs(ColumnarExporter.HISTORY, "amount", group);
+            for (int i = 0; i < timestamps.length; i++) {
+                consumer.accept(new HistoryEntry(timestamps[i], TransactionType.valueOf(types[i]),
+                        new AccountID(accounts[i]),
+                        counterparties[i] == null ? null : new AccountID(counterparties[i]),
+                        Money.ofCents(amounts[i])));
+            }
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private byte[] readChunk(TableInfo table, int rowGroup, int column) throws IOException {
+        ColumnStats stats = table.getStats(rowGroup, column);
+        ByteBuffer stored = read(channel, table.offset(rowGroup, column), stats.getStoredBytes());
+        if (ColumnCodec.crc(stored.array()) != table.crc(rowGroup, column)) {
+            throw new IOException("Corrupt chunk at offset " + table.offset(rowGroup, column) + " in " + path);
+        }
+        return ColumnCodec.decompress(stored.array(), stats.getEncodedBytes(), table.codec(rowGroup, column));
+    }
+
+    private static void requireType(TableInfo table, int column, ColumnType type) {
+        if (table.getColumns().get(column).getType() != type) {
+            throw new IllegalArgumentException("Column " + table.getColumns().get(column).getName() + " is not "
+                    + type);
+        }
+    }
+
+    private static TableInfo readTable(ByteBuffer footer) throws IOException {
+        String name = readUtf(footer);
+        List<ColumnInfo> columns = new ArrayList<>();
+        int columnCount = footer.getInt();
+        for (int c = 0; c < columnCount; c++) {
+            columns.add(new ColumnInfo(readUtf(footer), ColumnType.values()[footer.get()], footer.get() != 0));
+        }
+        int groups = footer.getInt();
+        int[] rows = new int[groups];
+        long[][] offsets = new long[groups][columnCount];
+        ColumnStats[][] stats = new ColumnStats[groups][columnCount];
+        byte[][] codecs = new byte[groups][columnCount];
+        int[][] crcs = new int[groups][columnCount];
+        for (int group = 0; group < groups; group++) {
+            rows[group] = footer.getInt();
+            for (int c = 0; c < columnCount; c++) {
+                offsets[group][c] = footer.getLong();
+                int stored = footer.getInt();
+                int encoded = footer.getInt();
+                codecs[group][c] = footer.get();
+                if (codecs[group][c] < 0 || codecs[group][c] >= Codec.values().length) {
+                    throw new IOException("Unknown codec " + codecs[group][c]);
+                }
+                crcs[group][c] = footer.getInt();
+                int nulls = footer.getInt();
+                if (columns.get(c).getType() == ColumnType.INT64) {
+                    stats[group][c] = new ColumnStats(footer.getLong(), footer.getLong(), null, null, nulls, stored,
+                            encoded);
+                } else {
+                    stats[group][c] = new ColumnStats(Long.MAX_VALUE, Long.MIN_VALUE, readString(footer),
+                            readString(footer), nulls, stored, encoded);
+                }
+            }
+        }
+        return new TableInfo(name, columns, rows, offsets, stats, codecs, crcs);
+    }
+
+    /**
+     * Reads a string written by {@link java.io.DataOutputStream#writeUTF(String)}; the names in the footer are ASCII.
+     */
+    private static String readUtf(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at offset " + (offset + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,135 @@
+package export;
+
+import clean.BankAccount;
+import history.HistoryEntry;
+import history.HistoryStore;
+import ingest.TransactionType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import ledger.AccountRegistry;
+import ledger.LedgerSnapshot;
+import ledger.VersionedLedger;
+import utility.*;
+
+public class ExportBenchmark {
+
+    /**
+     * Compares summing balances by formatting every {@link BankAccount} with
+     * {@code toString()} and parsing the text back with exporting the book to a
+     * columnar file and reading only the balance column. Then exports
+     * uncompressed and deflated, and runs a time-range query on the history
+     * table that skips row groups by their statistics.
+     *
+     * @param args Optional: number of accounts, number of history entries, then encoding threads.
+     */
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int entries = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("--- Columnar Export Benchmark ---");
+        System.out.printf("%,d accounts, %,d history entries, %d encoding threads%n", accounts, entries, parallelism);
+        Path directory = Files.createTempDirectory("export-bench");
+        try {
+            VersionedLedger ledger = new VersionedLedger();
+            AccountRegistry registry = new AccountRegistry();
+            Random random = new Random(42);
+            for (int i = 0; i < accounts; i++) {
+                AccountID id = new AccountID("ACC" + i);
+                Money balance = Money.ofCents(1 + random.nextInt(1_000_000));
+                ledger.open(new AccountHolder("Holder " + i), id);
+                ledger.deposit(id, balance);
+                registry.open(new AccountHolder("Holder " + i), id);
+                registry.deposit(id, balance);
+            }
+            long firstMillis = 1_600_000_000_000L;
+            long timestamp = firstMillis;
+            TransactionType[] types = TransactionType.values();
+            try (HistoryStore history = HistoryStore.open(directory.resolve("history.hist"))) {
+                for (int i = 0; i < entries; i++) {
+                    timestamp += random.nextInt(1000);
+                    TransactionType type = types[random.nextInt(types.length)];
+                    history.append(new HistoryEntry(timestamp, type, new AccountID("ACC" + random.nextInt(accounts)),
+                            type == TransactionType.TRANSFER ? new AccountID("ACC" + random.nextInt(accounts)) : null,
+                            Money.ofCents(1 + random.nextInt(100_000))));
+                }
+                history.flush();
+
+                long start = System.nanoTime();
+                long textTotal = 0;
+                for (BankAccount account : registry.accounts()) {
+                    String text = account.toString();
+                    int from = text.lastIndexOf(", balance=") + ", balance=".length();
+                    textTotal += Long.parseLong(text, from, text.indexOf(" cents]", from), 10);
+                }
+                double textMillis = (System.nanoTime() - start) / 1e6;
+
+                System.out.printf("%-20s%12s%12s%12s%n", "export", "ms", "MB", "ratio");
+                Path exported = null;
+                for (Codec codec : Codec.values()) {
+                    Path file = directory.resolve("book-" + codec + ".acol");
+                    ExportStats stats;
+                    try (LedgerSnapshot snapshot = ledger.snapshot()) {
+                        stats = ColumnarExporter.export(file, snapshot, history,
+                                new ExportSettings(1 << 16, codec, parallelism));
+                    }
+                    System.out.printf("%-20s%12.0f%12.1f%12.2f%n", codec, stats.getElapsedNanos() / 1e6,
+                            stats.getFileBytes() / 1048576.0, (double) stats.getEncodedBytes() / stats.getFileBytes());
+                    exported = file;
+                }
+
+                System.out.println();
+                System.out.printf("%-28s%12s%20s%n", "query", "ms", "result");
+                System.out.printf("%-28s%12.0f%,20d%n", "total, toString and parse", textMillis, textTotal);
+                try (ColumnarReader reader = ColumnarReader.open(exported)) {
+                    start = System.nanoTime();
+                    long columnTotal = 0;
+                    TableInfo table = reader.getTable(ColumnarExporter.ACCOUNTS);
+                    for (int group = 0; group < table.getRowGroupCount(); group++) {
+                        for (long balance : reader.readLongs(ColumnarExporter.ACCOUNTS, "balance", group)) {
+                            columnTotal += balance;
+                        }
+                    }
+                    System.out.printf("%-28s%12.0f%,20d%n", "total, balance column", (System.nanoTime() - start) / 1e6,
+                            columnTotal);
+
+                    long from = firstMillis + (timestamp - firstMillis) / 2;
+                    long to = from + (timestamp - firstMillis) / 100;
+                    start = System.nanoTime();
+                    TableInfo historyTable = reader.getTable(ColumnarExporter.HISTORY);
+                    int timeColumn = historyTable.columnIndex("timestamp");
+                    long amount = 0;
+                    int groupsRead = 0;
+                    for (int group = 0; group < historyTable.getRowGroupCount(); group++) {
+                        ColumnStats stats = historyTable.getStats(group, timeColumn);
+                        if (stats.getMaxLong() < from || stats.getMinLong() >= to) {
+                            continue;
+                        }
+                        groupsRead++;
+                        long[] times = reader.readLongs(ColumnarExporter.HISTORY, "timestamp", group);
+                        long[] amounts = reader.readLongs(ColumnarExporter.HISTORY, "amount", group);
+                        for (int i = 0; i < times.length; i++) {
+                            if (times[i] >= from && times[i] < to) {
+                                amount += amounts[i];
+                            }
+                        }
+                    }
+                    System.out.printf("%-28s%12.1f%,20d%n", "history 1% range, amount", (System.nanoTime() - start) / 1e6,
+                            amount);
+                    System.out.printf("Read %d of %d history row groups%n", groupsRead, historyTable.getRowGroupCount());
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+}
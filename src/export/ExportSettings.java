@@ -0,0 +1,53 @@
+package export;
+
+import java.util.Objects;
+
+/**
+ * Row group size, compression and parallelism of a {@link ColumnarExporter}. This class is immutable.
+ */
+public final class ExportSettings {
+
+    private final int rowGroupRows;
+    private final Codec codec;
+    private final int parallelism;
+
+    /**
+     * @param rowGroupRows Rows per row group. Must be positive.
+     * @param codec        Compression of column chunks. Must not be null.
+     * @param parallelism  Number of threads encoding row groups. Must be positive.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public ExportSettings(int rowGroupRows, Codec codec, int parallelism) {
+        Objects.requireNonNull(codec, "Codec must not be null.");
+        if (rowGroupRows <= 0) {
+            throw new IllegalArgumentException("Row group size must be positive.");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        this.rowGroupRows = rowGroupRows;
+        this.codec = codec;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Creates settings with row groups of 65,536 rows, deflated, encoded by one thread per processor.
+     *
+     * @return The default settings.
+     */
+    public static ExportSettings defaults() {
+        return new ExportSettings(1 << 16, Codec.DEFLATE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getRowGroupRows() {
+        return rowGroupRows;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+}
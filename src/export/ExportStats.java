@@ -0,0 +1,67 @@
+package export;
+
+/**
+ * What one {@link ColumnarExporter} run wrote. This class is immutable.
+ */
+public final class ExportStats {
+
+    private final long sequence;
+    private final long accountRows;
+    private final long historyRows;
+    private final long encodedBytes;
+    private final long fileBytes;
+    private final long elapsedNanos;
+
+    ExportStats(long sequence, long accountRows, long historyRows, long encodedBytes, long fileBytes,
+                long elapsedNanos) {
+        this.sequence = sequence;
+        this.accountRows = accountRows;
+        this.historyRows = historyRows;
+        this.encodedBytes = encodedBytes;
+        this.fileBytes = fileBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the commit sequence number of the snapshot the account table was taken from.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getAccountRows() {
+        return accountRows;
+    }
+
+    public long getHistoryRows() {
+        return historyRows;
+    }
+
+    /**
+     * Gets the size of all column chunks before compression.
+     *
+     * @return The encoded size in bytes.
+     */
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportStats[sequence=" + sequence +
+               ", accountRows=" + accountRows +
+               ", historyRows=" + historyRows +
+               ", encodedBytes=" + encodedBytes +
+               ", fileBytes=" + fileBytes + "]";
+    }
+}
@@ -0,0 +1,101 @@
+package export;
+
+import java.util.List;
+
+/**
+ * The schema, row groups and column statistics of one table of an export file. This class is immutable.
+ */
+public final class TableInfo {
+
+    private final String name;
+    private final List<ColumnInfo> columns;
+    private final int[] rowGroupRows;
+    private final long[] rowGroupFirstRows;
+    private final long[][] offsets;
+    private final ColumnStats[][] stats;
+    private final byte[][] codecs;
+    private final int[][] crcs;
+
+    TableInfo(String name, List<ColumnInfo> columns, int[] rowGroupRows, long[][] offsets, ColumnStats[][] stats,
+              byte[][] codecs, int[][] crcs) {
+        this.name = name;
+        this.columns = List.copyOf(columns);
+        this.rowGroupRows = rowGroupRows;
+        this.offsets = offsets;
+        this.stats = stats;
+        this.codecs = codecs;
+        this.crcs = crcs;
+        this.rowGroupFirstRows = new long[rowGroupRows.length];
+        for (int group = 1; group < rowGroupRows.length; group++) {
+            rowGroupFirstRows[group] = rowGroupFirstRows[group - 1] + rowGroupRows[group - 1];
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<ColumnInfo> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Finds a column by name.
+     *
+     * @param column The column name.
+     * @return The column's position.
+     * @throws IllegalArgumentException if the table has no such column.
+     */
+    public int columnIndex(String column) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column " + column + " in table " + name);
+    }
+
+    public int getRowGroupCount() {
+        return rowGroupRows.length;
+    }
+
+    public int getRowCount(int rowGroup) {
+        return rowGroupRows[rowGroup];
+    }
+
+    /**
+     * Gets the position of a row group's first row in the table.
+     *
+     * @param rowGroup The row group.
+     * @return The row number.
+     */
+    public long getFirstRow(int rowGroup) {
+        return rowGroupFirstRows[rowGroup];
+    }
+
+    public long getRowCount() {
+        return rowGroupRows.length == 0 ? 0 : rowGroupFirstRows[rowGroupRows.length - 1] + rowGroupRows[rowGroupRows.length - 1];
+    }
+
+    public ColumnStats getStats(int rowGroup, int column) {
+        return stats[rowGroup][column];
+    }
+
+    long offset(int rowGroup, int column) {
+        return offsets[rowGroup][column];
+    }
+
+    Codec codec(int rowGroup, int column) {
+        return Codec.values()[codecs[rowGroup][column]];
+    }
+
+    int crc(int rowGroup, int column) {
+        return crcs[rowGroup][column];
+    }
+
+    @Override
+    public String toString() {
+        return "TableInfo[name=" + name + ", columns=" + columns + ", rows=" + getRowCount() +
+               ", rowGroups=" + rowGroupRows.length + "]";
+    }
+}
@@ -0,0 +1,141 @@
+package history;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import utility.*;
+
+/**
+ * Periodic checkpoints of every account's balance as implied by its history,
+ * so that the balance at a past instant is the latest checkpoint at or before
+ * it plus the few entries in between.
+ *
+ * <p>Each account keeps its running balance and, every {@value #INTERVAL} of
+ * its entries, records a checkpoint (T, b): b is the sum of the account's
+ * entries with a timestamp before T. A checkpoint is only recorded when an
+ * entry arrives with a later timestamp than every entry before it, so entries
+ * sharing a timestamp are never split across one. An account's checkpoints are
+ * in timestamp order and found by binary search. An entry older than some of
+ * an account's checkpoints makes them wrong, and they are dropped.
+ */
+final class BalanceCheckpoints {
+
+    static final int INTERVAL = 16;
+
+    private final ConcurrentHashMap<AccountID, Account> accounts = new ConcurrentHashMap<>();
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Adds an entry's effect to the running balances of its account and counterparty.
+     */
+    void add(HistoryEntry entry) {
+        add(entry.getAccount(), entry.getTimestampMillis(), delta(entry, entry.getAccount()));
+        AccountID counterparty = entry.getCounterparty();
+        if (counterparty != null && !counterparty.equals(entry.getAccount())) {
+            add(counterparty, entry.getTimestampMillis(), delta(entry, counterparty));
+        }
+    }
+
+    private void add(AccountID id, long timestampMillis, long delta) {
+        size.add(accounts.computeIfAbsent(id, key -> new Account()).add(timestampMillis, delta));
+    }
+
+    /**
+     * Finds the latest checkpoint of an account at or before a timestamp.
+     *
+     * @return The checkpoint's timestamp and balance in cents; {@code Long.MIN_VALUE} and 0 if there is none.
+     */
+    long[] floor(AccountID id, long timestampMillis) {
+        Account account = accounts.get(id);
+        return account == null ? new long[]{Long.MIN_VALUE, 0} : account.floor(timestampMillis);
+    }
+
+    /**
+     * Gets the number of checkpoints held for all accounts.
+     *
+     * @return The checkpoint count.
+     */
+    long size() {
+        return size.sum();
+    }
+
+    /**
+     * Gets the effect of an entry on an account's balance.
+     *
+     * @return The change in cents: positive for deposits and incoming transfers, negative for withdrawals and
+     *         outgoing transfers, 0 for a transfer to the same account or an entry not involving the account.
+     */
+    static long delta(HistoryEntry entry, AccountID id) {
+        long cents = entry.getAmount().getAmountInCents();
+        boolean source = id.equals(entry.getAccount());
+        return switch (entry.getType()) {
+            case DEPOSIT -> source ? cents : 0;
+            case WITHDRAW -> source ? -cents : 0;
+            case TRANSFER -> {
+                boolean destination = id.equals(entry.getCounterparty());
+                yield source == destination ? 0 : (source ? -cents : cents);
+            }
+        };
+    }
+
+    /**
+     * One account's running balance and checkpoints, guarded by its own lock.
+     */
+    private static final class Account {
+        private long balance;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private int sinceCheckpoint;
+        private long[] timestamps = new long[2];
+        private long[] balances = new long[2];
+        private int count;
+
+        /**
+         * @return The change in the number of checkpoints.
+         */
+        synchronized int add(long timestampMillis, long delta) {
+            int change = 0;
+            if (count > 0 && timestampMillis < timestamps[count - 1]) {
+                int valid = upperBound(timestampMillis);
+                change -= count - valid;
+                count = valid;
+            }
+            if (sinceCheckpoint >= INTERVAL && timestampMillis > lastTimestamp) {
+                if (count == timestamps.length) {
+                    timestamps = Arrays.copyOf(timestamps, count * 2);
+                    balances = Arrays.copyOf(balances, count * 2);
+                }
+                timestamps[count] = timestampMillis;
+                balances[count] = balance;
+                count++;
+                change++;
+                sinceCheckpoint = 0;
+            }
+            balance += delta;
+            sinceCheckpoint++;
+            lastTimestamp = Math.max(lastTimestamp, timestampMillis);
+            return change;
+        }
+
+        synchronized long[] floor(long timestampMillis) {
+            int found = upperBound(timestampMillis) - 1;
+            return found < 0 ? new long[]{Long.MIN_VALUE, 0} : new long[]{timestamps[found], balances[found]};
+        }
+
+        /**
+         * @return The number of checkpoints with a timestamp at or before the given one.
+         */
+        private int upperBound(long timestampMillis) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] <= timestampMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
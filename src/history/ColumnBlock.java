@@ -0,0 +1,208 @@
+package history;
+
+import ingest.TransactionType;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import utility.*;
+
+/**
+ * The uncompressed, column-oriented encoding of a block of history entries.
+ *
+ * <p>A block starts with two dictionaries, the distinct account IDs and the
+ * distinct type names of its entries, followed by one column per field:
+ * timestamps as zig-zag varint deltas from the previous entry, account and
+ * counterparty IDs as varint dictionary codes (counterparty code 0 means none),
+ * amounts as varints, and types as one dictionary code byte each.
+ */
+final class ColumnBlock {
+
+    private ColumnBlock() {
+    }
+
+    static byte[] encode(List<HistoryEntry> entries) {
+        Map<AccountID, Integer> accountCodes = new HashMap<>();
+        List<AccountID> accounts = new ArrayList<>();
+        Map<TransactionType, Integer> typeCodes = new HashMap<>();
+        List<TransactionType> types = new ArrayList<>();
+        for (HistoryEntry entry : entries) {
+            code(entry.getAccount(), accountCodes, accounts);
+            if (entry.getCounterparty() != null) {
+                code(entry.getCounterparty(), accountCodes, accounts);
+            }
+            code(entry.getType(), typeCodes, types);
+        }
+
+        Output out = new Output(entries.size() * 8 + 64);
+        out.writeVarLong(accounts.size());
+        for (AccountID account : accounts) {
+            out.writeString(account.getValue());
+        }
+        out.writeVarLong(types.size());
+        for (TransactionType type : types) {
+            out.writeString(type.name());
+        }
+        long previous = 0;
+        for (HistoryEntry entry : entries) {
+            out.writeVarLong(zigZag(entry.getTimestampMillis() - previous));
+            previous = entry.getTimestampMillis();
+        }
+        for (HistoryEntry entry : entries) {
+            out.writeVarLong(accountCodes.get(entry.getAccount()));
+        }
+        for (HistoryEntry entry : entries) {
+            out.writeVarLong(entry.getCounterparty() == null ? 0 : accountCodes.get(entry.getCounterparty()) + 1);
+        }
+        for (HistoryEntry entry : entries) {
+            out.writeVarLong(entry.getAmount().getAmountInCents());
+        }
+        for (HistoryEntry entry : entries) {
+            out.writeByte(typeCodes.get(entry.getType()));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a block and passes the entries accepted by {@code filter} to {@code consumer}, in append order.
+     */
+    static void decode(byte[] raw, int rowCount, EntryFilter filter, Consumer<HistoryEntry> consumer)
+            throws IOException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            AccountID[] accounts = new AccountID[(int) readVarLong(in)];
+            for (int i = 0; i < accounts.length; i++) {
+                accounts[i] = new AccountID(readString(in));
+            }
+            TransactionType[] types = new TransactionType[(int) readVarLong(in)];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = TransactionType.valueOf(readString(in));
+            }
+            long[] timestamps = new long[rowCount];
+            long previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                previous += unZigZag(readVarLong(in));
+                timestamps[i] = previous;
+            }
+            int[] accountCodes = new int[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                accountCodes[i] = (int) readVarLong(in);
+            }
+            int[] counterpartyCodes = new int[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                counterpartyCodes[i] = (int) readVarLong(in);
+            }
+            long[] amounts = new long[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                amounts[i] = readVarLong(in);
+            }
+            for (int i = 0; i < rowCount; i++) {
+                TransactionType type = types[in.get()];
+                AccountID account = accounts[accountCodes[i]];
+                AccountID counterparty = counterpartyCodes[i] == 0 ? null : accounts[counterpartyCodes[i] - 1];
+                if (filter.accepts(timestamps[i], account, counterparty, amounts[i])) {
+                    consumer.accept(new HistoryEntry(timestamps[i], type, account, counterparty,
+                            Money.ofCents(amounts[i])));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed history block.", e);
+        }
+    }
+
+    /**
+     * Decides which decoded entries a scan returns, before they are materialized.
+     */
+    @FunctionalInterface
+    interface EntryFilter {
+        boolean accepts(long timestampMillis, AccountID account, AccountID counterparty, long amountCents);
+    }
+
+    private static <T> void code(T value, Map<T, Integer> codes, List<T> dictionary) {
+        if (codes.putIfAbsent(value, dictionary.size()) == null) {
+            dictionary.add(value);
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long.");
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A growable byte array with varint writes.
+     */
+    static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void writeByte(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(encoded.length);
+            for (byte b : encoded) {
+                writeByte(b);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return The backing array, of which the first {@link #size()} bytes are written.
+         */
+        byte[] bytes() {
+            return bytes;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
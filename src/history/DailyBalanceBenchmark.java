@@ -0,0 +1,117 @@
+package history;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import utility.*;
+
+public class DailyBalanceBenchmark {
+
+    /**
+     * Closes a run of days on which a small share of the accounts change, then
+     * reads one account across every day and every account on one day, and
+     * checks both against balances kept in memory. Bytes per account-day are
+     * compared with storing every balance as 8 bytes each day.
+     *
+     * @param args Optional: number of accounts, then number of days, then the share of accounts changing each day.
+     */
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int dayCount = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+        double share = args.length > 2 ? Double.parseDouble(args[2]) : 0.02;
+
+        System.out.println("--- Daily Balance Series Benchmark ---");
+        System.out.printf("%,d accounts over %,d days, %.1f%% changing per day%n", accounts, dayCount, share * 100);
+        Path file = Files.createTempFile("balance-series-bench", ".dbs");
+        Files.delete(file);
+        try {
+            AccountID[] ids = new AccountID[accounts];
+            long[] truth = new long[accounts];
+            Random random = new Random(42);
+            Map<AccountID, Money> opening = new HashMap<>();
+            for (int i = 0; i < accounts; i++) {
+                ids[i] = new AccountID("ACC" + i);
+                truth[i] = random.nextInt(1_000_000);
+                opening.put(ids[i], Money.ofCents(truth[i]));
+            }
+            int sampled = 16;
+            long[][] expected = new long[sampled][dayCount];
+            LocalDate firstDay = LocalDate.of(2025, 1, 1);
+            int changes = (int) (accounts * share);
+            long closeNanos = 0;
+            long slowestNanos = 0;
+            try (DailyBalanceSeries series = DailyBalanceSeries.open(file)) {
+                for (int day = 0; day < dayCount; day++) {
+                    Map<AccountID, Money> changed = day == 0 ? opening : new HashMap<>();
+                    if (day > 0) {
+                        for (int c = 0; c < changes; c++) {
+                            int account = random.nextInt(accounts);
+                            truth[account] = Math.max(0, truth[account] + random.nextInt(20_000) - 10_000);
+                            changed.put(ids[account], Money.ofCents(truth[account]));
+                        }
+                    }
+                    long start = System.nanoTime();
+                    series.closeDay(firstDay.plusDays(day), changed);
+                    long elapsed = System.nanoTime() - start;
+                    if (day > 0) {
+                        closeNanos += elapsed;
+                        slowestNanos = Math.max(slowestNanos, elapsed);
+                    }
+                    for (int s = 0; s < sampled; s++) {
+                        expected[s][day] = truth[s * (accounts / sampled)];
+                    }
+                }
+                long fileBytes = series.getFileSize();
+                double accountDays = (double) accounts * dayCount;
+                System.out.printf("Closed a day in %,.1f ms on average, %,.1f ms at worst (keyframes)%n",
+                        closeNanos / 1e6 / Math.max(1, dayCount - 1), slowestNanos / 1e6);
+                System.out.printf("%,d bytes: %.3f bytes/account-day, %.1fx smaller than 8 bytes dense%n",
+                        fileBytes, fileBytes / accountDays, 8 * accountDays / fileBytes);
+            }
+
+            long start = System.nanoTime();
+            try (DailyBalanceSeries series = DailyBalanceSeries.open(file)) {
+                System.out.printf("Reopened %,d days in %,d ms%n", series.getDayCount(),
+                        (System.nanoTime() - start) / 1_000_000);
+                LocalDate lastDay = firstDay.plusDays(dayCount - 1);
+                int mismatches = 0;
+                start = System.nanoTime();
+                for (int s = 0; s < sampled; s++) {
+                    long[] values = series.getSeries(ids[s * (accounts / sampled)], firstDay, lastDay);
+                    for (int day = 0; day < dayCount; day++) {
+                        if (values[day] != expected[s][day]) {
+                            mismatches++;
+                        }
+                    }
+                }
+                System.out.printf("One account, all days: %,.0f us/query%n",
+                        (System.nanoTime() - start) / 1e3 / sampled);
+
+                List<AccountID> order = series.getAccounts();
+                int queries = 8;
+                start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    series.getDay(lastDay.minusDays(q));
+                }
+                System.out.printf("All accounts, one day: %,.1f ms/query%n",
+                        (System.nanoTime() - start) / 1e6 / queries);
+                long[] last = series.getDay(lastDay);
+                for (int ordinal = 0; ordinal < order.size(); ordinal++) {
+                    int account = Integer.parseInt(order.get(ordinal).getValue().substring(3));
+                    if (last[ordinal] != truth[account]) {
+                        mismatches++;
+                    }
+                }
+                System.out.printf("%,d mismatches against in-memory balances%n", mismatches);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+}
@@ -0,0 +1,583 @@
+package history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+import utility.*;
+
+/**
+ * The end-of-day balance of every account on every closed day, one column per
+ * day, in one append-only file.
+ *
+ * <p>Accounts get consecutive ordinals in the order they first appear, and a
+ * day's column is cut into blocks of {@value #BLOCK_ACCOUNTS} ordinals. Every
+ * {@value #KEYFRAME_INTERVAL}th column is a keyframe holding each account's
+ * balance as a zig-zag varint. The others hold only the accounts whose balance
+ * changed since the previous close, as varint pairs: the number of ordinals
+ * skipped since the previous change, then the zig-zag change in cents; a block
+ * with no change is empty. Closing a day therefore costs time and space in
+ * proportion to the accounts that changed, apart from the periodic keyframe.
+ *
+ * <p>Each day is a record: its header length and CRC32C, a header holding the
+ * day, the column kind, the account count, the IDs of the accounts new that day
+ * and each block's end offset and CRC32C, then the blocks. Headers are kept in
+ * memory, so one account's series reads one block per day and one day's
+ * balances read the day's column and the columns back to the last keyframe.
+ * Every block read is checked against its checksum. On open, a last record cut
+ * short by a crash is discarded.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class DailyBalanceSeries implements AutoCloseable {
+
+    static final int BLOCK_ACCOUNTS = 1024;
+    static final int KEYFRAME_INTERVAL = 32;
+    private static final int MAGIC = 0x44424C53;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<Day> days = new ArrayList<>();
+    private final List<AccountID> accounts = new ArrayList<>();
+    private final Map<AccountID, Integer> ordinals = new HashMap<>();
+    private long[] balances = new long[BLOCK_ACCOUNTS];
+    private long fileSize;
+    private boolean closed;
+
+    private DailyBalanceSeries(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a series file, creating it if it does not exist. A last day cut short by a crash is discarded.
+     *
+     * @param path The series file. Must not be null.
+     * @return The open series.
+     * @throws IOException if the file cannot be opened, is not a series file or has a corrupt day.
+     */
+    public static DailyBalanceSeries open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(Objects.requireNonNull(path, "Path must not be null."),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        DailyBalanceSeries series = new DailyBalanceSeries(path, channel);
+        try {
+            series.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return series;
+    }
+
+    private void load() throws IOException {
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            writeFully(header, 0);
+            fileSize = FILE_HEADER_SIZE;
+            return;
+        }
+        ByteBuffer header = readFully(0, FILE_HEADER_SIZE);
+        if (header == null || header.getInt() != MAGIC) {
+            throw new IOException("Not a balance series file: " + path);
+        }
+        if (header.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported balance series format in " + path);
+        }
+        long position = FILE_HEADER_SIZE;
+        long size = channel.size();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            ByteBuffer lengths = readFully(position, RECORD_HEADER_SIZE);
+            int headerLength = lengths.getInt();
+            int headerCrc = lengths.getInt();
+            if (headerLength <= 0 || position + RECORD_HEADER_SIZE + headerLength > size) {
+                break;
+            }
+            byte[] dayHeader = readFully(position + RECORD_HEADER_SIZE, headerLength).array();
+            if (crc(dayHeader, 0, dayHeader.length) != headerCrc) {
+                break;
+            }
+            List<AccountID> added = new ArrayList<>();
+            Day day = Day.parse(dayHeader, position + RECORD_HEADER_SIZE + headerLength, added, path);
+            if (day.end() > size || (day.end() == size && !intact(day))) {
+                break;
+            }
+            if (day.accountCount != accounts.size() + added.size()
+                    || (!days.isEmpty() && day.epochDay <= days.get(days.size() - 1).epochDay)
+                    || (days.isEmpty() && !day.keyframe)) {
+                throw new IOException("Corrupt balance series day at " + position + " in " + path);
+            }
+            days.add(day);
+            for (AccountID id : added) {
+                ordinals.put(id, accounts.size());
+                accounts.add(id);
+            }
+            position = day.end();
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+        fileSize = position;
+        if (!days.isEmpty()) {
+            balances = Arrays.copyOf(read(days, days.size() - 1), Math.max(BLOCK_ACCOUNTS, accounts.size()));
+        }
+    }
+
+    /**
+     * Records the close of a day from the accounts whose balance changed since
+     * the previous close; every other account keeps its balance. Accounts seen for
+     * the first time are added, starting from a balance of zero.
+     *
+     * @param day      The day. Must not be null, and must be later than every day closed before.
+     * @param balances The end-of-day balance of each changed account. Must not be null or hold nulls.
+     * @throws IOException if the day cannot be written; the series is then unchanged.
+     * @throws IllegalArgumentException if the day is not later than the last closed day.
+     */
+    public synchronized void closeDay(LocalDate day, Map<AccountID, Money> balances) throws IOException {
+        Objects.requireNonNull(day, "Day must not be null.");
+        Objects.requireNonNull(balances, "Balances must not be null.");
+        ensureOpen();
+        long epochDay = day.toEpochDay();
+        if (!days.isEmpty() && epochDay <= days.get(days.size() - 1).epochDay) {
+            throw new IllegalArgumentException("Days must be closed in increasing order.");
+        }
+
+        // Sort the changes by ordinal, packed with their position in the arrays below.
+        List<AccountID> added = new ArrayList<>();
+        Map<AccountID, Integer> addedOrdinals = new HashMap<>();
+        long[] cents = new long[balances.size()];
+        long[] sorted = new long[balances.size()];
+        int count = 0;
+        for (Map.Entry<AccountID, Money> change : balances.entrySet()) {
+            AccountID id = Objects.requireNonNull(change.getKey(), "Account ID must not be null.");
+            Money balance = Objects.requireNonNull(change.getValue(), "Balance must not be null.");
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null) {
+                ordinal = accounts.size() + added.size();
+                addedOrdinals.put(id, ordinal);
+                added.add(id);
+            }
+            cents[count] = balance.getAmountInCents();
+            sorted[count] = (long) ordinal << 32 | count;
+            count++;
+        }
+        Arrays.sort(sorted);
+        int accountCount = accounts.size() + added.size();
+        boolean keyframe = days.size() % KEYFRAME_INTERVAL == 0;
+        long[] next = null;
+        if (keyframe) {
+            next = Arrays.copyOf(this.balances, accountCount);
+            for (long packed : sorted) {
+                next[(int) (packed >>> 32)] = cents[(int) packed];
+            }
+        }
+
+        int blockCount = (accountCount + BLOCK_ACCOUNTS - 1) / BLOCK_ACCOUNTS;
+        int[] blockEnds = new int[blockCount];
+        int[] blockCrcs = new int[blockCount];
+        ColumnBlock.Output data = new ColumnBlock.Output(keyframe ? accountCount * 3 : count * 4 + 16);
+        int change = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int start = data.size();
+            int first = block * BLOCK_ACCOUNTS;
+            int last = Math.min(accountCount, first + BLOCK_ACCOUNTS);
+            if (keyframe) {
+                for (int ordinal = first; ordinal < last; ordinal++) {
+                    data.writeVarLong(ColumnBlock.zigZag(next[ordinal]));
+                }
+            } else {
+                int position = first;
+                for (; change < count && (int) (sorted[change] >>> 32) < last; change++) {
+                    int ordinal = (int) (sorted[change] >>> 32);
+                    long previous = ordinal < accounts.size() ? this.balances[ordinal] : 0;
+                    long delta = cents[(int) sorted[change]] - previous;
+                    if (delta != 0) {
+                        data.writeVarLong(ordinal - position);
+                        data.writeVarLong(ColumnBlock.zigZag(delta));
+                        position = ordinal + 1;
+                    }
+                }
+            }
+            blockEnds[block] = data.size();
+            blockCrcs[block] = crc(data.bytes(), start, data.size() - start);
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(64 + blockCount * 8);
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeLong(epochDay);
+        header.writeBoolean(keyframe);
+        header.writeInt(accountCount);
+        header.writeInt(added.size());
+        for (AccountID id : added) {
+            header.writeUTF(id.getValue());
+        }
+        header.writeInt(blockCount);
+        for (int block = 0; block < blockCount; block++) {
+            header.writeInt(blockEnds[block]);
+            header.writeInt(blockCrcs[block]);
+        }
+        byte[] headerArray = headerBytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + headerArray.length + data.size());
+        record.putInt(headerArray.length).putInt(crc(headerArray, 0, headerArray.length)).put(headerArray)
+                .put(data.bytes(), 0, data.size()).flip();
+        writeFully(record, fileSize);
+        channel.force(false);
+
+        long dataPosition = fileSize + RECORD_HEADER_SIZE + headerArray.length;
+        days.add(new Day(epochDay, keyframe, accountCount, dataPosition, blockEnds, blockCrcs));
+        fileSize = dataPosition + data.size();
+        for (AccountID id : added) {
+            ordinals.put(id, addedOrdinals.get(id));
+            accounts.add(id);
+        }
+        if (accountCount > this.balances.length) {
+            this.balances = Arrays.copyOf(this.balances, Math.max(accountCount, this.balances.length * 2));
+        }
+        for (long packed : sorted) {
+            this.balances[(int) (packed >>> 32)] = cents[(int) packed];
+        }
+    }
+
+    /**
+     * Gets the end-of-day balances of every account on a day: the day's close, or
+     * the latest close before it if the day was not closed.
+     *
+     * @param day The day. Must not be null.
+     * @return The balances in cents, indexed by account ordinal (see {@link #getAccounts()}); empty before the
+     *         first close.
+     * @throws IOException if a column cannot be read.
+     */
+    public long[] getDay(LocalDate day) throws IOException {
+        Objects.requireNonNull(day, "Day must not be null.");
+        List<Day> closes = closes();
+        int index = floor(closes, day.toEpochDay());
+        return index < 0 ? new long[0] : read(closes, index);
+    }
+
+    /**
+     * Gets one account's end-of-day balance on every calendar day from
+     * {@code from} to {@code to}. A day that was not closed carries the balance
+     * of the latest close before it; before the account's first close it is zero.
+     *
+     * @param account The account. Must not be null.
+     * @param from    The first day. Must not be null.
+     * @param to      The last day. Must not be null or before {@code from}.
+     * @return The balances in cents, one per day.
+     * @throws IOException if a column cannot be read.
+     */
+    public long[] getSeries(AccountID account, LocalDate from, LocalDate to) throws IOException {
+        Objects.requireNonNull(account, "Account ID must not be null.");
+        Objects.requireNonNull(from, "First day must not be null.");
+        Objects.requireNonNull(to, "Last day must not be null.");
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        if (last < first || last - first >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The last day must not be before the first.");
+        }
+        List<Day> closes;
+        Integer ordinal;
+        synchronized (this) {
+            ensureOpen();
+            closes = List.copyOf(days);
+            ordinal = ordinals.get(account);
+        }
+        long[] series = new long[(int) (last - first + 1)];
+        if (ordinal == null) {
+            return series;
+        }
+        int start = floor(closes, first);
+        long balance = 0;
+        if (start >= 0) {
+            int keyframe = start;
+            while (!closes.get(keyframe).keyframe) {
+                keyframe--;
+            }
+            for (int i = keyframe; i <= start; i++) {
+                balance = step(closes.get(i), ordinal, balance);
+            }
+        }
+        int next = start + 1;
+        for (long epochDay = first; epochDay <= last; epochDay++) {
+            while (next < closes.size() && closes.get(next).epochDay <= epochDay) {
+                balance = step(closes.get(next++), ordinal, balance);
+            }
+            series[(int) (epochDay - first)] = balance;
+        }
+        return series;
+    }
+
+    /**
+     * Gets the accounts in ordinal order, the order of the balances returned by {@link #getDay}.
+     *
+     * @return The account IDs.
+     */
+    public synchronized List<AccountID> getAccounts() {
+        return List.copyOf(accounts);
+    }
+
+    /**
+     * Gets the latest closed day.
+     *
+     * @return The day, or null if no day was closed.
+     */
+    public synchronized LocalDate getLastDay() {
+        return days.isEmpty() ? null : LocalDate.ofEpochDay(days.get(days.size() - 1).epochDay);
+    }
+
+    public synchronized int getDayCount() {
+        return days.size();
+    }
+
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private synchronized List<Day> closes() {
+        ensureOpen();
+        return List.copyOf(days);
+    }
+
+    /**
+     * Rebuilds a day's balances from the latest keyframe at or before it and the columns since.
+     */
+    private long[] read(List<Day> closes, int index) throws IOException {
+        int keyframe = index;
+        while (!closes.get(keyframe).keyframe) {
+            keyframe--;
+        }
+        long[] result = new long[closes.get(index).accountCount];
+        for (int i = keyframe; i <= index; i++) {
+            Day day = closes.get(i);
+            ByteBuffer column = readFully(day.dataPosition, day.dataLength());
+            if (column == null) {
+                throw new IOException("Balance series day at " + day.dataPosition + " is truncated.");
+            }
+            for (int block = 0; block < day.blockEnds.length; block++) {
+                ByteBuffer bytes = day.block(column, block, path);
+                int ordinal = block * BLOCK_ACCOUNTS;
+                try {
+                    while (bytes.hasRemaining()) {
+                        if (day.keyframe) {
+                            result[ordinal++] = ColumnBlock.unZigZag(ColumnBlock.readVarLong(bytes));
+                        } else {
+                            ordinal += (int) ColumnBlock.readVarLong(bytes);
+                            result[ordinal++] += ColumnBlock.unZigZag(ColumnBlock.readVarLong(bytes));
+                        }
+                    }
+                } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Balance series block " + block + " at " + day.dataPosition
+                            + " is corrupt.", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves one account's balance on to a day.
+     */
+    private long step(Day day, int ordinal, long balance) throws IOException {
+        if (ordinal >= day.accountCount) {
+            return 0;
+        }
+        int block = ordinal / BLOCK_ACCOUNTS;
+        int start = block == 0 ? 0 : day.blockEnds[block - 1];
+        int length = day.blockEnds[block] - start;
+        if (length == 0) {
+            return balance;
+        }
+        ByteBuffer column = readFully(day.dataPosition + start, length);
+        if (column == null) {
+            throw new IOException("Balance series day at " + day.dataPosition + " is truncated.");
+        }
+        if (crc(column.array(), 0, length) != day.blockCrcs[block]) {
+            throw new IOException("Balance series block " + block + " at " + day.dataPosition + " is corrupt.");
+        }
+        int target = ordinal - block * BLOCK_ACCOUNTS;
+        try {
+            int position = 0;
+            while (column.hasRemaining()) {
+                if (day.keyframe) {
+                    long value = ColumnBlock.unZigZag(ColumnBlock.readVarLong(column));
+                    if (position++ == target) {
+                        return value;
+                    }
+                } else {
+                    position += (int) ColumnBlock.readVarLong(column);
+                    long delta = ColumnBlock.unZigZag(ColumnBlock.readVarLong(column));
+                    if (position == target) {
+                        return balance + delta;
+                    }
+                    if (position++ > target) {
+                        return balance;
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Balance series block " + block + " at " + day.dataPosition + " is corrupt.", e);
+        }
+        if (day.keyframe) {
+            throw new IOException("Balance series block " + block + " at " + day.dataPosition + " is corrupt.");
+        }
+        return balance;
+    }
+
+    private boolean intact(Day day) throws IOException {
+        ByteBuffer column = readFully(day.dataPosition, day.dataLength());
+        if (column == null) {
+            return false;
+        }
+        for (int block = 0; block < day.blockEnds.length; block++) {
+            int start = block == 0 ? 0 : day.blockEnds[block - 1];
+            if (crc(column.array(), start, day.blockEnds[block] - start) != day.blockCrcs[block]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the latest close at or before a day.
+     *
+     * @return The close's index, or -1 if every close is later.
+     */
+    private static int floor(List<Day> closes, long epochDay) {
+        int low = 0;
+        int high = closes.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (closes.get(middle).epochDay <= epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Balance series is closed.");
+        }
+    }
+
+    /**
+     * The header of one closed day and where its column is.
+     */
+    private static final class Day {
+        private final long epochDay;
+        private final boolean keyframe;
+        private final int accountCount;
+        private final long dataPosition;
+        private final int[] blockEnds;
+        private final int[] blockCrcs;
+
+        private Day(long epochDay, boolean keyframe, int accountCount, long dataPosition, int[] blockEnds,
+                    int[] blockCrcs) {
+            this.epochDay = epochDay;
+            this.keyframe = keyframe;
+            this.accountCount = accountCount;
+            this.dataPosition = dataPosition;
+            this.blockEnds = blockEnds;
+            this.blockCrcs = blockCrcs;
+        }
+
+        private static Day parse(byte[] header, long dataPosition, List<AccountID> added, Path path)
+                throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(header))) {
+                long epochDay = in.readLong();
+                boolean keyframe = in.readBoolean();
+                int accountCount = in.readInt();
+                int addedCount = in.readInt();
+                for (int i = 0; i < addedCount; i++) {
+                    added.add(new AccountID(in.readUTF()));
+                }
+                int blockCount = in.readInt();
+                if (blockCount != (accountCount + BLOCK_ACCOUNTS - 1) / BLOCK_ACCOUNTS) {
+                    throw new IOException("Corrupt balance series day at " + dataPosition + " in " + path);
+                }
+                int[] blockEnds = new int[blockCount];
+                int[] blockCrcs = new int[blockCount];
+                for (int block = 0; block < blockCount; block++) {
+                    blockEnds[block] = in.readInt();
+                    blockCrcs[block] = in.readInt();
+                }
+                return new Day(epochDay, keyframe, accountCount, dataPosition, blockEnds, blockCrcs);
+            } catch (EOFException | IllegalArgumentException e) {
+                throw new IOException("Corrupt balance series day at " + dataPosition + " in " + path, e);
+            }
+        }
+
+        private int dataLength() {
+            return blockEnds.length == 0 ? 0 : blockEnds[blockEnds.length - 1];
+        }
+
+        private long end() {
+            return dataPosition + dataLength();
+        }
+
+        /**
+         * Slices one block out of the day's column and checks its checksum.
+         */
+        private ByteBuffer block(ByteBuffer column, int block, Path path) throws IOException {
+            int start = block == 0 ? 0 : blockEnds[block - 1];
+            if (crc(column.array(), start, blockEnds[block] - start) != blockCrcs[block]) {
+                throw new IOException("Balance series block " + block + " at " + dataPosition + " in " + path
+                        + " is corrupt.");
+            }
+            return ByteBuffer.wrap(column.array(), start, blockEnds[block] - start);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package history;
+
+import ingest.TransactionType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import utility.*;
+
+public class HistoryBenchmark {
+
+    /**
+     * Appends a synthetic history, then compares a full scan with a scan of a
+     * narrow time range and scans of one account, which use the account index.
+     * Timestamps grow steadily, as they do in production, so block statistics let
+     * range scans skip most blocks. Finally it times point-in-time balance
+     * queries, which start from the nearest checkpoint, against replaying each
+     * account's history from the beginning, and checks that they agree.
+     *
+     * @param args Optional: number of entries, then number of accounts.
+     */
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        System.out.println("--- History Store Benchmark ---");
+        System.out.printf("%,d entries over %,d accounts%n", entries, accounts);
+        Path file = Files.createTempFile("history-bench", ".hist");
+        try {
+            AccountID[] ids = new AccountID[accounts];
+            for (int i = 0; i < accounts; i++) {
+                ids[i] = new AccountID("ACC" + i);
+            }
+            Random random = new Random(42);
+            long timestamp = 1_700_000_000_000L;
+            long rawBytes = 0;
+            long start = System.nanoTime();
+            try (HistoryStore store = HistoryStore.open(file)) {
+                for (int i = 0; i < entries; i++) {
+                    timestamp += random.nextInt(20);
+                    AccountID account = ids[random.nextInt(accounts)];
+                    long cents = 1 + random.nextInt(100_000);
+                    TransactionType type = TransactionType.values()[random.nextInt(3)];
+                    AccountID counterparty = type == TransactionType.TRANSFER ? ids[random.nextInt(accounts)] : null;
+                    store.append(new HistoryEntry(timestamp, type, account, counterparty, Money.ofCents(cents)));
+                    rawBytes += 8 + 1 + 8 + 2 + account.getValue().length()
+                            + (counterparty == null ? 0 : 2 + counterparty.getValue().length());
+                }
+            }
+            double appendSeconds = (System.nanoTime() - start) / 1e9;
+            long fileBytes = Files.size(file);
+            System.out.printf("Appended at %,.0f entries/s; %.2f bytes/entry on disk, %.2f row-oriented (%.1fx)%n",
+                    entries / appendSeconds, (double) fileBytes / entries, (double) rawBytes / entries,
+                    (double) rawBytes / fileBytes);
+
+            start = System.nanoTime();
+            try (HistoryStore store = HistoryStore.open(file)) {
+                System.out.printf("Reopened and indexed %,d keys in %,d ms%n", store.getIndexSize(),
+                        (System.nanoTime() - start) / 1_000_000);
+                long first = 1_700_000_000_000L;
+                long span = timestamp - first;
+                time("full scan", () -> store.scan(Long.MIN_VALUE, Long.MAX_VALUE, entry -> { }));
+                long from = first + span / 2;
+                time("1% time range", () -> store.scan(from, from + span / 100, entry -> { }));
+                time("one account", () -> store.scanAccount(ids[7], Long.MIN_VALUE, Long.MAX_VALUE,
+                        entry -> { }));
+                time("account, 1%", () -> store.scanAccount(ids[7], from, from + span / 100, entry -> { }));
+
+                System.out.printf("%,d balance checkpoints%n", store.getCheckpointCount());
+                int queries = 200;
+                AccountID[] queried = new AccountID[queries];
+                long[] instants = new long[queries];
+                for (int q = 0; q < queries; q++) {
+                    queried[q] = ids[random.nextInt(accounts)];
+                    instants[q] = first + (long) (random.nextDouble() * span);
+                }
+                long[] asOf = new long[queries];
+                start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    asOf[q] = store.balanceAsOf(queried[q], instants[q]);
+                }
+                long checkpointNanos = System.nanoTime() - start;
+                int mismatches = 0;
+                start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    AccountID account = queried[q];
+                    long[] replayed = new long[1];
+                    store.scanAccount(account, Long.MIN_VALUE, instants[q] + 1,
+                            entry -> replayed[0] += BalanceCheckpoints.delta(entry, account));
+                    if (replayed[0] != asOf[q]) {
+                        mismatches++;
+                    }
+                }
+                long replayNanos = System.nanoTime() - start;
+                System.out.printf("Balance as of: %,.0f us/query from checkpoints, %,.0f us/query replaying from "
+                                + "the start, %d mismatches%n", checkpointNanos / 1e3 / queries,
+                        replayNanos / 1e3 / queries, mismatches);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private interface Scan {
+        ScanStats run() throws IOException;
+    }
+
+    private static void time(String label, Scan scan) throws IOException {
+        long start = System.nanoTime();
+        ScanStats stats = scan.run();
+        System.out.printf("%-16s%,10d ms  %s%n", label, (System.nanoTime() - start) / 1_000_000, stats);
+    }
+}
@@ -0,0 +1,58 @@
+package history;
+
+import ingest.TransactionType;
+import java.util.Objects;
+import utility.*;
+
+/**
+ * One transaction in an account's history. This class is immutable.
+ * The counterparty is only present for transfers.
+ */
+public final class HistoryEntry {
+
+    private final long timestampMillis;
+    private final TransactionType type;
+    private final AccountID account;
+    private final AccountID counterparty;
+    private final Money amount;
+
+    public HistoryEntry(long timestampMillis, TransactionType type, AccountID account, AccountID counterparty,
+                        Money amount) {
+        this.timestampMillis = timestampMillis;
+        this.type = Objects.requireNonNull(type, "Transaction type must not be null.");
+        this.account = Objects.requireNonNull(account, "Account ID must not be null.");
+        this.amount = Objects.requireNonNull(amount, "Amount must not be null.");
+        if (type == TransactionType.TRANSFER) {
+            Objects.requireNonNull(counterparty, "Destination account must not be null.");
+        }
+        this.counterparty = counterparty;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public TransactionType getType() {
+        return type;
+    }
+
+    public AccountID getAccount() {
+        return account;
+    }
+
+    public AccountID getCounterparty() {
+        return counterparty;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[timestamp=" + timestampMillis +
+               ", account=" + account +
+               (counterparty == null ? "" : ", counterparty=" + counterparty) +
+               ", amount=" + amount + " cents]";
+    }
+}
@@ -0,0 +1,551 @@
+package history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import utility.*;
+
+/**
+ * An append-only, column-oriented store of transaction history in one file.
+ *
+ * <p>Entries are buffered until a block of {@value #BLOCK_ROWS} is full; the
+ * block is then encoded column by column (see {@link ColumnBlock}), compressed
+ * with {@link Deflater} and appended to the file behind a header holding its
+ * row count, sizes, the minimum and maximum timestamp and amount of its
+ * entries, and the CRC32C of those fields and the compressed bytes. A scan
+ * reads only the headers of blocks that cannot contain a match and skips them
+ * without decompressing anything; every block that is read is checked against
+ * its checksum. On open, a last block that is incomplete or fails its checksum
+ * was cut short by a crash and is discarded; a corrupt block before it is an error.
+ *
+ * <p>An {@link AccountTimeIndex} of every entry, by account and timestamp, is
+ * kept in memory and rebuilt from the blocks on open, so that
+ * {@link #scanAccount} only decompresses the blocks holding the account's
+ * entries for the period.
+ *
+ * <p>Buffered entries are visible to scans but only reach the file when their
+ * block is written by {@link #flush()}, a full block or {@link #close()}.
+ * This class is thread-safe.
+ */
+public final class HistoryStore implements AutoCloseable {
+
+    static final int BLOCK_ROWS = 4096;
+    private static final int MAGIC = 0x48495354;
+    private static final int FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 4 + 4 + 4 + 8 * 4 + 4;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<BlockInfo> blocks = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final AccountTimeIndex index = new AccountTimeIndex();
+    private final BalanceCheckpoints checkpoints = new BalanceCheckpoints();
+    private List<HistoryEntry> pending = new ArrayList<>();
+    private long fileSize;
+    private long entryCount;
+    private boolean closed;
+
+    private HistoryStore(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a history file, creating it if it does not exist, and rebuilds the
+     * account index from its blocks. A last block cut short by a crash is discarded.
+     *
+     * @param path The history file. Must not be null.
+     * @return The open store.
+     * @throws IOException if the file cannot be opened, is not a history file or has a corrupt block.
+     */
+    public static HistoryStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(Objects.requireNonNull(path, "Path must not be null."),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HistoryStore store = new HistoryStore(path, channel);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            writeFully(header, 0);
+            fileSize = FILE_HEADER_SIZE;
+            return;
+        }
+        ByteBuffer header = readFully(0, FILE_HEADER_SIZE);
+        if (header == null || header.getInt() != MAGIC) {
+            throw new IOException("Not a history file: " + path);
+        }
+        if (header.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported history format in " + path);
+        }
+        long position = FILE_HEADER_SIZE;
+        long size = channel.size();
+        while (position + BLOCK_HEADER_SIZE <= size) {
+            ByteBuffer blockHeader = readFully(position, BLOCK_HEADER_SIZE);
+            BlockInfo block = new BlockInfo(position, blockHeader);
+            if (block.rowCount <= 0 || block.compressedLength < 0 || block.end() > size
+                    || (block.end() == size && firstCorruptOffset(block) >= 0)) {
+                break;
+            }
+            blocks.add(block);
+            entryCount += block.rowCount;
+            position = block.end();
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+        fileSize = position;
+        buildIndex();
+    }
+
+    private void buildIndex() throws IOException {
+        long[] ordinal = new long[1];
+        AccountTimeIndex.Loader loader = index.loader();
+        Inflater inflater = new Inflater();
+        try {
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockInfo block = blocks.get(i);
+                int number = i;
+                ColumnBlock.decode(inflate(block, inflater), block.rowCount,
+                        (timestamp, account, counterparty, cents) -> true,
+                        entry -> {
+                            loader.add(entry, ordinal[0]++, number);
+                            checkpoints.add(entry);
+                        });
+            }
+        } finally {
+            inflater.end();
+        }
+        loader.finish();
+    }
+
+    /**
+     * Appends an entry. Entries should be appended in roughly increasing timestamp
+     * order for timestamp ranges to skip blocks effectively.
+     *
+     * @param entry The entry. Must not be null.
+     * @throws IOException if a full block cannot be written.
+     */
+    public synchronized void append(HistoryEntry entry) throws IOException {
+        Objects.requireNonNull(entry, "Entry must not be null.");
+        ensureOpen();
+        pending.add(entry);
+        index.add(entry, entryCount, blocks.size());
+        checkpoints.add(entry);
+        entryCount++;
+        if (pending.size() == BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Appends entries in order, as {@link #append(HistoryEntry)} does, taking the lock once.
+     *
+     * @param entries The entries. Must not be null or contain null.
+     * @throws IOException if a full block cannot be written.
+     */
+    public synchronized void appendAll(List<HistoryEntry> entries) throws IOException {
+        for (HistoryEntry entry : Objects.requireNonNull(entries, "Entries must not be null.")) {
+            append(entry);
+        }
+    }
+
+    /**
+     * Writes the buffered entries as a block, even if it is not full.
+     *
+     * @throws IOException if the block cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        if (!pending.isEmpty()) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Visits every entry with a timestamp in {@code [fromMillis, toMillis)}, in append order.
+     *
+     * @param fromMillis The first timestamp included.
+     * @param toMillis   The first timestamp excluded.
+     * @param consumer   Receives each match. Must not be null.
+     * @return How much of the store was read.
+     * @throws IOException if a block cannot be read.
+     */
+    public ScanStats scan(long fromMillis, long toMillis, Consumer<HistoryEntry> consumer) throws IOException {
+        return scan(fromMillis, toMillis, 0, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Visits every entry with a timestamp in {@code [fromMillis, toMillis)} and an
+     * amount in {@code [minCents, maxCents]}, in append order.
+     *
+     * @param fromMillis The first timestamp included.
+     * @param toMillis   The first timestamp excluded.
+     * @param minCents   The smallest amount included.
+     * @param maxCents   The largest amount included.
+     * @param consumer   Receives each match. Must not be null.
+     * @return How much of the store was read.
+     * @throws IOException if a block cannot be read.
+     */
+    public ScanStats scan(long fromMillis, long toMillis, long minCents, long maxCents,
+                          Consumer<HistoryEntry> consumer) throws IOException {
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        return scan(fromMillis, toMillis, minCents, maxCents,
+                (timestamp, account, counterparty, cents) -> timestamp >= fromMillis && timestamp < toMillis
+                        && cents >= minCents && cents <= maxCents, consumer);
+    }
+
+    /**
+     * Visits the entries of one account, as source or counterparty, with a
+     * timestamp in {@code [fromMillis, toMillis)}, in append order. Only the
+     * blocks the account index points to are read.
+     *
+     * @param account    The account. Must not be null.
+     * @param fromMillis The first timestamp included.
+     * @param toMillis   The first timestamp excluded.
+     * @param consumer   Receives each match. Must not be null.
+     * @return How much of the store was read.
+     * @throws IOException if a block cannot be read.
+     */
+    public ScanStats scanAccount(AccountID account, long fromMillis, long toMillis, Consumer<HistoryEntry> consumer)
+            throws IOException {
+        Objects.requireNonNull(account, "Account ID must not be null.");
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        ColumnBlock.EntryFilter filter = (timestamp, source, counterparty, cents) ->
+                timestamp >= fromMillis && timestamp < toMillis
+                        && (account.equals(source) || account.equals(counterparty));
+        List<BlockInfo> written;
+        List<HistoryEntry> buffered;
+        synchronized (this) {
+            ensureOpen();
+            written = new ArrayList<>(blocks);
+            buffered = new ArrayList<>(pending);
+        }
+        // Entries appended after the snapshot point to the pending block or a later one. The pending block
+        // is served from the copy taken with the snapshot, so they are not visited.
+        long[] matched = new long[1];
+        Consumer<HistoryEntry> counting = entry -> {
+            matched[0]++;
+            consumer.accept(entry);
+        };
+        int read = 0;
+        boolean pendingHit = false;
+        Inflater inflater = new Inflater();
+        try {
+            for (int number : index.blocks(account, fromMillis, toMillis)) {
+                if (number < written.size()) {
+                    BlockInfo block = written.get(number);
+                    ColumnBlock.decode(inflate(block, inflater), block.rowCount, filter, counting);
+                    read++;
+                } else if (number == written.size()) {
+                    pendingHit = true;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        if (pendingHit) {
+            filterBuffered(buffered, filter, counting);
+        }
+        return new ScanStats(written.size(), read, matched[0]);
+    }
+
+    /**
+     * Gets an account's balance as of a past instant, as implied by its history:
+     * deposits and incoming transfers less withdrawals and outgoing transfers,
+     * counting every entry with a timestamp up to and including the instant. The
+     * nearest checkpoint is found by binary search and only the entries after it
+     * are replayed, through the account index. Entries appended during the call
+     * may or may not be counted.
+     *
+     * @param account         The account. Must not be null.
+     * @param timestampMillis The instant.
+     * @return The balance in cents; negative if the history does not reach back to the account's opening.
+     * @throws IOException if a block cannot be read.
+     */
+    public long balanceAsOf(AccountID account, long timestampMillis) throws IOException {
+        Objects.requireNonNull(account, "Account ID must not be null.");
+        long[] checkpoint = checkpoints.floor(account, timestampMillis);
+        long[] balance = {checkpoint[1]};
+        long toMillis = timestampMillis == Long.MAX_VALUE ? Long.MAX_VALUE : timestampMillis + 1;
+        scanAccount(account, checkpoint[0], toMillis,
+                entry -> balance[0] += BalanceCheckpoints.delta(entry, account));
+        return balance[0];
+    }
+
+    private ScanStats scan(long fromMillis, long toMillis, long minCents, long maxCents,
+                           ColumnBlock.EntryFilter filter, Consumer<HistoryEntry> consumer) throws IOException {
+        List<BlockInfo> written;
+        List<HistoryEntry> buffered;
+        synchronized (this) {
+            ensureOpen();
+            written = new ArrayList<>(blocks);
+            buffered = new ArrayList<>(pending);
+        }
+        long[] matched = new long[1];
+        Consumer<HistoryEntry> counting = entry -> {
+            matched[0]++;
+            consumer.accept(entry);
+        };
+        int read = 0;
+        Inflater inflater = new Inflater();
+        try {
+            for (BlockInfo block : written) {
+                if (block.maxTimestamp < fromMillis || block.minTimestamp >= toMillis
+                        || block.maxAmount < minCents || block.minAmount > maxCents) {
+                    continue;
+                }
+                ColumnBlock.decode(inflate(block, inflater), block.rowCount, filter, counting);
+                read++;
+            }
+        } finally {
+            inflater.end();
+        }
+        filterBuffered(buffered, filter, counting);
+        return new ScanStats(written.size(), read, matched[0]);
+    }
+
+    private static void filterBuffered(List<HistoryEntry> buffered, ColumnBlock.EntryFilter filter,
+                                       Consumer<HistoryEntry> consumer) {
+        for (HistoryEntry entry : buffered) {
+            if (filter.accepts(entry.getTimestampMillis(), entry.getAccount(), entry.getCounterparty(),
+                    entry.getAmount().getAmountInCents())) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    public synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Gets the number of keys in the account index: one per entry, plus one per
+     * transfer between two different accounts.
+     *
+     * @return The number of index keys.
+     */
+    public long getIndexSize() {
+        return index.size();
+    }
+
+    /**
+     * Gets the number of balance checkpoints held in memory for {@link #balanceAsOf}.
+     *
+     * @return The checkpoint count.
+     */
+    public long getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Gets the size of the written blocks; buffered entries are not included.
+     *
+     * @return The file size in bytes.
+     */
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Writes the buffered entries and closes the file.
+     *
+     * @throws IOException if the last block cannot be written or the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!pending.isEmpty()) {
+                writeBlock();
+            }
+            channel.force(false);
+        } finally {
+            closed = true;
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        byte[] raw = ColumnBlock.encode(pending);
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[raw.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        long minAmount = Long.MAX_VALUE;
+        long maxAmount = Long.MIN_VALUE;
+        for (HistoryEntry entry : pending) {
+            minTimestamp = Math.min(minTimestamp, entry.getTimestampMillis());
+            maxTimestamp = Math.max(maxTimestamp, entry.getTimestampMillis());
+            minAmount = Math.min(minAmount, entry.getAmount().getAmountInCents());
+            maxAmount = Math.max(maxAmount, entry.getAmount().getAmountInCents());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + length);
+        buffer.putInt(pending.size()).putInt(raw.length).putInt(length)
+                .putLong(minTimestamp).putLong(maxTimestamp).putLong(minAmount).putLong(maxAmount);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        crc.update(compressed, 0, length);
+        buffer.putInt((int) crc.getValue()).put(compressed, 0, length).flip();
+        writeFully(buffer, fileSize);
+        blocks.add(new BlockInfo(fileSize, buffer.rewind()));
+        fileSize += buffer.capacity();
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * Checks every written block against its checksum, for integrity scans.
+     *
+     * @return The file offset of the first corrupt block, or -1 if every block is intact.
+     * @throws IOException if the file cannot be read.
+     */
+    public synchronized long firstCorruptOffset() throws IOException {
+        ensureOpen();
+        for (BlockInfo block : blocks) {
+            if (firstCorruptOffset(block) >= 0) {
+                return block.offset;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks one block against its checksum.
+     *
+     * @return The block's offset if it is truncated or corrupt, otherwise -1.
+     */
+    private long firstCorruptOffset(BlockInfo block) throws IOException {
+        ByteBuffer compressed = readFully(block.offset + BLOCK_HEADER_SIZE, block.compressedLength);
+        return compressed == null || !block.matches(compressed) ? block.offset : -1;
+    }
+
+    private byte[] inflate(BlockInfo block, Inflater inflater) throws IOException {
+        ByteBuffer compressed = readFully(block.offset + BLOCK_HEADER_SIZE, block.compressedLength);
+        if (compressed == null) {
+            throw new IOException("History block at " + block.offset + " is truncated.");
+        }
+        if (!block.matches(compressed)) {
+            throw new IOException("History block at " + block.offset + " is corrupt.");
+        }
+        byte[] raw = new byte[block.rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length) {
+                throw new IOException("History block at " + block.offset + " is corrupt.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("History block at " + block.offset + " is corrupt.", e);
+        }
+        return raw;
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("History store is closed.");
+        }
+    }
+
+    /**
+     * The location and statistics of one written block.
+     */
+    private static final class BlockInfo {
+        private final long offset;
+        private final int rowCount;
+        private final int rawLength;
+        private final int compressedLength;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+        private final long minAmount;
+        private final long maxAmount;
+        private final int crc;
+
+        private BlockInfo(long offset, ByteBuffer header) {
+            this.offset = offset;
+            this.rowCount = header.getInt();
+            this.rawLength = header.getInt();
+            this.compressedLength = header.getInt();
+            this.minTimestamp = header.getLong();
+            this.maxTimestamp = header.getLong();
+            this.minAmount = header.getLong();
+            this.maxAmount = header.getLong();
+            this.crc = header.getInt();
+        }
+
+        private long end() {
+            return offset + BLOCK_HEADER_SIZE + compressedLength;
+        }
+
+        /**
+         * Checks the block's header fields and compressed bytes against its checksum.
+         */
+        private boolean matches(ByteBuffer compressed) {
+            CRC32C checksum = new CRC32C();
+            ByteBuffer fields = ByteBuffer.allocate(BLOCK_HEADER_SIZE - 4);
+            fields.putInt(rowCount).putInt(rawLength).putInt(compressedLength)
+                    .putLong(minTimestamp).putLong(maxTimestamp).putLong(minAmount).putLong(maxAmount);
+            checksum.update(fields.array());
+            checksum.update(compressed.duplicate());
+            return (int) checksum.getValue() == crc;
+        }
+    }
+}
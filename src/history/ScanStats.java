@@ -0,0 +1,39 @@
+package history;
+
+/**
+ * How much of a {@link HistoryStore} a scan had to read. This class is immutable.
+ */
+public final class ScanStats {
+
+    private final int blockCount;
+    private final int blocksRead;
+    private final long entriesMatched;
+
+    ScanStats(int blockCount, int blocksRead, long entriesMatched) {
+        this.blockCount = blockCount;
+        this.blocksRead = blocksRead;
+        this.entriesMatched = entriesMatched;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Gets the number of blocks decompressed; the others were skipped using their statistics.
+     *
+     * @return The number of blocks read.
+     */
+    public int getBlocksRead() {
+        return blocksRead;
+    }
+
+    public long getEntriesMatched() {
+        return entriesMatched;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStats[blocksRead=" + blocksRead + "/" + blockCount + ", entriesMatched=" + entriesMatched + "]";
+    }
+}
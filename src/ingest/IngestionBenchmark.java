@@ -0,0 +1,70 @@
+package ingest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import ledger.AccountRegistry;
+import utility.*;
+
+public class IngestionBenchmark {
+
+    /**
+     * Pushes a burst of feed lines through an {@link IngestionPipeline} as fast
+     * as the producer can, printing the stage metrics while the pipeline drains.
+     * About one line in a thousand is malformed or has a zero amount.
+     *
+     * @param args Optional: number of accounts, then number of lines.
+     */
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        AccountRegistry registry = new AccountRegistry();
+        for (int i = 0; i < accounts; i++) {
+            AccountID id = new AccountID("ACC" + i);
+            registry.open(new AccountHolder("Holder " + i), id);
+            registry.deposit(id, Money.ofCents(1_000_000));
+        }
+
+        LongAdder rejections = new LongAdder();
+        IngestionPipeline pipeline = new IngestionPipeline(registry, PipelineSettings.defaults(),
+                (line, reason) -> rejections.increment());
+
+        System.out.println("--- Ingestion Pipeline Benchmark ---");
+        long start = System.nanoTime();
+        Thread producer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < lines; i++) {
+                pipeline.submit(randomLine(random, accounts, i));
+            }
+            pipeline.close();
+        });
+        producer.start();
+        while (!pipeline.completion().isDone()) {
+            Thread.sleep(250);
+            System.out.println(pipeline.getStageMetrics());
+        }
+        pipeline.completion().join();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%,d lines in %.2f s: %,.0f lines/s%n", lines, elapsed / 1e9, lines / (elapsed / 1e9));
+        System.out.printf("Applied %d, rejected %d, lag mean %.2f ms, max %.2f ms%n",
+                pipeline.getApplied(), pipeline.getRejected(),
+                pipeline.getMeanLagNanos() / 1e6, pipeline.getMaxLagNanos() / 1e6);
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static String randomLine(ThreadLocalRandom random, int accounts, int index) {
+        if (index % 1000 == 999) {
+            return index % 2000 == 999 ? "DEPOSIT,ACC1,not-a-number" : "WITHDRAW,ACC1,0";
+        }
+        String account = "ACC" + random.nextInt(accounts);
+        switch (index % 3) {
+            case 0:
+                return "DEPOSIT," + account + "," + (1 + random.nextInt(100));
+            case 1:
+                return "WITHDRAW," + account + "," + (1 + random.nextInt(100));
+            default:
+                return "TRANSFER," + account + "," + (1 + random.nextInt(100)) + ",ACC" + random.nextInt(accounts);
+        }
+    }
+}
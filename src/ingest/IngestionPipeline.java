@@ -0,0 +1,266 @@
+package ingest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import ledger.AccountRegistry;
+import utility.*;
+
+/**
+ * A back-pressured pipeline that ingests transaction feed lines into an
+ * {@link AccountRegistry}: parse, validate, route by account, apply.
+ *
+ * <p>Every stage reads from bounded lanes and requests only as many items as
+ * it has room for, so a burst upstream makes producers wait instead of
+ * filling the heap. The route stage restores arrival order and sends all
+ * transactions of one account to the same apply lane, so an account sees its
+ * transactions in the order they were submitted.
+ *
+ * <p>The pipeline can be fed by calling {@link #submit} or by subscribing it
+ * to a {@link Flow.Publisher} of lines.
+ */
+public final class IngestionPipeline implements Flow.Subscriber<String>, AutoCloseable {
+
+    private final AccountRegistry registry;
+    private final BiConsumer<String, String> rejectionHandler;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Lanes parseLanes;
+    private final List<StageMetrics> metrics;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final int inputDemand;
+    private Flow.Subscription upstream;
+    private int sinceLastRequest;
+
+    /**
+     * Builds and starts a pipeline.
+     *
+     * @param registry         The accounts transactions are applied to. Must not be null.
+     * @param settings         Parallelism and buffer sizes. Must not be null.
+     * @param rejectionHandler Called with each rejected line and the reason, from pipeline threads.
+     *                         Must not be null.
+     */
+    public IngestionPipeline(AccountRegistry registry, PipelineSettings settings,
+                             BiConsumer<String, String> rejectionHandler) {
+        this.registry = Objects.requireNonNull(registry, "Account registry must not be null.");
+        this.rejectionHandler = Objects.requireNonNull(rejectionHandler, "Rejection handler must not be null.");
+        int capacity = settings.getBufferCapacity();
+        this.inputDemand = capacity;
+
+        StageMetrics parse = new StageMetrics("parse", settings.getParseParallelism());
+        StageMetrics validate = new StageMetrics("validate", settings.getValidateParallelism());
+        StageMetrics route = new StageMetrics("route", 1);
+        StageMetrics apply = new StageMetrics("apply", settings.getApplyParallelism());
+        this.metrics = List.of(parse, validate, route, apply);
+
+        this.parseLanes = new Lanes(parse.getParallelism(), capacity, executor,
+                item -> (int) item.sequence, 1);
+        Lanes validateLanes = new Lanes(validate.getParallelism(), capacity, executor,
+                item -> (int) item.sequence, parse.getParallelism());
+        Lanes routeLanes = new Lanes(1, capacity, executor, item -> 0, validate.getParallelism());
+        Lanes applyLanes = new Lanes(apply.getParallelism(), capacity, executor,
+                item -> spread(item.transaction.getAccount().hashCode()), 1);
+        parse.attach(parseLanes);
+        validate.attach(validateLanes);
+        route.attach(routeLanes);
+        apply.attach(applyLanes);
+
+        connect(parseLanes, parse, (item, emit) -> {
+            item.parse();
+            emit.accept(item);
+        }, validateLanes, capacity);
+        connect(validateLanes, validate, (item, emit) -> {
+            item.validate();
+            emit.accept(item);
+        }, routeLanes, capacity);
+        connect(routeLanes, route, new Resequencer(), applyLanes, capacity);
+
+        AtomicInteger openApplyLanes = new AtomicInteger(apply.getParallelism());
+        for (int i = 0; i < applyLanes.size(); i++) {
+            applyLanes.lane(i).subscribe(new Stage(apply, (item, emit) -> apply(item), item -> { },
+                    () -> {
+                        if (openApplyLanes.decrementAndGet() == 0) {
+                            finish(null);
+                        }
+                    },
+                    this::finish, capacity));
+        }
+    }
+
+    private static void connect(Lanes input, StageMetrics metrics, Stage.Step step, Lanes output, int demand) {
+        for (int i = 0; i < input.size(); i++) {
+            input.lane(i).subscribe(new Stage(metrics, step, output::submit, output::producerDone, output::fail, demand));
+        }
+    }
+
+    /**
+     * Feeds one line into the pipeline, blocking while the parse lanes are full.
+     *
+     * @param line The feed line. Must not be null.
+     * @throws IllegalStateException if the pipeline has been closed.
+     */
+    public void submit(String line) {
+        Objects.requireNonNull(line, "Line must not be null.");
+        parseLanes.submit(new PipelineItem(nextSequence.getAndIncrement(), line));
+    }
+
+    /**
+     * Signals that no more lines will be submitted. Lines already submitted
+     * are still processed; {@link #completion()} tells when they all are.
+     */
+    @Override
+    public void close() {
+        parseLanes.producerDone();
+    }
+
+    /**
+     * Gets a future that completes once every submitted line has been applied
+     * or rejected after {@link #close()}.
+     *
+     * @return The completion future.
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    public List<StageMetrics> getStageMetrics() {
+        return metrics;
+    }
+
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets the largest time a transaction spent between submission and being applied.
+     *
+     * @return The maximum end-to-end lag in nanoseconds.
+     */
+    public long getMaxLagNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * Gets the average time a transaction spent between submission and being applied.
+     *
+     * @return The mean end-to-end lag in nanoseconds, or 0 if nothing was applied yet.
+     */
+    public long getMeanLagNanos() {
+        long count = applied.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / count;
+    }
+
+    // ---- Flow.Subscriber<String>, for feeding the pipeline from a publisher ----
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.upstream = subscription;
+        subscription.request(inputDemand);
+    }
+
+    @Override
+    public void onNext(String line) {
+        submit(line);
+        int batch = Math.max(1, inputDemand / 2);
+        if (++sinceLastRequest == batch) {
+            sinceLastRequest = 0;
+            upstream.request(batch);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        parseLanes.fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    // ---- stage work ----
+
+    private void apply(PipelineItem item) {
+        Transaction transaction = item.transaction;
+        try {
+            switch (transaction.getType()) {
+                case DEPOSIT:
+                    registry.deposit(transaction.getAccount(), transaction.getAmount());
+                    break;
+                case WITHDRAW:
+                    registry.withdraw(transaction.getAccount(), transaction.getAmount());
+                    break;
+                case TRANSFER:
+                    registry.transfer(transaction.getAccount(), transaction.getCounterparty(), transaction.getAmount());
+                    break;
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            item.reject(e.getMessage());
+            reportRejection(item);
+            return;
+        }
+        long latency = System.nanoTime() - item.receivedNanos;
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        applied.increment();
+    }
+
+    private void reportRejection(PipelineItem item) {
+        rejected.increment();
+        rejectionHandler.accept(item.line, item.rejection);
+    }
+
+    private void finish(Throwable error) {
+        executor.shutdown();
+        if (error == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(error);
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Restores submission order after the parallel parse and validate stages.
+     * Rejected items end their journey here; the others go to the apply lane of their account.
+     */
+    private final class Resequencer implements Stage.Step {
+        private final Map<Long, PipelineItem> waiting = new HashMap<>();
+        private long next;
+
+        @Override
+        public void process(PipelineItem item, Consumer<PipelineItem> emit) {
+            waiting.put(item.sequence, item);
+            PipelineItem ready;
+            while ((ready = waiting.remove(next)) != null) {
+                next++;
+                if (ready.isRejected()) {
+                    reportRejection(ready);
+                } else {
+                    emit.accept(ready);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ingest;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * The bounded buffers feeding one pipeline stage, one per parallel lane.
+ * {@link #submit} blocks while the chosen lane is full, which is how
+ * back-pressure travels upstream. The lanes close once every producer is done.
+ */
+final class Lanes {
+
+    private final SubmissionPublisher<PipelineItem>[] publishers;
+    private final ToIntFunction<PipelineItem> selector;
+    private final AtomicInteger openProducers;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Lanes(int count, int capacity, Executor executor, ToIntFunction<PipelineItem> selector, int producers) {
+        this.publishers = new SubmissionPublisher[count];
+        for (int i = 0; i < count; i++) {
+            publishers[i] = new SubmissionPublisher<>(executor, capacity);
+        }
+        this.selector = selector;
+        this.openProducers = new AtomicInteger(producers);
+    }
+
+    void submit(PipelineItem item) {
+        publishers[Math.floorMod(selector.applyAsInt(item), publishers.length)].submit(item);
+    }
+
+    SubmissionPublisher<PipelineItem> lane(int index) {
+        return publishers[index];
+    }
+
+    int size() {
+        return publishers.length;
+    }
+
+    void producerDone() {
+        if (openProducers.decrementAndGet() == 0) {
+            for (SubmissionPublisher<PipelineItem> publisher : publishers) {
+                publisher.close();
+            }
+        }
+    }
+
+    void fail(Throwable error) {
+        for (SubmissionPublisher<PipelineItem> publisher : publishers) {
+            publisher.closeExceptionally(error);
+        }
+    }
+
+    /**
+     * Estimates the number of items buffered in these lanes but not yet processed.
+     */
+    long queueDepth() {
+        long depth = 0;
+        for (SubmissionPublisher<PipelineItem> publisher : publishers) {
+            depth += publisher.estimateMaximumLag();
+        }
+        return depth;
+    }
+}
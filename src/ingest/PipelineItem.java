@@ -0,0 +1,50 @@
+package ingest;
+
+/**
+ * A feed line travelling through the {@link IngestionPipeline}.
+ * Only the stage currently holding an item touches it; the hand-off between
+ * stages publishes its state to the next one.
+ */
+final class PipelineItem {
+
+    final long sequence;
+    final String line;
+    final long receivedNanos;
+    Transaction transaction;
+    String rejection;
+
+    PipelineItem(long sequence, String line) {
+        this.sequence = sequence;
+        this.line = line;
+        this.receivedNanos = System.nanoTime();
+    }
+
+    void parse() {
+        try {
+            this.transaction = Transaction.parse(line);
+        } catch (IllegalArgumentException e) {
+            reject(e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the amount rule of {@code BankAccount.tryDeposit}, which answers
+     * {@code TransactionStatus.INVALID_AMOUNT}, so that invalid transactions never reach an account.
+     */
+    void validate() {
+        if (isRejected()) {
+            return;
+        }
+        if (!transaction.getAmount().isPositive()) {
+            reject("Amount must be positive.");
+        }
+    }
+
+    void reject(String reason) {
+        this.rejection = reason;
+    }
+
+    boolean isRejected() {
+        return rejection != null;
+    }
+}
@@ -0,0 +1,59 @@
+package ingest;
+
+/**
+ * Parallelism and buffer sizes of an {@link IngestionPipeline}. This class is immutable.
+ */
+public final class PipelineSettings {
+
+    private final int parseParallelism;
+    private final int validateParallelism;
+    private final int applyParallelism;
+    private final int bufferCapacity;
+
+    /**
+     * @param parseParallelism    Number of parsing lanes. Must be positive.
+     * @param validateParallelism Number of validation lanes. Must be positive.
+     * @param applyParallelism    Number of apply lanes; each account always maps to the same one. Must be positive.
+     * @param bufferCapacity      Items buffered per lane before producers block. Must be positive.
+     * @throws IllegalArgumentException if a value is not positive.
+     */
+    public PipelineSettings(int parseParallelism, int validateParallelism, int applyParallelism, int bufferCapacity) {
+        this.parseParallelism = requirePositive(parseParallelism, "Parse parallelism");
+        this.validateParallelism = requirePositive(validateParallelism, "Validate parallelism");
+        this.applyParallelism = requirePositive(applyParallelism, "Apply parallelism");
+        this.bufferCapacity = requirePositive(bufferCapacity, "Buffer capacity");
+    }
+
+    /**
+     * Creates settings with one lane per processor in every parallel stage.
+     *
+     * @return The default settings.
+     */
+    public static PipelineSettings defaults() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new PipelineSettings(processors, processors, processors, 1024);
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive.");
+        }
+        return value;
+    }
+
+    public int getParseParallelism() {
+        return parseParallelism;
+    }
+
+    public int getValidateParallelism() {
+        return validateParallelism;
+    }
+
+    public int getApplyParallelism() {
+        return applyParallelism;
+    }
+
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+}
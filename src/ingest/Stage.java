@@ -0,0 +1,66 @@
+package ingest;
+
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * One worker of a pipeline stage, subscribed to a single lane.
+ * It never asks for more than {@code demand} items beyond those it has
+ * processed, so its lane buffer bounds the memory the stage can hold.
+ */
+final class Stage implements Flow.Subscriber<PipelineItem> {
+
+    /**
+     * The work of a stage: processes one item and emits zero or more items downstream.
+     */
+    interface Step {
+        void process(PipelineItem item, Consumer<PipelineItem> emit);
+    }
+
+    private final StageMetrics metrics;
+    private final Step step;
+    private final Consumer<PipelineItem> downstream;
+    private final Runnable onComplete;
+    private final Consumer<Throwable> onError;
+    private final int replenishBatch;
+    private final int demand;
+    private Flow.Subscription subscription;
+    private int sinceLastRequest;
+
+    Stage(StageMetrics metrics, Step step, Consumer<PipelineItem> downstream,
+          Runnable onComplete, Consumer<Throwable> onError, int demand) {
+        this.metrics = metrics;
+        this.step = step;
+        this.downstream = downstream;
+        this.onComplete = onComplete;
+        this.onError = onError;
+        this.demand = demand;
+        this.replenishBatch = Math.max(1, demand / 2);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(demand);
+    }
+
+    @Override
+    public void onNext(PipelineItem item) {
+        step.process(item, downstream);
+        metrics.recordProcessed();
+        if (++sinceLastRequest == replenishBatch) {
+            sinceLastRequest = 0;
+            subscription.request(replenishBatch);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        onError.accept(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        onComplete.run();
+    }
+}
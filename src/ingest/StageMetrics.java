@@ -0,0 +1,55 @@
+package ingest;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of one pipeline stage.
+ */
+public final class StageMetrics {
+
+    private final String name;
+    private final int parallelism;
+    private final LongAdder processed = new LongAdder();
+    private Lanes input;
+
+    StageMetrics(String name, int parallelism) {
+        this.name = name;
+        this.parallelism = parallelism;
+    }
+
+    void attach(Lanes input) {
+        this.input = input;
+    }
+
+    void recordProcessed() {
+        processed.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Estimates how many items wait in this stage's input buffers.
+     *
+     * @return The number of buffered, unprocessed items.
+     */
+    public long getQueueDepth() {
+        return input.queueDepth();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[parallelism=" + parallelism +
+               ", processed=" + getProcessed() +
+               ", queueDepth=" + getQueueDepth() + "]";
+    }
+}
@@ -0,0 +1,68 @@
+package ingest;
+
+import java.util.Objects;
+import utility.*;
+
+/**
+ * A transaction received from an upstream feed. This class is immutable.
+ * The counterparty is only present for transfers.
+ */
+public final class Transaction {
+
+    private final TransactionType type;
+    private final AccountID account;
+    private final AccountID counterparty;
+    private final Money amount;
+
+    public Transaction(TransactionType type, AccountID account, AccountID counterparty, Money amount) {
+        this.type = Objects.requireNonNull(type, "Transaction type must not be null.");
+        this.account = Objects.requireNonNull(account, "Account ID must not be null.");
+        this.amount = Objects.requireNonNull(amount, "Amount must not be null.");
+        if (type == TransactionType.TRANSFER) {
+            Objects.requireNonNull(counterparty, "Destination account must not be null.");
+        }
+        this.counterparty = counterparty;
+    }
+
+    /**
+     * Parses a feed line of the form {@code TYPE,account,amountInCents[,counterparty]}.
+     *
+     * @param line The line to parse.
+     * @return The parsed transaction.
+     * @throws IllegalArgumentException if the line is malformed or a field is invalid.
+     */
+    public static Transaction parse(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 3 || fields.length > 4) {
+            throw new IllegalArgumentException("Expected 3 or 4 fields but found " + fields.length + ".");
+        }
+        TransactionType type = TransactionType.valueOf(fields[0].trim());
+        AccountID account = new AccountID(fields[1].trim());
+        Money amount = Money.ofCents(Long.parseLong(fields[2].trim()));
+        AccountID counterparty = fields.length == 4 ? new AccountID(fields[3].trim()) : null;
+        return new Transaction(type, account, counterparty, amount);
+    }
+
+    public TransactionType getType() {
+        return type;
+    }
+
+    public AccountID getAccount() {
+        return account;
+    }
+
+    public AccountID getCounterparty() {
+        return counterparty;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[account=" + account +
+               (counterparty == null ? "" : ", counterparty=" + counterparty) +
+               ", amount=" + amount + " cents]";
+    }
+}
@@ -0,0 +1,10 @@
+package ingest;
+
+/**
+ * The kinds of transaction an upstream feed can carry.
+ */
+public enum TransactionType {
+    DEPOSIT,
+    WITHDRAW,
+    TRANSFER
+}
@@ -0,0 +1,129 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import utility.*;
+
+public class CompactionBenchmark {
+
+    private static final int ACCOUNTS = 1_000;
+    private static final int SEGMENT_SIZE = 4 << 20;
+
+    /**
+     * Fills a journal with sealed segments, checkpoints it, then measures the
+     * latency of durable deposits while nothing, an unthrottled compactor and
+     * a throttled compactor work through the backlog, and prints the latency
+     * percentiles with the compactor's progress and write amplification.
+     *
+     * @param args Optional: number of prefilled deposits, writers, seconds per run, then throttle in MiB/s.
+     */
+    public static void main(String[] args) throws IOException {
+        int prefill = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+        long throttleMiB = args.length > 3 ? Long.parseLong(args[3]) : 16;
+
+        System.out.println("--- Journal Compaction Benchmark ---");
+        System.out.printf("%,d prefilled deposits, %d writers, %.1f s per run%n", prefill, writers, seconds);
+        System.out.printf("%-14s%12s%12s%12s%12s%10s%10s%n",
+                "compactor", "tx/s", "p50 us", "p99 us", "max us", "segments", "write amp");
+        measure("none", null, prefill, writers, seconds);
+        measure("unthrottled", Long.MAX_VALUE, prefill, writers, seconds);
+        measure(throttleMiB + " MiB/s", throttleMiB << 20, prefill, writers, seconds);
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void measure(String label, Long bytesPerSecond, int prefill, int writers, double seconds)
+            throws IOException {
+        Path directory = Files.createTempDirectory("compaction-bench");
+        try {
+            JournalSettings settings = new JournalSettings(SEGMENT_SIZE, 256, Duration.ofMillis(1));
+            try (DurableLedger ledger = DurableLedger.open(directory, settings)) {
+                AccountID[] ids = new AccountID[ACCOUNTS];
+                for (int i = 0; i < ACCOUNTS; i++) {
+                    ids[i] = new AccountID("ACC" + i);
+                    ledger.open(new AccountHolder("Holder " + i), ids[i]);
+                }
+                run(ledger, ids, 256, prefill / 256, Long.MAX_VALUE);
+                ledger.checkpoint();
+
+                JournalCompactor compactor = bytesPerSecond == null ? null : ledger.scheduleCompaction(
+                        new JournalCompactionSettings(RetentionTier.SUMMARY, null, bytesPerSecond,
+                                Duration.ofMillis(1)));
+                long start = System.nanoTime();
+                long[] latencies = run(ledger, ids, writers, Integer.MAX_VALUE, start + (long) (seconds * 1e9));
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                Arrays.sort(latencies);
+                CompactionStats stats = compactor == null ? null : compactor.getStats();
+                System.out.printf("%-14s%,12.0f%,12.0f%,12.0f%,12.0f%10s%10s%n", label, latencies.length / elapsed,
+                        percentile(latencies, 0.50), percentile(latencies, 0.99),
+                        latencies[latencies.length - 1] / 1e3,
+                        stats == null ? "-" : String.valueOf(stats.getSegmentsCompacted()),
+                        stats == null ? "-" : String.format("%.3f", stats.getWriteAmplification()));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Runs writers that each deposit up to {@code perWriter} times or until the deadline.
+     *
+     * @return The latency of every deposit in nanoseconds.
+     */
+    private static long[] run(DurableLedger ledger, AccountID[] ids, int writers, int perWriter, long deadline) {
+        long[][] results = new long[writers][];
+        int[] counts = new int[writers];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long[] own = new long[1 << 12];
+                    int count = 0;
+                    while (count < perWriter && System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        ledger.deposit(ids[random.nextInt(ACCOUNTS)], Money.ofCents(1));
+                        if (count == own.length) {
+                            own = Arrays.copyOf(own, own.length * 2);
+                        }
+                        own[count++] = System.nanoTime() - start;
+                    }
+                    results[writer] = own;
+                    counts[writer] = count;
+                });
+            }
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int position = 0;
+        for (int w = 0; w < writers; w++) {
+            System.arraycopy(results[w], 0, all, position, counts[w]);
+            position += counts[w];
+        }
+        return all;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, sorted.length * fraction)] / 1e3;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
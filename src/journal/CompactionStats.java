@@ -0,0 +1,108 @@
+package journal;
+
+/**
+ * A point-in-time view of the backlog and counters of a {@link JournalCompactor}. This class is immutable.
+ */
+public final class CompactionStats {
+
+    private final int backlogSegments;
+    private final long backlogBytes;
+    private final int retainedSegments;
+    private final long segmentsCompacted;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long bytesReclaimed;
+    private final long throttledNanos;
+
+    CompactionStats(int backlogSegments, long backlogBytes, int retainedSegments, long segmentsCompacted,
+                    long bytesRead, long bytesWritten, long bytesReclaimed, long throttledNanos) {
+        this.backlogSegments = backlogSegments;
+        this.backlogBytes = backlogBytes;
+        this.retainedSegments = retainedSegments;
+        this.segmentsCompacted = segmentsCompacted;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.bytesReclaimed = bytesReclaimed;
+        this.throttledNanos = throttledNanos;
+    }
+
+    /**
+     * Gets the number of sealed segments covered by the latest snapshot and not yet compacted,
+     * as of the last pass.
+     *
+     * @return The backlog in segments.
+     */
+    public int getBacklogSegments() {
+        return backlogSegments;
+    }
+
+    /**
+     * Gets the record bytes of the backlog segments.
+     *
+     * @return The backlog in bytes.
+     */
+    public long getBacklogBytes() {
+        return backlogBytes;
+    }
+
+    /**
+     * Gets the number of sealed segments kept because they hold records newer than the latest snapshot.
+     *
+     * @return The retained segments.
+     */
+    public int getRetainedSegments() {
+        return retainedSegments;
+    }
+
+    public long getSegmentsCompacted() {
+        return segmentsCompacted;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the disk space freed: the size of the deleted segment files less the files written in their place.
+     *
+     * @return The reclaimed bytes.
+     */
+    public long getBytesReclaimed() {
+        return bytesReclaimed;
+    }
+
+    /**
+     * Gets the time the compactor spent waiting to stay within its I/O budget.
+     *
+     * @return The throttled time in nanoseconds.
+     */
+    public long getThrottledNanos() {
+        return throttledNanos;
+    }
+
+    /**
+     * Gets the bytes written per journal record byte, counting the journal's own write once
+     * and the compactor's rewrite on top of it.
+     *
+     * @return The write amplification, or 1 before anything was compacted.
+     */
+    public double getWriteAmplification() {
+        return bytesRead == 0 ? 1 : 1 + (double) bytesWritten / bytesRead;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionStats[backlogSegments=" + backlogSegments +
+               ", backlogBytes=" + backlogBytes +
+               ", retainedSegments=" + retainedSegments +
+               ", segmentsCompacted=" + segmentsCompacted +
+               ", bytesRead=" + bytesRead +
+               ", bytesWritten=" + bytesWritten +
+               ", bytesReclaimed=" + bytesReclaimed +
+               ", writeAmplification=" + String.format("%.3f", getWriteAmplification()) + "]";
+    }
+}
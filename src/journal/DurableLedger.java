@@ -0,0 +1,473 @@
+package journal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import ledger.CommitListener;
+import ledger.LedgerSnapshot;
+import ledger.VersionedLedger;
+import utility.*;
+
+/**
+ * A {@link VersionedLedger} whose commits survive a restart.
+ *
+ * <p>Every commit is appended to a {@link Journal} while the affected accounts
+ * are locked, so the journal holds each account's operations in commit order.
+ * A mutating call returns only once its record is durable; concurrent callers
+ * share group-committed forces. Readers may see a commit shortly before it is
+ * durable, but no caller is told it succeeded before it is.
+ *
+ * <p>Opening a durable ledger loads the latest snapshot written by
+ * {@link #checkpoint()} and replays the journal records committed after it,
+ * in parallel. Snapshots are consistent without pausing writers, so they can be
+ * taken periodically while the ledger is in use.
+ *
+ * <p>{@link #openLazily} starts serving without reading the snapshot's accounts:
+ * the snapshot stays memory-mapped, and each account is loaded when first used.
+ * A background thread loads the accounts that were used most before the last
+ * checkpoint or close, hottest first.
+ */
+public final class DurableLedger implements AutoCloseable {
+
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final VersionedLedger ledger;
+    private final Journal journal;
+    private final RecoveryStats recoveryStats;
+    private final SnapshotAccountSource accountSource;
+    private final HotAccounts hotAccounts;
+    private final ThreadLocal<long[]> lastTicket = ThreadLocal.withInitial(() -> new long[1]);
+    private final Object checkpointLock = new Object();
+    private ScheduledExecutorService checkpointer;
+    private volatile IOException checkpointFailure;
+    private JournalCompactor compactor;
+    private ExecutorService warmer;
+    private Future<Integer> warmUp;
+
+    private DurableLedger(VersionedLedger ledger, Journal journal, RecoveryStats recoveryStats,
+                          SnapshotAccountSource accountSource, HotAccounts hotAccounts) {
+        this.ledger = ledger;
+        this.journal = journal;
+        this.recoveryStats = recoveryStats;
+        this.accountSource = accountSource;
+        this.hotAccounts = hotAccounts;
+        ledger.setCommitListener(new JournalWriter());
+    }
+
+    /**
+     * Recovers the ledger recorded in a journal directory, using one thread per
+     * processor, and keeps journaling to it.
+     *
+     * @param directory The journal directory; created if missing. Must not be null.
+     * @param settings  Journal settings. Must not be null.
+     * @return The recovered ledger.
+     * @throws IOException if the journal cannot be read or opened.
+     */
+    public static DurableLedger open(Path directory, JournalSettings settings) throws IOException {
+        return open(directory, settings, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Recovers the ledger recorded in a journal directory and keeps journaling to it.
+     *
+     * @param directory   The journal directory; created if missing. Must not be null.
+     * @param settings    Journal settings. Must not be null.
+     * @param parallelism Number of threads replaying the journal. Must be positive.
+     * @return The recovered ledger.
+     * @throws IOException if the snapshot or journal cannot be read, or the journal cannot be opened.
+     */
+    public static DurableLedger open(Path directory, JournalSettings settings, int parallelism) throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        VersionedLedger ledger = new VersionedLedger();
+        RecoveryStats stats = JournalRecovery.recover(directory, ledger, parallelism);
+        return new DurableLedger(ledger, Journal.open(directory, settings), stats, null, null);
+    }
+
+    /**
+     * Keeps journaling a ledger that already holds everything recorded in a
+     * journal directory, such as a promoted follower's.
+     */
+    static DurableLedger takeOver(VersionedLedger ledger, Path directory, JournalSettings settings,
+                                  RecoveryStats stats) throws IOException {
+        return new DurableLedger(ledger, Journal.open(directory, settings), stats, null, null);
+    }
+
+    /**
+     * Opens the ledger recorded in a journal directory without loading its
+     * snapshot's accounts, and keeps journaling to it. Only the journal records
+     * after the snapshot are replayed; every other account is read from the
+     * memory-mapped snapshot when first used. In the background, the accounts
+     * ranked hottest when this directory was last checkpointed or closed are
+     * loaded first.
+     *
+     * @param directory   The journal directory; created if missing. Must not be null.
+     * @param settings    Journal settings. Must not be null.
+     * @param hotAccounts Number of most used accounts to rank and warm up. Must not be negative.
+     * @return The opened ledger.
+     * @throws IOException if the snapshot, journal or ranking cannot be read, or the journal cannot be opened.
+     */
+    public static DurableLedger openLazily(Path directory, JournalSettings settings, int hotAccounts)
+            throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        if (hotAccounts < 0) {
+            throw new IllegalArgumentException("Hot account count must not be negative.");
+        }
+        VersionedLedger ledger = new VersionedLedger();
+        SnapshotAccountSource source = JournalRecovery.recoverLazily(directory, ledger,
+                Runtime.getRuntime().availableProcessors());
+        DurableLedger durable;
+        List<AccountID> previous;
+        try {
+            previous = hotAccounts == 0 ? List.of() : HotAccounts.read(directory);
+            durable = new DurableLedger(ledger, Journal.open(directory, settings), source.getRecoveryStats(),
+                    source, new HotAccounts(hotAccounts, previous));
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+        durable.startWarmUp(previous.subList(0, Math.min(hotAccounts, previous.size())));
+        return durable;
+    }
+
+    /**
+     * Opens a new account with a zero balance once the opening is durable.
+     *
+     * @param holder The account holder. Must not be null.
+     * @param id     The unique identifier for the account. Must not be null.
+     * @return The commit sequence number of the opening.
+     * @throws IllegalArgumentException if an account with this ID already exists.
+     */
+    public long open(AccountHolder holder, AccountID id) {
+        long sequence = ledger.open(holder, id);
+        awaitLastRecord();
+        return sequence;
+    }
+
+    /**
+     * Deposits an amount into an account once the deposit is durable.
+     *
+     * @param id     The account to credit.
+     * @param amount The amount to deposit. Must be positive.
+     * @return The new balance.
+     */
+    public Money deposit(AccountID id, Money amount) {
+        Money balance = ledger.deposit(id, amount);
+        touch(id);
+        awaitLastRecord();
+        return balance;
+    }
+
+    /**
+     * Withdraws an amount from an account once the withdrawal is durable.
+     *
+     * @param id     The account to debit.
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @return The new balance.
+     * @throws IllegalStateException if the account has insufficient funds.
+     */
+    public Money withdraw(AccountID id, Money amount) {
+        Money balance = ledger.withdraw(id, amount);
+        touch(id);
+        awaitLastRecord();
+        return balance;
+    }
+
+    /**
+     * Transfers an amount between two accounts once the transfer is durable.
+     *
+     * @param from   The account to debit.
+     * @param to     The account to credit.
+     * @param amount The amount to transfer. Must be positive and not exceed the source balance.
+     * @return The source balance after the transfer.
+     * @throws IllegalStateException if the source has insufficient funds.
+     */
+    public Money transfer(AccountID from, AccountID to, Money amount) {
+        Money balance = ledger.transfer(from, to, amount);
+        touch(from);
+        touch(to);
+        awaitLastRecord();
+        return balance;
+    }
+
+    public Money getBalance(AccountID id) {
+        Money balance = ledger.getBalance(id);
+        touch(id);
+        return balance;
+    }
+
+    public boolean contains(AccountID id) {
+        return ledger.contains(id);
+    }
+
+    public long getCommittedSequence() {
+        return ledger.getCommittedSequence();
+    }
+
+    /**
+     * Takes a consistent, read-only view of the whole ledger.
+     *
+     * @return The snapshot. Close it to let old versions be reclaimed.
+     */
+    public LedgerSnapshot snapshot() {
+        return ledger.snapshot();
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    /**
+     * Gets the number of accounts loaded from the snapshot or journal tail since
+     * a lazy open, whether on first use or by the warm-up.
+     *
+     * @return The number of accounts loaded, or 0 if the ledger was opened eagerly.
+     */
+    public long getLoadedAccounts() {
+        return accountSource == null ? 0 : accountSource.getLoadCount();
+    }
+
+    /**
+     * Waits for the background warm-up of a lazy open to finish.
+     *
+     * @return The number of ranked accounts that were warmed up; 0 if the ledger was opened eagerly.
+     * @throws IOException if an account could not be read, or the wait was interrupted.
+     */
+    public int awaitWarmUp() throws IOException {
+        Future<Integer> pending;
+        synchronized (this) {
+            pending = warmUp;
+        }
+        if (pending == null) {
+            return 0;
+        }
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the warm-up.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Warm-up failed.", cause);
+        }
+    }
+
+    /**
+     * Writes a snapshot of every balance next to the journal, so that the next
+     * recovery only replays the records committed after it. Writers are not
+     * paused. Only the newest snapshots are kept, and the one a lazily opened
+     * ledger reads its unloaded accounts from. A lazily opened ledger also saves
+     * its ranking of hot accounts.
+     *
+     * @return The path of the snapshot file.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public Path checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            Path written;
+            try (LedgerSnapshot snapshot = ledger.snapshot()) {
+                written = SnapshotFile.write(journal.getDirectory(), snapshot);
+            }
+            List<Path> snapshots = SnapshotFile.list(journal.getDirectory());
+            Path inUse = accountSource == null ? null : accountSource.getSnapshotPath();
+            for (Path old : snapshots.subList(0, Math.max(0, snapshots.size() - SNAPSHOTS_KEPT))) {
+                if (!old.equals(inUse)) {
+                    Files.deleteIfExists(old);
+                }
+            }
+            if (hotAccounts != null) {
+                hotAccounts.save(journal.getDirectory());
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Starts taking a checkpoint at a fixed interval in the background, until closed.
+     * A failed checkpoint is reported by {@link #close()}.
+     *
+     * @param interval Time between the end of one checkpoint and the start of the next. Must be positive.
+     * @throws IllegalStateException if checkpoints are already scheduled.
+     */
+    public synchronized void scheduleCheckpoints(Duration interval) {
+        Objects.requireNonNull(interval, "Interval must not be null.");
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        }
+        if (checkpointer != null) {
+            throw new IllegalStateException("Checkpoints are already scheduled.");
+        }
+        checkpointer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ledger-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                checkpointFailure = e;
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts compacting the journal segments covered by the latest checkpoint in
+     * the background, until closed. A failed pass is reported by {@link #close()}.
+     *
+     * @param settings The retention tier, I/O budget and interval. Must not be null.
+     * @return The compactor, for its statistics.
+     * @throws IllegalStateException if compaction is already scheduled.
+     */
+    public synchronized JournalCompactor scheduleCompaction(JournalCompactionSettings settings) {
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        if (compactor != null) {
+            throw new IllegalStateException("Compaction is already scheduled.");
+        }
+        compactor = JournalCompactor.start(journal, settings);
+        return compactor;
+    }
+
+    /**
+     * Stops scheduled checkpoints, compaction and any warm-up, and closes the
+     * journal after making every record durable. A lazily opened ledger saves
+     * its ranking of hot accounts first.
+     *
+     * @throws IOException if the journal cannot be closed, the ranking cannot be
+     *                     saved, or the last scheduled checkpoint or compaction failed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                if (warmer != null) {
+                    warmer.shutdownNow();
+                    warmer.close();
+                }
+                if (checkpointer != null) {
+                    checkpointer.close();
+                }
+                if (compactor != null) {
+                    try {
+                        compactor.close();
+                    } catch (IOException e) {
+                        journal.close();
+                        throw e;
+                    }
+                }
+            }
+            if (hotAccounts != null) {
+                try {
+                    hotAccounts.save(journal.getDirectory());
+                } catch (IOException e) {
+                    journal.close();
+                    throw e;
+                }
+            }
+            journal.close();
+        } finally {
+            if (accountSource != null) {
+                accountSource.close();
+            }
+        }
+        if (checkpointFailure != null) {
+            throw checkpointFailure;
+        }
+    }
+
+    /**
+     * Loads the given accounts on a low-priority background thread, in order,
+     * stopping early if the ledger is closed.
+     */
+    private synchronized void startWarmUp(List<AccountID> ids) {
+        warmer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "ledger-warm-up");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        warmUp = warmer.submit(() -> {
+            int warmed = 0;
+            for (AccountID id : ids) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (ledger.contains(id)) {
+                    warmed++;
+                }
+            }
+            return warmed;
+        });
+    }
+
+    /**
+     * Counts an access for the ranking of hot accounts, if this ledger keeps one.
+     */
+    private void touch(AccountID id) {
+        if (hotAccounts != null) {
+            hotAccounts.touch(id);
+        }
+    }
+
+    /**
+     * Waits for the latest record this thread appended. A call that committed
+     * nothing, such as a transfer to the same account, waits for an earlier,
+     * already durable record.
+     */
+    private void awaitLastRecord() {
+        journal.awaitDurable(lastTicket.get()[0]);
+    }
+
+    /**
+     * Appends each commit to the journal and remembers its ticket for the committing thread.
+     */
+    private final class JournalWriter implements CommitListener {
+
+        @Override
+        public void opened(long sequence, AccountHolder holder, AccountID id) {
+            append(JournalRecord.open(sequence, System.currentTimeMillis(), holder, id));
+        }
+
+        @Override
+        public void deposited(long sequence, AccountID id, Money amount) {
+            append(JournalRecord.deposit(sequence, System.currentTimeMillis(), id, amount));
+        }
+
+        @Override
+        public void withdrew(long sequence, AccountID id, Money amount) {
+            append(JournalRecord.withdrawal(sequence, System.currentTimeMillis(), id, amount));
+        }
+
+        @Override
+        public void transferred(long sequence, AccountID from, AccountID to, Money amount) {
+            append(JournalRecord.transfer(sequence, System.currentTimeMillis(), from, to, amount));
+        }
+
+        private void append(JournalRecord record) {
+            lastTicket.get()[0] = journal.append(record);
+        }
+    }
+}
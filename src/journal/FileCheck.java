@@ -0,0 +1,106 @@
+package journal;
+
+import java.nio.file.Path;
+
+/**
+ * The outcome of checking one file of a journal directory with an {@link IntegrityScanner}. This class is immutable.
+ */
+public final class FileCheck {
+
+    /**
+     * The kinds of file a journal directory holds.
+     */
+    public enum Kind {
+        SEGMENT, ARCHIVE, SNAPSHOT, SUMMARY, HOT_ACCOUNTS, TEMPORARY
+    }
+
+    private final Path path;
+    private final Kind kind;
+    private final long bytes;
+    private final long records;
+    private final long firstCorruptOffset;
+    private final boolean repaired;
+    private final String detail;
+
+    FileCheck(Path path, Kind kind, long bytes, long records, long firstCorruptOffset, boolean repaired,
+              String detail) {
+        this.path = path;
+        this.kind = kind;
+        this.bytes = bytes;
+        this.records = records;
+        this.firstCorruptOffset = firstCorruptOffset;
+        this.repaired = repaired;
+        this.detail = detail;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the number of bytes checked: the records of a segment, the inflated records of an archive,
+     * the whole file otherwise.
+     *
+     * @return The bytes checked.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of intact records found before the first corrupt one.
+     *
+     * @return The record count; 0 for files that are not made of records.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Gets the offset of the first record or block that fails its checksum. For an
+     * archive, the offset is into the inflated segment.
+     *
+     * @return The offset, or -1 if the file is intact.
+     */
+    public long getFirstCorruptOffset() {
+        return firstCorruptOffset;
+    }
+
+    public boolean isCorrupt() {
+        return firstCorruptOffset >= 0;
+    }
+
+    /**
+     * Tells whether the scanner repaired the file: erased the torn tail of the
+     * newest segment or deleted a leftover temporary file.
+     *
+     * @return true if the file was changed.
+     */
+    public boolean isRepaired() {
+        return repaired;
+    }
+
+    /**
+     * Gets a description of the problem found.
+     *
+     * @return The description, or null if the file is intact.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return "FileCheck[path=" + path +
+               ", kind=" + kind +
+               ", bytes=" + bytes +
+               ", records=" + records +
+               ", firstCorruptOffset=" + firstCorruptOffset +
+               ", repaired=" + repaired +
+               ", detail=" + detail + "]";
+    }
+}
@@ -0,0 +1,155 @@
+package journal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import utility.*;
+
+/**
+ * Ranks the accounts of a lazily loaded ledger by recent access, so that the
+ * next start can load the hottest ones first.
+ *
+ * <p>One access in {@value #SAMPLE_RATE} is counted, which keeps the cost off
+ * the transaction path while still finding the accounts that matter. At most
+ * four times the ranked number of accounts are counted at once. Each save writes
+ * the ranking to {@value #FILE_NAME} next to the journal and then halves every
+ * count, so older accesses weigh less than recent ones.
+ *
+ * <p>Layout of the file, big-endian: magic, format version, account count,
+ * then the account IDs, hottest first, each as {@link DataOutputStream#writeUTF},
+ * and finally the CRC32C of everything before it.
+ */
+final class HotAccounts {
+
+    static final String FILE_NAME = "hot-accounts.dat";
+    private static final int MAGIC = 0x484F5441;
+    private static final int FORMAT_VERSION = 2;
+    private static final int SAMPLE_RATE = 8;
+
+    private final int capacity;
+    private final Map<AccountID, Integer> counts = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity The number of accounts ranked.
+     * @param previous The previous ranking; each account starts with one access so it is kept until outranked.
+     */
+    HotAccounts(int capacity, List<AccountID> previous) {
+        this.capacity = capacity;
+        for (AccountID id : previous.subList(0, Math.min(capacity, previous.size()))) {
+            counts.put(id, 1);
+        }
+    }
+
+    /**
+     * Counts an access to an account, one time in {@value #SAMPLE_RATE}.
+     */
+    void touch(AccountID id) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+            return;
+        }
+        if (counts.size() >= 4L * capacity && !counts.containsKey(id)) {
+            return;
+        }
+        counts.merge(id, 1, Integer::sum);
+    }
+
+    /**
+     * Gets the most accessed accounts.
+     *
+     * @return Up to the ranked number of accounts, hottest first.
+     */
+    List<AccountID> hottest() {
+        List<Map.Entry<AccountID, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<AccountID, Integer>comparingByValue().reversed());
+        List<AccountID> hottest = new ArrayList<>(Math.min(capacity, entries.size()));
+        for (Map.Entry<AccountID, Integer> entry : entries.subList(0, Math.min(capacity, entries.size()))) {
+            hottest.add(entry.getKey());
+        }
+        return hottest;
+    }
+
+    /**
+     * Writes the ranking to a directory, replacing the previous one atomically,
+     * and then halves every count.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    void save(Path directory) throws IOException {
+        List<AccountID> hottest = hottest();
+        Path target = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(hottest.size());
+            for (AccountID id : hottest) {
+                out.writeUTF(id.getValue());
+            }
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        counts.replaceAll((id, count) -> count / 2);
+        counts.values().removeIf(count -> count == 0);
+    }
+
+    /**
+     * Reads the ranking saved in a directory.
+     *
+     * @return The saved accounts, hottest first; empty if none were saved.
+     * @throws IOException if the file cannot be read or is not a ranking.
+     */
+    static List<AccountID> read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length >= 4) {
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, 0, bytes.length - 4);
+            if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - 4)) {
+                throw new IOException("Corrupt hot account ranking: " + file);
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a hot account ranking: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported hot account format " + version + " in " + file);
+            }
+            int count = in.readInt();
+            List<AccountID> ids = new ArrayList<>(Math.max(0, Math.min(count, 1 << 16)));
+            for (int i = 0; i < count; i++) {
+                ids.add(new AccountID(in.readUTF()));
+            }
+            return ids;
+        } catch (EOFException e) {
+            throw new IOException("Truncated hot account ranking: " + file, e);
+        }
+    }
+}
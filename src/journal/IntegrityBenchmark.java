@@ -0,0 +1,91 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import utility.*;
+
+public class IntegrityBenchmark {
+
+    private static final JournalSettings SETTINGS = new JournalSettings(16 << 20, 1 << 16, Duration.ofMillis(1));
+
+    /**
+     * Measures the throughput of an {@link IntegrityScanner} over a journal of
+     * full segments at increasing parallelism, then flips a byte in the middle
+     * of the oldest segment and tears the last record of the newest one, and shows
+     * what the scanner reports and repairs.
+     *
+     * @param args Optional: number of records, then the highest parallelism.
+     */
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int maxParallelism = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("--- Integrity Benchmark ---");
+        Path directory = Files.createTempDirectory("integrity-bench");
+        try {
+            Random random = new Random(42);
+            try (Journal journal = Journal.open(directory, SETTINGS)) {
+                for (int i = 0; i < records; i++) {
+                    journal.append(JournalRecord.deposit(i + 1, i, new AccountID("ACC" + random.nextInt(100_000)),
+                            Money.ofCents(1 + random.nextInt(100_000))));
+                }
+            }
+            List<Path> segments = JournalSegment.list(directory);
+            System.out.printf("%,d records in %,d segments%n", records, segments.size());
+
+            System.out.printf("%-14s%12s%14s%12s%n", "parallelism", "ms", "records", "MB/s");
+            for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+                IntegrityScanner.scan(directory, null, parallelism, false);
+                IntegrityReport report = IntegrityScanner.scan(directory, null, parallelism, false);
+                System.out.printf("%-14d%,12.1f%,14d%,12.0f%n", parallelism, report.getElapsedNanos() / 1e6,
+                        report.getRecordsScanned(), report.getMegabytesPerSecond());
+            }
+
+            Path old = segments.get(0);
+            Path newest = segments.get(segments.size() - 1);
+            flipByte(old, Files.size(old) / 4);
+            IntegrityReport before = IntegrityScanner.scan(directory, null, 1, false);
+            long tail = before.getFiles().stream().filter(check -> check.getPath().equals(newest))
+                    .findFirst().orElseThrow().getBytes();
+            flipByte(newest, tail - 1);
+            Files.writeString(directory.resolve(HotAccounts.FILE_NAME + ".tmp"), "partial");
+            IntegrityReport report = IntegrityScanner.scan(directory, null, maxParallelism, true);
+            System.out.printf("%-28s%16s%10s  %s%n", "damaged file", "first corrupt", "repaired", "detail");
+            for (FileCheck check : report.getCorruptFiles()) {
+                System.out.printf("%-28s%,16d%10s  %s%n", check.getPath().getFileName(),
+                        check.getFirstCorruptOffset(), check.isRepaired(), check.getDetail());
+            }
+            System.out.printf("Clean after repair: %s%n", report.isClean());
+        } finally {
+            delete(directory);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void flipByte(Path file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, offset);
+            one.put(0, (byte) ~one.get(0));
+            channel.write(one.rewind(), offset);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
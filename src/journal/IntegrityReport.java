@@ -0,0 +1,74 @@
+package journal;
+
+import java.util.List;
+
+/**
+ * The outcome of an {@link IntegrityScanner} pass over a journal directory. This class is immutable.
+ */
+public final class IntegrityReport {
+
+    private final List<FileCheck> files;
+    private final long elapsedNanos;
+
+    IntegrityReport(List<FileCheck> files, long elapsedNanos) {
+        this.files = List.copyOf(files);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the checks of every file scanned, in the order they were listed.
+     *
+     * @return The file checks.
+     */
+    public List<FileCheck> getFiles() {
+        return files;
+    }
+
+    /**
+     * Gets the checks of the files that failed, repaired or not.
+     *
+     * @return The corrupt files.
+     */
+    public List<FileCheck> getCorruptFiles() {
+        return files.stream().filter(FileCheck::isCorrupt).toList();
+    }
+
+    public long getBytesScanned() {
+        return files.stream().mapToLong(FileCheck::getBytes).sum();
+    }
+
+    public long getRecordsScanned() {
+        return files.stream().mapToLong(FileCheck::getRecords).sum();
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the scan throughput.
+     *
+     * @return The megabytes scanned per second, or 0 if nothing was scanned.
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : getBytesScanned() / 1048576.0 / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Tells whether every file is intact, or was made so by the scanner.
+     *
+     * @return true if no unrepaired corruption was found.
+     */
+    public boolean isClean() {
+        return files.stream().allMatch(check -> !check.isCorrupt() || check.isRepaired());
+    }
+
+    @Override
+    public String toString() {
+        return "IntegrityReport[files=" + files.size() +
+               ", corrupt=" + getCorruptFiles().size() +
+               ", bytesScanned=" + getBytesScanned() +
+               ", recordsScanned=" + getRecordsScanned() +
+               ", elapsedNanos=" + elapsedNanos + "]";
+    }
+}
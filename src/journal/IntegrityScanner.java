@@ -0,0 +1,223 @@
+package journal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Checks every file of a journal directory against its checksums, one file per
+ * task on a fixed pool of threads. Segments and summaries are checked in place
+ * through read-only mappings, so the CRC32C runs over the mapped pages without
+ * copying them; archives are inflated first.
+ *
+ * <p>Only two kinds of damage are repaired, and only when asked: a torn record
+ * at the end of the newest segment, which no durable record follows, is erased
+ * as opening the journal would erase it, and leftover temporary files of
+ * interrupted writes are deleted. Anything else is reported with the offset of
+ * its first corrupt record or block and left as it is. Repairing needs the
+ * journal to be closed.
+ */
+public final class IntegrityScanner {
+
+    private IntegrityScanner() {
+    }
+
+    /**
+     * Scans a journal directory: its segments, snapshots, summaries, hot account ranking and leftover
+     * temporary files, and the archived segments if an archive directory is given.
+     *
+     * @param journalDirectory The journal directory. Must not be null.
+     * @param archiveDirectory The archive directory of a {@link JournalCompactor}, or null to skip archives.
+     * @param parallelism      The number of files checked at once. Must be positive.
+     * @param repair           Whether to erase a torn tail of the newest segment and delete temporary files.
+     * @return What was found.
+     * @throws IOException if a file cannot be read or repaired.
+     */
+    public static IntegrityReport scan(Path journalDirectory, Path archiveDirectory, int parallelism, boolean repair)
+            throws IOException {
+        Objects.requireNonNull(journalDirectory, "Directory must not be null.");
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        long start = System.nanoTime();
+        List<Callable<FileCheck>> tasks = new ArrayList<>();
+        List<Path> segments = JournalSegment.list(journalDirectory);
+        for (Path segment : segments) {
+            boolean newest = segment.equals(segments.get(segments.size() - 1));
+            tasks.add(() -> checkSegment(segment, newest && repair));
+        }
+        for (Path snapshot : SnapshotFile.list(journalDirectory)) {
+            tasks.add(() -> checkSnapshot(snapshot));
+        }
+        for (Path summary : SegmentSummary.list(journalDirectory)) {
+            tasks.add(() -> checkSummary(summary));
+        }
+        if (Files.exists(journalDirectory.resolve(HotAccounts.FILE_NAME))) {
+            tasks.add(() -> checkHotAccounts(journalDirectory));
+        }
+        List<Path> temporaries = new ArrayList<>(temporaryFiles(journalDirectory));
+        temporaries.addAll(temporaryFiles(journalDirectory.resolve(SegmentSummary.DIRECTORY)));
+        if (archiveDirectory != null) {
+            for (Path archive : SegmentArchive.list(archiveDirectory)) {
+                tasks.add(() -> checkArchive(archive));
+            }
+            temporaries.addAll(temporaryFiles(archiveDirectory));
+        }
+        for (Path temporary : temporaries) {
+            tasks.add(() -> checkTemporary(temporary, repair));
+        }
+        List<FileCheck> checks = new ArrayList<>(tasks.size());
+        try (ExecutorService workers = Executors.newFixedThreadPool(parallelism)) {
+            for (Future<FileCheck> future : workers.invokeAll(tasks)) {
+                checks.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Integrity scan was interrupted.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Integrity scan failed.", cause);
+        }
+        return new IntegrityReport(checks, System.nanoTime() - start);
+    }
+
+    /**
+     * Walks the records of a segment. A corrupt record stops the walk; if the
+     * segment may be repaired, it and everything after it are erased.
+     */
+    private static FileCheck checkSegment(Path path, boolean repairTail) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                JournalSegment.readHeader(buffer, path);
+            } catch (IOException e) {
+                return new FileCheck(path, FileCheck.Kind.SEGMENT, 0, 0, 0, false, e.getMessage());
+            }
+            CRC32C crc = new CRC32C();
+            int position = JournalSegment.HEADER_SIZE;
+            long records = 0;
+            int length;
+            while ((length = JournalSegment.checkRecord(buffer, position, crc)) > 0) {
+                position += JournalSegment.RECORD_HEADER_SIZE + length;
+                records++;
+            }
+            if (length == 0) {
+                return new FileCheck(path, FileCheck.Kind.SEGMENT, position, records, -1, false, null);
+            }
+            if (repairTail) {
+                try (FileChannel writable = FileChannel.open(path, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    MappedByteBuffer mapped = writable.map(FileChannel.MapMode.READ_WRITE, 0, writable.size());
+                    JournalSegment.eraseFrom(mapped, position);
+                }
+                return new FileCheck(path, FileCheck.Kind.SEGMENT, position, records, position, true,
+                        "Torn tail erased at offset " + position);
+            }
+            return new FileCheck(path, FileCheck.Kind.SEGMENT, position, records, position, false,
+                    "Corrupt record at offset " + position);
+        }
+    }
+
+    private static FileCheck checkArchive(Path path) throws IOException {
+        byte[] bytes;
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(path))) {
+            bytes = in.readAllBytes();
+        } catch (IOException e) {
+            return new FileCheck(path, FileCheck.Kind.ARCHIVE, 0, 0, 0, false, e.getMessage());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            JournalSegment.readHeader(buffer, path);
+        } catch (IOException e) {
+            return new FileCheck(path, FileCheck.Kind.ARCHIVE, bytes.length, 0, 0, false, e.getMessage());
+        }
+        CRC32C crc = new CRC32C();
+        int position = JournalSegment.HEADER_SIZE;
+        long records = 0;
+        int length;
+        while ((length = JournalSegment.checkRecord(buffer, position, crc)) > 0) {
+            position += JournalSegment.RECORD_HEADER_SIZE + length;
+            records++;
+        }
+        return length == 0
+                ? new FileCheck(path, FileCheck.Kind.ARCHIVE, bytes.length, records, -1, false, null)
+                : new FileCheck(path, FileCheck.Kind.ARCHIVE, bytes.length, records, position, false,
+                        "Corrupt record at offset " + position + " of the inflated segment");
+    }
+
+    private static FileCheck checkSnapshot(Path path) throws IOException {
+        long size = Files.size(path);
+        SnapshotFile snapshot;
+        try {
+            snapshot = SnapshotFile.open(path);
+        } catch (IOException e) {
+            return new FileCheck(path, FileCheck.Kind.SNAPSHOT, size, 0, 0, false, e.getMessage());
+        }
+        try (snapshot) {
+            long offset = snapshot.firstCorruptOffset();
+            return new FileCheck(path, FileCheck.Kind.SNAPSHOT, size, 0, offset, false,
+                    offset < 0 ? null : "Corrupt block at offset " + offset);
+        }
+    }
+
+    private static FileCheck checkSummary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long offset = SegmentSummary.firstCorruptOffset(file);
+            return new FileCheck(path, FileCheck.Kind.SUMMARY, file.limit(), 0, offset, false,
+                    offset < 0 ? null : "Corrupt segment summary");
+        }
+    }
+
+    private static FileCheck checkHotAccounts(Path directory) throws IOException {
+        Path path = directory.resolve(HotAccounts.FILE_NAME);
+        long size = Files.size(path);
+        try {
+            HotAccounts.read(directory);
+            return new FileCheck(path, FileCheck.Kind.HOT_ACCOUNTS, size, 0, -1, false, null);
+        } catch (IOException e) {
+            return new FileCheck(path, FileCheck.Kind.HOT_ACCOUNTS, size, 0, 0, false, e.getMessage());
+        }
+    }
+
+    private static FileCheck checkTemporary(Path path, boolean repair) throws IOException {
+        long size = Files.size(path);
+        if (repair) {
+            Files.delete(path);
+        }
+        return new FileCheck(path, FileCheck.Kind.TEMPORARY, 0, 0, 0, repair,
+                "Leftover temporary file of an interrupted write, " + size + " bytes");
+    }
+
+    private static List<Path> temporaryFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".tmp")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package journal;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Paces background I/O to a byte rate. Each call reserves time for its bytes
+ * after the time already reserved, and sleeps until that time has come, so
+ * the rate holds over any window longer than one chunk. Idle time is not
+ * saved up, so a pass never starts with a burst. Used by one thread at a time.
+ */
+final class IoThrottle {
+
+    private static final long MAX_PARK_NANOS = 10_000_000L;
+
+    private final long bytesPerSecond;
+    private final BooleanSupplier cancelled;
+    private long nextFreeNanos;
+    private long throttledNanos;
+
+    /**
+     * @param bytesPerSecond The byte rate.
+     * @param cancelled      Checked while sleeping; once true, {@link #acquire(long)} stops waiting and fails.
+     */
+    IoThrottle(long bytesPerSecond, BooleanSupplier cancelled) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Waits until {@code bytes} more bytes fit in the rate.
+     *
+     * @throws InterruptedIOException if cancelled while waiting.
+     */
+    void acquire(long bytes) throws InterruptedIOException {
+        long now = System.nanoTime();
+        long cost = bytesPerSecond >= 1_000_000_000L ? bytes / (bytesPerSecond / 1_000_000_000L)
+                : bytes * 1_000_000_000L / bytesPerSecond;
+        nextFreeNanos = Math.max(nextFreeNanos, now) + cost;
+        long wait;
+        while ((wait = nextFreeNanos - System.nanoTime()) > 0) {
+            if (cancelled.getAsBoolean()) {
+                throw new InterruptedIOException("Throttled I/O was cancelled.");
+            }
+            LockSupport.parkNanos(Math.min(wait, MAX_PARK_NANOS));
+            throttledNanos += Math.min(wait, MAX_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Gets the total time spent waiting.
+     */
+    long throttledNanos() {
+        return throttledNanos;
+    }
+}
@@ -0,0 +1,465 @@
+package journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * A durable, append-only log of {@link JournalRecord}s in fixed-size
+ * memory-mapped segment files.
+ *
+ * <p>Appending only copies the record into the mapped segment and returns a
+ * ticket. A background flusher makes records durable in groups: it waits until
+ * {@link JournalSettings#getMaxBatchRecords()} records are pending or the oldest
+ * pending record has waited {@link JournalSettings#getMaxLatency()}, then forces
+ * everything appended so far with a single call. Callers that need durability
+ * wait for their ticket with {@link #awaitDurable(long)}, so concurrent writers
+ * share the cost of each force.
+ */
+public final class Journal implements AutoCloseable {
+
+    private final Path directory;
+    private final JournalSettings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition durableChanged = lock.newCondition();
+    private final List<JournalSegment> sealed = new ArrayList<>();
+    private final Thread flusher;
+    private JournalSegment current;
+    private long appended;
+    private long requested;
+    private long durable;
+    private long durableSegment;
+    private int durableOffset;
+    private long pendingSinceNanos;
+    private long forceCount;
+    private RuntimeException failure;
+    private boolean closed;
+
+    private Journal(Path directory, JournalSettings settings, JournalSegment current) {
+        this.directory = directory;
+        this.settings = settings;
+        this.current = current;
+        this.durableSegment = current.number();
+        this.durableOffset = current.position();
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Opens the journal in a directory, creating both if needed. New records
+     * are appended after the last record of the newest segment.
+     *
+     * @param directory The journal directory. Must not be null.
+     * @param settings  Segment size and group-commit limits. Must not be null.
+     * @return The open journal.
+     * @throws IOException if the directory or a segment cannot be opened.
+     */
+    public static Journal open(Path directory, JournalSettings settings) throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        Files.createDirectories(directory);
+        List<Path> segments = JournalSegment.list(directory);
+        JournalSegment current = segments.isEmpty()
+                ? JournalSegment.create(directory, 1, settings.getSegmentSize())
+                : JournalSegment.openForAppend(segments.get(segments.size() - 1));
+        return new Journal(directory, settings, current);
+    }
+
+    /**
+     * Reads every record of a journal directory in append order.
+     * The journal must not be appended to while it is read.
+     *
+     * @param directory The journal directory. Must not be null.
+     * @param consumer  Receives each record. Must not be null.
+     * @throws IOException if a segment cannot be read or holds a malformed record.
+     */
+    public static void read(Path directory, Consumer<JournalRecord> consumer) throws IOException {
+        read(directory, 0, consumer);
+    }
+
+    /**
+     * Reads the records of a journal directory with a commit sequence number
+     * above {@code afterSequence}, in append order. Older records are skipped
+     * without being decoded. A torn record at the end of the newest segment,
+     * left by a crash, ends the journal.
+     *
+     * @param directory     The journal directory. Must not be null.
+     * @param afterSequence Records up to and including this sequence number are skipped.
+     * @param consumer      Receives each record. Must not be null.
+     * @throws IOException if a segment cannot be read or holds a malformed or corrupt record.
+     */
+    public static void read(Path directory, long afterSequence, Consumer<JournalRecord> consumer)
+            throws IOException {
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        if (!Files.isDirectory(Objects.requireNonNull(directory, "Directory must not be null."))) {
+            return;
+        }
+        List<Path> segments = JournalSegment.list(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            readSegment(segments.get(i), afterSequence, i == segments.size() - 1, consumer);
+        }
+    }
+
+    /**
+     * Lists the segment files of a journal directory, oldest first.
+     *
+     * @param directory The journal directory. Must not be null.
+     * @return The segment files; empty if the directory does not exist.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(Objects.requireNonNull(directory, "Directory must not be null."))) {
+            return List.of();
+        }
+        return JournalSegment.list(directory);
+    }
+
+    /**
+     * Reads the records of one segment file, as {@link #read(Path, long, Consumer)} does.
+     *
+     * @param segment       A segment file. Must not be null.
+     * @param afterSequence Records up to and including this sequence number are skipped.
+     * @param consumer      Receives each record. Must not be null.
+     * @throws IOException if the segment cannot be read or holds a malformed or corrupt record.
+     */
+    public static void readSegment(Path segment, long afterSequence, Consumer<JournalRecord> consumer)
+            throws IOException {
+        readSegment(segment, afterSequence, false, consumer);
+    }
+
+    /**
+     * Reads the records of one segment file.
+     *
+     * @param newest Whether this is the newest segment, where a torn record ends the journal.
+     */
+    static void readSegment(Path segment, long afterSequence, boolean newest, Consumer<JournalRecord> consumer)
+            throws IOException {
+        readRecords(JournalSegment.mapForReading(segment), segment, afterSequence, newest, consumer);
+    }
+
+    /**
+     * Reads records from a buffer positioned after a segment header, up to the
+     * end-of-segment marker, checking each one against its checksum.
+     *
+     * @param tornTailAllowed Whether a torn or corrupt record ends the records
+     *                        instead of failing the read, as it may at the end
+     *                        of the newest segment after a crash.
+     */
+    static void readRecords(ByteBuffer buffer, Path segment, long afterSequence, boolean tornTailAllowed,
+                            Consumer<JournalRecord> consumer) throws IOException {
+        CRC32C crc = new CRC32C();
+        int position = buffer.position();
+        int length;
+        while ((length = JournalSegment.checkRecord(buffer, position, crc)) > 0) {
+            int start = position + JournalSegment.RECORD_HEADER_SIZE;
+            if (JournalRecord.peekSequence(buffer, start) > afterSequence) {
+                consumer.accept(JournalRecord.readFrom(buffer.slice(start, length)));
+            }
+            position = start + length;
+        }
+        if (length < 0 && !tornTailAllowed) {
+            throw new IOException("Corrupt journal record at offset " + position + " in " + segment);
+        }
+    }
+
+    /**
+     * Appends a record. It is not durable until its ticket is.
+     *
+     * @param record The record. Must not be null.
+     * @return The record's ticket, for {@link #awaitDurable(long)}. Tickets increase with every append.
+     * @throws IllegalArgumentException if the record cannot fit in a segment.
+     * @throws IllegalStateException    if the journal is closed or has failed.
+     */
+    public long append(JournalRecord record) {
+        byte[] payload = Objects.requireNonNull(record, "Record must not be null.").toBytes();
+        if (JournalSegment.HEADER_SIZE + JournalSegment.RECORD_HEADER_SIZE + payload.length
+                > settings.getSegmentSize()) {
+            throw new IllegalArgumentException("Record does not fit in a segment.");
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(payload);
+        int crc = (int) checksum.getValue();
+        lock.lock();
+        try {
+            ensureUsable();
+            if (!current.append(payload, crc)) {
+                rollSegment();
+                current.append(payload, crc);
+            }
+            appended++;
+            long pending = appended - requested;
+            if (pending == 1) {
+                pendingSinceNanos = System.nanoTime();
+                work.signal();
+            } else if (pending == settings.getMaxBatchRecords()) {
+                work.signal();
+            }
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a record is durable.
+     *
+     * @param ticket The ticket returned by {@link #append(JournalRecord)}.
+     * @throws IllegalStateException if the journal failed or closed before the record became durable.
+     */
+    public void awaitDurable(long ticket) {
+        lock.lock();
+        try {
+            while (durable < ticket) {
+                if (failure != null) {
+                    throw new IllegalStateException("Journal write failed.", failure);
+                }
+                if (closed && !flusher.isAlive()) {
+                    throw new IllegalStateException("Journal is closed.");
+                }
+                durableChanged.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record and waits until it is durable.
+     *
+     * @param record The record. Must not be null.
+     */
+    public void appendDurably(JournalRecord record) {
+        awaitDurable(append(record));
+    }
+
+    /**
+     * Gets the ticket of the latest durable record.
+     *
+     * @return The ticket; every record with a ticket up to it is durable.
+     */
+    public long getDurableTicket() {
+        lock.lock();
+        try {
+            return durable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAppendedTicket() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the position up to which records are durable.
+     *
+     * @return The end of the records last forced, in the newest segment forced.
+     */
+    public JournalPosition getDurablePosition() {
+        lock.lock();
+        try {
+            return new JournalPosition(durableSegment, durableOffset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until records after a position are durable, the timeout passes or
+     * the journal stops.
+     *
+     * @param after        A record boundary in a segment of this journal.
+     * @param timeoutNanos The longest time to wait.
+     * @return The durable position: the end of the records last forced, in the newest segment forced.
+     *         Every segment numbered below it is complete.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    JournalPosition awaitDurablePosition(JournalPosition after, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (!new JournalPosition(durableSegment, durableOffset).isAfter(after) && remaining > 0
+                    && failure == null && !closed) {
+                remaining = durableChanged.awaitNanos(remaining);
+            }
+            return new JournalPosition(durableSegment, durableOffset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of forces performed since the journal was opened.
+     * The appended ticket divided by this is the mean group-commit batch size.
+     *
+     * @return The force count.
+     */
+    public long getForceCount() {
+        lock.lock();
+        try {
+            return forceCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of the oldest segment still open for appending or waiting
+     * for its final force. Every segment numbered below it is complete and closed.
+     *
+     * @return The segment number.
+     */
+    long getFirstOpenSegment() {
+        lock.lock();
+        try {
+            return sealed.isEmpty() ? current.number() : sealed.get(0).number();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Makes every appended record durable, stops the flusher and unmaps the segments.
+     *
+     * @throws IOException if a segment cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        lock.lock();
+        try {
+            durableChanged.signalAll();
+            for (JournalSegment segment : sealed) {
+                segment.close();
+            }
+            sealed.clear();
+            current.close();
+        } finally {
+            lock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void ensureUsable() {
+        if (failure != null) {
+            throw new IllegalStateException("Journal write failed.", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed.");
+        }
+    }
+
+    private void rollSegment() {
+        try {
+            JournalSegment next = JournalSegment.create(directory, current.number() + 1, settings.getSegmentSize());
+            sealed.add(current);
+            current = next;
+        } catch (IOException e) {
+            failure = new UncheckedIOException(e);
+            throw new IllegalStateException("Cannot create journal segment.", e);
+        }
+    }
+
+    /**
+     * Runs on the flusher thread: waits for a batch to fill or its latency budget
+     * to run out, then forces the batch outside the lock so appends continue.
+     */
+    private void flushLoop() {
+        long maxLatencyNanos = settings.getMaxLatency().toNanos();
+        lock.lock();
+        try {
+            while (failure == null && (!closed || appended > requested)) {
+                long pending = appended - requested;
+                if (pending == 0) {
+                    work.awaitUninterruptibly();
+                    continue;
+                }
+                long waited = System.nanoTime() - pendingSinceNanos;
+                if (!closed && pending < settings.getMaxBatchRecords() && waited < maxLatencyNanos) {
+                    awaitWork(maxLatencyNanos - waited);
+                    continue;
+                }
+                long target = appended;
+                List<JournalSegment> full = new ArrayList<>(sealed);
+                sealed.clear();
+                JournalSegment segment = current;
+                int position = segment.position();
+                requested = target;
+                lock.unlock();
+                RuntimeException error = null;
+                try {
+                    for (JournalSegment done : full) {
+                        done.force(done.position());
+                        done.close();
+                    }
+                    segment.force(position);
+                } catch (IOException e) {
+                    error = new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durable = target;
+                    durableSegment = segment.number();
+                    durableOffset = position;
+                    forceCount++;
+                }
+                durableChanged.signalAll();
+            }
+        } finally {
+            durableChanged.signalAll();
+            lock.unlock();
+        }
+    }
+
+    private void awaitWork(long nanos) {
+        try {
+            work.awaitNanos(nanos);
+        } catch (InterruptedException e) {
+            // Only close() stops the flusher.
+        }
+    }
+}
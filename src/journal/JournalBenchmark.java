@@ -0,0 +1,84 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import utility.*;
+
+public class JournalBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 16, 128, 1024};
+    private static final int ACCOUNTS = 1_000;
+
+    /**
+     * Measures durable transactions per second of a {@link DurableLedger} for
+     * several group-commit batch sizes. Each writer waits for its own deposit to
+     * be durable before issuing the next one, so a batch can only fill up when
+     * at least as many writers are waiting.
+     *
+     * @param args Optional: number of writers, then seconds per batch size, then latency budget in ms.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 2_048;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3.0;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        System.out.println("--- Journal Benchmark (" + writers + " writers, " + latencyMillis + " ms budget) ---");
+        System.out.printf("%-12s%16s%16s%16s%n", "batch size", "durable tx/s", "forces/s", "mean batch");
+        for (int batchSize : BATCH_SIZES) {
+            JournalSettings settings = new JournalSettings(64 << 20, batchSize, Duration.ofMillis(latencyMillis));
+            Path directory = Files.createTempDirectory("journal-bench");
+            try {
+                measure(directory, settings, writers, seconds, batchSize);
+            } finally {
+                delete(directory);
+            }
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void measure(Path directory, JournalSettings settings, int writers, double seconds, int batchSize)
+            throws IOException, InterruptedException {
+        LongAdder transactions = new LongAdder();
+        long forces;
+        try (DurableLedger ledger = DurableLedger.open(directory, settings)) {
+            AccountID[] ids = new AccountID[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; i++) {
+                ids[i] = new AccountID("ACC" + i);
+                ledger.open(new AccountHolder("Holder " + i), ids[i]);
+            }
+            long forcesBefore = ledger.getJournal().getForceCount();
+            long deadline = System.nanoTime() + (long) (seconds * 1e9);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int w = 0; w < writers; w++) {
+                    executor.execute(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (System.nanoTime() < deadline) {
+                            ledger.deposit(ids[random.nextInt(ACCOUNTS)], Money.ofCents(1));
+                            transactions.increment();
+                        }
+                    });
+                }
+            }
+            forces = ledger.getJournal().getForceCount() - forcesBefore;
+        }
+        long done = transactions.sum();
+        System.out.printf("%-12d%,16.0f%,16.0f%16.1f%n", batchSize, done / seconds, forces / seconds,
+                forces == 0 ? 0.0 : (double) done / forces);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
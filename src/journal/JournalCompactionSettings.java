@@ -0,0 +1,72 @@
+package journal;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Retention tier, I/O budget and schedule of a {@link JournalCompactor}. This class is immutable.
+ */
+public final class JournalCompactionSettings {
+
+    private final RetentionTier tier;
+    private final Path archiveDirectory;
+    private final long maxBytesPerSecond;
+    private final Duration interval;
+
+    /**
+     * @param tier              What to do with compacted segments. Must not be null.
+     * @param archiveDirectory  Where archived segments go. Required for {@link RetentionTier#ARCHIVE}, else ignored.
+     * @param maxBytesPerSecond Bytes the compactor may read plus write per second. Must be positive.
+     * @param interval          Time between the end of one compaction pass and the start of the next. Must be positive.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public JournalCompactionSettings(RetentionTier tier, Path archiveDirectory, long maxBytesPerSecond,
+                                     Duration interval) {
+        Objects.requireNonNull(tier, "Retention tier must not be null.");
+        Objects.requireNonNull(interval, "Interval must not be null.");
+        if (tier == RetentionTier.ARCHIVE) {
+            Objects.requireNonNull(archiveDirectory, "Archive directory must not be null.");
+        }
+        if (maxBytesPerSecond <= 0) {
+            throw new IllegalArgumentException("I/O budget must be positive.");
+        }
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        }
+        this.tier = tier;
+        this.archiveDirectory = tier == RetentionTier.ARCHIVE ? archiveDirectory : null;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.interval = interval;
+    }
+
+    /**
+     * Creates settings that summarize segments at up to 16 MiB/s, checking once a minute.
+     *
+     * @return The default settings.
+     */
+    public static JournalCompactionSettings defaults() {
+        return new JournalCompactionSettings(RetentionTier.SUMMARY, null, 16 << 20, Duration.ofMinutes(1));
+    }
+
+    public RetentionTier getTier() {
+        return tier;
+    }
+
+    /**
+     * Gets the directory archived segments are moved to.
+     *
+     * @return The archive directory, or null unless the tier is {@link RetentionTier#ARCHIVE}.
+     */
+    public Path getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+}
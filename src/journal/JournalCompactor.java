@@ -0,0 +1,258 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Rewrites old journal segments into a cheaper retention tier in the background.
+ *
+ * <p>A segment is compacted once it is sealed and closed and every record in
+ * it is covered by the latest snapshot, so recovery never reads it again.
+ * Segments are taken oldest first, and a pass stops at the first segment that
+ * is not yet covered. Depending on the {@link RetentionTier}, the segment is
+ * replaced by a {@link SegmentSummary} or moved to a {@link SegmentArchive};
+ * the new file is forced before the segment is deleted.
+ *
+ * <p>Compaction shares the disk with the journal's forces, which are on the
+ * commit path of every operation. The compactor therefore runs on a single
+ * low-priority thread and paces every chunk it reads or writes through an
+ * {@link IoThrottle}, so its I/O stays within a fixed byte rate however large
+ * the backlog grows. This class is thread-safe.
+ */
+public final class JournalCompactor implements AutoCloseable {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final Journal journal;
+    private final JournalCompactionSettings settings;
+    private final IoThrottle throttle;
+    private final Map<Long, SegmentInfo> scanned = new HashMap<>();
+    private final ScheduledExecutorService executor;
+    private volatile boolean closing;
+    private volatile IOException failure;
+    private volatile CompactionStats stats = new CompactionStats(0, 0, 0, 0, 0, 0, 0, 0);
+    private long segmentsCompacted;
+    private long bytesRead;
+    private long bytesWritten;
+    private long bytesReclaimed;
+
+    private JournalCompactor(Journal journal, JournalCompactionSettings settings) {
+        this.journal = journal;
+        this.settings = settings;
+        this.throttle = new IoThrottle(settings.getMaxBytesPerSecond(), () -> closing);
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "journal-compactor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts compacting a journal's segments at the interval of the settings,
+     * until closed. A failed pass is reported by {@link #close()}. The compactor
+     * must be closed before the journal.
+     *
+     * @param journal  The journal. Must not be null.
+     * @param settings The retention tier, I/O budget and interval. Must not be null.
+     * @return The running compactor.
+     */
+    public static JournalCompactor start(Journal journal, JournalCompactionSettings settings) {
+        Objects.requireNonNull(journal, "Journal must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        JournalCompactor compactor = new JournalCompactor(journal, settings);
+        long millis = settings.getInterval().toMillis();
+        compactor.executor.scheduleWithFixedDelay(() -> {
+            try {
+                compactor.compactNow();
+            } catch (IOException e) {
+                if (!compactor.closing) {
+                    compactor.failure = e;
+                }
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        return compactor;
+    }
+
+    /**
+     * Runs one compaction pass on the calling thread, within the same I/O budget
+     * as scheduled passes. Waits for a scheduled pass in progress to finish first.
+     *
+     * @return The statistics after the pass.
+     * @throws IOException if a segment, snapshot or output file cannot be read or written.
+     */
+    public synchronized CompactionStats compactNow() throws IOException {
+        Path directory = journal.getDirectory();
+        long covered = 0;
+        Path latest = SnapshotFile.latest(directory);
+        if (latest != null) {
+            try (SnapshotFile snapshot = SnapshotFile.open(latest)) {
+                covered = snapshot.getSequence();
+            }
+        }
+        long firstOpen = journal.getFirstOpenSegment();
+        List<SegmentInfo> backlog = new ArrayList<>();
+        int retained = 0;
+        for (Path segment : JournalSegment.list(directory)) {
+            long number = JournalSegment.numberOf(segment);
+            if (number >= firstOpen) {
+                break;
+            }
+            SegmentInfo info = scanned.get(number);
+            if (info == null) {
+                info = scan(segment, null);
+                scanned.put(number, info);
+            }
+            if (retained == 0 && info.lastSequence <= covered) {
+                backlog.add(info);
+            } else {
+                retained++;
+            }
+        }
+        publish(backlog, 0, retained);
+        for (int i = 0; i < backlog.size() && !closing; i++) {
+            SegmentInfo info = backlog.get(i);
+            long written = settings.getTier() == RetentionTier.SUMMARY ? summarize(info) : archive(info);
+            Files.delete(info.path);
+            scanned.remove(info.number);
+            segmentsCompacted++;
+            bytesRead += info.usedBytes;
+            bytesWritten += written;
+            bytesReclaimed += info.fileSize - written;
+            publish(backlog, i + 1, retained);
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the backlog and counters as of the last pass.
+     *
+     * @return The statistics.
+     */
+    public CompactionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Stops scheduled passes, abandoning a pass in progress between two chunks.
+     * Segments not yet deleted stay in the journal and are compacted by a later compactor.
+     *
+     * @throws IOException if the last scheduled pass failed.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        executor.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private long summarize(SegmentInfo info) throws IOException {
+        JournalRecovery.Postings postings = new JournalRecovery.Postings(1);
+        scan(info.path, record -> record.getType().post(record, postings));
+        TreeMap<String, SegmentSummary.Delta> deltas = new TreeMap<>();
+        postings.forEach((id, holder, cents) -> {
+            SegmentSummary.Delta delta = deltas.computeIfAbsent(id.getValue(), key -> new SegmentSummary.Delta());
+            if (holder != null) {
+                delta.opened = holder;
+            }
+            delta.netCents += cents;
+            delta.operations++;
+        });
+        Path summary = SegmentSummary.write(journal.getDirectory().resolve(SegmentSummary.DIRECTORY), info.number,
+                info.firstSequence, info.lastSequence, info.records, deltas);
+        long written = Files.size(summary);
+        throttle.acquire(written);
+        return written;
+    }
+
+    private long archive(SegmentInfo info) throws IOException {
+        ByteBuffer segment = JournalSegment.mapForReading(info.path);
+        segment.limit(info.usedBytes).position(0);
+        return SegmentArchive.write(settings.getArchiveDirectory(), info.number, segment, throttle);
+    }
+
+    /**
+     * Walks the records of a segment, throttled, optionally decoding each one.
+     */
+    private SegmentInfo scan(Path segment, Consumer<JournalRecord> consumer) throws IOException {
+        ByteBuffer buffer = JournalSegment.mapForReading(segment);
+        long firstSequence = 0;
+        long lastSequence = 0;
+        long records = 0;
+        int unthrottled = JournalSegment.HEADER_SIZE;
+        CRC32C crc = new CRC32C();
+        int position = JournalSegment.HEADER_SIZE;
+        int length;
+        while ((length = JournalSegment.checkRecord(buffer, position, crc)) > 0) {
+            int start = position + JournalSegment.RECORD_HEADER_SIZE;
+            long sequence = JournalRecord.peekSequence(buffer, start);
+            firstSequence = records == 0 ? sequence : Math.min(firstSequence, sequence);
+            lastSequence = Math.max(lastSequence, sequence);
+            records++;
+            if (consumer != null) {
+                consumer.accept(JournalRecord.readFrom(buffer.slice(start, length)));
+            }
+            position = start + length;
+            unthrottled += JournalSegment.RECORD_HEADER_SIZE + length;
+            if (unthrottled >= CHUNK_SIZE) {
+                throttle.acquire(unthrottled);
+                unthrottled = 0;
+            }
+        }
+        if (length < 0) {
+            throw new IOException("Corrupt journal record at offset " + position + " in " + segment);
+        }
+        throttle.acquire(unthrottled);
+        // The used bytes include the end-of-segment marker, if there is room for one.
+        return new SegmentInfo(segment, JournalSegment.numberOf(segment), Math.min(position + 4, buffer.capacity()),
+                buffer.capacity(), firstSequence, lastSequence, records);
+    }
+
+    private void publish(List<SegmentInfo> backlog, int done, int retained) {
+        long backlogBytes = 0;
+        for (SegmentInfo info : backlog.subList(done, backlog.size())) {
+            backlogBytes += info.usedBytes;
+        }
+        stats = new CompactionStats(backlog.size() - done, backlogBytes, retained, segmentsCompacted, bytesRead,
+                bytesWritten, bytesReclaimed, throttle.throttledNanos());
+    }
+
+    /**
+     * Where a sealed segment's records end and which sequence numbers they hold.
+     */
+    private static final class SegmentInfo {
+        final Path path;
+        final long number;
+        final int usedBytes;
+        final long fileSize;
+        final long firstSequence;
+        final long lastSequence;
+        final long records;
+
+        SegmentInfo(Path path, long number, int usedBytes, long fileSize, long firstSequence, long lastSequence,
+                    long records) {
+            this.path = path;
+            this.number = number;
+            this.usedBytes = usedBytes;
+            this.fileSize = fileSize;
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.records = records;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package journal;
+
+import java.util.Objects;
+
+/**
+ * A record boundary in a journal: a segment number and a byte offset into
+ * that segment. Offset 0 is the start of the segment, before its header.
+ * This class is immutable.
+ */
+public final class JournalPosition {
+
+    private final long segment;
+    private final int offset;
+
+    JournalPosition(long segment, int offset) {
+        this.segment = segment;
+        this.offset = offset;
+    }
+
+    public long getSegment() {
+        return segment;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Tells whether this position is further into the journal than another.
+     */
+    public boolean isAfter(JournalPosition other) {
+        return segment > other.segment || segment == other.segment && offset > other.offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        JournalPosition other = (JournalPosition) o;
+        return segment == other.segment && offset == other.offset;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(segment, offset);
+    }
+
+    @Override
+    public String toString() {
+        return segment + ":" + offset;
+    }
+}
@@ -0,0 +1,169 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import utility.*;
+
+/**
+ * One committed ledger operation as stored in the journal. This class is immutable.
+ *
+ * <p>Binary layout, big-endian: type (1 byte), commit sequence (8), timestamp in
+ * epoch milliseconds (8), amount in cents (8), account ID, then a second string
+ * holding the counterparty of a transfer or the holder of an opened account.
+ * Strings are a 2-byte length followed by UTF-8 bytes; an absent string has length 0.
+ */
+public final class JournalRecord {
+
+    private static final int FIXED_SIZE = 1 + 8 + 8 + 8 + 2 + 2;
+
+    private final RecordType type;
+    private final long sequence;
+    private final long timestampMillis;
+    private final AccountID account;
+    private final AccountID counterparty;
+    private final AccountHolder holder;
+    private final Money amount;
+
+    private JournalRecord(RecordType type, long sequence, long timestampMillis, AccountID account,
+                          AccountID counterparty, AccountHolder holder, Money amount) {
+        this.type = type;
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.account = Objects.requireNonNull(account, "Account ID must not be null.");
+        this.counterparty = counterparty;
+        this.holder = holder;
+        this.amount = Objects.requireNonNull(amount, "Amount must not be null.");
+    }
+
+    public static JournalRecord open(long sequence, long timestampMillis, AccountHolder holder, AccountID account) {
+        Objects.requireNonNull(holder, "Account holder must not be null.");
+        return new JournalRecord(RecordType.OPEN, sequence, timestampMillis, account, null, holder, Money.ofCents(0));
+    }
+
+    public static JournalRecord deposit(long sequence, long timestampMillis, AccountID account, Money amount) {
+        return new JournalRecord(RecordType.DEPOSIT, sequence, timestampMillis, account, null, null, amount);
+    }
+
+    public static JournalRecord withdrawal(long sequence, long timestampMillis, AccountID account, Money amount) {
+        return new JournalRecord(RecordType.WITHDRAW, sequence, timestampMillis, account, null, null, amount);
+    }
+
+    public static JournalRecord transfer(long sequence, long timestampMillis, AccountID from, AccountID to,
+                                         Money amount) {
+        Objects.requireNonNull(to, "Destination account must not be null.");
+        return new JournalRecord(RecordType.TRANSFER, sequence, timestampMillis, from, to, null, amount);
+    }
+
+    /**
+     * Encodes this record in the journal's binary layout.
+     *
+     * @return The encoded bytes.
+     */
+    public byte[] toBytes() {
+        byte[] accountBytes = account.getValue().getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = secondString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + accountBytes.length + secondBytes.length);
+        buffer.put((byte) type.getCode());
+        buffer.putLong(sequence);
+        buffer.putLong(timestampMillis);
+        buffer.putLong(amount.getAmountInCents());
+        buffer.putShort((short) accountBytes.length);
+        buffer.put(accountBytes);
+        buffer.putShort((short) secondBytes.length);
+        buffer.put(secondBytes);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a record from the journal's binary layout.
+     *
+     * @param buffer A buffer positioned at the start of the record; it is advanced past it.
+     * @return The decoded record.
+     * @throws IOException if the bytes are not a valid record.
+     */
+    public static JournalRecord readFrom(ByteBuffer buffer) throws IOException {
+        try {
+            RecordType type = RecordType.fromCode(buffer.get());
+            long sequence = buffer.getLong();
+            long timestamp = buffer.getLong();
+            Money amount = Money.ofCents(buffer.getLong());
+            AccountID account = new AccountID(readString(buffer));
+            String second = readString(buffer);
+            AccountID counterparty = type == RecordType.TRANSFER ? new AccountID(second) : null;
+            AccountHolder holder = type == RecordType.OPEN ? new AccountHolder(second) : null;
+            return new JournalRecord(type, sequence, timestamp, account, counterparty, holder, amount);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed journal record.", e);
+        }
+    }
+
+    /**
+     * Reads the commit sequence number of an encoded record without decoding the rest.
+     */
+    static long peekSequence(ByteBuffer buffer, int recordStart) {
+        return buffer.getLong(recordStart + 1);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String secondString() {
+        if (counterparty != null) {
+            return counterparty.getValue();
+        }
+        return holder == null ? "" : holder.getName();
+    }
+
+    public RecordType getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public AccountID getAccount() {
+        return account;
+    }
+
+    /**
+     * Gets the destination of a transfer.
+     *
+     * @return The counterparty, or null if this is not a transfer.
+     */
+    public AccountID getCounterparty() {
+        return counterparty;
+    }
+
+    /**
+     * Gets the holder of an opened account.
+     *
+     * @return The holder, or null if this is not an opening.
+     */
+    public AccountHolder getHolder() {
+        return holder;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord[" + type +
+               ", sequence=" + sequence +
+               ", account=" + account +
+               (counterparty == null ? "" : ", counterparty=" + counterparty) +
+               ", amount=" + amount + " cents]";
+    }
+}
@@ -0,0 +1,312 @@
+package journal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ledger.VersionedLedger;
+import utility.*;
+
+/**
+ * Rebuilds a ledger from the latest snapshot in a journal directory and the
+ * journal records committed after it.
+ *
+ * <p>Every journaled operation passed validation when it was committed, so
+ * replaying it only adds amounts to balances, and the result does not depend
+ * on the order of the additions. The tail is therefore replayed in parallel,
+ * a few segments at a time: worker threads decode the segments and turn each
+ * record into one posting per account it touches, routed to a partition by
+ * account; then each partition is applied by a single thread. No two partitions
+ * share an account, so applying them needs no locking.
+ *
+ * <p>A lazy recovery replays only the tail and leaves the snapshot on disk, to
+ * be read an account at a time through a {@link SnapshotAccountSource}.
+ */
+final class JournalRecovery {
+
+    private JournalRecovery() {
+    }
+
+    /**
+     * Restores every recovered account into an empty ledger and moves its
+     * commit sequence past the last recovered commit.
+     *
+     * @param directory   The journal directory.
+     * @param ledger      An empty ledger to fill.
+     * @param parallelism Number of worker threads and partitions.
+     * @return What was recovered and how long it took.
+     * @throws IOException if the snapshot or a segment cannot be read, or the journal is inconsistent.
+     */
+    static RecoveryStats recover(Path directory, VersionedLedger ledger, int parallelism) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        long start = System.nanoTime();
+        ConcurrentHashMap<AccountID, Balance> balances = new ConcurrentHashMap<>();
+        long snapshotSequence = 0;
+        long snapshotAccounts = 0;
+        Replay replay;
+        long loaded;
+        try (ExecutorService workers = Executors.newFixedThreadPool(parallelism)) {
+            Path latest = SnapshotFile.latest(directory);
+            if (latest != null) {
+                try (SnapshotFile snapshot = SnapshotFile.open(latest)) {
+                    snapshotSequence = snapshot.getSequence();
+                    snapshotAccounts = snapshot.getAccountCount();
+                    List<Callable<Void>> loads = new ArrayList<>();
+                    for (int block = 0; block < snapshot.getBlockCount(); block++) {
+                        int current = block;
+                        loads.add(() -> {
+                            snapshot.forEachInBlock(current, (id, holder, balance) ->
+                                    balances.put(id, new Balance(holder, balance.getAmountInCents())));
+                            return null;
+                        });
+                    }
+                    runAll(workers, loads);
+                }
+            }
+            loaded = System.nanoTime();
+            replay = replayTail(directory, snapshotSequence, workers, parallelism, balances, false);
+        }
+
+        ledger.advanceSequence(replay.lastSequence);
+        balances.forEach(1 << 12, (id, balance) -> ledger.restore(balance.holder, id, Money.ofCents(balance.cents)));
+        long end = System.nanoTime();
+        return new RecoveryStats(snapshotSequence, snapshotAccounts, replay.records, replay.lastSequence,
+                balances.size(), loaded - start, end - loaded);
+    }
+
+    /**
+     * Prepares an empty ledger to load its accounts on demand: opens the latest
+     * snapshot without reading its blocks, replays the journal records committed
+     * after it into per-account changes, and moves the ledger's commit sequence
+     * past the last of them. Only accounts opened after the snapshot are held in
+     * memory; the others are read from the snapshot when first used.
+     *
+     * @param directory   The journal directory.
+     * @param ledger      An empty ledger to attach the accounts to.
+     * @param parallelism Number of worker threads and partitions.
+     * @return The account source set on the ledger; close it once the ledger is no longer used.
+     * @throws IOException if the snapshot or a segment cannot be read, or the journal is inconsistent.
+     */
+    static SnapshotAccountSource recoverLazily(Path directory, VersionedLedger ledger, int parallelism)
+            throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive.");
+        }
+        long start = System.nanoTime();
+        ConcurrentHashMap<AccountID, Balance> changes = new ConcurrentHashMap<>();
+        Path latest = SnapshotFile.latest(directory);
+        SnapshotFile snapshot = latest == null ? null : SnapshotFile.open(latest);
+        try {
+            long snapshotSequence = snapshot == null ? 0 : snapshot.getSequence();
+            long snapshotAccounts = snapshot == null ? 0 : snapshot.getAccountCount();
+            long loaded = System.nanoTime();
+            Replay replay;
+            try (ExecutorService workers = Executors.newFixedThreadPool(parallelism)) {
+                replay = replayTail(directory, snapshotSequence, workers, parallelism, changes, true);
+            }
+            long opened = changes.values().stream().filter(change -> change.holder != null).count();
+            RecoveryStats stats = new RecoveryStats(snapshotSequence, snapshotAccounts, replay.records,
+                    replay.lastSequence, snapshotAccounts + opened, loaded - start, System.nanoTime() - loaded);
+            SnapshotAccountSource source = new SnapshotAccountSource(snapshot, changes, stats);
+            ledger.advanceSequence(replay.lastSequence);
+            ledger.setAccountSource(source);
+            return source;
+        } catch (IOException | RuntimeException e) {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replays the journal records committed after {@code after} into {@code balances},
+     * a few segments at a time.
+     *
+     * @param lazy Whether accounts missing from {@code balances} are in a snapshot
+     *             that was not loaded; their postings then start from a zero change.
+     */
+    private static Replay replayTail(Path directory, long after, ExecutorService workers, int parallelism,
+                                     Map<AccountID, Balance> balances, boolean lazy) throws IOException {
+        Replay replay = new Replay(after);
+        List<Path> segments = Journal.segments(directory);
+        for (int first = 0; first < segments.size(); first += parallelism) {
+            List<Callable<Postings>> decodes = new ArrayList<>();
+            for (Path segment : segments.subList(first, Math.min(segments.size(), first + parallelism))) {
+                boolean newest = segment.equals(segments.get(segments.size() - 1));
+                decodes.add(() -> {
+                    Postings postings = new Postings(parallelism);
+                    Journal.readSegment(segment, after, newest, record -> {
+                        record.getType().post(record, postings);
+                        postings.recordCount++;
+                        postings.lastSequence = Math.max(postings.lastSequence, record.getSequence());
+                    });
+                    return postings;
+                });
+            }
+            List<Postings> wave = runAll(workers, decodes);
+            List<Callable<Void>> applies = new ArrayList<>();
+            for (int partition = 0; partition < parallelism; partition++) {
+                int current = partition;
+                applies.add(() -> {
+                    for (Postings postings : wave) {
+                        postings.apply(current, balances, lazy);
+                    }
+                    return null;
+                });
+            }
+            runAll(workers, applies);
+            for (Postings postings : wave) {
+                replay.records += postings.recordCount;
+                replay.lastSequence = Math.max(replay.lastSequence, postings.lastSequence);
+            }
+        }
+        return replay;
+    }
+
+    private static <T> List<T> runAll(ExecutorService workers, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : workers.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Recovery was interrupted.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Recovery failed.", cause);
+        }
+        return results;
+    }
+
+    private static int partitionOf(AccountID id, int partitions) {
+        return (id.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    /**
+     * The journal records replayed after a snapshot.
+     */
+    private static final class Replay {
+        private long records;
+        private long lastSequence;
+
+        private Replay(long snapshotSequence) {
+            this.lastSequence = snapshotSequence;
+        }
+    }
+
+    /**
+     * A recovered account. Only the thread applying its partition changes it.
+     * When replaying lazily, an account of the snapshot has no holder and its
+     * cents are the change since the snapshot.
+     */
+    static final class Balance {
+        final AccountHolder holder;
+        long cents;
+
+        private Balance(AccountHolder holder, long cents) {
+            this.holder = holder;
+            this.cents = cents;
+        }
+    }
+
+    /**
+     * The postings decoded from one segment, grouped by partition in journal order.
+     * An opening is a posting with a holder and a zero amount.
+     */
+    static final class Postings {
+        private final AccountID[][] ids;
+        private final AccountHolder[][] holders;
+        private final long[][] amounts;
+        private final int[] sizes;
+        private long recordCount;
+        private long lastSequence;
+
+        Postings(int partitions) {
+            this.ids = new AccountID[partitions][16];
+            this.holders = new AccountHolder[partitions][16];
+            this.amounts = new long[partitions][16];
+            this.sizes = new int[partitions];
+        }
+
+        void open(AccountID id, AccountHolder holder) {
+            add(id, holder, 0);
+        }
+
+        void post(AccountID id, long cents) {
+            add(id, null, cents);
+        }
+
+        private void add(AccountID id, AccountHolder holder, long cents) {
+            int partition = partitionOf(id, sizes.length);
+            int size = sizes[partition];
+            if (size == ids[partition].length) {
+                ids[partition] = Arrays.copyOf(ids[partition], size * 2);
+                holders[partition] = Arrays.copyOf(holders[partition], size * 2);
+                amounts[partition] = Arrays.copyOf(amounts[partition], size * 2);
+            }
+            ids[partition][size] = id;
+            holders[partition][size] = holder;
+            amounts[partition][size] = cents;
+            sizes[partition] = size + 1;
+        }
+
+        /**
+         * Visits every posting, partition by partition; an opening has a holder and a zero amount.
+         */
+        void forEach(PostingVisitor visitor) {
+            for (int partition = 0; partition < sizes.length; partition++) {
+                for (int i = 0; i < sizes[partition]; i++) {
+                    visitor.visit(ids[partition][i], holders[partition][i], amounts[partition][i]);
+                }
+            }
+        }
+
+        private void apply(int partition, Map<AccountID, Balance> balances, boolean lazy) throws IOException {
+            for (int i = 0; i < sizes[partition]; i++) {
+                AccountID id = ids[partition][i];
+                if (holders[partition][i] != null) {
+                    if (balances.putIfAbsent(id, new Balance(holders[partition][i], 0)) != null) {
+                        throw new IOException("Journal opens an existing account: " + id);
+                    }
+                    continue;
+                }
+                Balance balance = balances.get(id);
+                if (balance == null) {
+                    if (!lazy) {
+                        throw new IOException("Journal posts to an unknown account: " + id);
+                    }
+                    balance = new Balance(null, 0);
+                    balances.put(id, balance);
+                }
+                balance.cents += amounts[partition][i];
+            }
+        }
+    }
+
+    /**
+     * Receives the postings of a {@link Postings}.
+     */
+    @FunctionalInterface
+    interface PostingVisitor {
+        void visit(AccountID id, AccountHolder holder, long cents);
+    }
+}
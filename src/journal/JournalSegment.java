@@ -0,0 +1,211 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * A fixed-size journal file, memory-mapped for appending.
+ *
+ * <p>Layout: a 16-byte header (magic, format version, segment number), then
+ * records, each an int length, the CRC32C of the payload and that many bytes
+ * of payload; a zero length marks the end of the segment. The length is
+ * written last, but the mapped pages may reach the disk in any order in a
+ * crash, so only the checksum tells a complete record from a torn one. A torn
+ * record can only be at the end of the newest segment, since no record after
+ * it was ever durable; opening that segment for appending erases it.
+ */
+final class JournalSegment {
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAGIC = 0x4A524E4C;
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path path;
+    private final long number;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private int forcedPosition;
+
+    private JournalSegment(Path path, long number, FileChannel channel, MappedByteBuffer buffer, int position) {
+        this.path = path;
+        this.number = number;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.position = position;
+        this.forcedPosition = position;
+    }
+
+    static String fileName(long number) {
+        return String.format("journal-%012d.seg", number);
+    }
+
+    /**
+     * Parses the segment number from a segment file name.
+     */
+    static long numberOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".seg".length()));
+    }
+
+    static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith("journal-") && name.endsWith(".seg");
+    }
+
+    /**
+     * Lists the segment files of a journal directory, oldest first.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegmentFile).sorted().toList();
+        }
+    }
+
+    /**
+     * Creates and maps a new, empty segment.
+     */
+    static JournalSegment create(Path directory, long number, int size) throws IOException {
+        Path path = directory.resolve(fileName(number));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(8, number);
+        buffer.force(0, HEADER_SIZE);
+        return new JournalSegment(path, number, channel, buffer, HEADER_SIZE);
+    }
+
+    /**
+     * Maps an existing segment for appending after its last record. A torn or
+     * corrupt record and everything after it are erased first.
+     */
+    static JournalSegment openForAppend(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        long number = readHeader(buffer, path);
+        CRC32C crc = new CRC32C();
+        int position = HEADER_SIZE;
+        int length;
+        while ((length = checkRecord(buffer, position, crc)) > 0) {
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (length < 0) {
+            eraseFrom(buffer, position);
+        }
+        return new JournalSegment(path, number, channel, buffer, position);
+    }
+
+    /**
+     * Checks the record at {@code position} against its checksum.
+     *
+     * @param crc A checksum to reuse; it is reset first.
+     * @return The payload length; 0 at the end-of-segment marker; -1 if the record is torn or corrupt.
+     */
+    static int checkRecord(ByteBuffer buffer, int position, CRC32C crc) {
+        if (position + 4 > buffer.limit()) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || length > buffer.limit() - position - RECORD_HEADER_SIZE) {
+            return -1;
+        }
+        crc.reset();
+        crc.update(buffer.slice(position + RECORD_HEADER_SIZE, length));
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? length : -1;
+    }
+
+    /**
+     * Zeroes a segment from {@code position} to its end and forces the change,
+     * so the record at {@code position} becomes the end-of-segment marker and no
+     * stale bytes remain behind the records appended later.
+     */
+    static void eraseFrom(MappedByteBuffer buffer, int position) {
+        byte[] zeros = new byte[1 << 16];
+        for (int offset = position; offset < buffer.capacity(); offset += zeros.length) {
+            buffer.put(offset, zeros, 0, Math.min(zeros.length, buffer.capacity() - offset));
+        }
+        buffer.force(position, buffer.capacity() - position);
+    }
+
+    /**
+     * Maps a segment read-only.
+     *
+     * @return A buffer positioned at the first record.
+     */
+    static ByteBuffer mapForReading(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            readHeader(buffer, path);
+            buffer.position(HEADER_SIZE);
+            return buffer;
+        }
+    }
+
+    static long readHeader(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a journal segment: " + path);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported journal format " + buffer.getInt(4) + " in " + path);
+        }
+        return buffer.getLong(8);
+    }
+
+    /**
+     * Appends one record if it fits.
+     *
+     * @param crc The CRC32C of the payload.
+     * @return false if the segment has no room left for the record.
+     */
+    boolean append(byte[] payload, int crc) {
+        if (position + RECORD_HEADER_SIZE + payload.length > buffer.capacity()) {
+            return false;
+        }
+        buffer.put(position + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(position + 4, crc);
+        buffer.putInt(position, payload.length);
+        position += RECORD_HEADER_SIZE + payload.length;
+        return true;
+    }
+
+    int position() {
+        return position;
+    }
+
+    long number() {
+        return number;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * Forces the records written up to {@code upTo} to the storage device.
+     * Only the journal's flusher calls this, so it needs no locking of its own.
+     */
+    void force(int upTo) {
+        if (upTo > forcedPosition) {
+            buffer.force(forcedPosition, upTo - forcedPosition);
+            forcedPosition = upTo;
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
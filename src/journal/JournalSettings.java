@@ -0,0 +1,59 @@
+package journal;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Segment size and group-commit limits of a {@link Journal}. This class is immutable.
+ */
+public final class JournalSettings {
+
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    private final int segmentSize;
+    private final int maxBatchRecords;
+    private final Duration maxLatency;
+
+    /**
+     * @param segmentSize     Size in bytes of each segment file. Must be at least 4 KiB.
+     * @param maxBatchRecords Records after which a force is started without waiting further. Must be positive.
+     * @param maxLatency      Longest time a record waits for other records to share its force. Must not be negative.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public JournalSettings(int segmentSize, int maxBatchRecords, Duration maxLatency) {
+        Objects.requireNonNull(maxLatency, "Maximum latency must not be null.");
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_SIZE + " bytes.");
+        }
+        if (maxBatchRecords <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive.");
+        }
+        if (maxLatency.isNegative()) {
+            throw new IllegalArgumentException("Maximum latency must not be negative.");
+        }
+        this.segmentSize = segmentSize;
+        this.maxBatchRecords = maxBatchRecords;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Creates settings with 64 MiB segments, batches of up to 256 records and a 2 ms latency budget.
+     *
+     * @return The default settings.
+     */
+    public static JournalSettings defaults() {
+        return new JournalSettings(64 << 20, 256, Duration.ofMillis(2));
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getMaxBatchRecords() {
+        return maxBatchRecords;
+    }
+
+    public Duration getMaxLatency() {
+        return maxLatency;
+    }
+}
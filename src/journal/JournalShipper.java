@@ -0,0 +1,440 @@
+package journal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ships the records of a {@link Journal} to {@link ReplicationFollower}s over
+ * TCP on the loopback interface.
+ *
+ * <p>Only durable records are shipped, as the raw bytes of their segments, so
+ * a follower's replica is a copy of the leader's journal. Each follower is
+ * served by its own sender thread, which streams the records of the current
+ * segment as group commits make them durable, several forces to a frame when
+ * the follower is slower, and does not wait for acknowledgements: those are
+ * read by a second thread and only recorded. A follower that is one or more
+ * segments behind catches up a whole segment at a time, sent straight from
+ * the file to the socket with {@link FileChannel#transferTo}. An empty
+ * follower first receives the latest snapshot the same way.
+ *
+ * <p>A follower whose replication fails is sent an error frame and dropped;
+ * the others carry on. The latest such failure, or a failure to accept a
+ * follower, is kept for {@link #getFailure()} and rethrown by {@link #close()}.
+ * After a failed accept the acceptor backs off, up to
+ * {@value #MAX_ACCEPT_BACKOFF_MILLIS} ms, before trying again.
+ *
+ * <p>The frames are described in {@link ReplicationProtocol}.
+ */
+public final class JournalShipper implements AutoCloseable {
+
+    private static final long HEARTBEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_FRAME_BYTES = 8 << 20;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final Journal journal;
+    private final ServerSocketChannel server;
+    private final Thread acceptor;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong bytesShipped = new AtomicLong();
+    private final AtomicLong catchUpBytes = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private JournalShipper(Journal journal, ServerSocketChannel server) {
+        this.journal = journal;
+        this.server = server;
+        this.acceptor = new Thread(this::acceptLoop, "journal-shipper-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Starts shipping a journal to every follower that connects to a loopback port.
+     *
+     * @param journal The leader's journal. Must not be null.
+     * @param port    The port to listen on, or 0 for any free port.
+     * @return The running shipper.
+     * @throws IOException if the port cannot be bound.
+     */
+    public static JournalShipper start(Journal journal, int port) throws IOException {
+        Objects.requireNonNull(journal, "Journal must not be null.");
+        ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return new JournalShipper(journal, server);
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Gets the number of segment and snapshot bytes sent to all followers.
+     *
+     * @return The bytes shipped.
+     */
+    public long getBytesShipped() {
+        return bytesShipped.get();
+    }
+
+    /**
+     * Gets the part of the shipped bytes sent in catch-up mode: snapshots and whole segments.
+     *
+     * @return The catch-up bytes.
+     */
+    public long getCatchUpBytes() {
+        return catchUpBytes.get();
+    }
+
+    /**
+     * Gets, for each connected follower, the position up to which it last
+     * acknowledged that its replica is durable.
+     *
+     * @return The acknowledged positions, in the order the followers connected.
+     */
+    public List<JournalPosition> getAcknowledgedPositions() {
+        List<JournalPosition> positions = new ArrayList<>();
+        for (Follower follower : followers) {
+            positions.add(follower.acknowledged);
+        }
+        return positions;
+    }
+
+    /**
+     * Gets the lowest commit sequence number that every connected follower has
+     * acknowledged applying and making durable. Records are shipped in journal
+     * order, which follows commit order per account only, so records with lower
+     * numbers may still be in flight.
+     *
+     * @return The lowest acknowledged sequence, or 0 if no follower is connected.
+     */
+    public long getAcknowledgedSequence() {
+        long lowest = Long.MAX_VALUE;
+        for (Follower follower : followers) {
+            lowest = Math.min(lowest, follower.acknowledgedSequence);
+        }
+        return lowest == Long.MAX_VALUE ? 0 : lowest;
+    }
+
+    /**
+     * Gets the latest failure to accept a follower or to replicate to one.
+     *
+     * @return The failure, or null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops accepting followers and disconnects the connected ones. The journal stays open.
+     *
+     * @throws IOException if the listening socket cannot be closed, or the latest failure to accept a follower or
+     *                     to replicate to one.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Follower follower : followers) {
+            follower.channel.close();
+        }
+        boolean interrupted = false;
+        while (acceptor.isAlive()) {
+            try {
+                acceptor.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                backoffMillis = 0;
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Thread sender = new Thread(() -> serve(channel), "journal-shipper-" + connections.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                failure = e;
+                backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoffMillis * 2));
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs on a follower's sender thread until the follower or the shipper goes away.
+     */
+    private void serve(SocketChannel channel) {
+        Follower follower = new Follower(channel);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (in.readUnsignedByte() != ReplicationProtocol.HELLO) {
+                throw new IOException("Expected a hello from the follower.");
+            }
+            JournalPosition position = start(channel, new JournalPosition(in.readLong(), in.readInt()));
+            follower.acknowledged = position;
+            followers.add(follower);
+            Thread acknowledgements = new Thread(() -> readAcknowledgements(in, follower),
+                    Thread.currentThread().getName() + "-acks");
+            acknowledgements.setDaemon(true);
+            acknowledgements.start();
+            ship(channel, position);
+        } catch (EOFException | AsynchronousCloseException e) {
+            // The follower went away or the shipper closed.
+        } catch (IOException e) {
+            if (!closed && !follower.gone) {
+                failure = e;
+                sendError(channel, e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(follower);
+            // Closed only here, so that the error frame above is sent first.
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already gone.
+            }
+        }
+    }
+
+    /**
+     * Works out where to start shipping from the follower's position, sending
+     * the latest snapshot first to an empty follower.
+     */
+    private JournalPosition start(SocketChannel channel, JournalPosition replica) throws IOException {
+        List<Path> segments = Journal.segments(journal.getDirectory());
+        long oldest = segments.isEmpty() ? 1 : JournalSegment.numberOf(segments.get(0));
+        if (replica.getSegment() == 0) {
+            Path latest = SnapshotFile.latest(journal.getDirectory());
+            if (latest != null) {
+                sendSnapshot(channel, latest);
+            }
+            return new JournalPosition(oldest, 0);
+        }
+        if (replica.getSegment() < oldest) {
+            throw new IOException("Follower is at segment " + replica.getSegment() + " but the oldest segment left is "
+                    + oldest + "; it must be reseeded.");
+        }
+        if (replica.isAfter(journal.getDurablePosition())) {
+            throw new IOException("Follower at " + replica + " is ahead of the leader at "
+                    + journal.getDurablePosition() + ".");
+        }
+        return replica;
+    }
+
+    /**
+     * Sends every durable record after {@code position}: the rest of each
+     * complete segment, then the current segment as it grows, at most
+     * {@value #MAX_FRAME_BYTES} bytes to a frame, with a heartbeat whenever
+     * nothing became durable for a while.
+     */
+    private void ship(SocketChannel channel, JournalPosition position) throws IOException, InterruptedException {
+        FileChannel file = null;
+        ByteBuffer segment = null;
+        long segmentNumber = 0;
+        try {
+            while (!closed) {
+                JournalPosition durable = journal.awaitDurablePosition(position, HEARTBEAT_NANOS);
+                if (segmentNumber != position.getSegment()) {
+                    if (file != null) {
+                        file.close();
+                    }
+                    Path path = journal.getDirectory().resolve(JournalSegment.fileName(position.getSegment()));
+                    file = FileChannel.open(path, StandardOpenOption.READ);
+                    segment = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                    segmentNumber = position.getSegment();
+                }
+                boolean complete = position.getSegment() < durable.getSegment();
+                int end = frameEnd(segment, position.getOffset(), complete ? segment.limit() : durable.getOffset());
+                boolean last = complete && (end + 4 > segment.limit() || segment.getInt(end) == 0);
+                if (complete && !last && end == position.getOffset()) {
+                    throw new IOException("Corrupt record at offset " + end + " in segment " + position.getSegment());
+                }
+                boolean catchUp = complete && (position.getOffset() == 0
+                        || durable.getSegment() - position.getSegment() > 1);
+                sendData(channel, file, position, end - position.getOffset(), durable, catchUp);
+                position = last ? new JournalPosition(position.getSegment() + 1, 0)
+                        : new JournalPosition(position.getSegment(), end);
+            }
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Finds where a frame starting at {@code from} ends: after the last whole
+     * record below {@code limit} that keeps the frame within its size, but
+     * after at least one record. A frame starting at offset 0 carries the
+     * segment header too.
+     */
+    private static int frameEnd(ByteBuffer segment, int from, int limit) {
+        int first = Math.max(from, JournalSegment.HEADER_SIZE);
+        int position = first;
+        while (position + JournalSegment.RECORD_HEADER_SIZE <= limit) {
+            int length = segment.getInt(position);
+            int next = position + JournalSegment.RECORD_HEADER_SIZE + length;
+            if (length <= 0 || length > limit - position - JournalSegment.RECORD_HEADER_SIZE
+                    || position > first && next - from > MAX_FRAME_BYTES) {
+                break;
+            }
+            position = next;
+        }
+        return position;
+    }
+
+    private void sendData(SocketChannel channel, FileChannel file, JournalPosition from, int length,
+                          JournalPosition durable, boolean catchUp) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ReplicationProtocol.DATA_HEADER_SIZE);
+        header.put((byte) ReplicationProtocol.DATA)
+                .putLong(from.getSegment())
+                .putInt((int) file.size())
+                .putInt(from.getOffset())
+                .putInt(length)
+                .putLong(durable.getSegment())
+                .putInt(durable.getOffset())
+                .putLong(System.currentTimeMillis())
+                .put((byte) (catchUp ? 1 : 0))
+                .flip();
+        writeFully(channel, header);
+        transferFully(file, from.getOffset(), length, channel);
+        bytesShipped.addAndGet(length);
+        if (catchUp) {
+            catchUpBytes.addAndGet(length);
+        }
+    }
+
+    private void sendSnapshot(SocketChannel channel, Path snapshot) throws IOException {
+        long sequence;
+        try (SnapshotFile file = SnapshotFile.open(snapshot)) {
+            sequence = file.getSequence();
+        }
+        try (FileChannel file = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long length = file.size();
+            ByteBuffer header = ByteBuffer.allocate(ReplicationProtocol.SNAPSHOT_HEADER_SIZE);
+            header.put((byte) ReplicationProtocol.SNAPSHOT).putLong(sequence).putLong(length).flip();
+            writeFully(channel, header);
+            transferFully(file, 0, length, channel);
+            bytesShipped.addAndGet(length);
+            catchUpBytes.addAndGet(length);
+        }
+    }
+
+    private static void sendError(SocketChannel channel, String message) {
+        try {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(frame);
+            out.writeByte(ReplicationProtocol.ERROR);
+            out.writeUTF(String.valueOf(message));
+            writeFully(channel, ByteBuffer.wrap(frame.toByteArray()));
+        } catch (IOException e) {
+            // The follower is gone; there is no one left to tell.
+        }
+    }
+
+    private void readAcknowledgements(DataInputStream in, Follower follower) {
+        try {
+            while (true) {
+                if (in.readUnsignedByte() != ReplicationProtocol.ACK) {
+                    throw new IOException("Expected an acknowledgement from the follower.");
+                }
+                follower.acknowledged = new JournalPosition(in.readLong(), in.readInt());
+                follower.acknowledgedSequence = in.readLong();
+            }
+        } catch (EOFException | ClosedChannelException e) {
+            // The follower went away or the shipper closed.
+            follower.gone = true;
+        } catch (IOException e) {
+            follower.gone = true;
+            if (!closed) {
+                failure = e;
+            }
+            try {
+                follower.channel.close();
+            } catch (IOException ignored) {
+                // Already failing.
+            }
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void transferFully(FileChannel file, long position, long length, SocketChannel channel)
+            throws IOException {
+        long sent = 0;
+        while (sent < length) {
+            sent += file.transferTo(position + sent, length - sent, channel);
+        }
+    }
+
+    /**
+     * A connected follower. Its fields are written by its acknowledgement reader.
+     */
+    private static final class Follower {
+        private final SocketChannel channel;
+        private volatile JournalPosition acknowledged = new JournalPosition(0, 0);
+        private volatile long acknowledgedSequence;
+        private volatile boolean gone;
+
+        private Follower(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
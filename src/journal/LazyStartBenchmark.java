@@ -0,0 +1,138 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import utility.*;
+
+public class LazyStartBenchmark {
+
+    private static final JournalSettings SETTINGS = new JournalSettings(64 << 20, 1 << 16, Duration.ofMillis(1));
+
+    /**
+     * Measures time to first transaction of a {@link DurableLedger} restarted
+     * from a large snapshot, opened eagerly and lazily, then the warm-up of the
+     * lazy ledger and the cost of first touches. The snapshot is written
+     * directly, with a short, skewed journal tail after it and a ranking of hot
+     * accounts, as a previous run would leave them.
+     *
+     * <p>The full-size default needs a heap large enough to hold every account
+     * for the eager restart; pass a smaller size to try it out.
+     *
+     * @param args Optional: number of accounts, then number of transactions after the snapshot,
+     *             then number of hot accounts.
+     */
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int hot = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+
+        System.out.println("--- Lazy Start Benchmark ---");
+        System.out.printf("%,d accounts, %,d transactions after the snapshot, %,d hot accounts%n",
+                accounts, transactions, hot);
+        Path directory = Files.createTempDirectory("lazy-start-bench");
+        try {
+            long start = System.nanoTime();
+            SnapshotFile.write(directory, accounts, visitor -> {
+                for (int i = 0; i < accounts; i++) {
+                    visitor.visit(id(i), holder(i), Money.ofCents(100_000));
+                }
+            });
+            Random random = new Random(42);
+            int[] hotSet = new int[Math.max(1, hot)];
+            List<AccountID> ranking = new ArrayList<>(hotSet.length);
+            for (int i = 0; i < hotSet.length; i++) {
+                hotSet[i] = random.nextInt(accounts);
+                ranking.add(id(hotSet[i]));
+            }
+            try (Journal journal = Journal.open(directory, SETTINGS)) {
+                long sequence = accounts;
+                for (int t = 0; t < transactions; t++) {
+                    int account = random.nextInt(10) < 9 ? hotSet[random.nextInt(hotSet.length)]
+                            : random.nextInt(accounts);
+                    journal.append(JournalRecord.deposit(++sequence, t, id(account),
+                            Money.ofCents(1 + random.nextInt(1000))));
+                }
+            }
+            new HotAccounts(hot, ranking).save(directory);
+            System.out.printf("Generated in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            System.out.printf("%-10s%14s%18s%14s%n", "restart", "open ms", "first txn ms", "heap MB");
+            measureEager(directory, hotSet[0]);
+            measureLazy(directory, hotSet, accounts, random);
+        } finally {
+            delete(directory);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void measureEager(Path directory, int account) throws IOException {
+        long start = System.nanoTime();
+        try (DurableLedger ledger = DurableLedger.open(directory, SETTINGS)) {
+            long opened = System.nanoTime();
+            ledger.deposit(id(account), Money.ofCents(1));
+            long first = System.nanoTime();
+            System.out.printf("%-10s%,14.1f%,18.1f%,14d%n", "eager", (opened - start) / 1e6, (first - start) / 1e6,
+                    usedHeapMegabytes());
+        }
+    }
+
+    private static void measureLazy(Path directory, int[] hotSet, int accounts, Random random) throws IOException {
+        long start = System.nanoTime();
+        try (DurableLedger ledger = DurableLedger.openLazily(directory, SETTINGS, hotSet.length)) {
+            long opened = System.nanoTime();
+            ledger.deposit(id(hotSet[0]), Money.ofCents(1));
+            long first = System.nanoTime();
+            System.out.printf("%-10s%,14.1f%,18.1f%,14d%n", "lazy", (opened - start) / 1e6, (first - start) / 1e6,
+                    usedHeapMegabytes());
+
+            int warmed = ledger.awaitWarmUp();
+            System.out.printf("Warm-up loaded %,d hot accounts in %,d ms after open%n", warmed,
+                    (System.nanoTime() - opened) / 1_000_000);
+
+            int touches = Math.min(10_000, hotSet.length);
+            long hotNanos = 0;
+            long coldNanos = 0;
+            for (int i = 0; i < touches; i++) {
+                long t0 = System.nanoTime();
+                ledger.getBalance(id(hotSet[i]));
+                long t1 = System.nanoTime();
+                ledger.getBalance(id(random.nextInt(accounts)));
+                hotNanos += t1 - t0;
+                coldNanos += System.nanoTime() - t1;
+            }
+            System.out.printf("%-24s%14s%n", "balance read", "avg us");
+            System.out.printf("%-24s%,14.2f%n", "warmed account", hotNanos / 1e3 / touches);
+            System.out.printf("%-24s%,14.2f%n", "first touch", coldNanos / 1e3 / touches);
+            System.out.printf("%,d of %,d accounts loaded%n", ledger.getLoadedAccounts(), accounts);
+        }
+    }
+
+    private static long usedHeapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+
+    private static AccountID id(int index) {
+        return new AccountID("ACC" + index);
+    }
+
+    private static AccountHolder holder(int index) {
+        return new AccountHolder("Holder " + index);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
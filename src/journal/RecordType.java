@@ -0,0 +1,91 @@
+package journal;
+
+import java.io.IOException;
+import ledger.VersionedLedger;
+
+/**
+ * The kinds of journal record, each knowing which balances it changes.
+ */
+public enum RecordType {
+
+    OPEN(1) {
+        @Override
+        void post(JournalRecord record, JournalRecovery.Postings postings) {
+            postings.open(record.getAccount(), record.getHolder());
+        }
+
+        @Override
+        void apply(JournalRecord record, VersionedLedger ledger) {
+            ledger.open(record.getHolder(), record.getAccount());
+        }
+    },
+
+    DEPOSIT(2) {
+        @Override
+        void post(JournalRecord record, JournalRecovery.Postings postings) {
+            postings.post(record.getAccount(), record.getAmount().getAmountInCents());
+        }
+
+        @Override
+        void apply(JournalRecord record, VersionedLedger ledger) {
+            ledger.deposit(record.getAccount(), record.getAmount());
+        }
+    },
+
+    WITHDRAW(3) {
+        @Override
+        void post(JournalRecord record, JournalRecovery.Postings postings) {
+            postings.post(record.getAccount(), -record.getAmount().getAmountInCents());
+        }
+
+        @Override
+        void apply(JournalRecord record, VersionedLedger ledger) {
+            ledger.withdraw(record.getAccount(), record.getAmount());
+        }
+    },
+
+    TRANSFER(4) {
+        @Override
+        void post(JournalRecord record, JournalRecovery.Postings postings) {
+            long cents = record.getAmount().getAmountInCents();
+            postings.post(record.getAccount(), -cents);
+            postings.post(record.getCounterparty(), cents);
+        }
+
+        @Override
+        void apply(JournalRecord record, VersionedLedger ledger) {
+            ledger.transfer(record.getAccount(), record.getCounterparty(), record.getAmount());
+        }
+    };
+
+    private static final RecordType[] BY_CODE = {null, OPEN, DEPOSIT, WITHDRAW, TRANSFER};
+
+    private final int code;
+
+    RecordType(int code) {
+        this.code = code;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    static RecordType fromCode(int code) throws IOException {
+        if (code <= 0 || code >= BY_CODE.length) {
+            throw new IOException("Unknown journal record type: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Reports the accounts a record opens and the balance changes it makes, one per account.
+     */
+    abstract void post(JournalRecord record, JournalRecovery.Postings postings);
+
+    /**
+     * Commits the operation a record describes to a ledger, as a replica applies
+     * the records it receives. The operation passed validation on the ledger that
+     * journaled it, so it passes again on a ledger that applied the same records.
+     */
+    abstract void apply(JournalRecord record, VersionedLedger ledger);
+}
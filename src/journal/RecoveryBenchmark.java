@@ -0,0 +1,118 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import utility.*;
+
+public class RecoveryBenchmark {
+
+    private static final JournalSettings SETTINGS = new JournalSettings(256 << 20, 1 << 16, Duration.ofMillis(50));
+
+    /**
+     * Measures restart time of a {@link DurableLedger}: from the latest snapshot
+     * plus the journal tail, with one thread and with one thread per processor,
+     * and from the journal alone. The journal and snapshot are generated directly,
+     * with a snapshot taken shortly before the end of the history.
+     *
+     * <p>The full-size defaults need about 50 GB of disk and a heap large enough
+     * for every account; pass smaller sizes to try it out.
+     *
+     * @param args Optional: number of accounts, then number of transactions, then the
+     *             fraction of transactions committed after the snapshot.
+     */
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        long transactions = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000_000L;
+        double tailFraction = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("--- Recovery Benchmark ---");
+        System.out.printf("%,d accounts, %,d transactions, %.1f%% after the snapshot%n",
+                accounts, transactions, tailFraction * 100);
+        Path directory = Files.createTempDirectory("recovery-bench");
+        try {
+            long start = System.nanoTime();
+            generate(directory, accounts, transactions, (long) (transactions * (1 - tailFraction)));
+            System.out.printf("Generated in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+            System.out.printf("%-22s%14s%14s%14s%16s%n", "restart from", "threads", "snapshot ms", "replay ms",
+                    "records");
+            measure("snapshot + tail", directory, 1);
+            if (processors > 1) {
+                measure("snapshot + tail", directory, processors);
+            }
+            for (Path snapshot : SnapshotFile.list(directory)) {
+                Files.delete(snapshot);
+            }
+            measure("journal only", directory, processors);
+        } finally {
+            delete(directory);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    /**
+     * Writes a journal of account openings followed by random deposits and
+     * transfers, and a snapshot of the balances after {@code snapshotAfter} transactions.
+     */
+    private static void generate(Path directory, int accounts, long transactions, long snapshotAfter)
+            throws IOException {
+        long[] balances = new long[accounts];
+        Random random = new Random(42);
+        long sequence = 0;
+        try (Journal journal = Journal.open(directory, SETTINGS)) {
+            for (int i = 0; i < accounts; i++) {
+                journal.append(JournalRecord.open(++sequence, 0, holder(i), id(i)));
+            }
+            for (long t = 0; t < transactions; t++) {
+                if (t == snapshotAfter) {
+                    SnapshotFile.write(directory, sequence, visitor -> {
+                        for (int i = 0; i < accounts; i++) {
+                            visitor.visit(id(i), holder(i), Money.ofCents(balances[i]));
+                        }
+                    });
+                }
+                int from = random.nextInt(accounts);
+                long cents = 1 + random.nextInt(10_000);
+                if (balances[from] >= cents && random.nextBoolean()) {
+                    int to = random.nextInt(accounts);
+                    balances[from] -= cents;
+                    balances[to] += cents;
+                    journal.append(JournalRecord.transfer(++sequence, t, id(from), id(to), Money.ofCents(cents)));
+                } else {
+                    balances[from] += cents;
+                    journal.append(JournalRecord.deposit(++sequence, t, id(from), Money.ofCents(cents)));
+                }
+            }
+        }
+    }
+
+    private static void measure(String label, Path directory, int threads) throws IOException {
+        try (DurableLedger ledger = DurableLedger.open(directory, SETTINGS, threads)) {
+            RecoveryStats stats = ledger.getRecoveryStats();
+            System.out.printf("%-22s%14d%,14d%,14d%,16d%n", label, threads, stats.getSnapshotLoadNanos() / 1_000_000,
+                    stats.getReplayNanos() / 1_000_000, stats.getReplayedRecords());
+        }
+    }
+
+    private static AccountID id(int index) {
+        return new AccountID("ACC" + index);
+    }
+
+    private static AccountHolder holder(int index) {
+        return new AccountHolder("Holder " + index);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
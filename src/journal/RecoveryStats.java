@@ -0,0 +1,81 @@
+package journal;
+
+/**
+ * What a {@link DurableLedger} recovered when it was opened, and how long it took.
+ * This class is immutable.
+ */
+public final class RecoveryStats {
+
+    private final long snapshotSequence;
+    private final long snapshotAccounts;
+    private final long replayedRecords;
+    private final long lastSequence;
+    private final long accountCount;
+    private final long snapshotLoadNanos;
+    private final long replayNanos;
+
+    RecoveryStats(long snapshotSequence, long snapshotAccounts, long replayedRecords, long lastSequence,
+                  long accountCount, long snapshotLoadNanos, long replayNanos) {
+        this.snapshotSequence = snapshotSequence;
+        this.snapshotAccounts = snapshotAccounts;
+        this.replayedRecords = replayedRecords;
+        this.lastSequence = lastSequence;
+        this.accountCount = accountCount;
+        this.snapshotLoadNanos = snapshotLoadNanos;
+        this.replayNanos = replayNanos;
+    }
+
+    /**
+     * Gets the sequence number of the snapshot recovery started from.
+     *
+     * @return The snapshot's sequence number, or 0 if there was no snapshot.
+     */
+    public long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
+    public long getSnapshotAccounts() {
+        return snapshotAccounts;
+    }
+
+    /**
+     * Gets the number of journal records replayed on top of the snapshot.
+     *
+     * @return The number of records committed after the snapshot.
+     */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getAccountCount() {
+        return accountCount;
+    }
+
+    public long getSnapshotLoadNanos() {
+        return snapshotLoadNanos;
+    }
+
+    /**
+     * Gets the time spent replaying the journal and restoring the accounts into the ledger.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getReplayNanos() {
+        return replayNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RecoveryStats[snapshotSequence=" + snapshotSequence +
+               ", snapshotAccounts=" + snapshotAccounts +
+               ", replayedRecords=" + replayedRecords +
+               ", lastSequence=" + lastSequence +
+               ", accounts=" + accountCount +
+               ", snapshotLoadMs=" + snapshotLoadNanos / 1_000_000 +
+               ", replayMs=" + replayNanos / 1_000_000 + "]";
+    }
+}
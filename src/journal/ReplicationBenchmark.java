@@ -0,0 +1,165 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import ledger.LedgerSnapshot;
+import utility.*;
+
+public class ReplicationBenchmark {
+
+    private static final JournalSettings SETTINGS = new JournalSettings(16 << 20, 1 << 16, Duration.ofMillis(1));
+
+    private static final int WRITERS = 64;
+
+    /**
+     * Replicates a {@link DurableLedger} to a {@link ReplicationFollower} over
+     * loopback. The leader starts from a generated backlog with a snapshot
+     * halfway, so the follower catches up from the snapshot and whole segments;
+     * then it streams while concurrent writers keep the leader committing,
+     * reporting the lag each second. Finally it checks that the follower holds
+     * the leader's balances and times its promotion to leader.
+     *
+     * @param args Optional: number of accounts, then backlog transactions, then seconds of streaming.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int backlog = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("--- Replication Benchmark ---");
+        System.out.printf("%,d accounts, %,d backlog transactions, %d s of streaming%n", accounts, backlog, seconds);
+        Path leaderDirectory = Files.createTempDirectory("replication-leader");
+        Path followerDirectory = Files.createTempDirectory("replication-follower");
+        try {
+            generate(leaderDirectory, accounts, backlog);
+            DurableLedger leader = DurableLedger.open(leaderDirectory, SETTINGS);
+            try (JournalShipper shipper = JournalShipper.start(leader.getJournal(), 0)) {
+                long catchUpStart = System.nanoTime();
+                try (ReplicationFollower follower = ReplicationFollower.start(followerDirectory, shipper.getPort())) {
+                    if (!follower.awaitApplied(leader.getJournal().getDurablePosition(), Duration.ofMinutes(5))) {
+                        throw new IllegalStateException("Follower did not catch up: " + follower.getFailure());
+                    }
+                    long catchUpNanos = System.nanoTime() - catchUpStart;
+                    ReplicationStats caughtUp = follower.getStats();
+                    long received = caughtUp.getCatchUpBytes() + caughtUp.getStreamedBytes();
+                    System.out.printf("Catch-up: %,d MB in %,d ms, %,.0f MB/s, %,d MB as snapshot and whole segments, "
+                                    + "%,d records applied%n", received >> 20, catchUpNanos / 1_000_000,
+                            received / 1048576.0 / (catchUpNanos / 1e9), caughtUp.getCatchUpBytes() >> 20,
+                            caughtUp.getAppliedRecords());
+
+                    System.out.printf("%-8s%16s%16s%14s%12s%14s%n", "second", "commits", "applied", "lag bytes",
+                            "lag ms", "acked seq");
+                    LongAdder commits = new LongAdder();
+                    long streamStart = System.nanoTime();
+                    long deadline = streamStart + seconds * 1_000_000_000L;
+                    try (ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor()) {
+                        for (int w = 0; w < WRITERS; w++) {
+                            writers.execute(() -> {
+                                ThreadLocalRandom random = ThreadLocalRandom.current();
+                                while (System.nanoTime() < deadline) {
+                                    leader.deposit(id(random.nextInt(accounts)), Money.ofCents(1));
+                                    commits.increment();
+                                }
+                            });
+                        }
+                        for (int second = 1; second <= seconds; second++) {
+                            Thread.sleep(Math.max(0, (streamStart + second * 1_000_000_000L - System.nanoTime())
+                                    / 1_000_000));
+                            ReplicationStats stats = follower.getStats();
+                            System.out.printf("%-8d%,16d%,16d%,14d%,12d%,14d%n", second, commits.sum(),
+                                    stats.getAppliedRecords(), stats.getLagBytes(), stats.getLagMillis(),
+                                    shipper.getAcknowledgedSequence());
+                        }
+                    }
+                    if (!follower.awaitApplied(leader.getJournal().getDurablePosition(), Duration.ofMinutes(1))) {
+                        throw new IllegalStateException("Follower did not catch up: " + follower.getFailure());
+                    }
+                    System.out.printf("Streamed %,d MB, %,d MB shipped in total%n",
+                            follower.getStats().getStreamedBytes() >> 20, shipper.getBytesShipped() >> 20);
+
+                    int mismatches = 0;
+                    try (LedgerSnapshot expected = leader.snapshot(); LedgerSnapshot actual = follower.snapshot()) {
+                        for (int i = 0; i < accounts; i++) {
+                            if (!expected.getBalance(id(i)).equals(actual.getBalance(id(i)))) {
+                                mismatches++;
+                            }
+                        }
+                        System.out.printf("Leader total %s, follower total %s, %,d balances differ%n",
+                                expected.totalBalance(), actual.totalBalance(), mismatches);
+                    }
+
+                    leader.close();
+                    long promoteStart = System.nanoTime();
+                    try (DurableLedger promoted = follower.promote(SETTINGS)) {
+                        long promoteNanos = System.nanoTime() - promoteStart;
+                        promoted.deposit(id(0), Money.ofCents(1));
+                        System.out.printf("Promoted in %,.1f ms, next sequence %,d%n", promoteNanos / 1e6,
+                                promoted.getCommittedSequence());
+                    }
+                }
+            } finally {
+                leader.close();
+            }
+        } finally {
+            delete(leaderDirectory);
+            delete(followerDirectory);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    /**
+     * Writes a journal of account openings followed by random deposits and
+     * transfers, and a snapshot of the balances halfway through.
+     */
+    private static void generate(Path directory, int accounts, int transactions) throws IOException {
+        long[] balances = new long[accounts];
+        Random random = new Random(42);
+        long sequence = 0;
+        try (Journal journal = Journal.open(directory, SETTINGS)) {
+            for (int i = 0; i < accounts; i++) {
+                journal.append(JournalRecord.open(++sequence, 0, new AccountHolder("Holder " + i), id(i)));
+            }
+            for (int t = 0; t < transactions; t++) {
+                if (t == transactions / 2) {
+                    SnapshotFile.write(directory, sequence, visitor -> {
+                        for (int i = 0; i < accounts; i++) {
+                            visitor.visit(id(i), new AccountHolder("Holder " + i), Money.ofCents(balances[i]));
+                        }
+                    });
+                }
+                int from = random.nextInt(accounts);
+                long cents = 1 + random.nextInt(10_000);
+                if (balances[from] >= cents && random.nextBoolean()) {
+                    int to = random.nextInt(accounts);
+                    balances[from] -= cents;
+                    balances[to] += cents;
+                    journal.append(JournalRecord.transfer(++sequence, t, id(from), id(to), Money.ofCents(cents)));
+                } else {
+                    balances[from] += cents;
+                    journal.append(JournalRecord.deposit(++sequence, t, id(from), Money.ofCents(cents)));
+                }
+            }
+        }
+    }
+
+    private static AccountID id(int index) {
+        return new AccountID("ACC" + index);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
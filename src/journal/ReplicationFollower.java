@@ -0,0 +1,549 @@
+package journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import ledger.LedgerSnapshot;
+import ledger.VersionedLedger;
+import utility.*;
+
+/**
+ * A warm standby fed by a {@link JournalShipper}: it keeps a replica of the
+ * leader's journal in its own directory and applies every record it receives
+ * to its own {@link VersionedLedger}, so it can take over with
+ * {@link #promote(JournalSettings)} without replaying anything.
+ *
+ * <p>One thread receives frames, writes them to the replica, checks each
+ * record against its checksum and applies it. A second thread makes the
+ * replica durable and acknowledges to the leader how far it is, as often as
+ * forces allow; the receiver never waits for it. Starting a follower on a
+ * directory that already holds a replica recovers the ledger from it and asks
+ * the leader only for what comes after.
+ */
+public final class ReplicationFollower implements AutoCloseable {
+
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final VersionedLedger ledger;
+    private final RecoveryStats recoveryStats;
+    private final SocketChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    private final Object fileLock = new Object();
+    private final Thread receiver;
+    private final Thread acknowledger;
+    private final CRC32C crc = new CRC32C();
+    private long snapshotSequence;
+    private FileChannel segmentFile;
+    private byte[] frame = new byte[COPY_BUFFER_SIZE];
+    private volatile JournalPosition applied;
+    private volatile JournalPosition acknowledged;
+    private volatile JournalPosition leaderPosition;
+    private volatile int segmentSize;
+    private volatile long appliedRecords;
+    private volatile long lastSequence;
+    private volatile long lagMillis;
+    private volatile long catchUpBytes;
+    private volatile long streamedBytes;
+    private volatile IOException failure;
+    private volatile boolean stopping;
+    private boolean promoted;
+
+    private ReplicationFollower(Path directory, VersionedLedger ledger, RecoveryStats recoveryStats,
+                                JournalPosition position, FileChannel segmentFile, SocketChannel channel) {
+        this.directory = directory;
+        this.ledger = ledger;
+        this.recoveryStats = recoveryStats;
+        this.snapshotSequence = recoveryStats.getSnapshotSequence();
+        this.lastSequence = recoveryStats.getLastSequence();
+        this.segmentFile = segmentFile;
+        this.applied = position;
+        this.acknowledged = position;
+        this.leaderPosition = position;
+        this.channel = channel;
+        this.receiver = new Thread(this::receiveLoop, "replication-receiver");
+        this.acknowledger = new Thread(this::acknowledgeLoop, "replication-acknowledger");
+        receiver.setDaemon(true);
+        acknowledger.setDaemon(true);
+        receiver.start();
+        acknowledger.start();
+    }
+
+    /**
+     * Recovers the replica in a directory, if any, and starts following a leader.
+     *
+     * @param directory  The replica directory; created if missing. It must not hold another leader's replica.
+     *                   Must not be null.
+     * @param leaderPort The loopback port of the leader's {@link JournalShipper}.
+     * @return The running follower.
+     * @throws IOException if the replica cannot be recovered or the leader cannot be reached.
+     */
+    public static ReplicationFollower start(Path directory, int leaderPort) throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        Files.createDirectories(directory);
+        List<Path> segments = JournalSegment.list(directory);
+        JournalPosition position = new JournalPosition(0, 0);
+        FileChannel segmentFile = null;
+        if (segments.isEmpty()) {
+            for (Path snapshot : SnapshotFile.list(directory)) {
+                Files.delete(snapshot);
+            }
+        } else {
+            JournalSegment tail = JournalSegment.openForAppend(segments.get(segments.size() - 1));
+            position = new JournalPosition(tail.number(), tail.position());
+            tail.close();
+            segmentFile = FileChannel.open(tail.path(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        SocketChannel channel = null;
+        try {
+            VersionedLedger ledger = new VersionedLedger();
+            RecoveryStats stats = JournalRecovery.recover(directory, ledger, Runtime.getRuntime().availableProcessors());
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), leaderPort));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ByteBuffer hello = ByteBuffer.allocate(ReplicationProtocol.HELLO_SIZE);
+            hello.put((byte) ReplicationProtocol.HELLO).putLong(position.getSegment()).putInt(position.getOffset())
+                    .flip();
+            while (hello.hasRemaining()) {
+                channel.write(hello);
+            }
+            return new ReplicationFollower(directory, ledger, stats, position, segmentFile, channel);
+        } catch (IOException | RuntimeException e) {
+            if (segmentFile != null) {
+                segmentFile.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the latest applied balance of an account.
+     *
+     * @param id The account to read.
+     * @return The balance.
+     * @throws IllegalArgumentException if no such account has been replicated.
+     */
+    public Money getBalance(AccountID id) {
+        return ledger.getBalance(id);
+    }
+
+    /**
+     * Opens a consistent snapshot of the applied state, for reads on the standby.
+     *
+     * @return The snapshot; close it when done.
+     */
+    public LedgerSnapshot snapshot() {
+        return ledger.snapshot();
+    }
+
+    /**
+     * Gets how far this follower has caught up with its leader.
+     *
+     * @return The current replication statistics.
+     */
+    public ReplicationStats getStats() {
+        JournalPosition at = applied;
+        JournalPosition leader = leaderPosition;
+        long lagBytes = leader.getSegment() == at.getSegment()
+                ? leader.getOffset() - at.getOffset()
+                : (leader.getSegment() - at.getSegment()) * segmentSize + leader.getOffset() - at.getOffset();
+        return new ReplicationStats(at, acknowledged, leader, appliedRecords, lastSequence, Math.max(0, lagBytes),
+                lagMillis, catchUpBytes, streamedBytes);
+    }
+
+    /**
+     * Gets what the start of this follower recovered from its replica.
+     */
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    /**
+     * Tells whether the follower is still receiving from its leader.
+     *
+     * @return false once the leader went away, replication failed or the follower was stopped.
+     */
+    public boolean isConnected() {
+        return receiver.isAlive();
+    }
+
+    /**
+     * Gets the reason replication stopped, if it stopped on its own.
+     *
+     * @return The failure, or null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until the records up to a position of the leader's journal are applied.
+     *
+     * @param position A position of the leader's journal, such as {@link Journal#getDurablePosition()}.
+     *                 Must not be null.
+     * @param timeout  The longest time to wait. Must not be null.
+     * @return false if the timeout passed or replication stopped first.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitApplied(JournalPosition position, Duration timeout) throws InterruptedException {
+        Objects.requireNonNull(position, "Position must not be null.");
+        long deadline = System.nanoTime() + Objects.requireNonNull(timeout, "Timeout must not be null.").toNanos();
+        lock.lock();
+        try {
+            while (position.isAfter(applied)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !receiver.isAlive()) {
+                    return false;
+                }
+                progress.awaitNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops following and turns the replica into a durable ledger that journals
+     * to it, as the new leader. Records received but not yet applied are lost
+     * with the connection, as they would be in a crash of the follower.
+     *
+     * @param settings Journal settings for the new leader. Must not be null.
+     * @return The promoted ledger.
+     * @throws IOException if the replica cannot be opened as a journal.
+     * @throws IllegalStateException if this follower was already promoted.
+     */
+    public DurableLedger promote(JournalSettings settings) throws IOException {
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        synchronized (this) {
+            if (promoted) {
+                throw new IllegalStateException("Follower was already promoted.");
+            }
+            promoted = true;
+        }
+        stop();
+        ledger.advanceSequence(lastSequence);
+        return DurableLedger.takeOver(ledger, directory, settings, recoveryStats);
+    }
+
+    /**
+     * Stops following and closes the replica. The replica can be followed again later.
+     *
+     * @throws IOException if the replica cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    private void stop() throws IOException {
+        stopping = true;
+        channel.close();
+        lock.lock();
+        try {
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        for (Thread thread : new Thread[]{receiver, acknowledger}) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (fileLock) {
+            if (segmentFile != null) {
+                segmentFile.force(true);
+                segmentFile.close();
+                segmentFile = null;
+            }
+        }
+    }
+
+    /**
+     * Runs on the receiver thread until the connection ends.
+     */
+    private void receiveLoop() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+                    COPY_BUFFER_SIZE));
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    throw new EOFException("Leader closed the connection.");
+                }
+                switch (type) {
+                    case ReplicationProtocol.DATA -> receiveData(in);
+                    case ReplicationProtocol.SNAPSHOT -> receiveSnapshot(in);
+                    case ReplicationProtocol.ERROR -> throw new IOException("Leader: " + in.readUTF());
+                    default -> throw new IOException("Unknown replication frame: " + type);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Stopped.
+        } catch (IOException e) {
+            if (!stopping) {
+                failure = e;
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already stopping.
+            }
+            lock.lock();
+            try {
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void receiveData(DataInputStream in) throws IOException {
+        long segment = in.readLong();
+        int size = in.readInt();
+        int offset = in.readInt();
+        int length = in.readInt();
+        JournalPosition leader = new JournalPosition(in.readLong(), in.readInt());
+        long sentMillis = in.readLong();
+        boolean catchUp = in.readBoolean();
+        JournalPosition at = applied;
+        if (length > 0) {
+            if (offset == 0) {
+                if (segment <= at.getSegment()) {
+                    throw new IOException("Segment " + segment + " received again after segment " + at.getSegment());
+                }
+                startSegment(segment, size);
+            } else if (segment != at.getSegment() || offset != at.getOffset()) {
+                throw new IOException("Expected data at " + at + " but received " + segment + ":" + offset);
+            }
+            if (frame.length < length) {
+                frame = new byte[Math.max(length, frame.length * 2)];
+            }
+            in.readFully(frame, 0, length);
+            ByteBuffer bytes = ByteBuffer.wrap(frame, 0, length);
+            while (bytes.hasRemaining()) {
+                segmentFile.write(bytes, offset + bytes.position());
+            }
+            long sequence = apply(ByteBuffer.wrap(frame, 0, length).slice(), segment, offset);
+            if (catchUp) {
+                catchUpBytes += length;
+            } else {
+                streamedBytes += length;
+            }
+            at = new JournalPosition(segment, offset + length);
+            lock.lock();
+            try {
+                lastSequence = Math.max(lastSequence, sequence);
+                applied = at;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (size > 0) {
+            segmentSize = size;
+        }
+        leaderPosition = leader.isAfter(at) ? leader : at;
+        lagMillis = Math.max(0, System.currentTimeMillis() - sentMillis);
+    }
+
+    /**
+     * Applies the records of a frame, checking each against its checksum.
+     *
+     * @return The highest sequence number applied.
+     */
+    private long apply(ByteBuffer bytes, long segment, int offset) throws IOException {
+        int position = 0;
+        if (offset == 0) {
+            if (JournalSegment.readHeader(bytes, directory.resolve(JournalSegment.fileName(segment))) != segment) {
+                throw new IOException("Header of segment " + segment + " names another segment.");
+            }
+            position = JournalSegment.HEADER_SIZE;
+        }
+        long highest = 0;
+        long records = 0;
+        int length;
+        while ((length = JournalSegment.checkRecord(bytes, position, crc)) > 0) {
+            int start = position + JournalSegment.RECORD_HEADER_SIZE;
+            JournalRecord record = JournalRecord.readFrom(bytes.slice(start, length));
+            if (record.getSequence() > snapshotSequence) {
+                try {
+                    record.getType().apply(record, ledger);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    throw new IOException("Replica diverged at sequence " + record.getSequence() + ": "
+                            + e.getMessage(), e);
+                }
+            }
+            highest = Math.max(highest, record.getSequence());
+            records++;
+            position = start + length;
+        }
+        appliedRecords += records;
+        if (position != bytes.limit()) {
+            throw new IOException("Corrupt record received at offset " + (offset + position) + " of segment "
+                    + segment);
+        }
+        return highest;
+    }
+
+    /**
+     * Closes the previous replica segment, durable, and creates the next one at its full size.
+     */
+    private void startSegment(long segment, int size) throws IOException {
+        Path path = directory.resolve(JournalSegment.fileName(segment));
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        file.write(ByteBuffer.allocate(1), size - 1);
+        synchronized (fileLock) {
+            if (segmentFile != null) {
+                segmentFile.force(true);
+                segmentFile.close();
+            }
+            segmentFile = file;
+        }
+    }
+
+    /**
+     * Writes the snapshot an empty follower receives first and loads it.
+     */
+    private void receiveSnapshot(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long length = in.readLong();
+        if (applied.getSegment() != 0) {
+            throw new IOException("Snapshot received by a follower that is not empty.");
+        }
+        Path target = directory.resolve(SnapshotFile.fileName(sequence));
+        Path temp = directory.resolve(SnapshotFile.fileName(sequence) + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long copied = 0;
+            while (copied < length) {
+                int chunk = (int) Math.min(frame.length, length - copied);
+                in.readFully(frame, 0, chunk);
+                ByteBuffer bytes = ByteBuffer.wrap(frame, 0, chunk);
+                while (bytes.hasRemaining()) {
+                    file.write(bytes);
+                }
+                copied += chunk;
+            }
+            file.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (SnapshotFile snapshot = SnapshotFile.open(target)) {
+            ledger.advanceSequence(snapshot.getSequence());
+            for (int block = 0; block < snapshot.getBlockCount(); block++) {
+                snapshot.forEachInBlock(block, (id, holder, balance) -> ledger.restore(holder, id, balance));
+            }
+        }
+        snapshotSequence = sequence;
+        catchUpBytes += length;
+        lock.lock();
+        try {
+            lastSequence = Math.max(lastSequence, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs on the acknowledger thread: makes the replica durable up to the
+     * latest applied position and tells the leader, until the connection ends.
+     */
+    private void acknowledgeLoop() {
+        ByteBuffer ack = ByteBuffer.allocate(ReplicationProtocol.ACK_SIZE);
+        try {
+            while (true) {
+                JournalPosition target;
+                long sequence;
+                lock.lock();
+                try {
+                    while (applied.equals(acknowledged) && receiver.isAlive() && !stopping) {
+                        progress.awaitNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    }
+                    if (!receiver.isAlive() || stopping) {
+                        return;
+                    }
+                    target = applied;
+                    sequence = lastSequence;
+                } finally {
+                    lock.unlock();
+                }
+                synchronized (fileLock) {
+                    if (segmentFile != null) {
+                        segmentFile.force(false);
+                    }
+                }
+                ack.clear();
+                ack.put((byte) ReplicationProtocol.ACK).putLong(target.getSegment()).putInt(target.getOffset())
+                        .putLong(sequence).flip();
+                while (ack.hasRemaining()) {
+                    channel.write(ack);
+                }
+                acknowledged = target;
+            }
+        } catch (ClosedChannelException e) {
+            // Stopped.
+        } catch (IOException e) {
+            if (!stopping) {
+                failure = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Follows a leader until the process is killed, printing the replication lag every second.
+     *
+     * @param args The leader's shipper port, then the replica directory.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplicationFollower <leader port> <replica directory>");
+            return;
+        }
+        try (ReplicationFollower follower = start(Path.of(args[1]), Integer.parseInt(args[0]))) {
+            System.out.println("Following 127.0.0.1:" + args[0] + " into " + args[1] + ", recovered "
+                    + follower.getRecoveryStats());
+            while (follower.isConnected()) {
+                Thread.sleep(1000);
+                ReplicationStats stats = follower.getStats();
+                System.out.printf("applied %s, %,d records, lag %,d bytes / %,d ms%n", stats.getAppliedPosition(),
+                        stats.getAppliedRecords(), stats.getLagBytes(), stats.getLagMillis());
+            }
+            System.out.println("Replication stopped: " + follower.getFailure());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package journal;
+
+/**
+ * The frames exchanged between a {@link JournalShipper} and a {@link ReplicationFollower}.
+ *
+ * <p>The follower opens the connection with {@link #HELLO}: the position up to
+ * which its replica holds the leader's segments, or segment 0 if it holds
+ * nothing. The leader then sends, without waiting for acknowledgements:
+ * <ul>
+ *   <li>{@link #SNAPSHOT}: the snapshot sequence and file length, then the
+ *       file, sent once to an empty follower if the leader has a snapshot;</li>
+ *   <li>{@link #DATA}: a run of bytes of one segment, starting and ending at
+ *       record boundaries, with the leader's durable position and the time it
+ *       was read; a run starting at offset 0 starts a new segment. An empty run
+ *       is a heartbeat;</li>
+ *   <li>{@link #ERROR}: a message, after which the leader closes the connection.</li>
+ * </ul>
+ * The follower answers with {@link #ACK}s, each carrying the position up to
+ * which its replica is durable and the last sequence number applied.
+ * Everything is big-endian.
+ */
+final class ReplicationProtocol {
+
+    static final int HELLO = 1;
+    static final int ACK = 2;
+
+    static final int DATA = 1;
+    static final int SNAPSHOT = 2;
+    static final int ERROR = 3;
+
+    /** Type, segment, segment size, offset, length, leader segment, leader offset, time, catch-up flag. */
+    static final int DATA_HEADER_SIZE = 1 + 8 + 4 + 4 + 4 + 8 + 4 + 8 + 1;
+    static final int SNAPSHOT_HEADER_SIZE = 1 + 8 + 8;
+    static final int HELLO_SIZE = 1 + 8 + 4;
+    static final int ACK_SIZE = 1 + 8 + 4 + 8;
+
+    private ReplicationProtocol() {
+    }
+}
@@ -0,0 +1,128 @@
+package journal;
+
+/**
+ * A point-in-time view of how far a {@link ReplicationFollower} has caught up with its leader.
+ * This class is immutable.
+ */
+public final class ReplicationStats {
+
+    private final JournalPosition appliedPosition;
+    private final JournalPosition acknowledgedPosition;
+    private final JournalPosition leaderPosition;
+    private final long appliedRecords;
+    private final long lastSequence;
+    private final long lagBytes;
+    private final long lagMillis;
+    private final long catchUpBytes;
+    private final long streamedBytes;
+
+    ReplicationStats(JournalPosition appliedPosition, JournalPosition acknowledgedPosition,
+                     JournalPosition leaderPosition, long appliedRecords, long lastSequence, long lagBytes,
+                     long lagMillis, long catchUpBytes, long streamedBytes) {
+        this.appliedPosition = appliedPosition;
+        this.acknowledgedPosition = acknowledgedPosition;
+        this.leaderPosition = leaderPosition;
+        this.appliedRecords = appliedRecords;
+        this.lastSequence = lastSequence;
+        this.lagBytes = lagBytes;
+        this.lagMillis = lagMillis;
+        this.catchUpBytes = catchUpBytes;
+        this.streamedBytes = streamedBytes;
+    }
+
+    /**
+     * Gets the position up to which records are written to the replica and applied.
+     *
+     * @return The applied position.
+     */
+    public JournalPosition getAppliedPosition() {
+        return appliedPosition;
+    }
+
+    /**
+     * Gets the position up to which the replica is durable and the leader was told so.
+     *
+     * @return The acknowledged position.
+     */
+    public JournalPosition getAcknowledgedPosition() {
+        return acknowledgedPosition;
+    }
+
+    /**
+     * Gets the leader's durable position, as of the latest frame received.
+     *
+     * @return The leader's position.
+     */
+    public JournalPosition getLeaderPosition() {
+        return leaderPosition;
+    }
+
+    /**
+     * Gets the number of records received and applied since the follower started.
+     *
+     * @return The record count.
+     */
+    public long getAppliedRecords() {
+        return appliedRecords;
+    }
+
+    /**
+     * Gets the highest commit sequence number applied.
+     *
+     * @return The sequence number.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Gets the journal bytes durable on the leader and not yet applied, counting
+     * each segment in between as full.
+     *
+     * @return The lag in bytes.
+     */
+    public long getLagBytes() {
+        return lagBytes;
+    }
+
+    /**
+     * Gets the time from the leader reading its durable position to this follower
+     * applying the frame it sent, for the latest frame.
+     *
+     * @return The lag in milliseconds.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Gets the bytes received in catch-up mode: snapshots and whole segments.
+     *
+     * @return The catch-up bytes.
+     */
+    public long getCatchUpBytes() {
+        return catchUpBytes;
+    }
+
+    /**
+     * Gets the bytes received as the leader made them durable.
+     *
+     * @return The streamed bytes.
+     */
+    public long getStreamedBytes() {
+        return streamedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationStats[applied=" + appliedPosition +
+               ", acknowledged=" + acknowledgedPosition +
+               ", leader=" + leaderPosition +
+               ", appliedRecords=" + appliedRecords +
+               ", lastSequence=" + lastSequence +
+               ", lagBytes=" + lagBytes +
+               ", lagMillis=" + lagMillis +
+               ", catchUpBytes=" + catchUpBytes +
+               ", streamedBytes=" + streamedBytes + "]";
+    }
+}
@@ -0,0 +1,22 @@
+package journal;
+
+/**
+ * What a {@link JournalCompactor} does with a sealed segment whose records are
+ * all covered by the latest snapshot.
+ */
+public enum RetentionTier {
+
+    /**
+     * Replace the segment with a compressed {@link SegmentSummary} holding the
+     * net change and operation count of each account it touched. The individual
+     * operations are dropped.
+     */
+    SUMMARY,
+
+    /**
+     * Move the segment, compressed, to a cold archive directory, where
+     * {@link SegmentArchive#read(java.nio.file.Path, java.util.function.Consumer)}
+     * can still read every record.
+     */
+    ARCHIVE
+}
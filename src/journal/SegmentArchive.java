@@ -0,0 +1,111 @@
+package journal;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Journal segments moved to a cold archive directory by a {@link JournalCompactor}.
+ *
+ * <p>An archived segment is the header and records of the segment, without the
+ * unused tail, deflated into {@code journal-<number>.seg.z}. It is written to a
+ * temporary file, forced and then renamed, so it is either complete or absent.
+ */
+public final class SegmentArchive {
+
+    private static final String SUFFIX = ".z";
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private SegmentArchive() {
+    }
+
+    /**
+     * Deflates a segment into the archive directory, throttling every chunk read and written.
+     *
+     * @param segment The segment's bytes from its header up to its end-of-segment marker.
+     * @return The size of the archived file.
+     */
+    static long write(Path directory, long number, ByteBuffer segment, IoThrottle throttle) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(fileName(number));
+        Path temp = directory.resolve(fileName(number) + ".tmp");
+        long written;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DeflaterOutputStream out = new DeflaterOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), CHUNK_SIZE))) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            long reported = 0;
+            while (segment.hasRemaining()) {
+                int length = Math.min(chunk.length, segment.remaining());
+                segment.get(chunk, 0, length);
+                throttle.acquire(length + channel.position() - reported);
+                reported = channel.position();
+                out.write(chunk, 0, length);
+            }
+            out.finish();
+            out.flush();
+            written = channel.size();
+            throttle.acquire(written - reported);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return written;
+    }
+
+    /**
+     * Reads the records of an archived segment, as {@link Journal#readSegment(Path, long, Consumer)} does.
+     *
+     * @param archive       An archived segment file. Must not be null.
+     * @param afterSequence Records up to and including this sequence number are skipped.
+     * @param consumer      Receives each record. Must not be null.
+     * @throws IOException if the file cannot be read or holds a malformed or corrupt record.
+     */
+    public static void read(Path archive, long afterSequence, Consumer<JournalRecord> consumer) throws IOException {
+        Objects.requireNonNull(archive, "Path must not be null.");
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        byte[] bytes;
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(archive))) {
+            bytes = in.readAllBytes();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        JournalSegment.readHeader(buffer, archive);
+        buffer.position(JournalSegment.HEADER_SIZE);
+        Journal.readRecords(buffer, archive, afterSequence, false, consumer);
+    }
+
+    /**
+     * Lists the archived segments in a directory, oldest first.
+     *
+     * @param directory The archive directory. Must not be null.
+     * @return The archived segment files; empty if the directory does not exist.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static List<Path> list(Path directory) throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-")
+                    && file.getFileName().toString().endsWith(".seg" + SUFFIX)).sorted().toList();
+        }
+    }
+
+    static String fileName(long number) {
+        return JournalSegment.fileName(number) + SUFFIX;
+    }
+}
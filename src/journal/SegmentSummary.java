@@ -0,0 +1,236 @@
+package journal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.CRC32C;
+import java.util.zip.InflaterInputStream;
+import utility.*;
+
+/**
+ * The net effect of one compacted journal segment on each account it touched,
+ * written by a {@link JournalCompactor} in place of the segment.
+ *
+ * <p>Layout, big-endian: a header (magic, format version, segment number,
+ * first and last sequence, record count, account count, and the CRC32C of the
+ * header fields and the body, checked on open), then a deflated body
+ * with one entry per account, sorted by ID: the ID, the holder if the segment
+ * opened the account or an empty string otherwise, the net change in cents and
+ * the number of operations. Strings are written with
+ * {@link DataOutputStream#writeUTF(String)}.
+ *
+ * <p>Summaries are written to a temporary file, forced and then renamed, so a
+ * summary file is either complete or absent.
+ */
+public final class SegmentSummary {
+
+    static final String DIRECTORY = "summaries";
+    private static final int MAGIC = 0x4A53554D;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8 + 4 + 4;
+    private static final String PREFIX = "summary-";
+    private static final String SUFFIX = ".sum";
+
+    private final Path path;
+    private final long segmentNumber;
+    private final long firstSequence;
+    private final long lastSequence;
+    private final long recordCount;
+    private final int accountCount;
+
+    private SegmentSummary(Path path, long segmentNumber, long firstSequence, long lastSequence, long recordCount,
+                           int accountCount) {
+        this.path = path;
+        this.segmentNumber = segmentNumber;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+        this.recordCount = recordCount;
+        this.accountCount = accountCount;
+    }
+
+    /**
+     * Receives the entries of a summary.
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        /**
+         * @param id         The account.
+         * @param opened     The holder, if the segment opened the account; otherwise null.
+         * @param netCents   The sum of the segment's changes to the balance.
+         * @param operations The number of postings to the account.
+         */
+        void visit(AccountID id, AccountHolder opened, long netCents, int operations);
+    }
+
+    /**
+     * Writes a summary of segment {@code segmentNumber}.
+     *
+     * @return The path of the summary file.
+     */
+    static Path write(Path directory, long segmentNumber, long firstSequence, long lastSequence, long recordCount,
+                      SortedMap<String, Delta> deltas) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(body))) {
+            for (Map.Entry<String, Delta> entry : deltas.entrySet()) {
+                Delta delta = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(delta.opened == null ? "" : delta.opened.getName());
+                out.writeLong(delta.netCents);
+                out.writeInt(delta.operations);
+            }
+        }
+        Files.createDirectories(directory);
+        Path target = directory.resolve(fileName(segmentNumber));
+        Path temp = directory.resolve(fileName(segmentNumber) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] bodyBytes = body.toByteArray();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(segmentNumber).putLong(firstSequence)
+                    .putLong(lastSequence).putLong(recordCount).putInt(deltas.size());
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, header.position());
+            crc.update(bodyBytes);
+            header.putInt((int) crc.getValue()).flip();
+            ByteBuffer data = ByteBuffer.wrap(bodyBytes);
+            while (header.hasRemaining() || data.hasRemaining()) {
+                channel.write(new ByteBuffer[] {header, data});
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Opens a summary file, reads its header and checks the file against its checksum.
+     *
+     * @param path The summary file. Must not be null.
+     * @return The summary.
+     * @throws IOException if the file cannot be read, is not a summary or is corrupt.
+     */
+    public static SegmentSummary open(Path path) throws IOException {
+        Objects.requireNonNull(path, "Path must not be null.");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.remaining() < HEADER_SIZE || file.getInt() != MAGIC) {
+                throw new IOException("Not a segment summary: " + path);
+            }
+            int version = file.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported summary format " + version + " in " + path);
+            }
+            if (firstCorruptOffset(file) >= 0) {
+                throw new IOException("Corrupt segment summary: " + path);
+            }
+            return new SegmentSummary(path, file.getLong(), file.getLong(), file.getLong(), file.getLong(),
+                    file.getInt());
+        }
+    }
+
+    /**
+     * Checks a mapped summary file against its checksum.
+     *
+     * @return 0 if the file is truncated or corrupt, otherwise -1.
+     */
+    static long firstCorruptOffset(ByteBuffer file) {
+        if (file.limit() < HEADER_SIZE) {
+            return 0;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(file.slice(0, HEADER_SIZE - 4));
+        crc.update(file.slice(HEADER_SIZE, file.limit() - HEADER_SIZE));
+        return (int) crc.getValue() == file.getInt(HEADER_SIZE - 4) ? -1 : 0;
+    }
+
+    /**
+     * Lists the summary files of a journal directory, oldest segment first.
+     *
+     * @param journalDirectory The journal directory. Must not be null.
+     * @return The summary files; empty if nothing was summarized.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static List<Path> list(Path journalDirectory) throws IOException {
+        Path directory = Objects.requireNonNull(journalDirectory, "Directory must not be null.").resolve(DIRECTORY);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    static String fileName(long segmentNumber) {
+        return String.format(PREFIX + "%012d" + SUFFIX, segmentNumber);
+    }
+
+    /**
+     * Visits every entry, in account ID order.
+     *
+     * @param visitor Receives each entry. Must not be null.
+     * @throws IOException if the body cannot be read or is truncated.
+     */
+    public void forEach(EntryVisitor visitor) throws IOException {
+        Objects.requireNonNull(visitor, "Visitor must not be null.");
+        InputStream file = Files.newInputStream(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(file), 1 << 16))) {
+            file.skipNBytes(HEADER_SIZE);
+            for (int i = 0; i < accountCount; i++) {
+                AccountID id = new AccountID(in.readUTF());
+                String holder = in.readUTF();
+                visitor.visit(id, holder.isEmpty() ? null : new AccountHolder(holder), in.readLong(), in.readInt());
+            }
+        }
+    }
+
+    public long getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getAccountCount() {
+        return accountCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The accumulated effect of a segment on one account.
+     */
+    static final class Delta {
+        AccountHolder opened;
+        long netCents;
+        int operations;
+    }
+}
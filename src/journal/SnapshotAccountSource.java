@@ -0,0 +1,110 @@
+package journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import ledger.AccountSource;
+import ledger.VersionedLedger.AccountVisitor;
+import utility.*;
+
+/**
+ * The accounts of a lazily recovered ledger: those of the latest snapshot,
+ * read from its memory-mapped blocks one account at a time, with the changes
+ * the journal records after the snapshot added on top, and the accounts the
+ * journal opened after it. Read failures are thrown as {@link UncheckedIOException}.
+ * This class is thread-safe.
+ */
+final class SnapshotAccountSource implements AccountSource, AutoCloseable {
+
+    private final SnapshotFile snapshot;
+    private final Map<AccountID, JournalRecovery.Balance> changes;
+    private final RecoveryStats recoveryStats;
+    private final AtomicLong loads = new AtomicLong();
+
+    /**
+     * @param snapshot      The latest snapshot, or null if there is none. Closed with this source.
+     * @param changes       The replayed tail: new accounts with a holder, snapshot accounts with their change.
+     * @param recoveryStats What the recovery replayed.
+     */
+    SnapshotAccountSource(SnapshotFile snapshot, Map<AccountID, JournalRecovery.Balance> changes,
+                          RecoveryStats recoveryStats) {
+        this.snapshot = snapshot;
+        this.changes = changes;
+        this.recoveryStats = recoveryStats;
+    }
+
+    @Override
+    public boolean load(AccountID id, AccountVisitor visitor) {
+        JournalRecovery.Balance change = changes.get(id);
+        if (change != null && change.holder != null) {
+            visitor.visit(id, change.holder, Money.ofCents(change.cents));
+            loads.incrementAndGet();
+            return true;
+        }
+        long delta = change == null ? 0 : change.cents;
+        try {
+            boolean found = snapshot != null && snapshot.find(id, (snapshotId, holder, balance) ->
+                    visitor.visit(snapshotId, holder, Money.ofCents(balance.getAmountInCents() + delta)));
+            if (!found && change != null) {
+                throw new IOException("Journal posts to an unknown account: " + id);
+            }
+            if (found) {
+                loads.incrementAndGet();
+            }
+            return found;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void forEach(AccountVisitor visitor) {
+        try {
+            if (snapshot != null) {
+                for (int block = 0; block < snapshot.getBlockCount(); block++) {
+                    snapshot.forEachInBlock(block, (id, holder, balance) -> {
+                        JournalRecovery.Balance change = changes.get(id);
+                        visitor.visit(id, holder, change == null ? balance
+                                : Money.ofCents(balance.getAmountInCents() + change.cents));
+                    });
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        changes.forEach((id, change) -> {
+            if (change.holder != null) {
+                visitor.visit(id, change.holder, Money.ofCents(change.cents));
+            }
+        });
+    }
+
+    /**
+     * Gets the number of accounts read from this source so far.
+     */
+    long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Gets the snapshot file the accounts are read from.
+     *
+     * @return The snapshot's path, or null if there is no snapshot.
+     */
+    Path getSnapshotPath() {
+        return snapshot == null ? null : snapshot.getPath();
+    }
+
+    RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshot != null) {
+            snapshot.close();
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package journal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import ledger.LedgerSnapshot;
+import ledger.VersionedLedger.AccountVisitor;
+import utility.*;
+
+/**
+ * A checkpoint of every account balance as of one commit sequence number.
+ *
+ * <p>Layout, big-endian: a header (magic, format version, sequence, account
+ * count, block count, index offset, and the CRC32C of the header fields and
+ * the index), the accounts sorted by ID in blocks of up to {@value #BLOCK_ACCOUNTS},
+ * then an index giving the first ID, file offset, byte length, account count
+ * and CRC32C of each block. The header and index are checked on open, and each
+ * block the first time it is read. An account is an ID and a
+ * holder name, each a 2-byte length and UTF-8 bytes, followed by the balance in
+ * cents. The index lets a reader find one account by reading a single block and
+ * load the blocks of a large snapshot in parallel. A snapshot that fits in one
+ * buffer is memory-mapped once when opened, and blocks are slices of that mapping.
+ *
+ * <p>Snapshots are written to a temporary file, forced and then renamed, so a
+ * snapshot file is either complete or absent.
+ */
+public final class SnapshotFile implements AutoCloseable {
+
+    static final int BLOCK_ACCOUNTS = 4096;
+    private static final int MAGIC = 0x534E4150;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 8 + 4;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+    private final long sequence;
+    private final long accountCount;
+    private final String[] firstIds;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] counts;
+    private final int[] crcs;
+    private final boolean[] verified;
+
+    private SnapshotFile(Path path, FileChannel channel, ByteBuffer mapped, long sequence, long accountCount,
+                         String[] firstIds, long[] offsets, int[] lengths, int[] counts, int[] crcs) {
+        this.path = path;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.sequence = sequence;
+        this.accountCount = accountCount;
+        this.firstIds = firstIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.counts = counts;
+        this.crcs = crcs;
+        this.verified = new boolean[firstIds.length];
+    }
+
+    /**
+     * Writes a ledger snapshot to a new snapshot file named after its sequence number.
+     *
+     * @param directory The directory to write to. Must not be null.
+     * @param snapshot  The snapshot to write. Must not be null and must stay open until this returns.
+     * @return The path of the written file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static Path write(Path directory, LedgerSnapshot snapshot) throws IOException {
+        Objects.requireNonNull(snapshot, "Snapshot must not be null.");
+        return write(directory, snapshot.getSequence(), snapshot::forEach);
+    }
+
+    /**
+     * Writes the accounts supplied by {@code source} as a snapshot taken at {@code sequence}.
+     */
+    static Path write(Path directory, long sequence, Consumer<AccountVisitor> source) throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        List<Entry> entries = new ArrayList<>();
+        source.accept((id, holder, balance) -> entries.add(new Entry(id, holder, balance.getAmountInCents())));
+        entries.sort(Comparator.comparing(entry -> entry.id.getValue()));
+
+        Path target = directory.resolve(fileName(sequence));
+        Path temp = directory.resolve(fileName(sequence) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+            out.write(new byte[HEADER_SIZE]);
+            long position = HEADER_SIZE;
+            int blockCount = (entries.size() + BLOCK_ACCOUNTS - 1) / BLOCK_ACCOUNTS;
+            long[] offsets = new long[blockCount];
+            int[] lengths = new int[blockCount];
+            int[] crcs = new int[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                offsets[block] = position;
+                crc.reset();
+                int end = Math.min(entries.size(), (block + 1) * BLOCK_ACCOUNTS);
+                for (int i = block * BLOCK_ACCOUNTS; i < end; i++) {
+                    Entry entry = entries.get(i);
+                    int written = writeString(out, entry.id.getValue());
+                    written += writeString(out, entry.holder.getName());
+                    out.writeLong(entry.cents);
+                    position += written + 8;
+                }
+                lengths[block] = (int) (position - offsets[block]);
+                crcs[block] = (int) crc.getValue();
+            }
+            long indexOffset = position;
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            for (int block = 0; block < blockCount; block++) {
+                writeString(index, entries.get(block * BLOCK_ACCOUNTS).id.getValue());
+                index.writeLong(offsets[block]);
+                index.writeInt(lengths[block]);
+                index.writeInt(Math.min(BLOCK_ACCOUNTS, entries.size() - block * BLOCK_ACCOUNTS));
+                index.writeInt(crcs[block]);
+            }
+            out.write(indexBytes.toByteArray());
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(sequence).putLong(entries.size())
+                    .putInt(blockCount).putLong(indexOffset);
+            crc.reset();
+            crc.update(header.array(), 0, header.position());
+            crc.update(indexBytes.toByteArray());
+            header.putInt((int) crc.getValue()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Opens a snapshot file and reads its index.
+     *
+     * @param path The snapshot file. Must not be null.
+     * @return The open snapshot.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static SnapshotFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(Objects.requireNonNull(path, "Path must not be null."),
+                StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            int read = 0;
+            while (header.hasRemaining() && read >= 0) {
+                read = channel.read(header, header.position());
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format " + version + " in " + path);
+            }
+            long sequence = header.getLong();
+            long accountCount = header.getLong();
+            int blockCount = header.getInt();
+            long indexOffset = header.getLong();
+            int headerCrc = header.getInt();
+            if (indexOffset < HEADER_SIZE || indexOffset > channel.size()) {
+                throw new IOException("Corrupt snapshot header: " + path);
+            }
+            ByteBuffer mapped = null;
+            ByteBuffer index;
+            if (channel.size() <= Integer.MAX_VALUE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                index = mapped.slice((int) indexOffset, (int) (channel.size() - indexOffset));
+            } else {
+                index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, channel.size() - indexOffset);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, HEADER_SIZE - 4);
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != headerCrc) {
+                throw new IOException("Corrupt snapshot header or index: " + path);
+            }
+            String[] firstIds = new String[blockCount];
+            long[] offsets = new long[blockCount];
+            int[] lengths = new int[blockCount];
+            int[] counts = new int[blockCount];
+            int[] crcs = new int[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                firstIds[block] = readString(index);
+                offsets[block] = index.getLong();
+                lengths[block] = index.getInt();
+                counts[block] = index.getInt();
+                crcs[block] = index.getInt();
+            }
+            return new SnapshotFile(path, channel, mapped, sequence, accountCount, firstIds, offsets, lengths, counts,
+                    crcs);
+        } catch (BufferUnderflowException e) {
+            channel.close();
+            throw new IOException("Truncated snapshot index: " + path, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the newest snapshot in a directory.
+     *
+     * @param directory The directory to search. Must not be null.
+     * @return The snapshot with the highest sequence number, or null if there is none.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static Path latest(Path directory) throws IOException {
+        List<Path> snapshots = list(directory);
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    /**
+     * Lists the snapshot files of a directory, oldest first.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    static String fileName(long sequence) {
+        return String.format(PREFIX + "%020d" + SUFFIX, sequence);
+    }
+
+    /**
+     * Gets the commit sequence number this snapshot reflects.
+     *
+     * @return The sequence number of the last commit included.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getAccountCount() {
+        return accountCount;
+    }
+
+    public int getBlockCount() {
+        return firstIds.length;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Reads the balance of one account, reading only the block that can contain it.
+     *
+     * @param id The account to look up. Must not be null.
+     * @return The balance, or null if the account is not in the snapshot.
+     * @throws IOException if the block cannot be read.
+     */
+    public Money find(AccountID id) throws IOException {
+        String target = Objects.requireNonNull(id, "Account ID must not be null.").getValue();
+        int block = blockOf(target);
+        if (block < 0) {
+            return null;
+        }
+        ByteBuffer buffer = mapBlock(block);
+        for (int i = 0; i < counts[block]; i++) {
+            String accountId = readString(buffer);
+            skipString(buffer);
+            long cents = buffer.getLong();
+            if (accountId.equals(target)) {
+                return Money.ofCents(cents);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads one account with its holder, reading only the block that can contain
+     * it. IDs are compared as UTF-8 bytes, so only the matching entry is decoded.
+     *
+     * @param id      The account to look up. Must not be null.
+     * @param visitor Receives the account if the snapshot has it. Must not be null.
+     * @return false if the account is not in the snapshot.
+     * @throws IOException if the block cannot be read.
+     */
+    boolean find(AccountID id, AccountVisitor visitor) throws IOException {
+        String target = Objects.requireNonNull(id, "Account ID must not be null.").getValue();
+        Objects.requireNonNull(visitor, "Visitor must not be null.");
+        int block = blockOf(target);
+        if (block < 0) {
+            return false;
+        }
+        byte[] key = target.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = mapBlock(block);
+        try {
+            for (int i = 0; i < counts[block]; i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                boolean match = length == key.length;
+                for (int j = 0; match && j < length; j++) {
+                    match = buffer.get(buffer.position() + j) == key[j];
+                }
+                buffer.position(buffer.position() + length);
+                if (match) {
+                    AccountHolder holder = new AccountHolder(readString(buffer));
+                    visitor.visit(id, holder, Money.ofCents(buffer.getLong()));
+                    return true;
+                }
+                skipString(buffer);
+                buffer.getLong();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot block " + block + " in " + path, e);
+        }
+        return false;
+    }
+
+    /**
+     * Visits every account of one block, in ID order. Blocks may be read from several threads at once.
+     *
+     * @param block   The block number, from 0 to {@link #getBlockCount()} - 1.
+     * @param visitor Receives each account. Must not be null.
+     * @throws IOException if the block cannot be read.
+     */
+    public void forEachInBlock(int block, AccountVisitor visitor) throws IOException {
+        Objects.requireNonNull(visitor, "Visitor must not be null.");
+        ByteBuffer buffer = mapBlock(block);
+        try {
+            for (int i = 0; i < counts[block]; i++) {
+                AccountID id = new AccountID(readString(buffer));
+                AccountHolder holder = new AccountHolder(readString(buffer));
+                visitor.visit(id, holder, Money.ofCents(buffer.getLong()));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot block " + block + " in " + path, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Finds the only block that can contain an ID.
+     *
+     * @return The block number, or -1 if the ID sorts before every block.
+     */
+    private int blockOf(String target) {
+        int low = 0;
+        int high = firstIds.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (firstIds[mid].compareTo(target) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Checks every block against its checksum.
+     *
+     * @return The file offset of the first corrupt block, or -1 if every block is intact.
+     * @throws IOException if a block cannot be read.
+     */
+    long firstCorruptOffset() throws IOException {
+        CRC32C crc = new CRC32C();
+        for (int block = 0; block < firstIds.length; block++) {
+            crc.reset();
+            crc.update(sliceBlock(block));
+            if ((int) crc.getValue() != crcs[block]) {
+                return offsets[block];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a block, checking it against its checksum the first time. Blocks
+     * may be checked more than once by concurrent readers, which is harmless.
+     */
+    private ByteBuffer mapBlock(int block) throws IOException {
+        ByteBuffer buffer = sliceBlock(block);
+        if (!verified[block]) {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != crcs[block]) {
+                throw new IOException("Corrupt snapshot block " + block + " at offset " + offsets[block] + " in "
+                        + path);
+            }
+            verified[block] = true;
+        }
+        return buffer;
+    }
+
+    private ByteBuffer sliceBlock(int block) throws IOException {
+        if (mapped != null) {
+            return mapped.slice((int) offsets[block], lengths[block]);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offsets[block], lengths[block]);
+    }
+
+    private static int writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        return 2 + bytes.length;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        buffer.position(buffer.position() + length);
+    }
+
+    private static final class Entry {
+        private final AccountID id;
+        private final AccountHolder holder;
+        private final long cents;
+
+        private Entry(AccountID id, AccountHolder holder, long cents) {
+            this.id = id;
+            this.holder = holder;
+            this.cents = cents;
+        }
+    }
+}
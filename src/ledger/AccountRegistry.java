@@ -0,0 +1,132 @@
+package ledger;
+
+import clean.BankAccount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import utility.*;
+
+/**
+ * A thread-safe registry of {@link BankAccount} instances keyed by {@link AccountID}.
+ * Operations on one account are serialized on that account; a transfer locks
+ * both accounts in ID order, so concurrent transfers cannot deadlock.
+ */
+public final class AccountRegistry {
+
+    private final Map<AccountID, BankAccount> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a new account with a zero balance.
+     *
+     * @param holder The account holder. Must not be null.
+     * @param id     The unique identifier for the account. Must not be null.
+     * @return The new account.
+     * @throws IllegalArgumentException if an account with this ID already exists.
+     */
+    public BankAccount open(AccountHolder holder, AccountID id) {
+        BankAccount account = new BankAccount(holder, id);
+        if (accounts.putIfAbsent(id, account) != null) {
+            throw new IllegalArgumentException("Account already exists: " + id);
+        }
+        return account;
+    }
+
+    /**
+     * Looks up an account.
+     *
+     * @param id The account ID. Must not be null.
+     * @return The account.
+     * @throws IllegalArgumentException if no account has this ID.
+     */
+    public BankAccount get(AccountID id) {
+        BankAccount account = accounts.get(Objects.requireNonNull(id, "Account ID must not be null."));
+        if (account == null) {
+            throw new IllegalArgumentException("Unknown account: " + id);
+        }
+        return account;
+    }
+
+    public boolean contains(AccountID id) {
+        return accounts.containsKey(id);
+    }
+
+    /**
+     * Deposits an amount into an account.
+     *
+     * @param id     The account to credit.
+     * @param amount The amount to deposit. Must be positive.
+     * @return The new balance.
+     */
+    public Money deposit(AccountID id, Money amount) {
+        BankAccount account = get(id);
+        synchronized (account) {
+            account.deposit(amount);
+            return account.getBalance();
+        }
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     *
+     * @param id     The account to debit.
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @return The new balance.
+     */
+    public Money withdraw(AccountID id, Money amount) {
+        BankAccount account = get(id);
+        synchronized (account) {
+            account.withdraw(amount);
+            return account.getBalance();
+        }
+    }
+
+    /**
+     * Transfers an amount between two accounts atomically.
+     *
+     * @param from   The account to debit.
+     * @param to     The account to credit.
+     * @param amount The amount to transfer. Must be positive and not exceed the source balance.
+     * @return The source balance after the transfer.
+     */
+    public Money transfer(AccountID from, AccountID to, Money amount) {
+        BankAccount source = get(from);
+        BankAccount destination = get(to);
+        boolean sourceFirst = from.getValue().compareTo(to.getValue()) <= 0;
+        BankAccount first = sourceFirst ? source : destination;
+        BankAccount second = sourceFirst ? destination : source;
+        synchronized (first) {
+            synchronized (second) {
+                source.transferTo(destination, amount);
+                return source.getBalance();
+            }
+        }
+    }
+
+    /**
+     * Reads the balance of an account.
+     *
+     * @param id The account to read.
+     * @return The current balance.
+     */
+    public Money getBalance(AccountID id) {
+        BankAccount account = get(id);
+        synchronized (account) {
+            return account.getBalance();
+        }
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Gets a point-in-time copy of the registered accounts.
+     *
+     * @return The accounts, in no particular order.
+     */
+    public Collection<BankAccount> accounts() {
+        return new ArrayList<>(accounts.values());
+    }
+}
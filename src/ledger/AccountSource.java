@@ -0,0 +1,28 @@
+package ledger;
+
+import utility.*;
+
+/**
+ * Accounts that a {@link VersionedLedger} loads when they are first used,
+ * instead of holding them all from the start, such as those of a snapshot on
+ * disk. A source is read-only; the ledger keeps the changes to loaded accounts.
+ * Implementations must be thread-safe.
+ */
+public interface AccountSource {
+
+    /**
+     * Reads one account.
+     *
+     * @param id      The account to read.
+     * @param visitor Receives the account if the source has it.
+     * @return false if the source has no account with this ID.
+     */
+    boolean load(AccountID id, VersionedLedger.AccountVisitor visitor);
+
+    /**
+     * Visits every account of the source, loaded or not.
+     *
+     * @param visitor Receives each account.
+     */
+    void forEach(VersionedLedger.AccountVisitor visitor);
+}
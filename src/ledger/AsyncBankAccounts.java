@@ -0,0 +1,195 @@
+package ledger;
+
+import clean.BankAccount;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import utility.*;
+
+/**
+ * Non-blocking facade over {@link BankAccount} instances.
+ *
+ * <p>Every operation is queued on its account and the returned future completes
+ * with the resulting balance. At most one task per account runs on the executor
+ * at a time, and it applies every operation queued so far as one batch, so many
+ * futures targeting the same account cost one task instead of one lock hand-off each.
+ *
+ * <p>A transfer debits the source in the source's batch and then queues the
+ * credit on the destination, so no task ever holds two accounts. Accounts used
+ * through this facade must not be modified directly at the same time.
+ *
+ * <p>An account's queue is dropped once its batch leaves it empty, so the facade
+ * holds only accounts with work in flight. If the executor rejects a batch, the
+ * operations waiting in it fail with the {@link RejectedExecutionException}.
+ */
+public final class AsyncBankAccounts {
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final Executor executor;
+    private final Map<BankAccount, OperationQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a facade running on the common fork-join pool.
+     */
+    public AsyncBankAccounts() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a facade running on the given executor.
+     *
+     * @param executor The executor running the batches. Must not be null.
+     */
+    public AsyncBankAccounts(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "Executor must not be null.");
+    }
+
+    /**
+     * Deposits an amount into an account.
+     *
+     * @param account The account to credit. Must not be null.
+     * @param amount  The amount to deposit. Must be positive.
+     * @return A future completing with the new balance.
+     */
+    public CompletableFuture<Money> deposit(BankAccount account, Money amount) {
+        Objects.requireNonNull(amount, "Amount must not be null.");
+        return enqueue(account, target -> {
+            target.deposit(amount);
+            return target.getBalance();
+        });
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     *
+     * @param account The account to debit. Must not be null.
+     * @param amount  The amount to withdraw. Must be positive and not exceed the balance.
+     * @return A future completing with the new balance.
+     */
+    public CompletableFuture<Money> withdraw(BankAccount account, Money amount) {
+        Objects.requireNonNull(amount, "Amount must not be null.");
+        return enqueue(account, target -> {
+            target.withdraw(amount);
+            return target.getBalance();
+        });
+    }
+
+    /**
+     * Transfers an amount from one account to another.
+     * The future completes once the destination has been credited.
+     *
+     * @param account      The account to debit. Must not be null.
+     * @param otherAccount The account to credit. Must not be null.
+     * @param amount       The amount to transfer. Must be positive and not exceed the balance.
+     * @return A future completing with the source balance after the debit.
+     */
+    public CompletableFuture<Money> transferTo(BankAccount account, BankAccount otherAccount, Money amount) {
+        Objects.requireNonNull(otherAccount, "Destination account must not be null.");
+        Objects.requireNonNull(amount, "Amount must not be null.");
+        return enqueue(account, source -> {
+            source.withdraw(amount);
+            return source.getBalance();
+        }).thenCompose(balanceAfterDebit -> deposit(otherAccount, amount).thenApply(ignored -> balanceAfterDebit));
+    }
+
+    /**
+     * Reads the balance of an account after every operation queued before this call.
+     *
+     * @param account The account to read. Must not be null.
+     * @return A future completing with the balance.
+     */
+    public CompletableFuture<Money> getBalance(BankAccount account) {
+        return enqueue(account, BankAccount::getBalance);
+    }
+
+    private CompletableFuture<Money> enqueue(BankAccount account, Function<BankAccount, Money> action) {
+        Objects.requireNonNull(account, "Account must not be null.");
+        PendingOperation operation = new PendingOperation(action);
+        // Queued under the map's lock for the account, so an idle queue is never dropped with work in it.
+        OperationQueue queue = queues.compute(account, (key, existing) -> {
+            OperationQueue target = existing != null ? existing : new OperationQueue(key);
+            target.pending.add(operation);
+            return target;
+        });
+        queue.scheduleIfIdle();
+        return operation.result;
+    }
+
+    /**
+     * The operations waiting for one account, and whether a batch is scheduled for them.
+     */
+    private final class OperationQueue implements Runnable {
+        private final BankAccount account;
+        private final Queue<PendingOperation> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private OperationQueue(BankAccount account) {
+            this.account = account;
+        }
+
+        private void scheduleIfIdle() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                for (PendingOperation operation = pending.poll(); operation != null; operation = pending.poll()) {
+                    operation.result.completeExceptionally(e);
+                }
+                finishBatch();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int applied = 0; applied < MAX_BATCH_SIZE; applied++) {
+                PendingOperation operation = pending.poll();
+                if (operation == null) {
+                    break;
+                }
+                operation.applyTo(account);
+            }
+            finishBatch();
+        }
+
+        /**
+         * Schedules the next batch if operations arrived meanwhile, and otherwise drops the idle queue.
+         */
+        private void finishBatch() {
+            scheduled.set(false);
+            if (!pending.isEmpty()) {
+                scheduleIfIdle();
+            } else {
+                queues.computeIfPresent(account,
+                        (key, queue) -> queue == this && pending.isEmpty() && !scheduled.get() ? null : queue);
+            }
+        }
+    }
+
+    private static final class PendingOperation {
+        private final Function<BankAccount, Money> action;
+        private final CompletableFuture<Money> result = new CompletableFuture<>();
+
+        private PendingOperation(Function<BankAccount, Money> action) {
+            this.action = action;
+        }
+
+        private void applyTo(BankAccount account) {
+            try {
+                result.complete(action.apply(account));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ledger;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import utility.*;
+
+/**
+ * A thread-safe bank account whose balance is updated with compare-and-set.
+ * Reads are a single volatile load; writes retry until no other writer interfered.
+ * A transfer is a withdrawal followed by a deposit, so the amount is briefly
+ * in neither account.
+ */
+public final class AtomicBankAccount {
+
+    private final AccountHolder accountHolder;
+    private final AccountID accountId;
+    private final AtomicReference<Money> balance = new AtomicReference<>(Money.ofCents(0));
+
+    /**
+     * Creates a new bank account with a zero balance.
+     *
+     * @param accountHolder The account holder. Must not be null.
+     * @param accountId     The unique identifier for the account. Must not be null.
+     */
+    public AtomicBankAccount(AccountHolder accountHolder, AccountID accountId) {
+        this.accountHolder = Objects.requireNonNull(accountHolder, "Account holder must not be null.");
+        this.accountId = Objects.requireNonNull(accountId, "Account ID must not be null.");
+    }
+
+    private void validatePositiveAmount(Money amount) {
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive.");
+        }
+    }
+
+    /**
+     * Deposits a specified amount into the account.
+     *
+     * @param amount The amount to deposit. Must be positive.
+     */
+    public void deposit(Money amount) {
+        validatePositiveAmount(amount);
+        balance.accumulateAndGet(amount, Money::add);
+    }
+
+    /**
+     * Withdraws a specified amount from the account.
+     *
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     */
+    public void withdraw(Money amount) {
+        validatePositiveAmount(amount);
+        Money current;
+        do {
+            current = balance.get();
+        } while (!balance.compareAndSet(current, current.subtract(amount)));
+    }
+
+    /**
+     * Transfers a specified amount from this account to another account.
+     *
+     * @param otherAccount The account to transfer money to. Must not be null.
+     * @param amount       The amount to transfer. Must be positive and not exceed balance.
+     */
+    public void transferTo(AtomicBankAccount otherAccount, Money amount) {
+        Objects.requireNonNull(otherAccount, "Destination account must not be null.");
+        this.withdraw(amount);
+        otherAccount.deposit(amount);
+    }
+
+    /**
+     * Withdraws all money from the account, leaving it with zero balance.
+     *
+     * @return The amount withdrawn (previous balance).
+     */
+    public Money withdrawAll() {
+        return balance.getAndSet(Money.ofCents(0));
+    }
+
+    public Money getBalance() {
+        return balance.get();
+    }
+
+    public boolean canAffordPurchase(Money purchaseAmount) {
+        return !getBalance().isLessThan(purchaseAmount);
+    }
+
+    public boolean isBalanceGreaterThan(Money threshold) {
+        return getBalance().isGreaterThan(threshold);
+    }
+
+    public AccountHolder getAccountHolder() {
+        return this.accountHolder;
+    }
+
+    public AccountID getAccountId() {
+        return this.accountId;
+    }
+
+    @Override
+    public String toString() {
+        return "AtomicBankAccount[accountId=" + accountId +
+               ", accountHolder=" + accountHolder +
+               ", balance=" + getBalance() + " cents]";
+    }
+}
@@ -0,0 +1,157 @@
+package ledger;
+
+import clean.BankAccount;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import utility.*;
+
+public class BalanceReadBenchmark {
+
+    private static final String[] MIXES = {"50:1", "10:1", "1:1", "1:10", "1:50"};
+    private static final Money PRICE = Money.ofCents(500);
+    private static final Money AMOUNT = Money.ofCents(1);
+
+    private static volatile boolean sink;
+
+    /**
+     * Compares a lock-based, a compare-and-set and an optimistic-read account
+     * under read-heavy to write-heavy mixes. All threads hammer the same
+     * account, so every variant is fully contended.
+     *
+     * @param args Optional: number of threads, then seconds per measurement.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+        System.out.println("--- Balance Read Benchmark (" + threads + " threads, ops/s) ---");
+        System.out.printf("%-14s%16s%16s%16s%n", "reads:writes", "synchronized", "cas", "stamped");
+        for (String mix : MIXES) {
+            String[] parts = mix.split(":");
+            double reads = Double.parseDouble(parts[0]);
+            double readFraction = reads / (reads + Double.parseDouble(parts[1]));
+            System.out.printf("%-14s%,16.0f%,16.0f%,16.0f%n", mix,
+                    measure(synchronizedAccount(), readFraction, threads, seconds),
+                    measure(atomicAccount(), readFraction, threads, seconds),
+                    measure(stampedAccount(), readFraction, threads, seconds));
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    /**
+     * The operations the benchmark needs, implemented by each account variant.
+     */
+    private interface Account {
+        boolean canAffordPurchase(Money amount);
+
+        void deposit(Money amount);
+
+        void withdraw(Money amount);
+    }
+
+    private static Account synchronizedAccount() {
+        BankAccount account = new BankAccount(new AccountHolder("Bench"), new AccountID("SYNC"));
+        account.deposit(Money.ofCents(1_000_000));
+        return new Account() {
+            @Override
+            public synchronized boolean canAffordPurchase(Money amount) {
+                return !account.getBalance().isLessThan(amount);
+            }
+
+            @Override
+            public synchronized void deposit(Money amount) {
+                account.deposit(amount);
+            }
+
+            @Override
+            public synchronized void withdraw(Money amount) {
+                account.withdraw(amount);
+            }
+        };
+    }
+
+    private static Account atomicAccount() {
+        AtomicBankAccount account = new AtomicBankAccount(new AccountHolder("Bench"), new AccountID("CAS"));
+        account.deposit(Money.ofCents(1_000_000));
+        return new Account() {
+            @Override
+            public boolean canAffordPurchase(Money amount) {
+                return account.canAffordPurchase(amount);
+            }
+
+            @Override
+            public void deposit(Money amount) {
+                account.deposit(amount);
+            }
+
+            @Override
+            public void withdraw(Money amount) {
+                account.withdraw(amount);
+            }
+        };
+    }
+
+    private static Account stampedAccount() {
+        StampedBankAccount account = new StampedBankAccount(new AccountHolder("Bench"), new AccountID("STAMPED"));
+        account.deposit(Money.ofCents(1_000_000));
+        return new Account() {
+            @Override
+            public boolean canAffordPurchase(Money amount) {
+                return account.canAffordPurchase(amount);
+            }
+
+            @Override
+            public void deposit(Money amount) {
+                account.deposit(amount);
+            }
+
+            @Override
+            public void withdraw(Money amount) {
+                account.withdraw(amount);
+            }
+        };
+    }
+
+    private static double measure(Account account, double readFraction, int threads, double seconds)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long durationNanos = (long) (seconds * 1e9);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                boolean blackhole = false;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = System.nanoTime() + durationNanos;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    if (random.nextDouble() < readFraction) {
+                        blackhole ^= account.canAffordPurchase(PRICE);
+                    } else if ((done & 1) == 0) {
+                        account.deposit(AMOUNT);
+                    } else {
+                        account.withdraw(AMOUNT);
+                    }
+                    done++;
+                }
+                operations.add(done);
+                sink = blackhole;
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / seconds;
+    }
+}
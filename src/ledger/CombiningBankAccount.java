@@ -0,0 +1,217 @@
+package ledger;
+
+import clean.BankAccount;
+import clean.TransactionStatus;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import utility.*;
+
+/**
+ * A thread-safe bank account for heavily shared accounts, using flat combining.
+ *
+ * <p>A caller publishes its operation in a slot of a per-account array and then
+ * tries to become the combiner. The combiner drains every published operation
+ * and applies them in a single pass: deposits first, then withdrawals checked
+ * one by one against the running balance, and finally one update of the
+ * underlying {@link BankAccount}. Callers whose operation was applied by
+ * another thread just pick up their result, so contending threads share the
+ * work instead of fighting over the account.
+ *
+ * <p>Each thread reuses one request object, so a deposit or withdrawal
+ * allocates nothing beyond the combined balance.
+ */
+public final class CombiningBankAccount {
+
+    private final BankAccount account;
+    private final AtomicReferenceArray<Request> slots;
+    private final AtomicBoolean combining = new AtomicBoolean();
+    private final ThreadLocal<Request> requests = ThreadLocal.withInitial(Request::new);
+    private final Request[] batch;
+    private volatile Money balance;
+
+    /**
+     * Creates a new bank account with a zero balance.
+     *
+     * @param accountHolder The account holder. Must not be null.
+     * @param accountId     The unique identifier for the account. Must not be null.
+     */
+    public CombiningBankAccount(AccountHolder accountHolder, AccountID accountId) {
+        this.account = new BankAccount(accountHolder, accountId);
+        int slotCount = Integer.highestOneBit(Math.max(8, Runtime.getRuntime().availableProcessors() * 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.batch = new Request[slotCount];
+        this.balance = account.getBalance();
+    }
+
+    /**
+     * Deposits a specified amount into the account.
+     *
+     * @param amount The amount to deposit. Must be positive.
+     * @throws IllegalArgumentException if the amount is not positive.
+     */
+    public void deposit(Money amount) {
+        tryDeposit(amount).throwIfFailed();
+    }
+
+    /**
+     * Withdraws a specified amount from the account.
+     *
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @throws IllegalArgumentException if the amount is not positive.
+     * @throws IllegalStateException    if the account has insufficient funds.
+     */
+    public void withdraw(Money amount) {
+        tryWithdraw(amount).throwIfFailed();
+    }
+
+    /**
+     * Deposits a specified amount without throwing on invalid input.
+     *
+     * @param amount The amount to deposit.
+     * @return The outcome of the deposit.
+     */
+    public TransactionStatus tryDeposit(Money amount) {
+        return submit(true, amount);
+    }
+
+    /**
+     * Withdraws a specified amount without throwing when it is declined.
+     *
+     * @param amount The amount to withdraw.
+     * @return The outcome of the withdrawal.
+     */
+    public TransactionStatus tryWithdraw(Money amount) {
+        return submit(false, amount);
+    }
+
+    /**
+     * Transfers a specified amount to another account: a withdrawal here
+     * followed by a deposit there, so the amount is briefly in neither account.
+     *
+     * @param otherAccount The account to transfer money to. Must not be null.
+     * @param amount       The amount to transfer.
+     * @return The outcome of the withdrawal; the deposit cannot fail after it succeeded.
+     */
+    public TransactionStatus tryTransferTo(CombiningBankAccount otherAccount, Money amount) {
+        Objects.requireNonNull(otherAccount, "Destination account must not be null.");
+        TransactionStatus status = tryWithdraw(amount);
+        if (status.isSuccess()) {
+            otherAccount.tryDeposit(amount);
+        }
+        return status;
+    }
+
+    /**
+     * Gets the balance as of the latest combining pass.
+     *
+     * @return The current account balance.
+     */
+    public Money getBalance() {
+        return balance;
+    }
+
+    public AccountHolder getAccountHolder() {
+        return account.getAccountHolder();
+    }
+
+    public AccountID getAccountId() {
+        return account.getAccountId();
+    }
+
+    private TransactionStatus submit(boolean deposit, Money amount) {
+        if (!amount.isPositive()) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+        Request request = requests.get();
+        request.prepare(deposit, amount.getAmountInCents());
+        int slot = (int) Thread.currentThread().threadId() & (slots.length() - 1);
+        boolean published = false;
+        for (int spins = 1; ; spins++) {
+            if (!published) {
+                published = slots.compareAndSet(slot, null, request);
+                slot = (slot + 1) & (slots.length() - 1);
+            }
+            if (combining.compareAndSet(false, true)) {
+                try {
+                    combine();
+                } finally {
+                    combining.set(false);
+                }
+            }
+            TransactionStatus status = request.status;
+            if (status != null) {
+                return status;
+            }
+            if (spins % 64 == 0) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Applies every published request in one pass. Only runs while holding the combiner flag.
+     */
+    private void combine() {
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            Request request = slots.get(i);
+            if (request != null) {
+                slots.set(i, null);
+                batch[count++] = request;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        long start = account.getBalance().getAmountInCents();
+        long cents = start;
+        for (int i = 0; i < count; i++) {
+            if (batch[i].deposit) {
+                cents += batch[i].cents;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            Request request = batch[i];
+            if (!request.deposit) {
+                if (request.cents <= cents) {
+                    cents -= request.cents;
+                    request.outcome = TransactionStatus.SUCCESS;
+                } else {
+                    request.outcome = TransactionStatus.INSUFFICIENT_FUNDS;
+                }
+            }
+        }
+        if (cents > start) {
+            account.tryDeposit(Money.ofCents(cents - start));
+        } else if (cents < start) {
+            account.tryWithdraw(Money.ofCents(start - cents));
+        }
+        balance = account.getBalance();
+        for (int i = 0; i < count; i++) {
+            Request request = batch[i];
+            batch[i] = null;
+            request.status = request.deposit ? TransactionStatus.SUCCESS : request.outcome;
+        }
+    }
+
+    /**
+     * One thread's pending operation. The owner writes it before publishing
+     * it in a slot; the combiner completes it by setting {@link #status}.
+     */
+    private static final class Request {
+        private boolean deposit;
+        private long cents;
+        private TransactionStatus outcome;
+        private volatile TransactionStatus status;
+
+        private void prepare(boolean deposit, long cents) {
+            this.deposit = deposit;
+            this.cents = cents;
+            this.outcome = null;
+            this.status = null;
+        }
+    }
+}
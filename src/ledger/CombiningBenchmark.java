@@ -0,0 +1,56 @@
+package ledger;
+
+import clean.BankAccount;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import utility.*;
+
+public class CombiningBenchmark {
+
+    /**
+     * Measures deposits into one shared account from many threads, comparing a
+     * synchronized account, a compare-and-set account and a combining account.
+     *
+     * @param args Optional: number of threads, then deposits per thread.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+        int deposits = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Money amount = Money.ofCents(1);
+
+        System.out.println("--- Combining Benchmark (" + threads + " threads, one account) ---");
+        BankAccount plain = new BankAccount(new AccountHolder("Bench"), new AccountID("SYNC"));
+        report("synchronized", threads, deposits, money -> {
+            synchronized (plain) {
+                plain.deposit(money);
+            }
+        }, amount);
+        AtomicBankAccount atomic = new AtomicBankAccount(new AccountHolder("Bench"), new AccountID("CAS"));
+        report("cas", threads, deposits, atomic::deposit, amount);
+        CombiningBankAccount combining = new CombiningBankAccount(new AccountHolder("Bench"), new AccountID("COMBINING"));
+        report("combining", threads, deposits, combining::deposit, amount);
+        System.out.println("Final balances: " + plain.getBalance() + ", " + atomic.getBalance() + ", " + combining.getBalance());
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void report(String name, int threads, int deposits, Consumer<Money> deposit, Money amount)
+            throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < deposits; i++) {
+                    deposit.accept(amount);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-14s%,16.0f deposits/s%n", name, (double) threads * deposits / (elapsed / 1e9));
+    }
+}
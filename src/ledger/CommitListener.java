@@ -0,0 +1,39 @@
+package ledger;
+
+import utility.*;
+
+/**
+ * Observes the commits of a {@link VersionedLedger}, each with its commit sequence number.
+ * Only operations that passed validation are reported.
+ */
+public interface CommitListener {
+
+    /**
+     * A listener that ignores every commit.
+     */
+    CommitListener NONE = new CommitListener() {
+        @Override
+        public void opened(long sequence, AccountHolder holder, AccountID id) {
+        }
+
+        @Override
+        public void deposited(long sequence, AccountID id, Money amount) {
+        }
+
+        @Override
+        public void withdrew(long sequence, AccountID id, Money amount) {
+        }
+
+        @Override
+        public void transferred(long sequence, AccountID from, AccountID to, Money amount) {
+        }
+    };
+
+    void opened(long sequence, AccountHolder holder, AccountID id);
+
+    void deposited(long sequence, AccountID id, Money amount);
+
+    void withdrew(long sequence, AccountID id, Money amount);
+
+    void transferred(long sequence, AccountID from, AccountID to, Money amount);
+}
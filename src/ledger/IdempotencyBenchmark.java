@@ -0,0 +1,67 @@
+package ledger;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import utility.*;
+
+public class IdempotencyBenchmark {
+
+    /**
+     * Feeds an {@link IdempotencyStore} a steady stream of transactions, one in
+     * ten a retry of a recent one, and reports its size, the duplicates it
+     * caught and the heap used each second, to show that memory stays flat once
+     * the window is full. Then measures the cost of a lookup at full speed.
+     *
+     * @param args Optional: transactions per second, then seconds, then window in milliseconds,
+     *             then maximum entries.
+     */
+    public static void main(String[] args) {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long windowMillis = args.length > 2 ? Long.parseLong(args[2]) : 2_000;
+        int maxEntries = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 20;
+
+        System.out.println("--- Idempotency Benchmark ---");
+        System.out.printf("%,d transactions/s for %d s, %,d ms window, at most %,d entries%n",
+                rate, seconds, windowMillis, maxEntries);
+        IdempotencyStore<Money> store = new IdempotencyStore<>(Duration.ofMillis(windowMillis), maxEntries);
+        Money outcome = Money.ofCents(100);
+        long nextId = 0;
+        long start = System.nanoTime();
+        System.out.printf("%-8s%14s%14s%16s%12s%n", "second", "entries", "duplicates", "early evictions", "heap MB");
+        for (int second = 1; second <= seconds; second++) {
+            long due = (long) second * rate;
+            while (nextId < due) {
+                long elapsed = System.nanoTime() - start;
+                long target = Math.min(due, elapsed * rate / 1_000_000_000L);
+                for (; nextId < target; nextId++) {
+                    long id = nextId;
+                    if (id % 10 == 9) {
+                        id -= 1 + ThreadLocalRandom.current().nextInt(Math.min(rate, (int) id));
+                    }
+                    store.execute(id, () -> outcome);
+                }
+            }
+            System.out.printf("%-8d%,14d%,14d%,16d%,12d%n", second, store.size(), store.getDuplicates(),
+                    store.getEarlyEvictions(), usedHeapMegabytes());
+        }
+
+        int lookups = 5_000_000;
+        long lookupStart = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < lookups; i++) {
+            if (store.get(nextId - 1 - (i % rate)) != null) {
+                found++;
+            }
+        }
+        System.out.printf("Lookup: %.0f ns each, %,d of %,d found%n",
+                (double) (System.nanoTime() - lookupStart) / lookups, found, lookups);
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static long usedHeapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+}
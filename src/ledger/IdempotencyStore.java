@@ -0,0 +1,278 @@
+package ledger;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of each transaction ID for a time window, so that a
+ * retried request gets the outcome of its first attempt instead of being
+ * applied again.
+ *
+ * <p>IDs are spread over lock-striped partitions. Each partition keeps a ring
+ * of {@value #BUCKETS} time buckets plus the current one, each an open-addressing
+ * hash table of primitive {@code long} keys; a lookup probes every bucket,
+ * which is a constant amount of work. An outcome is kept for at least the
+ * window and at most one bucket span longer, after which its whole bucket is
+ * dropped at once. Memory is bounded by the maximum number of entries: when
+ * the current bucket of a partition is full, the ring moves on early and the
+ * oldest bucket is dropped before its time, which is counted as an early
+ * eviction. This class is thread-safe.
+ *
+ * @param <V> The type of the recorded outcomes.
+ */
+public final class IdempotencyStore<V> {
+
+    private static final int BUCKETS = 8;
+    private static final int STRIPES = 16;
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    private final long bucketNanos;
+    private final Stripe<V>[] stripes;
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder earlyEvictions = new LongAdder();
+
+    /**
+     * @param window     How long an outcome is remembered at least. Must be positive.
+     * @param maxEntries The most outcomes remembered at once. Must be positive.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public IdempotencyStore(Duration window, int maxEntries) {
+        Objects.requireNonNull(window, "Window must not be null.");
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum entries must be positive.");
+        }
+        this.bucketNanos = Math.max(1, window.toNanos() / BUCKETS);
+        int bucketCapacity = Math.max(1, maxEntries / (STRIPES * (BUCKETS + 1)));
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>(bucketCapacity);
+        }
+    }
+
+    /**
+     * Runs an operation unless its transaction ID was seen within the window.
+     * The operation runs while its partition is locked, so it should only
+     * start the work, as the asynchronous ledgers do, and not wait for it.
+     *
+     * @param transactionId The ID the client gave the transaction.
+     * @param operation     Runs the transaction and returns its outcome, which must not be null.
+     *                      Must not be null.
+     * @return The outcome of this run, or the recorded outcome if the ID was seen before.
+     */
+    public V execute(long transactionId, Supplier<? extends V> operation) {
+        Objects.requireNonNull(operation, "Operation must not be null.");
+        Stripe<V> stripe = stripeFor(transactionId);
+        synchronized (stripe) {
+            long epoch = System.nanoTime() / bucketNanos;
+            V recorded = stripe.get(transactionId, epoch);
+            if (recorded != null) {
+                duplicates.increment();
+                return recorded;
+            }
+            V outcome = Objects.requireNonNull(operation.get(), "Outcome must not be null.");
+            if (stripe.put(transactionId, outcome, epoch)) {
+                earlyEvictions.increment();
+            }
+            return outcome;
+        }
+    }
+
+    /**
+     * Gets the recorded outcome of a transaction ID.
+     *
+     * @return The outcome, or null if the ID was not seen within the window.
+     */
+    public V get(long transactionId) {
+        Stripe<V> stripe = stripeFor(transactionId);
+        synchronized (stripe) {
+            return stripe.get(transactionId, System.nanoTime() / bucketNanos);
+        }
+    }
+
+    /**
+     * Gets the number of outcomes currently held, including those of buckets that
+     * have expired but not yet been reused.
+     *
+     * @return The entry count.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of requests answered with a recorded outcome.
+     *
+     * @return The duplicate count.
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Gets the number of buckets dropped before the end of the window because
+     * the store was full. Retries of their transactions would run again.
+     *
+     * @return The early eviction count.
+     */
+    public long getEarlyEvictions() {
+        return earlyEvictions.sum();
+    }
+
+    private Stripe<V> stripeFor(long transactionId) {
+        return stripes[(int) (mix(transactionId) >>> 60) & (STRIPES - 1)];
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * One partition: a ring of buckets, the newest at {@code head}.
+     */
+    private static final class Stripe<V> {
+
+        private final Bucket<V>[] ring;
+        private int head;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Stripe(int bucketCapacity) {
+            ring = new Bucket[BUCKETS + 1];
+            for (int i = 0; i < ring.length; i++) {
+                ring[i] = new Bucket<>(bucketCapacity);
+            }
+        }
+
+        V get(long key, long epoch) {
+            long hash = mix(key);
+            for (int i = 0; i < ring.length; i++) {
+                Bucket<V> bucket = ring[(head - i + ring.length) % ring.length];
+                if (bucket.size > 0 && bucket.epoch >= epoch - BUCKETS) {
+                    V value = bucket.get(key, hash);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return true if a bucket was dropped before the end of the window to make room.
+         */
+        boolean put(long key, V value, long epoch) {
+            boolean early = false;
+            Bucket<V> current = ring[head];
+            if (current.epoch < epoch || current.isFull()) {
+                head = (head + 1) % ring.length;
+                Bucket<V> oldest = ring[head];
+                early = oldest.size > 0 && oldest.epoch >= epoch - BUCKETS;
+                oldest.clear(epoch);
+                current = oldest;
+            }
+            current.put(key, mix(key), value);
+            return early;
+        }
+
+        int size() {
+            int size = 0;
+            for (Bucket<V> bucket : ring) {
+                size += bucket.size;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * A linear-probing hash table from {@code long} keys to outcomes that
+     * grows up to twice its capacity in slots; a null value marks a free slot.
+     */
+    private static final class Bucket<V> {
+
+        private final int capacity;
+        private final int maxTableSize;
+        private long[] keys = new long[INITIAL_TABLE_SIZE];
+        private Object[] values = new Object[INITIAL_TABLE_SIZE];
+        private int size;
+        private long epoch = Long.MIN_VALUE;
+
+        Bucket(int capacity) {
+            this.capacity = capacity;
+            this.maxTableSize = Math.max(INITIAL_TABLE_SIZE, Integer.highestOneBit(capacity * 2 - 1) << 1);
+        }
+
+        boolean isFull() {
+            return size >= capacity;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int slot = (int) hash & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return (V) values[slot];
+                }
+            }
+            return null;
+        }
+
+        void put(long key, long hash, V value) {
+            if ((size + 1) * 2 > keys.length && keys.length < maxTableSize) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        void clear(long epoch) {
+            if (size > 0) {
+                Arrays.fill(values, null);
+                size = 0;
+            }
+            this.epoch = epoch;
+        }
+
+        private void resize(int tableSize) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[tableSize];
+            values = new Object[tableSize];
+            int mask = tableSize - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = (int) mix(oldKeys[i]) & mask;
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
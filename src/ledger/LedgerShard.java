@@ -0,0 +1,298 @@
+package ledger;
+
+import clean.BankAccount;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import utility.*;
+
+/**
+ * One partition of a {@link PartitionedLedger}.
+ * A shard owns its accounts exclusively: every read and write of its state
+ * happens on its single worker thread, so no locks are needed.
+ * Other threads talk to the shard only by enqueuing tasks.
+ */
+final class LedgerShard {
+
+    private final int index;
+    private final PartitionedLedger ledger;
+    private final BlockingQueue<Envelope> inbox = new LinkedBlockingQueue<>();
+    private final Map<AccountID, BankAccount> accounts = new HashMap<>();
+    private final NavigableMap<Long, PendingCredit> outbox = new TreeMap<>();
+    private final Map<Integer, NavigableMap<Long, Boolean>> creditOutcomes = new HashMap<>();
+    private long nextTransferId;
+    private Thread worker;
+
+    LedgerShard(int index, PartitionedLedger ledger) {
+        this.index = index;
+        this.ledger = ledger;
+    }
+
+    synchronized void start() {
+        this.worker = new Thread(this::runLoop, "ledger-shard-" + index);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    synchronized void stop() {
+        Thread current = this.worker;
+        if (current == null) {
+            return;
+        }
+        current.interrupt();
+        boolean interrupted = false;
+        while (current.isAlive()) {
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        this.worker = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Simulates a crash of the shard's worker: the thread is replaced and every
+     * undelivered inter-shard message is dropped. Client requests already queued
+     * survive, and so do balances, which live in the shard rather than the thread.
+     */
+    synchronized void restart() {
+        stop();
+        inbox.removeIf(envelope -> envelope.fromPeer);
+        start();
+    }
+
+    void submit(Runnable task) {
+        inbox.add(new Envelope(task, false));
+    }
+
+    void deliver(Runnable message) {
+        inbox.add(new Envelope(message, true));
+    }
+
+    private void runLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Envelope envelope;
+            try {
+                envelope = inbox.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            envelope.task.run();
+        }
+    }
+
+    // ---- client operations, always run on the worker thread ----
+
+    void open(AccountHolder holder, AccountID id, CompletableFuture<Money> result) {
+        if (accounts.containsKey(id)) {
+            result.completeExceptionally(new IllegalArgumentException("Account already exists: " + id));
+            return;
+        }
+        BankAccount account = new BankAccount(holder, id);
+        accounts.put(id, account);
+        result.complete(account.getBalance());
+    }
+
+    void deposit(AccountID id, Money amount, CompletableFuture<Money> result) {
+        BankAccount account = require(id, result);
+        if (account == null) {
+            return;
+        }
+        try {
+            account.deposit(amount);
+            result.complete(account.getBalance());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    void withdraw(AccountID id, Money amount, CompletableFuture<Money> result) {
+        BankAccount account = require(id, result);
+        if (account == null) {
+            return;
+        }
+        try {
+            account.withdraw(amount);
+            result.complete(account.getBalance());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    void balance(AccountID id, CompletableFuture<Money> result) {
+        BankAccount account = require(id, result);
+        if (account != null) {
+            result.complete(account.getBalance());
+        }
+    }
+
+    /**
+     * First phase of a transfer: debits the source account on this shard.
+     * A local destination is credited immediately; a remote one receives a
+     * credit message, and the debit is parked in the outbox until it is acknowledged.
+     */
+    void transfer(AccountID from, AccountID to, Money amount, CompletableFuture<Money> result) {
+        BankAccount source = require(from, result);
+        if (source == null) {
+            return;
+        }
+        LedgerShard destination = ledger.shardFor(to);
+        try {
+            if (destination == this) {
+                source.transferTo(require(to), amount);
+                result.complete(source.getBalance());
+                return;
+            }
+            source.withdraw(amount);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        PendingCredit credit = new PendingCredit(nextTransferId++, from, to, amount,
+                source.getBalance(), destination, result);
+        outbox.put(credit.transferId, credit);
+        send(credit);
+    }
+
+    private void send(PendingCredit credit) {
+        long lowestPending = outbox.isEmpty() ? nextTransferId : outbox.firstKey();
+        credit.destination.deliver(() -> credit.destination.receiveCredit(
+                index, credit.transferId, lowestPending, credit.to, credit.amount));
+    }
+
+    /**
+     * Second phase of a transfer, run on the destination shard. The outcome of
+     * each credit, applied or refused, is remembered per source shard, so a
+     * redelivered credit gets the same answer again and a refused credit is never
+     * applied later, after the source has refunded it. {@code lowestPending} lets
+     * the destination forget ids the source will never resend.
+     */
+    private void receiveCredit(int source, long transferId, long lowestPending, AccountID to, Money amount) {
+        NavigableMap<Long, Boolean> outcomes = creditOutcomes.computeIfAbsent(source, key -> new TreeMap<>());
+        outcomes.headMap(lowestPending).clear();
+        Boolean credited = outcomes.get(transferId);
+        if (credited == null) {
+            BankAccount account = accounts.get(to);
+            credited = account != null;
+            if (account != null) {
+                account.deposit(amount);
+            }
+            outcomes.put(transferId, credited);
+        }
+        LedgerShard sourceShard = ledger.shard(source);
+        boolean outcome = credited;
+        sourceShard.deliver(() -> sourceShard.settle(transferId, outcome));
+    }
+
+    private void settle(long transferId, boolean credited) {
+        PendingCredit credit = outbox.remove(transferId);
+        if (credit == null) {
+            return;
+        }
+        if (credited) {
+            credit.result.complete(credit.sourceBalanceAfterDebit);
+            return;
+        }
+        accounts.get(credit.from).deposit(credit.amount);
+        credit.result.completeExceptionally(new IllegalArgumentException("Unknown account: " + credit.to));
+    }
+
+    /**
+     * Re-sends unacknowledged credits after a shard restart dropped messages.
+     *
+     * @param restarted The shard that was restarted.
+     */
+    void resendCredits(LedgerShard restarted) {
+        for (PendingCredit credit : new ArrayList<>(outbox.values())) {
+            if (restarted == this || credit.destination == restarted) {
+                send(credit);
+            }
+        }
+    }
+
+    // ---- audit support, only called while every worker is parked ----
+
+    long balanceCents() {
+        long total = 0;
+        for (BankAccount account : accounts.values()) {
+            total += account.getBalance().getAmountInCents();
+        }
+        return total;
+    }
+
+    /**
+     * Sums the debits that left this shard but have not been applied at
+     * their destination yet, so that an audit counts them exactly once.
+     */
+    long inFlightCents() {
+        long total = 0;
+        for (PendingCredit credit : outbox.values()) {
+            if (!credit.destination.hasApplied(index, credit.transferId)) {
+                total += credit.amount.getAmountInCents();
+            }
+        }
+        return total;
+    }
+
+    private boolean hasApplied(int source, long transferId) {
+        NavigableMap<Long, Boolean> outcomes = creditOutcomes.get(source);
+        return outcomes != null && Boolean.TRUE.equals(outcomes.get(transferId));
+    }
+
+    private BankAccount require(AccountID id, CompletableFuture<Money> result) {
+        BankAccount account = accounts.get(id);
+        if (account == null) {
+            result.completeExceptionally(new IllegalArgumentException("Unknown account: " + id));
+        }
+        return account;
+    }
+
+    private BankAccount require(AccountID id) {
+        BankAccount account = accounts.get(id);
+        if (account == null) {
+            throw new IllegalArgumentException("Unknown account: " + id);
+        }
+        return account;
+    }
+
+    private static final class Envelope {
+        private final Runnable task;
+        private final boolean fromPeer;
+
+        private Envelope(Runnable task, boolean fromPeer) {
+            this.task = task;
+            this.fromPeer = fromPeer;
+        }
+    }
+
+    private static final class PendingCredit {
+        private final long transferId;
+        private final AccountID from;
+        private final AccountID to;
+        private final Money amount;
+        private final Money sourceBalanceAfterDebit;
+        private final LedgerShard destination;
+        private final CompletableFuture<Money> result;
+
+        private PendingCredit(long transferId, AccountID from, AccountID to, Money amount,
+                              Money sourceBalanceAfterDebit, LedgerShard destination,
+                              CompletableFuture<Money> result) {
+            this.transferId = transferId;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.sourceBalanceAfterDebit = sourceBalanceAfterDebit;
+            this.destination = destination;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ledger;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import utility.*;
+
+/**
+ * A frozen, consistent view of a {@link VersionedLedger} as of one commit
+ * sequence number. Reading it never blocks writers, and it stays unchanged
+ * however long it is kept open.
+ */
+public final class LedgerSnapshot implements AutoCloseable {
+
+    private final VersionedLedger ledger;
+    private final long sequence;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    LedgerSnapshot(VersionedLedger ledger, long sequence) {
+        this.ledger = ledger;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the commit sequence number this snapshot reflects.
+     *
+     * @return The sequence number of the last commit included.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Reads the balance of an account as of this snapshot.
+     *
+     * @param id The account to read. Must not be null.
+     * @return The balance.
+     * @throws IllegalArgumentException if the account did not exist at this snapshot.
+     */
+    public Money getBalance(AccountID id) {
+        requireOpen();
+        return ledger.balanceAt(Objects.requireNonNull(id, "Account ID must not be null."), sequence);
+    }
+
+    /**
+     * Visits every account that existed at this snapshot, in no particular order.
+     *
+     * @param visitor Receives each account and its balance. Must not be null.
+     */
+    public void forEach(VersionedLedger.AccountVisitor visitor) {
+        requireOpen();
+        ledger.forEachAt(sequence, Objects.requireNonNull(visitor, "Visitor must not be null."));
+    }
+
+    /**
+     * Sums every balance as of this snapshot.
+     *
+     * @return The exact amount of money in the ledger at this snapshot.
+     */
+    public Money totalBalance() {
+        long[] total = new long[1];
+        forEach((id, holder, balance) -> total[0] += balance.getAmountInCents());
+        return Money.ofCents(total[0]);
+    }
+
+    /**
+     * Releases the balance versions this snapshot pins. The snapshot cannot be read afterwards.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            ledger.closeSnapshot(sequence);
+        }
+    }
+
+    private void requireOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Snapshot is closed.");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ledger;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import utility.*;
+
+/**
+ * A ledger whose accounts are partitioned by {@link AccountID} hash across
+ * single-threaded shards. Each shard owns its accounts without locks, so
+ * independent accounts are processed on independent cores.
+ *
+ * <p>A transfer between two shards is a two-phase handoff: the source shard
+ * debits and keeps the debit in an outbox, the destination shard credits and
+ * acknowledges. Unacknowledged credits are re-sent after a shard restart and
+ * applied at most once, so money is never lost or duplicated.
+ *
+ * <p>Every operation completes asynchronously with the resulting balance of
+ * the (source) account.
+ */
+public final class PartitionedLedger implements AutoCloseable {
+
+    private final LedgerShard[] shards;
+    private volatile boolean closed;
+
+    /**
+     * Creates a ledger and starts one worker thread per shard.
+     *
+     * @param shardCount The number of shards. Must be positive.
+     * @throws IllegalArgumentException if the shard count is not positive.
+     */
+    public PartitionedLedger(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        this.shards = new LedgerShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LedgerShard(i, this);
+        }
+        for (LedgerShard shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * Opens a new account with a zero balance.
+     *
+     * @param holder The account holder. Must not be null.
+     * @param id     The unique identifier for the account. Must not be null.
+     * @return A future completing with the opening balance.
+     */
+    public CompletableFuture<Money> open(AccountHolder holder, AccountID id) {
+        Objects.requireNonNull(holder, "Account holder must not be null.");
+        Objects.requireNonNull(id, "Account ID must not be null.");
+        CompletableFuture<Money> result = new CompletableFuture<>();
+        LedgerShard shard = shardFor(id);
+        submit(shard, () -> shard.open(holder, id, result));
+        return result;
+    }
+
+    /**
+     * Deposits an amount into an account.
+     *
+     * @param id     The account to credit. Must not be null.
+     * @param amount The amount to deposit. Must be positive.
+     * @return A future completing with the new balance.
+     */
+    public CompletableFuture<Money> deposit(AccountID id, Money amount) {
+        requireOperands(id, amount);
+        CompletableFuture<Money> result = new CompletableFuture<>();
+        LedgerShard shard = shardFor(id);
+        submit(shard, () -> shard.deposit(id, amount, result));
+        return result;
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     *
+     * @param id     The account to debit. Must not be null.
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @return A future completing with the new balance.
+     */
+    public CompletableFuture<Money> withdraw(AccountID id, Money amount) {
+        requireOperands(id, amount);
+        CompletableFuture<Money> result = new CompletableFuture<>();
+        LedgerShard shard = shardFor(id);
+        submit(shard, () -> shard.withdraw(id, amount, result));
+        return result;
+    }
+
+    /**
+     * Transfers an amount between two accounts, possibly on different shards.
+     * The future completes once the destination has been credited; if the
+     * destination does not exist the debit is refunded and the future fails.
+     *
+     * @param from   The account to debit. Must not be null.
+     * @param to     The account to credit. Must not be null.
+     * @param amount The amount to transfer. Must be positive and not exceed the source balance.
+     * @return A future completing with the source balance after the debit.
+     */
+    public CompletableFuture<Money> transfer(AccountID from, AccountID to, Money amount) {
+        requireOperands(from, amount);
+        Objects.requireNonNull(to, "Destination account must not be null.");
+        CompletableFuture<Money> result = new CompletableFuture<>();
+        LedgerShard shard = shardFor(from);
+        submit(shard, () -> shard.transfer(from, to, amount, result));
+        return result;
+    }
+
+    /**
+     * Reads the balance of an account.
+     *
+     * @param id The account to read. Must not be null.
+     * @return A future completing with the current balance.
+     */
+    public CompletableFuture<Money> getBalance(AccountID id) {
+        Objects.requireNonNull(id, "Account ID must not be null.");
+        CompletableFuture<Money> result = new CompletableFuture<>();
+        LedgerShard shard = shardFor(id);
+        submit(shard, () -> shard.balance(id, result));
+        return result;
+    }
+
+    /**
+     * Computes the exact amount of money held by the ledger, including debits
+     * whose credit is still in flight. Every shard is parked for the duration
+     * of the count, so the result is a consistent cut of the whole ledger.
+     *
+     * @return The total of all balances and in-flight transfers.
+     */
+    public Money totalBalance() {
+        CountDownLatch parked = new CountDownLatch(shards.length);
+        CountDownLatch resume = new CountDownLatch(1);
+        for (LedgerShard shard : shards) {
+            submit(shard, () -> {
+                parked.countDown();
+                awaitUninterruptibly(resume);
+            });
+        }
+        awaitUninterruptibly(parked);
+        try {
+            long total = 0;
+            for (LedgerShard shard : shards) {
+                total += shard.balanceCents() + shard.inFlightCents();
+            }
+            return Money.ofCents(total);
+        } finally {
+            resume.countDown();
+        }
+    }
+
+    /**
+     * Restarts the worker of one shard, dropping the inter-shard messages it had
+     * not processed yet, and asks every shard to re-send the credits that could
+     * have been lost with them.
+     *
+     * @param shardIndex The shard to restart.
+     * @throws IndexOutOfBoundsException if no such shard exists.
+     */
+    public void restartShard(int shardIndex) {
+        LedgerShard restarted = shard(shardIndex);
+        restarted.restart();
+        for (LedgerShard shard : shards) {
+            shard.deliver(() -> shard.resendCredits(restarted));
+        }
+    }
+
+    /**
+     * Gets the shard an account belongs to.
+     *
+     * @param id The account ID. Must not be null.
+     * @return The index of the owning shard.
+     */
+    public int shardOf(AccountID id) {
+        int hash = id.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (LedgerShard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    LedgerShard shardFor(AccountID id) {
+        return shards[shardOf(id)];
+    }
+
+    LedgerShard shard(int shardIndex) {
+        return shards[Objects.checkIndex(shardIndex, shards.length)];
+    }
+
+    private void submit(LedgerShard shard, Runnable task) {
+        if (closed) {
+            throw new IllegalStateException("Ledger is closed.");
+        }
+        shard.submit(task);
+    }
+
+    private static void requireOperands(AccountID id, Money amount) {
+        Objects.requireNonNull(id, "Account ID must not be null.");
+        Objects.requireNonNull(amount, "Amount must not be null.");
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
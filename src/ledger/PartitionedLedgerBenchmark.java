@@ -0,0 +1,120 @@
+package ledger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import utility.*;
+
+public class PartitionedLedgerBenchmark {
+
+    private static final int MAX_IN_FLIGHT = 4096;
+
+    /**
+     * Measures ledger throughput for an increasing number of shards.
+     * Three out of four operations are transfers between random accounts,
+     * so most of them cross shards once more than one shard exists.
+     * Then checks that money is conserved when the destination shard of a
+     * transfer to an account not yet opened is restarted and the account is
+     * opened while the credit may still be re-sent.
+     *
+     * @param args Optional: number of accounts, then number of operations, then number of restart rounds.
+     */
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int restartRounds = args.length > 2 ? Integer.parseInt(args[2]) : 3_000;
+        int maxShards = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("--- PartitionedLedger Benchmark ---");
+        System.out.println(accounts + " accounts, " + operations + " operations");
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            try (PartitionedLedger ledger = new PartitionedLedger(shards)) {
+                List<AccountID> ids = openAccounts(ledger, accounts);
+                long start = System.nanoTime();
+                runOperations(ledger, ids, operations, shards);
+                long elapsed = System.nanoTime() - start;
+                Money expected = Money.ofCents((long) accounts * 1_000_000);
+                System.out.printf("%2d shards: %,12.0f ops/s (total %s, expected %s)%n",
+                        shards, operations / (elapsed / 1e9), ledger.totalBalance(), expected);
+            }
+        }
+        System.out.printf("Restart versus open: %,d of %,d rounds did not conserve money (expected 0)%n",
+                restartVersusOpen(restartRounds), restartRounds);
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    /**
+     * Transfers to an account that does not exist yet on another shard, restarts
+     * that shard so the credit is re-sent, and opens the account meanwhile. The
+     * credit is either refused and refunded or applied, never both.
+     *
+     * @return The number of rounds whose total balance was not the amount deposited.
+     */
+    private static int restartVersusOpen(int rounds) {
+        int violations = 0;
+        for (int round = 0; round < rounds; round++) {
+            try (PartitionedLedger ledger = new PartitionedLedger(2)) {
+                AccountID source = new AccountID("SRC" + round);
+                AccountID destination = new AccountID("DST" + round);
+                for (int i = 0; ledger.shardOf(destination) == ledger.shardOf(source); i++) {
+                    destination = new AccountID("DST" + round + "-" + i);
+                }
+                Money amount = Money.ofCents(100);
+                ledger.open(new AccountHolder("Source"), source)
+                        .thenCompose(balance -> ledger.deposit(source, amount)).join();
+                CompletableFuture<Money> transfer = ledger.transfer(source, destination, amount);
+                ledger.restartShard(ledger.shardOf(destination));
+                ledger.open(new AccountHolder("Destination"), destination).join();
+                transfer.handle((balance, error) -> balance).join();
+                if (!ledger.totalBalance().equals(amount)) {
+                    violations++;
+                }
+            }
+        }
+        return violations;
+    }
+
+    private static List<AccountID> openAccounts(PartitionedLedger ledger, int count) {
+        List<AccountID> ids = new ArrayList<>(count);
+        List<CompletableFuture<Money>> pending = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            AccountID id = new AccountID("ACC" + i);
+            ids.add(id);
+            pending.add(ledger.open(new AccountHolder("Holder " + i), id)
+                    .thenCompose(balance -> ledger.deposit(id, Money.ofCents(1_000_000))));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        return ids;
+    }
+
+    private static void runOperations(PartitionedLedger ledger, List<AccountID> ids, int operations, int clients)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int share = operations / clients;
+            Thread client = new Thread(() -> runClient(ledger, ids, share));
+            threads.add(client);
+            client.start();
+        }
+        for (Thread client : threads) {
+            client.join();
+        }
+    }
+
+    private static void runClient(PartitionedLedger ledger, List<AccountID> ids, int operations) {
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT / ledger.getShardCount());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Money amount = Money.ofCents(1);
+        for (int i = 0; i < operations; i++) {
+            inFlight.acquireUninterruptibly();
+            AccountID from = ids.get(random.nextInt(ids.size()));
+            CompletableFuture<Money> result = (i & 3) == 0
+                    ? ledger.deposit(from, amount).thenCompose(balance -> ledger.withdraw(from, amount))
+                    : ledger.transfer(from, ids.get(random.nextInt(ids.size())), amount);
+            result.whenComplete((balance, error) -> inFlight.release());
+        }
+        inFlight.acquireUninterruptibly(MAX_IN_FLIGHT / ledger.getShardCount());
+    }
+}
@@ -0,0 +1,172 @@
+package ledger;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import utility.*;
+
+/**
+ * A thread-safe bank account optimized for read-mostly traffic.
+ * Balance checks use an optimistic {@link StampedLock} read: they neither block
+ * nor write shared memory unless a writer interleaves, in which case they retry
+ * under the read lock. Writes take the exclusive lock.
+ * Like {@link clean.BankAccount}, the balance is never negative.
+ */
+public final class StampedBankAccount {
+
+    private final AccountHolder accountHolder;
+    private final AccountID accountId;
+    private final StampedLock lock = new StampedLock();
+    private Money balance;
+
+    /**
+     * Creates a new bank account with a zero balance.
+     *
+     * @param accountHolder The account holder. Must not be null.
+     * @param accountId     The unique identifier for the account. Must not be null.
+     */
+    public StampedBankAccount(AccountHolder accountHolder, AccountID accountId) {
+        this.accountHolder = Objects.requireNonNull(accountHolder, "Account holder must not be null.");
+        this.accountId = Objects.requireNonNull(accountId, "Account ID must not be null.");
+        this.balance = Money.ofCents(0);
+    }
+
+    private void validatePositiveAmount(Money amount) {
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive.");
+        }
+    }
+
+    /**
+     * Deposits a specified amount into the account.
+     *
+     * @param amount The amount to deposit. Must be positive.
+     */
+    public void deposit(Money amount) {
+        validatePositiveAmount(amount);
+        long stamp = lock.writeLock();
+        try {
+            this.balance = this.balance.add(amount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Withdraws a specified amount from the account.
+     *
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     */
+    public void withdraw(Money amount) {
+        validatePositiveAmount(amount);
+        long stamp = lock.writeLock();
+        try {
+            this.balance = this.balance.subtract(amount);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Transfers a specified amount from this account to another account atomically.
+     * Both accounts are locked in account ID order.
+     *
+     * @param otherAccount The account to transfer money to. Must not be null.
+     * @param amount       The amount to transfer. Must be positive and not exceed balance.
+     * @throws IllegalStateException    if this account has insufficient funds.
+     * @throws IllegalArgumentException if the amount is not positive.
+     */
+    public void transferTo(StampedBankAccount otherAccount, Money amount) {
+        Objects.requireNonNull(otherAccount, "Destination account must not be null.");
+        validatePositiveAmount(amount);
+        if (otherAccount == this) {
+            withdraw(amount);
+            deposit(amount);
+            return;
+        }
+        boolean thisFirst = accountId.getValue().compareTo(otherAccount.accountId.getValue()) <= 0;
+        StampedBankAccount first = thisFirst ? this : otherAccount;
+        StampedBankAccount second = thisFirst ? otherAccount : this;
+        long firstStamp = first.lock.writeLock();
+        try {
+            long secondStamp = second.lock.writeLock();
+            try {
+                this.balance = this.balance.subtract(amount);
+                otherAccount.balance = otherAccount.balance.add(amount);
+            } finally {
+                second.lock.unlockWrite(secondStamp);
+            }
+        } finally {
+            first.lock.unlockWrite(firstStamp);
+        }
+    }
+
+    /**
+     * Withdraws all money from the account, leaving it with zero balance.
+     *
+     * @return The amount withdrawn (previous balance).
+     */
+    public Money withdrawAll() {
+        long stamp = lock.writeLock();
+        try {
+            Money amount = this.balance;
+            this.balance = Money.ofCents(0);
+            return amount;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the current account balance without blocking.
+     *
+     * @return The current account balance as a Money object.
+     */
+    public Money getBalance() {
+        long stamp = lock.tryOptimisticRead();
+        Money current = this.balance;
+        if (lock.validate(stamp)) {
+            return current;
+        }
+        stamp = lock.readLock();
+        try {
+            return this.balance;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks whether the balance covers a purchase.
+     *
+     * @param purchaseAmount The price of the purchase.
+     * @return true if the balance is at least the purchase amount.
+     */
+    public boolean canAffordPurchase(Money purchaseAmount) {
+        return !getBalance().isLessThan(purchaseAmount);
+    }
+
+    /**
+     * Checks whether the balance exceeds a threshold.
+     *
+     * @param threshold The amount to compare against.
+     * @return true if the balance is greater than the threshold.
+     */
+    public boolean isBalanceGreaterThan(Money threshold) {
+        return getBalance().isGreaterThan(threshold);
+    }
+
+    public AccountHolder getAccountHolder() {
+        return this.accountHolder;
+    }
+
+    public AccountID getAccountId() {
+        return this.accountId;
+    }
+
+    @Override
+    public String toString() {
+        return "StampedBankAccount[accountId=" + accountId +
+               ", accountHolder=" + accountHolder +
+               ", balance=" + getBalance() + " cents]";
+    }
+}
@@ -0,0 +1,470 @@
+package ledger;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import utility.*;
+
+/**
+ * A thread-safe ledger that keeps multiple versions of every balance.
+ *
+ * <p>Each committed operation gets the next number of a global commit sequence
+ * and installs a new balance version, stamped with that number, on every account
+ * it touches; both sides of a transfer share one number. Commits become visible
+ * strictly in sequence order, so a {@link LedgerSnapshot} taken at sequence
+ * {@code n} sees exactly the operations numbered up to {@code n}: money is never
+ * counted mid-transfer, and writers are never paused to take one.
+ *
+ * <p>Versions older than every open snapshot are dropped as accounts are updated.
+ *
+ * <p>With an {@link AccountSource}, accounts are loaded from it the first time
+ * they are used, and snapshots see the unloaded accounts at their source balances.
+ */
+public final class VersionedLedger {
+
+    private static final long NO_SNAPSHOT = Long.MAX_VALUE;
+    private static final long SNAPSHOT_OPENING = 0;
+
+    private final Map<AccountID, VersionedAccount> accounts = new ConcurrentHashMap<>();
+    private final AtomicLong lastAssigned = new AtomicLong();
+    private final NavigableMap<Long, Integer> openSnapshots = new TreeMap<>();
+    private volatile long lastVisible;
+    private volatile long oldestSnapshot = NO_SNAPSHOT;
+    private volatile CommitListener listener = CommitListener.NONE;
+    private volatile AccountSource accountSource;
+    private long sourceSequence;
+
+    /**
+     * Opens a new account with a zero balance.
+     *
+     * @param holder The account holder. Must not be null.
+     * @param id     The unique identifier for the account. Must not be null.
+     * @return The commit sequence number of the opening.
+     * @throws IllegalArgumentException if an account with this ID already exists.
+     *         The attempt still consumes a sequence number.
+     */
+    public long open(AccountHolder holder, AccountID id) {
+        if (accountSource != null && !accounts.containsKey(id)) {
+            load(id);
+        }
+        VersionedAccount account = new VersionedAccount(holder, id);
+        synchronized (account) {
+            long sequence = lastAssigned.incrementAndGet();
+            account.openAt(sequence, Money.ofCents(0));
+            boolean opened = accounts.putIfAbsent(id, account) == null;
+            try {
+                if (opened) {
+                    listener.opened(sequence, holder, id);
+                }
+            } catch (RuntimeException e) {
+                accounts.remove(id, account);
+                throw e;
+            } finally {
+                publish(sequence);
+            }
+            if (!opened) {
+                throw new IllegalArgumentException("Account already exists: " + id);
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Deposits an amount into an account.
+     *
+     * @param id     The account to credit.
+     * @param amount The amount to deposit. Must be positive.
+     * @return The new balance.
+     */
+    public Money deposit(AccountID id, Money amount) {
+        validatePositiveAmount(amount);
+        VersionedAccount account = get(id);
+        Money balance;
+        long sequence;
+        synchronized (account) {
+            balance = account.latest().add(amount);
+            sequence = lastAssigned.incrementAndGet();
+            try {
+                listener.deposited(sequence, id, amount);
+                account.install(sequence, balance, pruneHorizon());
+            } catch (RuntimeException e) {
+                publish(sequence);
+                throw e;
+            }
+        }
+        publish(sequence);
+        return balance;
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     *
+     * @param id     The account to debit.
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @return The new balance.
+     * @throws IllegalStateException if the account has insufficient funds.
+     */
+    public Money withdraw(AccountID id, Money amount) {
+        validatePositiveAmount(amount);
+        VersionedAccount account = get(id);
+        Money balance;
+        long sequence;
+        synchronized (account) {
+            balance = account.latest().subtract(amount);
+            sequence = lastAssigned.incrementAndGet();
+            try {
+                listener.withdrew(sequence, id, amount);
+                account.install(sequence, balance, pruneHorizon());
+            } catch (RuntimeException e) {
+                publish(sequence);
+                throw e;
+            }
+        }
+        publish(sequence);
+        return balance;
+    }
+
+    /**
+     * Transfers an amount between two accounts as one commit.
+     *
+     * @param from   The account to debit.
+     * @param to     The account to credit.
+     * @param amount The amount to transfer. Must be positive and not exceed the source balance.
+     * @return The source balance after the transfer.
+     * @throws IllegalStateException if the source has insufficient funds.
+     */
+    public Money transfer(AccountID from, AccountID to, Money amount) {
+        validatePositiveAmount(amount);
+        VersionedAccount source = get(from);
+        VersionedAccount destination = get(to);
+        if (source == destination) {
+            Money balance = source.latest();
+            balance.subtract(amount);
+            return balance;
+        }
+        boolean sourceFirst = from.getValue().compareTo(to.getValue()) < 0;
+        VersionedAccount first = sourceFirst ? source : destination;
+        VersionedAccount second = sourceFirst ? destination : source;
+        Money balance;
+        long sequence;
+        synchronized (first) {
+            synchronized (second) {
+                balance = source.latest().subtract(amount);
+                Money credited = destination.latest().add(amount);
+                sequence = lastAssigned.incrementAndGet();
+                try {
+                    listener.transferred(sequence, from, to, amount);
+                    long horizon = pruneHorizon();
+                    source.install(sequence, balance, horizon);
+                    destination.install(sequence, credited, horizon);
+                } catch (RuntimeException e) {
+                    publish(sequence);
+                    throw e;
+                }
+            }
+        }
+        publish(sequence);
+        return balance;
+    }
+
+    /**
+     * Registers the listener told about every commit, replacing any previous one.
+     * It is called while the affected accounts are locked and before the commit
+     * becomes visible, so it sees the commits of one account in sequence order.
+     * If it throws, the operation is abandoned and the exception propagates.
+     *
+     * @param listener The listener. Must not be null.
+     */
+    public void setCommitListener(CommitListener listener) {
+        this.listener = Objects.requireNonNull(listener, "Commit listener must not be null.");
+    }
+
+    /**
+     * Moves the commit sequence forward so that new commits are numbered after
+     * {@code sequence}. Meant for recovery, before the ledger is shared.
+     *
+     * @param sequence The last sequence number already used elsewhere, e.g. in a journal.
+     */
+    public void advanceSequence(long sequence) {
+        if (sequence > lastAssigned.get()) {
+            lastAssigned.set(sequence);
+            lastVisible = sequence;
+        }
+    }
+
+    /**
+     * Adds an account with a recovered balance, as of the latest commit sequence
+     * number. This is not a commit and is not reported to the commit listener.
+     * Meant for recovery, before the ledger is shared; accounts may be restored
+     * from several threads at once.
+     *
+     * @param holder  The account holder. Must not be null.
+     * @param id      The unique identifier for the account. Must not be null.
+     * @param balance The recovered balance. Must not be null.
+     * @throws IllegalArgumentException if an account with this ID already exists.
+     */
+    public void restore(AccountHolder holder, AccountID id, Money balance) {
+        Objects.requireNonNull(balance, "Balance must not be null.");
+        VersionedAccount account = new VersionedAccount(holder, id);
+        account.openAt(lastVisible, balance);
+        if (accounts.putIfAbsent(id, account) != null) {
+            throw new IllegalArgumentException("Account already exists: " + id);
+        }
+    }
+
+    /**
+     * Loads accounts from {@code source} the first time they are used, as of the
+     * latest commit sequence number. Accounts already in the ledger take
+     * precedence. Meant for recovery, before the ledger is shared.
+     *
+     * @param source The accounts to load on demand. Must not be null.
+     * @throws IllegalStateException if a source is already set.
+     */
+    public void setAccountSource(AccountSource source) {
+        Objects.requireNonNull(source, "Account source must not be null.");
+        if (accountSource != null) {
+            throw new IllegalStateException("Account source is already set.");
+        }
+        sourceSequence = lastVisible;
+        accountSource = source;
+    }
+
+    /**
+     * Reads the latest committed balance of an account.
+     *
+     * @param id The account to read.
+     * @return The balance.
+     */
+    public Money getBalance(AccountID id) {
+        VersionedAccount account = get(id);
+        while (true) {
+            long visible = lastVisible;
+            if (account.openedAt > visible) {
+                throw new IllegalArgumentException("Unknown account: " + id);
+            }
+            Money balance = account.balanceAt(visible);
+            if (balance != null) {
+                return balance;
+            }
+            // A writer pruned the version we were after; a newer one is visible now.
+        }
+    }
+
+    public AccountHolder getAccountHolder(AccountID id) {
+        return get(id).holder;
+    }
+
+    /**
+     * Checks whether an account exists, loading it from the account source if needed.
+     */
+    public boolean contains(AccountID id) {
+        return accounts.containsKey(id) || (accountSource != null && load(id) != null);
+    }
+
+    /**
+     * Gets the sequence number of the latest commit visible to readers.
+     *
+     * @return The committed sequence number.
+     */
+    public long getCommittedSequence() {
+        return lastVisible;
+    }
+
+    /**
+     * Takes a consistent, read-only view of the whole ledger as of the latest
+     * visible commit. Nothing is copied; the snapshot pins the balance versions
+     * it needs until it is closed.
+     *
+     * @return The snapshot. Close it to let old versions be reclaimed.
+     */
+    public LedgerSnapshot snapshot() {
+        synchronized (openSnapshots) {
+            openSnapshots.merge(SNAPSHOT_OPENING, 1, Integer::sum);
+            oldestSnapshot = SNAPSHOT_OPENING;
+        }
+        long sequence = lastVisible;
+        synchronized (openSnapshots) {
+            openSnapshots.merge(sequence, 1, Integer::sum);
+            release(SNAPSHOT_OPENING);
+        }
+        return new LedgerSnapshot(this, sequence);
+    }
+
+    void closeSnapshot(long sequence) {
+        synchronized (openSnapshots) {
+            release(sequence);
+        }
+    }
+
+    /**
+     * Visits the balance of every account as of a commit sequence number.
+     * Accounts opened after that commit are skipped. The source accounts are
+     * visited first: one not loaded yet has not changed since the source was
+     * set, and one loaded meanwhile still has its source version, which is no
+     * newer than any snapshot.
+     */
+    void forEachAt(long sequence, AccountVisitor visitor) {
+        AccountSource source = accountSource;
+        if (source != null) {
+            source.forEach((id, holder, balance) -> {
+                VersionedAccount account = accounts.get(id);
+                visitor.visit(id, holder, account == null ? balance : account.balanceAt(sequence));
+            });
+        }
+        for (VersionedAccount account : accounts.values()) {
+            if (account.loaded) {
+                continue;
+            }
+            Money balance = account.balanceAt(sequence);
+            if (balance != null) {
+                visitor.visit(account.id, account.holder, balance);
+            }
+        }
+    }
+
+    Money balanceAt(AccountID id, long sequence) {
+        Money balance = get(id).balanceAt(sequence);
+        if (balance == null) {
+            throw new IllegalArgumentException("Unknown account: " + id);
+        }
+        return balance;
+    }
+
+    /**
+     * Receives the balances of a snapshot, one account at a time.
+     */
+    @FunctionalInterface
+    public interface AccountVisitor {
+        void visit(AccountID id, AccountHolder holder, Money balance);
+    }
+
+    private void release(long sequence) {
+        openSnapshots.computeIfPresent(sequence, (key, count) -> count == 1 ? null : count - 1);
+        oldestSnapshot = openSnapshots.isEmpty() ? NO_SNAPSHOT : openSnapshots.firstKey();
+    }
+
+    /**
+     * Gets the oldest sequence number any reader may still ask for.
+     * The visible sequence is read before the snapshot registry, and a snapshot
+     * registers before it reads the visible sequence, so a snapshot being opened
+     * concurrently is never pruned away.
+     */
+    private long pruneHorizon() {
+        long visible = lastVisible;
+        return Math.min(visible, oldestSnapshot);
+    }
+
+    /**
+     * Makes a commit visible once every earlier commit is, so that readers
+     * never observe a later commit without the ones before it.
+     */
+    private void publish(long sequence) {
+        int spins = 0;
+        while (lastVisible != sequence - 1) {
+            if (++spins % 64 == 0) {
+                Thread.yield();
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        lastVisible = sequence;
+    }
+
+    private VersionedAccount get(AccountID id) {
+        VersionedAccount account = accounts.get(Objects.requireNonNull(id, "Account ID must not be null."));
+        if (account == null && accountSource != null) {
+            account = load(id);
+        }
+        if (account == null) {
+            throw new IllegalArgumentException("Unknown account: " + id);
+        }
+        return account;
+    }
+
+    /**
+     * Loads an account from the account source. Two threads may load the same
+     * account at once; both get the one that was stored first.
+     *
+     * @return The account, or null if the source does not have it.
+     */
+    private VersionedAccount load(AccountID id) {
+        VersionedAccount[] loaded = new VersionedAccount[1];
+        if (!accountSource.load(id, (sourceId, holder, balance) -> {
+            VersionedAccount account = new VersionedAccount(holder, sourceId);
+            account.openAt(sourceSequence, balance);
+            account.loaded = true;
+            loaded[0] = account;
+        })) {
+            return null;
+        }
+        VersionedAccount existing = accounts.putIfAbsent(id, loaded[0]);
+        return existing != null ? existing : loaded[0];
+    }
+
+    private static void validatePositiveAmount(Money amount) {
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Amount must be positive.");
+        }
+    }
+
+    /**
+     * An account and its chain of balance versions, newest first.
+     * The chain is only extended and pruned while holding the account's monitor.
+     */
+    private static final class VersionedAccount {
+        private final AccountHolder holder;
+        private final AccountID id;
+        private long openedAt;
+        private boolean loaded;
+        private volatile Version head;
+
+        private VersionedAccount(AccountHolder holder, AccountID id) {
+            this.holder = Objects.requireNonNull(holder, "Account holder must not be null.");
+            this.id = Objects.requireNonNull(id, "Account ID must not be null.");
+        }
+
+        private void openAt(long sequence, Money balance) {
+            this.openedAt = sequence;
+            this.head = new Version(sequence, balance, null);
+        }
+
+        private Money latest() {
+            return head.balance;
+        }
+
+        private void install(long sequence, Money balance, long horizon) {
+            Version version = new Version(sequence, balance, head);
+            head = version;
+            for (Version v = version; v != null; v = v.previous) {
+                if (v.sequence <= horizon) {
+                    v.previous = null;
+                    break;
+                }
+            }
+        }
+
+        private Money balanceAt(long sequence) {
+            for (Version v = head; v != null; v = v.previous) {
+                if (v.sequence <= sequence) {
+                    return v.balance;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Version {
+        private final long sequence;
+        private final Money balance;
+        private volatile Version previous;
+
+        private Version(long sequence, Money balance, Version previous) {
+            this.sequence = sequence;
+            this.balance = balance;
+            this.previous = previous;
+        }
+    }
+}
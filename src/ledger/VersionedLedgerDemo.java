@@ -0,0 +1,67 @@
+package ledger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import utility.*;
+
+public class VersionedLedgerDemo {
+
+    /**
+     * Audits the bank-wide total from snapshots while transfer threads keep running.
+     * Every snapshot total must equal the money deposited, because transfers move
+     * money without creating or destroying it.
+     *
+     * @param args Optional: number of accounts, then number of audits.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int audits = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        System.out.println("--- VersionedLedger Demo ---");
+        VersionedLedger ledger = new VersionedLedger();
+        List<AccountID> ids = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            AccountID id = new AccountID("ACC" + i);
+            ledger.open(new AccountHolder("Holder " + i), id);
+            ledger.deposit(id, Money.ofCents(10_000));
+            ids.add(id);
+        }
+        Money expected = Money.ofCents(10_000L * accounts);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    AccountID from = ids.get(random.nextInt(ids.size()));
+                    AccountID to = ids.get(random.nextInt(ids.size()));
+                    try {
+                        ledger.transfer(from, to, Money.ofCents(1 + random.nextInt(500)));
+                    } catch (IllegalStateException e) {
+                        // Insufficient funds; skip this transfer.
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+
+        for (int i = 0; i < audits; i++) {
+            try (LedgerSnapshot snapshot = ledger.snapshot()) {
+                Money total = snapshot.totalBalance();
+                System.out.println("Snapshot at commit " + snapshot.getSequence() + ": total " + total
+                        + (total.equals(expected) ? " (consistent)" : " (EXPECTED " + expected + ")"));
+            }
+            Thread.sleep(50);
+        }
+
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        System.out.println("--- End of Demo ---");
+    }
+}
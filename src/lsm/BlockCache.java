@@ -0,0 +1,59 @@
+package lsm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of table data blocks, bounded by their total size.
+ * Blocks are keyed by table number and block index; table numbers are never
+ * reused, so the blocks of a deleted table are simply left to age out.
+ * This class is thread-safe.
+ */
+final class BlockCache {
+
+    private final long capacityBytes;
+    private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<>(1024, 0.75f, true);
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    BlockCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    synchronized byte[] get(long table, int block) {
+        byte[] data = blocks.get(key(table, block));
+        if (data == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return data;
+    }
+
+    synchronized void put(long table, int block, byte[] data) {
+        if (data.length > capacityBytes) {
+            return;
+        }
+        byte[] previous = blocks.put(key(table, block), data);
+        usedBytes += data.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<Long, byte[]>> eldest = blocks.entrySet().iterator();
+        while (usedBytes > capacityBytes) {
+            usedBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private static Long key(long table, int block) {
+        return table << 32 | block;
+    }
+}
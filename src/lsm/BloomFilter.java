@@ -0,0 +1,96 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A bloom filter over the keys of one table, so that lookups of keys the table
+ * does not hold usually skip it without reading a block. Probe positions come
+ * from one 64-bit hash by double hashing.
+ */
+final class BloomFilter {
+
+    private static final int MAX_HASHES = 30;
+
+    private final long[] bits;
+    private final int hashCount;
+
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Builds a filter from the {@link #hash} of every key.
+     */
+    static BloomFilter build(long[] keyHashes, int count, int bitsPerKey) {
+        long bitCount = Math.max(64, (long) count * bitsPerKey);
+        int hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+        BloomFilter filter = new BloomFilter(new long[Math.toIntExact((bitCount + 63) / 64)], hashCount);
+        for (int i = 0; i < count; i++) {
+            filter.add(keyHashes[i]);
+        }
+        return filter;
+    }
+
+    static long hash(byte[] key) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : key) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void add(long hash) {
+        long bitCount = bits.length * 64L;
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = hash >>> 32;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (h1 + i * h2) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        long bitCount = bits.length * 64L;
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = hash >>> 32;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (h1 + i * h2) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + bits.length * 8);
+        buffer.putInt(hashCount).putInt(bits.length);
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+        return buffer.array();
+    }
+
+    static BloomFilter fromBytes(ByteBuffer buffer) throws IOException {
+        try {
+            int hashCount = buffer.getInt();
+            int words = buffer.getInt();
+            if (hashCount <= 0 || hashCount > MAX_HASHES || words <= 0 || words > buffer.remaining() / 8) {
+                throw new IOException("Malformed bloom filter.");
+            }
+            long[] bits = new long[words];
+            buffer.asLongBuffer().get(bits);
+            return new BloomFilter(bits, hashCount);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Malformed bloom filter.", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package lsm;
+
+import java.io.IOException;
+
+/**
+ * A cursor over entries in ascending key order. It starts before the first
+ * entry; {@link #key()} and {@link #value()} are valid after {@link #next()}
+ * returned true. Values are {@link LsmStore#TOMBSTONE} for deletes.
+ */
+interface EntryIterator {
+
+    boolean next() throws IOException;
+
+    byte[] key();
+
+    byte[] value();
+}
@@ -0,0 +1,285 @@
+package lsm;
+
+import clean.TransactionStatus;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import utility.*;
+
+/**
+ * Accounts kept in an {@link LsmStore}, with the lookups and balance updates
+ * of {@link ledger.AccountRegistry}, so the number of accounts is not bounded
+ * by memory. Each account is one entry keyed by the UTF-8 bytes of its ID; the
+ * value is the balance in cents followed by the UTF-8 holder name. Amounts
+ * are validated with the rules of {@link clean.BankAccount}.
+ *
+ * <p>Updates of one account are serialized on one of {@value #STRIPES} lock
+ * stripes chosen by ID hash; a transfer locks both stripes in index order and
+ * writes both balances in one {@link WriteBatch}, so it is atomic across a crash.
+ * This class is thread-safe.
+ */
+public final class LsmAccountRegistry implements AutoCloseable {
+
+    private static final int STRIPES = 1024;
+
+    private final LsmStore store;
+    private final Object[] stripes = new Object[STRIPES];
+
+    private LsmAccountRegistry(LsmStore store) {
+        this.store = store;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens the registry stored in a directory, creating it if needed.
+     *
+     * @param directory The store directory. Must not be null.
+     * @param settings  Memory and level sizes of the store. Must not be null.
+     * @return The open registry.
+     * @throws IOException if the store cannot be opened.
+     */
+    public static LsmAccountRegistry open(Path directory, LsmSettings settings) throws IOException {
+        return new LsmAccountRegistry(LsmStore.open(directory, settings));
+    }
+
+    /**
+     * Opens a new account with a zero balance.
+     *
+     * @param holder The account holder. Must not be null.
+     * @param id     The unique identifier for the account. Must not be null.
+     * @throws IllegalArgumentException if an account with this ID already exists.
+     * @throws IOException              if the store cannot be read or written.
+     */
+    public void open(AccountHolder holder, AccountID id) throws IOException {
+        Objects.requireNonNull(holder, "Account holder must not be null.");
+        byte[] key = key(id);
+        synchronized (stripe(id)) {
+            if (store.get(key) != null) {
+                throw new IllegalArgumentException("Account already exists: " + id);
+            }
+            store.put(key, encode(0, holder.getName().getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Opens accounts with opening balances in one {@link WriteBatch}, for bulk
+     * loads. The IDs and holder names are UTF-8 bytes of values the caller has
+     * already validated with the rules of {@link AccountID} and {@link AccountHolder},
+     * and the balances are not negative. Unlike {@link #open}, no lock stripes are
+     * taken, so no other thread may open the same IDs while this runs.
+     *
+     * @param ids      The account IDs. Must not be null.
+     * @param holders  The holder names. Must not be null.
+     * @param balances The opening balances in cents. Must not be null.
+     * @param count    The number of accounts, from the start of each array.
+     * @return For each account, whether it was opened; false if the ID already
+     *         existed, in the store or earlier in the arrays.
+     * @throws IOException if the store cannot be read or written.
+     */
+    public boolean[] load(byte[][] ids, byte[][] holders, long[] balances, int count) throws IOException {
+        Objects.requireNonNull(ids, "IDs must not be null.");
+        Objects.requireNonNull(holders, "Holders must not be null.");
+        Objects.requireNonNull(balances, "Balances must not be null.");
+        boolean[] opened = new boolean[count];
+        Set<ByteBuffer> batchIds = new HashSet<>();
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < count; i++) {
+            if (balances[i] < 0) {
+                throw new IllegalArgumentException("Money amount cannot be negative.");
+            }
+            if (batchIds.add(ByteBuffer.wrap(ids[i])) && store.get(ids[i]) == null) {
+                batch.put(ids[i], encode(balances[i], holders[i]));
+                opened[i] = true;
+            }
+        }
+        if (!batch.isEmpty()) {
+            store.write(batch);
+        }
+        return opened;
+    }
+
+    public boolean contains(AccountID id) throws IOException {
+        return store.get(key(id)) != null;
+    }
+
+    /**
+     * Reads the balance of an account.
+     *
+     * @param id The account to read. Must not be null.
+     * @return The current balance.
+     * @throws IllegalArgumentException if no account has this ID.
+     * @throws IOException              if the store cannot be read.
+     */
+    public Money getBalance(AccountID id) throws IOException {
+        return Money.ofCents(ByteBuffer.wrap(read(id)).getLong());
+    }
+
+    /**
+     * Reads the holder of an account.
+     *
+     * @param id The account to read. Must not be null.
+     * @return The account holder.
+     * @throws IllegalArgumentException if no account has this ID.
+     * @throws IOException              if the store cannot be read.
+     */
+    public AccountHolder getAccountHolder(AccountID id) throws IOException {
+        byte[] value = read(id);
+        return new AccountHolder(new String(value, 8, value.length - 8, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deposits an amount into an account.
+     *
+     * @param id     The account to credit.
+     * @param amount The amount to deposit. Must be positive.
+     * @return The new balance.
+     * @throws IllegalArgumentException if the amount is not positive or no account has this ID.
+     * @throws IOException              if the store cannot be read or written.
+     */
+    public Money deposit(AccountID id, Money amount) throws IOException {
+        requirePositive(amount);
+        synchronized (stripe(id)) {
+            byte[] value = read(id);
+            long balance = ByteBuffer.wrap(value).getLong() + amount.getAmountInCents();
+            store.put(key(id), withBalance(value, balance));
+            return Money.ofCents(balance);
+        }
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     *
+     * @param id     The account to debit.
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @return The new balance.
+     * @throws IllegalArgumentException if the amount is not positive or no account has this ID.
+     * @throws IllegalStateException    if the account has insufficient funds.
+     * @throws IOException              if the store cannot be read or written.
+     */
+    public Money withdraw(AccountID id, Money amount) throws IOException {
+        requirePositive(amount);
+        synchronized (stripe(id)) {
+            byte[] value = read(id);
+            long balance = debit(value, amount);
+            store.put(key(id), withBalance(value, balance));
+            return Money.ofCents(balance);
+        }
+    }
+
+    /**
+     * Transfers an amount between two accounts atomically.
+     *
+     * @param from   The account to debit.
+     * @param to     The account to credit.
+     * @param amount The amount to transfer. Must be positive and not exceed the source balance.
+     * @return The source balance after the transfer.
+     * @throws IllegalArgumentException if the amount is not positive or an account does not exist.
+     * @throws IllegalStateException    if the source account has insufficient funds.
+     * @throws IOException              if the store cannot be read or written.
+     */
+    public Money transfer(AccountID from, AccountID to, Money amount) throws IOException {
+        requirePositive(amount);
+        if (Objects.requireNonNull(from, "Account ID must not be null.").equals(to)) {
+            // As with BankAccount, the amount leaves and re-enters the account, which must still cover it.
+            synchronized (stripe(from)) {
+                byte[] value = read(from);
+                debit(value, amount);
+                return Money.ofCents(ByteBuffer.wrap(value).getLong());
+            }
+        }
+        int first = Math.min(stripeIndex(from), stripeIndex(to));
+        int second = Math.max(stripeIndex(from), stripeIndex(to));
+        synchronized (stripes[first]) {
+            synchronized (stripes[second]) {
+                byte[] source = read(from);
+                byte[] destination = read(to);
+                long sourceBalance = debit(source, amount);
+                long destinationBalance = ByteBuffer.wrap(destination).getLong() + amount.getAmountInCents();
+                store.write(new WriteBatch()
+                        .put(key(from), withBalance(source, sourceBalance))
+                        .put(key(to), withBalance(destination, destinationBalance)));
+                return Money.ofCents(sourceBalance);
+            }
+        }
+    }
+
+    /**
+     * Visits the accounts with IDs in {@code [from, to)}, in ID order.
+     *
+     * @param from     The first ID included. Must not be null.
+     * @param to       The first ID excluded. Must not be null.
+     * @param consumer Receives each ID and balance. Must not be null.
+     * @return The number of accounts visited.
+     * @throws IOException if the store cannot be read.
+     */
+    public long scan(AccountID from, AccountID to, BiConsumer<AccountID, Money> consumer) throws IOException {
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        return store.scan(key(from), key(to), (key, value) -> consumer.accept(
+                new AccountID(new String(key, StandardCharsets.UTF_8)), Money.ofCents(ByteBuffer.wrap(value).getLong())));
+    }
+
+    /**
+     * Gets the underlying store, for statistics.
+     *
+     * @return The store.
+     */
+    public LsmStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private byte[] read(AccountID id) throws IOException {
+        byte[] value = store.get(key(id));
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown account: " + id);
+        }
+        return value;
+    }
+
+    private static long debit(byte[] value, Money amount) {
+        long balance = ByteBuffer.wrap(value).getLong();
+        if (balance < amount.getAmountInCents()) {
+            TransactionStatus.INSUFFICIENT_FUNDS.throwIfFailed();
+        }
+        return balance - amount.getAmountInCents();
+    }
+
+    private static void requirePositive(Money amount) {
+        if (!Objects.requireNonNull(amount, "Amount must not be null.").isPositive()) {
+            TransactionStatus.INVALID_AMOUNT.throwIfFailed();
+        }
+    }
+
+    private static byte[] encode(long balance, byte[] holder) {
+        return ByteBuffer.allocate(8 + holder.length).putLong(balance).put(holder).array();
+    }
+
+    private static byte[] withBalance(byte[] value, long balance) {
+        byte[] updated = value.clone();
+        ByteBuffer.wrap(updated).putLong(0, balance);
+        return updated;
+    }
+
+    private static byte[] key(AccountID id) {
+        return Objects.requireNonNull(id, "Account ID must not be null.").getValue().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Object stripe(AccountID id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    private static int stripeIndex(AccountID id) {
+        return Math.floorMod(Objects.requireNonNull(id, "Account ID must not be null.").hashCode(), STRIPES);
+    }
+}
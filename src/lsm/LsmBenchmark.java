@@ -0,0 +1,104 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import utility.*;
+
+public class LsmBenchmark {
+
+    /**
+     * Loads accounts into an {@link LsmAccountRegistry} in random order, then
+     * measures random balance updates, random balance reads and scans of
+     * consecutive account IDs, and prints the resulting level shape, write
+     * amplification, block cache hit rate and bloom filter skips.
+     *
+     * @param args Optional: number of accounts, number of updates, then accounts per range scan.
+     */
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int scanLength = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("--- LSM Store Benchmark ---");
+        System.out.printf("%,d accounts, %,d updates, scans of %,d accounts%n", accounts, updates, scanLength);
+        Path directory = Files.createTempDirectory("lsm-bench");
+        try (LsmAccountRegistry registry = LsmAccountRegistry.open(directory, LsmSettings.defaults())) {
+            Random random = new Random(42);
+            int[] order = new int[accounts];
+            for (int i = 0; i < accounts; i++) {
+                order[i] = i;
+            }
+            for (int i = accounts - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            System.out.printf("%-16s%16s%n", "phase", "ops/s");
+
+            long start = System.nanoTime();
+            for (int i : order) {
+                registry.open(new AccountHolder("Holder " + i), id(i));
+            }
+            report("load", accounts, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                registry.deposit(id(random.nextInt(accounts)), Money.ofCents(1 + random.nextInt(1000)));
+            }
+            report("random update", updates, start);
+            registry.getStore().awaitCompactions();
+
+            int reads = Math.min(updates, 500_000);
+            start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                registry.getBalance(id(random.nextInt(accounts)));
+            }
+            report("random read", reads, start);
+
+            int scans = Math.max(1, Math.min(20_000, accounts / scanLength));
+            long visited = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < scans; i++) {
+                int first = random.nextInt(Math.max(1, accounts - scanLength));
+                visited += registry.scan(id(first), id(first + scanLength), (id, balance) -> { });
+            }
+            report("range scan", scans, start);
+            System.out.printf("%-16s%,16.0f%n", "scanned accts", visited / ((System.nanoTime() - start) / 1e9));
+
+            LsmStats stats = registry.getStore().getStats();
+            System.out.println();
+            System.out.printf("%-8s%8s%14s%n", "level", "tables", "MB");
+            for (int level = 0; level < Version.LEVELS; level++) {
+                if (stats.getLevelTables(level) > 0) {
+                    System.out.printf("%-8d%8d%14.1f%n", level, stats.getLevelTables(level),
+                            stats.getLevelBytes(level) / 1048576.0);
+                }
+            }
+            long lookups = stats.getCacheHits() + stats.getCacheMisses();
+            System.out.printf("Write amplification %.2f over %,d compactions; %,d write stalls%n",
+                    stats.getWriteAmplification(), stats.getCompactions(), stats.getWriteStalls());
+            System.out.printf("Block cache hit rate %.1f%%; %,d table lookups skipped by bloom filters%n",
+                    lookups == 0 ? 0 : 100.0 * stats.getCacheHits() / lookups, stats.getBloomSkips());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static AccountID id(int index) {
+        return new AccountID(String.format("ACC%09d", index));
+    }
+
+    private static void report(String phase, long operations, long startNanos) {
+        System.out.printf("%-16s%,16.0f%n", phase, operations / ((System.nanoTime() - startNanos) / 1e9));
+    }
+}
@@ -0,0 +1,83 @@
+package lsm;
+
+/**
+ * Memory and level sizes of an {@link LsmStore}. This class is immutable.
+ */
+public final class LsmSettings {
+
+    private static final int MIN_MEM_TABLE_BYTES = 64 << 10;
+
+    private final int memTableBytes;
+    private final long levelBaseBytes;
+    private final int bloomBitsPerKey;
+    private final long blockCacheBytes;
+    private final boolean syncWrites;
+
+    /**
+     * @param memTableBytes   Approximate size at which the memtable is frozen and written as a table. Must be at least 64 KiB.
+     * @param levelBaseBytes  Size budget of level 1; each deeper level gets ten times more. Must be at least the memtable size.
+     * @param bloomBitsPerKey Bloom filter bits per key; 10 gives about 1% false positives. Must be positive.
+     * @param blockCacheBytes Size of the cache of uncompressed table blocks. Must not be negative.
+     * @param syncWrites      Whether every write forces the log to disk before returning.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public LsmSettings(int memTableBytes, long levelBaseBytes, int bloomBitsPerKey, long blockCacheBytes,
+                       boolean syncWrites) {
+        if (memTableBytes < MIN_MEM_TABLE_BYTES) {
+            throw new IllegalArgumentException("Memtable size must be at least " + MIN_MEM_TABLE_BYTES + " bytes.");
+        }
+        if (levelBaseBytes < memTableBytes) {
+            throw new IllegalArgumentException("Level base size must not be smaller than the memtable size.");
+        }
+        if (bloomBitsPerKey <= 0) {
+            throw new IllegalArgumentException("Bloom filter bits per key must be positive.");
+        }
+        if (blockCacheBytes < 0) {
+            throw new IllegalArgumentException("Block cache size must not be negative.");
+        }
+        this.memTableBytes = memTableBytes;
+        this.levelBaseBytes = levelBaseBytes;
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        this.blockCacheBytes = blockCacheBytes;
+        this.syncWrites = syncWrites;
+    }
+
+    /**
+     * Creates settings with a 4 MiB memtable, a 10 MiB level 1, 10 bloom bits
+     * per key, a 32 MiB block cache and writes that are not individually forced.
+     *
+     * @return The default settings.
+     */
+    public static LsmSettings defaults() {
+        return new LsmSettings(4 << 20, 10L << 20, 10, 32L << 20, false);
+    }
+
+    public int getMemTableBytes() {
+        return memTableBytes;
+    }
+
+    public long getLevelBaseBytes() {
+        return levelBaseBytes;
+    }
+
+    /**
+     * Gets the size at which compaction starts a new output table: a fifth of the level 1 budget.
+     *
+     * @return The table file size in bytes.
+     */
+    public long getTableFileBytes() {
+        return levelBaseBytes / 5;
+    }
+
+    public int getBloomBitsPerKey() {
+        return bloomBitsPerKey;
+    }
+
+    public long getBlockCacheBytes() {
+        return blockCacheBytes;
+    }
+
+    public boolean isSyncWrites() {
+        return syncWrites;
+    }
+}
@@ -0,0 +1,123 @@
+package lsm;
+
+import java.util.Arrays;
+
+/**
+ * A point-in-time view of the shape and counters of an {@link LsmStore}. This class is immutable.
+ */
+public final class LsmStats {
+
+    private final int[] levelTables;
+    private final long[] levelBytes;
+    private final long memTableBytes;
+    private final long userBytes;
+    private final long logBytes;
+    private final long flushBytes;
+    private final long compactionBytes;
+    private final long compactions;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long bloomSkips;
+    private final long writeStalls;
+
+    LsmStats(int[] levelTables, long[] levelBytes, long memTableBytes, long userBytes, long logBytes,
+             long flushBytes, long compactionBytes, long compactions, long cacheHits, long cacheMisses,
+             long bloomSkips, long writeStalls) {
+        this.levelTables = levelTables;
+        this.levelBytes = levelBytes;
+        this.memTableBytes = memTableBytes;
+        this.userBytes = userBytes;
+        this.logBytes = logBytes;
+        this.flushBytes = flushBytes;
+        this.compactionBytes = compactionBytes;
+        this.compactions = compactions;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.bloomSkips = bloomSkips;
+        this.writeStalls = writeStalls;
+    }
+
+    public int getLevelTables(int level) {
+        return levelTables[level];
+    }
+
+    public long getLevelBytes(int level) {
+        return levelBytes[level];
+    }
+
+    public long getMemTableBytes() {
+        return memTableBytes;
+    }
+
+    /**
+     * Gets the size of the keys and values written since the store was opened.
+     *
+     * @return The user data in bytes.
+     */
+    public long getUserBytes() {
+        return userBytes;
+    }
+
+    public long getLogBytes() {
+        return logBytes;
+    }
+
+    public long getFlushBytes() {
+        return flushBytes;
+    }
+
+    public long getCompactionBytes() {
+        return compactionBytes;
+    }
+
+    public long getCompactions() {
+        return compactions;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Gets the number of table lookups avoided because a bloom filter ruled the key out.
+     *
+     * @return The number of skipped tables.
+     */
+    public long getBloomSkips() {
+        return bloomSkips;
+    }
+
+    /**
+     * Gets the number of times a writer waited for a flush or level 0 compaction to catch up.
+     *
+     * @return The number of stalls.
+     */
+    public long getWriteStalls() {
+        return writeStalls;
+    }
+
+    /**
+     * Gets the bytes written to logs and tables per byte of user data.
+     *
+     * @return The write amplification, or 0 before anything was written.
+     */
+    public double getWriteAmplification() {
+        return userBytes == 0 ? 0 : (double) (logBytes + flushBytes + compactionBytes) / userBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "LsmStats[levelTables=" + Arrays.toString(levelTables) +
+               ", levelBytes=" + Arrays.toString(levelBytes) +
+               ", compactions=" + compactions +
+               ", writeAmplification=" + String.format("%.2f", getWriteAmplification()) +
+               ", cacheHits=" + cacheHits +
+               ", cacheMisses=" + cacheMisses +
+               ", bloomSkips=" + bloomSkips +
+               ", writeStalls=" + writeStalls + "]";
+    }
+}
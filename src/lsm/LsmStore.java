@@ -0,0 +1,702 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * An embedded log-structured merge-tree store of byte-array keys and values,
+ * ordered by unsigned byte comparison.
+ *
+ * <p>Writes go to a {@link WriteAheadLog} and a sorted {@link MemTable}. A full
+ * memtable is frozen and written by a background thread as a level 0
+ * {@link SSTable}, after which its log is deleted. The same thread compacts
+ * tables into deeper levels: once level 0 has {@value #LEVEL0_COMPACTION_TABLES}
+ * tables they are merged with the overlapping level 1 tables, and once level n
+ * outgrows its budget (the level base size times 10<sup>n-1</sup>) one of its
+ * tables, chosen round-robin by key, is merged into level n+1. Deletes are kept
+ * as tombstones until a compaction into the deepest populated range drops them.
+ * Writers stall while a frozen memtable is waiting to be written or level 0
+ * has {@value #LEVEL0_STOP_TABLES} tables.
+ *
+ * <p>A lookup checks the memtables, then level 0 newest first, then one table
+ * per deeper level; tables whose bloom filter rules the key out are skipped,
+ * and data blocks are shared through an LRU {@link BlockCache}. A
+ * {@code MANIFEST} file records the live tables. This class is thread-safe.
+ */
+public final class LsmStore implements AutoCloseable {
+
+    static final Comparator<byte[]> KEY_ORDER = Arrays::compareUnsigned;
+    /**
+     * The value that marks a deleted key. It is compared by identity.
+     */
+    static final byte[] TOMBSTONE = new byte[0];
+    static final String LOG_SUFFIX = ".log";
+    static final String TABLE_SUFFIX = ".sst";
+    private static final int LEVEL0_COMPACTION_TABLES = 4;
+    private static final int LEVEL0_STOP_TABLES = 12;
+    private static final byte[] FIRST_KEY = new byte[0];
+
+    private final Path directory;
+    private final LsmSettings settings;
+    private final BlockCache cache;
+    private final AtomicLong nextFileNumber;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition workDone = lock.newCondition();
+    private final ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+    private final byte[][] compactPointers = new byte[Version.LEVELS][];
+    private final LongAdder bloomSkips = new LongAdder();
+    private final Thread compactor;
+    private volatile MemTable memTable = new MemTable();
+    private volatile MemTable immutable;
+    private volatile Version version;
+    private WriteAheadLog log;
+    private long frozenLogNumber;
+    private long userBytes;
+    private long logBytes;
+    private long flushBytes;
+    private long compactionBytes;
+    private long compactions;
+    private long writeStalls;
+    private IOException failure;
+    private boolean closing;
+    private volatile boolean closed;
+
+    private LsmStore(Path directory, LsmSettings settings, BlockCache cache, Version version, WriteAheadLog log,
+                     long nextFileNumber) {
+        this.directory = directory;
+        this.settings = settings;
+        this.cache = cache;
+        this.version = version;
+        this.log = log;
+        this.nextFileNumber = new AtomicLong(nextFileNumber);
+        this.compactor = new Thread(this::backgroundLoop, "lsm-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /**
+     * Opens the store in a directory, creating both if needed. Writes still in
+     * the logs are recovered and written as a level 0 table.
+     *
+     * @param directory The store directory. Must not be null.
+     * @param settings  Memory and level sizes. Must not be null.
+     * @return The open store.
+     * @throws IOException if the directory cannot be read or holds a corrupt table or manifest.
+     */
+    public static LsmStore open(Path directory, LsmSettings settings) throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        Files.createDirectories(directory);
+        Manifest manifest = Manifest.read(directory);
+        BlockCache cache = new BlockCache(settings.getBlockCacheBytes());
+        long next = manifest == null ? 1 : manifest.nextFileNumber();
+        long logNumber = manifest == null ? 0 : manifest.logNumber();
+        List<List<SSTable>> levels = new ArrayList<>();
+        for (int level = 0; level < Version.LEVELS; level++) {
+            levels.add(new ArrayList<>());
+        }
+        Set<Long> live = new HashSet<>();
+        try {
+            for (int i = 0; manifest != null && i < manifest.tableCount(); i++) {
+                long number = manifest.number(i);
+                levels.get(manifest.level(i)).add(SSTable.open(fileName(directory, number, TABLE_SUFFIX), number,
+                        cache));
+                live.add(number);
+            }
+            Version version = Version.of(levels);
+
+            List<Long> logs = new ArrayList<>();
+            long largest = next - 1;
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    long log = fileNumber(file, LOG_SUFFIX);
+                    long table = fileNumber(file, TABLE_SUFFIX);
+                    largest = Math.max(largest, Math.max(log, table));
+                    if (log >= logNumber) {
+                        logs.add(log);
+                    } else if (log >= 0 || (table >= 0 && !live.contains(table))) {
+                        // An obsolete log, or the output of a compaction interrupted before it was installed.
+                        Files.delete(file);
+                    }
+                }
+            }
+            next = largest + 1;
+            Collections.sort(logs);
+            MemTable recovered = new MemTable();
+            for (long number : logs) {
+                WriteAheadLog.replay(fileName(directory, number, LOG_SUFFIX), recovered::apply);
+            }
+            if (!recovered.isEmpty()) {
+                SSTableWriter writer = new SSTableWriter(directory, next++, settings.getBloomBitsPerKey());
+                SSTable table = writeAll(writer, recovered.iterator(FIRST_KEY, null), cache);
+                version = version.withFlushed(table);
+            }
+            long newLogNumber = next++;
+            WriteAheadLog log = WriteAheadLog.create(directory, newLogNumber);
+            Manifest.write(directory, next, newLogNumber, version);
+            for (long number : logs) {
+                Files.deleteIfExists(fileName(directory, number, LOG_SUFFIX));
+            }
+            return new LsmStore(directory, settings, cache, version, log, next);
+        } catch (IOException | RuntimeException e) {
+            for (List<SSTable> level : levels) {
+                for (SSTable table : level) {
+                    table.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    static Path fileName(Path directory, long number, String suffix) {
+        return directory.resolve(String.format("%06d%s", number, suffix));
+    }
+
+    /**
+     * Parses the number of a log or table file.
+     *
+     * @return The number, or -1 if the file name does not have the suffix and a number.
+     */
+    private static long fileNumber(Path file, String suffix) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @param key The key. Must not be null.
+     * @return A copy of the value, or null if the key is absent or deleted.
+     * @throws IOException if a table cannot be read.
+     */
+    public byte[] get(byte[] key) throws IOException {
+        Objects.requireNonNull(key, "Key must not be null.");
+        ensureOpen();
+        byte[] value = memTable.get(key);
+        MemTable frozen = immutable;
+        if (value == null && frozen != null) {
+            value = frozen.get(key);
+        }
+        if (value != null) {
+            return value == TOMBSTONE ? null : value.clone();
+        }
+        tableLock.readLock().lock();
+        try {
+            Version current = version;
+            for (SSTable table : current.level(0)) {
+                if (table.covers(key) && (value = lookup(table, key)) != null) {
+                    return value == TOMBSTONE ? null : value;
+                }
+            }
+            for (int level = 1; level < Version.LEVELS; level++) {
+                SSTable table = current.find(level, key);
+                if (table != null && (value = lookup(table, key)) != null) {
+                    return value == TOMBSTONE ? null : value;
+                }
+            }
+            return null;
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    private byte[] lookup(SSTable table, byte[] key) throws IOException {
+        if (!table.mightContain(key)) {
+            bloomSkips.increment();
+            return null;
+        }
+        return table.get(key);
+    }
+
+    /**
+     * Stores a value under a key, replacing any previous value.
+     *
+     * @param key   The key. Must not be null or empty.
+     * @param value The value. Must not be null.
+     * @throws IOException if the write cannot be logged or background work has failed.
+     */
+    public void put(byte[] key, byte[] value) throws IOException {
+        write(new WriteBatch().put(key, value));
+    }
+
+    /**
+     * Deletes a key; deleting an absent key is not an error.
+     *
+     * @param key The key. Must not be null or empty.
+     * @throws IOException if the write cannot be logged or background work has failed.
+     */
+    public void delete(byte[] key) throws IOException {
+        write(new WriteBatch().delete(key));
+    }
+
+    /**
+     * Applies a batch atomically: readers see its writes in order, and after a crash either all of them or none.
+     *
+     * @param batch The batch. Must not be null.
+     * @throws IOException if the batch cannot be logged or background work has failed.
+     */
+    public void write(WriteBatch batch) throws IOException {
+        Objects.requireNonNull(batch, "Batch must not be null.");
+        if (batch.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            makeRoomForWrite();
+            logBytes += log.append(batch, settings.isSyncWrites());
+            userBytes += batch.dataBytes();
+            memTable.apply(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Freezes a full memtable and starts a new log for its successor, waiting
+     * first if the previous frozen memtable has not been written yet or level 0 is full.
+     */
+    private void makeRoomForWrite() throws IOException {
+        while (true) {
+            if (closing) {
+                throw new IllegalStateException("Store is closed.");
+            }
+            if (failure != null) {
+                throw new IOException("Background flush or compaction failed.", failure);
+            }
+            if (memTable.approximateBytes() < settings.getMemTableBytes()) {
+                return;
+            }
+            if (immutable != null || version.level(0).size() >= LEVEL0_STOP_TABLES) {
+                writeStalls++;
+                workDone.awaitUninterruptibly();
+                continue;
+            }
+            WriteAheadLog next = WriteAheadLog.create(directory, nextFileNumber.getAndIncrement());
+            log.close();
+            frozenLogNumber = log.number();
+            log = next;
+            immutable = memTable;
+            memTable = new MemTable();
+            workAvailable.signal();
+        }
+    }
+
+    /**
+     * Visits the live entries with keys in {@code [from, to)} in key order.
+     * Blocks read by the scan are not added to the block cache. Compactions
+     * cannot retire tables while a scan runs, so the consumer should be quick.
+     *
+     * @param from     The first key included. Must not be null.
+     * @param to       The first key excluded, or null to scan to the end.
+     * @param consumer Receives each key and value. Must not be null.
+     * @return The number of entries visited.
+     * @throws IOException if a table cannot be read.
+     */
+    public long scan(byte[] from, byte[] to, BiConsumer<byte[], byte[]> consumer) throws IOException {
+        Objects.requireNonNull(from, "Start key must not be null.");
+        Objects.requireNonNull(consumer, "Consumer must not be null.");
+        ensureOpen();
+        tableLock.readLock().lock();
+        try {
+            List<EntryIterator> sources = new ArrayList<>();
+            sources.add(memTable.iterator(from, to));
+            MemTable frozen = immutable;
+            if (frozen != null) {
+                sources.add(frozen.iterator(from, to));
+            }
+            Version current = version;
+            for (SSTable table : current.level(0)) {
+                sources.add(table.iterator(from, false));
+            }
+            for (int level = 1; level < Version.LEVELS; level++) {
+                if (!current.level(level).isEmpty()) {
+                    sources.add(levelIterator(current.level(level), from));
+                }
+            }
+            MergingIterator merged = new MergingIterator(sources);
+            long visited = 0;
+            while (merged.next()) {
+                if (to != null && KEY_ORDER.compare(merged.key(), to) >= 0) {
+                    break;
+                }
+                if (merged.value() != TOMBSTONE) {
+                    consumer.accept(merged.key().clone(), merged.value().clone());
+                    visited++;
+                }
+            }
+            return visited;
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Iterates over the disjoint, sorted tables of one level as if they were one table.
+     */
+    private static EntryIterator levelIterator(List<SSTable> tables, byte[] from) {
+        return new EntryIterator() {
+            private int next = firstTable();
+            private EntryIterator current;
+
+            private int firstTable() {
+                int index = 0;
+                while (index < tables.size() && KEY_ORDER.compare(tables.get(index).largestKey(), from) < 0) {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean next() throws IOException {
+                while (current == null || !current.next()) {
+                    if (next >= tables.size()) {
+                        return false;
+                    }
+                    current = tables.get(next++).iterator(from, false);
+                }
+                return true;
+            }
+
+            @Override
+            public byte[] key() {
+                return current.key();
+            }
+
+            @Override
+            public byte[] value() {
+                return current.value();
+            }
+        };
+    }
+
+    /**
+     * Gets the current shape of the levels and the store's counters.
+     *
+     * @return The statistics.
+     */
+    public LsmStats getStats() {
+        Version current = version;
+        int[] tables = new int[Version.LEVELS];
+        long[] bytes = new long[Version.LEVELS];
+        for (int level = 0; level < Version.LEVELS; level++) {
+            tables[level] = current.level(level).size();
+            bytes[level] = current.levelBytes(level);
+        }
+        lock.lock();
+        try {
+            return new LsmStats(tables, bytes, memTable.approximateBytes(), userBytes, logBytes, flushBytes,
+                    compactionBytes, compactions, cache.getHits(), cache.getMisses(), bloomSkips.sum(), writeStalls);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until no frozen memtable is pending and no level needs compaction.
+     *
+     * @throws IOException if background work failed.
+     */
+    public void awaitCompactions() throws IOException {
+        lock.lock();
+        try {
+            while (failure == null && !closing && (immutable != null || pickCompaction() != null)) {
+                workAvailable.signal();
+                workDone.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw new IOException("Background flush or compaction failed.", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs on the compactor thread: writes frozen memtables and runs compactions until the store closes.
+     */
+    private void backgroundLoop() {
+        lock.lock();
+        try {
+            while (!closing) {
+                if (immutable != null) {
+                    flushImmutable();
+                } else {
+                    Compaction compaction = pickCompaction();
+                    if (compaction == null) {
+                        workAvailable.awaitUninterruptibly();
+                        continue;
+                    }
+                    runCompaction(compaction);
+                }
+                workDone.signalAll();
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException io ? io : new IOException(e);
+        } finally {
+            workDone.signalAll();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the frozen memtable as a level 0 table and deletes its log. Called
+     * with the lock held; the lock is released while the table is written.
+     */
+    private void flushImmutable() throws IOException {
+        MemTable frozen = immutable;
+        long liveLogNumber = log.number();
+        SSTable table;
+        lock.unlock();
+        try {
+            SSTableWriter writer = new SSTableWriter(directory, nextFileNumber.getAndIncrement(),
+                    settings.getBloomBitsPerKey());
+            table = writeAll(writer, frozen.iterator(FIRST_KEY, null), cache);
+        } finally {
+            lock.lock();
+        }
+        Version next = version.withFlushed(table);
+        Manifest.write(directory, nextFileNumber.get(), liveLogNumber, next);
+        version = next;
+        immutable = null;
+        flushBytes += table.fileSize();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long number = fileNumber(file, LOG_SUFFIX);
+                if (number >= 0 && number < liveLogNumber) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static SSTable writeAll(SSTableWriter writer, EntryIterator entries, BlockCache cache)
+            throws IOException {
+        try {
+            while (entries.next()) {
+                writer.add(entries.key(), entries.value());
+            }
+            return writer.finish(cache);
+        } catch (IOException | RuntimeException e) {
+            writer.abandon();
+            throw e;
+        }
+    }
+
+    /**
+     * Picks the most urgent compaction. Called with the lock held.
+     *
+     * @return The compaction, or null if every level is within budget.
+     */
+    private Compaction pickCompaction() {
+        Version current = version;
+        if (current.level(0).size() >= LEVEL0_COMPACTION_TABLES) {
+            List<SSTable> inputs = new ArrayList<>(current.level(0));
+            return compaction(current, 0, inputs);
+        }
+        long budget = settings.getLevelBaseBytes();
+        for (int level = 1; level < Version.LEVELS - 1; level++, budget *= 10) {
+            List<SSTable> tables = current.level(level);
+            if (current.levelBytes(level) <= budget) {
+                continue;
+            }
+            SSTable chosen = tables.get(0);
+            byte[] pointer = compactPointers[level];
+            for (SSTable table : tables) {
+                if (pointer == null || KEY_ORDER.compare(table.smallestKey(), pointer) > 0) {
+                    chosen = table;
+                    break;
+                }
+            }
+            return compaction(current, level, new ArrayList<>(List.of(chosen)));
+        }
+        return null;
+    }
+
+    private static Compaction compaction(Version current, int level, List<SSTable> inputs) {
+        byte[] smallest = inputs.get(0).smallestKey();
+        byte[] largest = inputs.get(0).largestKey();
+        for (SSTable table : inputs) {
+            smallest = KEY_ORDER.compare(table.smallestKey(), smallest) < 0 ? table.smallestKey() : smallest;
+            largest = KEY_ORDER.compare(table.largestKey(), largest) > 0 ? table.largestKey() : largest;
+        }
+        List<SSTable> all = new ArrayList<>(inputs);
+        all.addAll(current.overlapping(level + 1, smallest, largest));
+        boolean bottom = true;
+        for (int deeper = level + 2; deeper < Version.LEVELS; deeper++) {
+            bottom &= current.overlapping(deeper, smallest, largest).isEmpty();
+        }
+        return new Compaction(level, all, largest, bottom);
+    }
+
+    /**
+     * Merges the inputs of a compaction into new tables on the next level.
+     * Called with the lock held; the lock is released while tables are written,
+     * and a memtable frozen in the meantime is written between output tables
+     * so that writers do not stall for the length of the compaction.
+     */
+    private void runCompaction(Compaction compaction) throws IOException {
+        List<SSTable> outputs = new ArrayList<>();
+        long written = 0;
+        lock.unlock();
+        try {
+            List<EntryIterator> sources = new ArrayList<>();
+            for (SSTable table : compaction.inputs) {
+                sources.add(table.iterator(FIRST_KEY, false));
+            }
+            MergingIterator merged = new MergingIterator(sources);
+            SSTableWriter writer = null;
+            try {
+                while (merged.next()) {
+                    if (compaction.dropTombstones && merged.value() == TOMBSTONE) {
+                        continue;
+                    }
+                    if (writer == null) {
+                        writer = new SSTableWriter(directory, nextFileNumber.getAndIncrement(),
+                                settings.getBloomBitsPerKey());
+                    }
+                    writer.add(merged.key(), merged.value());
+                    if (writer.estimatedSize() >= settings.getTableFileBytes()) {
+                        SSTable table = writer.finish(cache);
+                        writer = null;
+                        outputs.add(table);
+                        written += table.fileSize();
+                        if (immutable != null) {
+                            lock.lock();
+                            try {
+                                flushImmutable();
+                                workDone.signalAll();
+                            } finally {
+                                lock.unlock();
+                            }
+                        }
+                    }
+                }
+                if (writer != null) {
+                    SSTable table = writer.finish(cache);
+                    writer = null;
+                    outputs.add(table);
+                    written += table.fileSize();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (writer != null) {
+                    writer.abandon();
+                }
+                for (SSTable table : outputs) {
+                    table.close();
+                    Files.deleteIfExists(table.path());
+                }
+                throw e;
+            }
+        } finally {
+            lock.lock();
+        }
+        Version next = version.withCompaction(compaction.inputs, compaction.level + 1, outputs);
+        // A frozen memtable not yet written still needs its log.
+        Manifest.write(directory, nextFileNumber.get(), immutable != null ? frozenLogNumber : log.number(), next);
+        compactPointers[compaction.level] = compaction.largest;
+        compactionBytes += written;
+        compactions++;
+        tableLock.writeLock().lock();
+        try {
+            version = next;
+            for (SSTable table : compaction.inputs) {
+                table.close();
+                Files.deleteIfExists(table.path());
+            }
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store is closed.");
+        }
+    }
+
+    /**
+     * Stops background work after the current flush or compaction and closes
+     * the files. Unflushed writes stay in the log and are recovered on the next open.
+     *
+     * @throws IOException if a file cannot be closed, or background work had failed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (compactor.isAlive()) {
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        tableLock.writeLock().lock();
+        try {
+            closed = true;
+            log.close();
+            for (SSTable table : version.all()) {
+                table.close();
+            }
+        } finally {
+            tableLock.writeLock().unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw new IOException("Background flush or compaction failed.", failure);
+        }
+    }
+
+    /**
+     * The tables merged by one compaction: tables of {@code level} and the
+     * tables of the next level that overlap them.
+     */
+    private static final class Compaction {
+        private final int level;
+        private final List<SSTable> inputs;
+        private final byte[] largest;
+        private final boolean dropTombstones;
+
+        private Compaction(int level, List<SSTable> inputs, byte[] largest, boolean dropTombstones) {
+            this.level = level;
+            this.inputs = inputs;
+            this.largest = largest;
+            this.dropTombstones = dropTombstones;
+        }
+    }
+}
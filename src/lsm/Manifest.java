@@ -0,0 +1,131 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The durable description of a store: the next file number, the oldest log
+ * still needed and the level of every live table. It is rewritten after every
+ * flush and compaction, to a temporary file that is forced and renamed over
+ * the previous one, so it always describes a complete set of tables.
+ *
+ * <p>Layout, big-endian: magic, format version, next file number, log number,
+ * table count, then a level and file number per table, and the CRC32C of all
+ * preceding bytes.
+ */
+final class Manifest {
+
+    static final String FILE_NAME = "MANIFEST";
+    private static final int MAGIC = 0x4C534D4D;
+    private static final int FORMAT_VERSION = 1;
+
+    private final long nextFileNumber;
+    private final long logNumber;
+    private final int[] levels;
+    private final long[] numbers;
+
+    private Manifest(long nextFileNumber, long logNumber, int[] levels, long[] numbers) {
+        this.nextFileNumber = nextFileNumber;
+        this.logNumber = logNumber;
+        this.levels = levels;
+        this.numbers = numbers;
+    }
+
+    /**
+     * Reads the manifest of a directory.
+     *
+     * @return The manifest, or null if the directory has none.
+     * @throws IOException if the manifest cannot be read or is corrupt.
+     */
+    static Manifest read(Path directory) throws IOException {
+        Path path = directory.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), 0, buffer.limit() - 4);
+            if (buffer.getInt(buffer.limit() - 4) != (int) crc.getValue() || buffer.getInt() != MAGIC) {
+                throw new IOException("Corrupt manifest: " + path);
+            }
+            if (buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported manifest format in " + path);
+            }
+            long nextFileNumber = buffer.getLong();
+            long logNumber = buffer.getLong();
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 12) {
+                throw new IOException("Corrupt manifest: " + path);
+            }
+            int[] levels = new int[count];
+            long[] numbers = new long[count];
+            for (int i = 0; i < count; i++) {
+                levels[i] = buffer.getInt();
+                numbers[i] = buffer.getLong();
+                if (levels[i] < 0 || levels[i] >= Version.LEVELS) {
+                    throw new IOException("Corrupt manifest: " + path);
+                }
+            }
+            return new Manifest(nextFileNumber, logNumber, levels, numbers);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt manifest: " + path, e);
+        }
+    }
+
+    /**
+     * Replaces the manifest of a directory. Level 0 tables are written newest first and the others in key order.
+     */
+    static void write(Path directory, long nextFileNumber, long logNumber, Version version) throws IOException {
+        List<SSTable> tables = version.all();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 8 + 4 + tables.size() * 12 + 4);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(nextFileNumber).putLong(logNumber).putInt(tables.size());
+        for (int level = 0; level < Version.LEVELS; level++) {
+            for (SSTable table : version.level(level)) {
+                buffer.putInt(level).putLong(table.number());
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue()).flip();
+
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    long nextFileNumber() {
+        return nextFileNumber;
+    }
+
+    long logNumber() {
+        return logNumber;
+    }
+
+    int tableCount() {
+        return numbers.length;
+    }
+
+    int level(int table) {
+        return levels[table];
+    }
+
+    long number(int table) {
+        return numbers[table];
+    }
+}
@@ -0,0 +1,79 @@
+package lsm;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sorted in-memory buffer of recent writes. Deletes are kept as
+ * {@link LsmStore#TOMBSTONE} values so that they hide older values in tables.
+ * Writes come from one thread at a time; reads may run concurrently with them.
+ */
+final class MemTable {
+
+    /**
+     * Rough per-entry overhead of a skip-list node and two arrays, counted towards the size limit.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ConcurrentSkipListMap<byte[], byte[]> entries = new ConcurrentSkipListMap<>(LsmStore.KEY_ORDER);
+    private final AtomicLong approximateBytes = new AtomicLong();
+
+    void apply(WriteBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] key = batch.key(i);
+            byte[] value = batch.value(i);
+            byte[] previous = entries.put(key, value);
+            long delta = previous == null ? ENTRY_OVERHEAD + key.length + value.length : value.length - previous.length;
+            approximateBytes.addAndGet(delta);
+        }
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @return The value, {@link LsmStore#TOMBSTONE} if the key was deleted, or null if it is not in the memtable.
+     */
+    byte[] get(byte[] key) {
+        return entries.get(key);
+    }
+
+    long approximateBytes() {
+        return approximateBytes.get();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Iterates over the entries with keys in {@code [from, to)}; a null {@code to} means no upper bound.
+     */
+    EntryIterator iterator(byte[] from, byte[] to) {
+        ConcurrentNavigableMap<byte[], byte[]> range = to == null
+                ? entries.tailMap(from, true)
+                : entries.subMap(from, true, to, false);
+        Iterator<Map.Entry<byte[], byte[]>> iterator = range.entrySet().iterator();
+        return new EntryIterator() {
+            private Map.Entry<byte[], byte[]> current;
+
+            @Override
+            public boolean next() {
+                current = iterator.hasNext() ? iterator.next() : null;
+                return current != null;
+            }
+
+            @Override
+            public byte[] key() {
+                return current.getKey();
+            }
+
+            @Override
+            public byte[] value() {
+                return current.getValue();
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package lsm;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted iterators into one, newest first: when several sources hold
+ * the same key, only the entry of the source listed first is returned.
+ * Tombstones are returned like any other value.
+ */
+final class MergingIterator implements EntryIterator {
+
+    private final PriorityQueue<Source> heap = new PriorityQueue<>((a, b) -> {
+        int order = LsmStore.KEY_ORDER.compare(a.iterator.key(), b.iterator.key());
+        return order != 0 ? order : Integer.compare(a.rank, b.rank);
+    });
+    private byte[] key;
+    private byte[] value;
+
+    /**
+     * @param sources The iterators, newest first.
+     */
+    MergingIterator(List<EntryIterator> sources) throws IOException {
+        for (int i = 0; i < sources.size(); i++) {
+            advance(new Source(sources.get(i), i));
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        Source top = heap.poll();
+        if (top == null) {
+            return false;
+        }
+        key = top.iterator.key();
+        value = top.iterator.value();
+        advance(top);
+        while (!heap.isEmpty() && LsmStore.KEY_ORDER.compare(heap.peek().iterator.key(), key) == 0) {
+            advance(heap.poll());
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] key() {
+        return key;
+    }
+
+    @Override
+    public byte[] value() {
+        return value;
+    }
+
+    private void advance(Source source) throws IOException {
+        if (source.iterator.next()) {
+            heap.add(source);
+        }
+    }
+
+    private static final class Source {
+        private final EntryIterator iterator;
+        private final int rank;
+
+        private Source(EntryIterator iterator, int rank) {
+            this.iterator = iterator;
+            this.rank = rank;
+        }
+    }
+}
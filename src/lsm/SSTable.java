@@ -0,0 +1,292 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * An immutable sorted table file.
+ *
+ * <p>Layout, big-endian: data blocks of about {@value SSTableWriter#BLOCK_SIZE}
+ * bytes holding entries (key length, value length or -1 for a delete, key,
+ * value) in key order; an index with the first key, offset, length and CRC32C
+ * of every block followed by the table's last key; the bloom filter of all
+ * keys; and a footer with the index and filter extents, the entry count, the
+ * CRC32C of the index and filter, and a magic number. The index and filter are
+ * checked and held in memory while the table is open, so a lookup reads at most
+ * one block, and none when the filter rules the key out. A block is checked
+ * whenever it is read from disk.
+ * This class is thread-safe.
+ */
+final class SSTable implements AutoCloseable {
+
+    static final int MAGIC = 0x4C534D55;
+    private static final int FOOTER_SIZE = 8 + 4 + 8 + 4 + 8 + 4 + 4;
+
+    private final Path path;
+    private final long number;
+    private final FileChannel channel;
+    private final BlockCache cache;
+    private final long fileSize;
+    private final long entryCount;
+    private final byte[][] firstKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] crcs;
+    private final byte[] lastKey;
+    private final BloomFilter bloom;
+
+    private SSTable(Path path, long number, FileChannel channel, BlockCache cache, long fileSize, long entryCount,
+                    byte[][] firstKeys, long[] offsets, int[] lengths, int[] crcs, byte[] lastKey, BloomFilter bloom) {
+        this.path = path;
+        this.number = number;
+        this.channel = channel;
+        this.cache = cache;
+        this.fileSize = fileSize;
+        this.entryCount = entryCount;
+        this.firstKeys = firstKeys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.crcs = crcs;
+        this.lastKey = lastKey;
+        this.bloom = bloom;
+    }
+
+    static SSTable open(Path path, long number, BlockCache cache) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new IOException("Table is truncated: " + path);
+            }
+            ByteBuffer footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexLength = footer.getInt();
+            long bloomOffset = footer.getLong();
+            int bloomLength = footer.getInt();
+            long entryCount = footer.getLong();
+            int crc = footer.getInt();
+            if (footer.getInt() != MAGIC || indexOffset < 0 || indexLength < 0 || bloomLength < 0
+                    || bloomOffset != indexOffset + indexLength || bloomOffset + bloomLength != size - FOOTER_SIZE) {
+                throw new IOException("Not a table file: " + path);
+            }
+            ByteBuffer index = read(channel, indexOffset, indexLength);
+            ByteBuffer bloomBytes = read(channel, bloomOffset, bloomLength);
+            CRC32C checksum = new CRC32C();
+            checksum.update(index.duplicate());
+            checksum.update(bloomBytes.duplicate());
+            if ((int) checksum.getValue() != crc) {
+                throw new IOException("Corrupt table index or filter: " + path);
+            }
+            int blockCount = index.getInt();
+            if (blockCount <= 0 || blockCount > indexLength / 20) {
+                throw new IOException("Malformed table index: " + path);
+            }
+            byte[][] firstKeys = new byte[blockCount][];
+            long[] offsets = new long[blockCount];
+            int[] lengths = new int[blockCount];
+            int[] crcs = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                firstKeys[i] = new byte[index.getInt()];
+                index.get(firstKeys[i]);
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                crcs[i] = index.getInt();
+            }
+            byte[] lastKey = new byte[index.getInt()];
+            index.get(lastKey);
+            BloomFilter bloom = BloomFilter.fromBytes(bloomBytes);
+            return new SSTable(path, number, channel, cache, size, entryCount, firstKeys, offsets, lengths, crcs,
+                    lastKey, bloom);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            channel.close();
+            throw new IOException("Malformed table index: " + path, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long number() {
+        return number;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long fileSize() {
+        return fileSize;
+    }
+
+    long entryCount() {
+        return entryCount;
+    }
+
+    byte[] smallestKey() {
+        return firstKeys[0];
+    }
+
+    byte[] largestKey() {
+        return lastKey;
+    }
+
+    boolean covers(byte[] key) {
+        return LsmStore.KEY_ORDER.compare(key, firstKeys[0]) >= 0 && LsmStore.KEY_ORDER.compare(key, lastKey) <= 0;
+    }
+
+    /**
+     * Checks whether the table's key range intersects {@code [from, to]}.
+     */
+    boolean overlaps(byte[] from, byte[] to) {
+        return LsmStore.KEY_ORDER.compare(lastKey, from) >= 0 && LsmStore.KEY_ORDER.compare(firstKeys[0], to) <= 0;
+    }
+
+    boolean mightContain(byte[] key) {
+        return bloom.mightContain(key);
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @return The value, {@link LsmStore#TOMBSTONE} if the key was deleted, or null if the table does not hold it.
+     */
+    byte[] get(byte[] key) throws IOException {
+        int block = blockFor(key);
+        if (block < 0) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.wrap(block(block, true));
+        try {
+            while (data.hasRemaining()) {
+                int keyLength = data.getInt();
+                int valueLength = data.getInt();
+                int start = data.position();
+                int order = Arrays.compareUnsigned(key, 0, key.length, data.array(), start, start + keyLength);
+                data.position(start + keyLength);
+                if (order == 0) {
+                    return readValue(data, valueLength);
+                }
+                if (order < 0) {
+                    return null;
+                }
+                data.position(data.position() + Math.max(0, valueLength));
+            }
+            return null;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed block " + block + " in " + path, e);
+        }
+    }
+
+    /**
+     * Iterates over the entries with keys of at least {@code from}, to the end of the table.
+     *
+     * @param fillCache Whether blocks read from disk are added to the block cache; long scans should not evict hot blocks.
+     */
+    EntryIterator iterator(byte[] from, boolean fillCache) {
+        return new EntryIterator() {
+            private int block = Math.max(0, blockFor(from));
+            private ByteBuffer data;
+            private byte[] key;
+            private byte[] value;
+
+            @Override
+            public boolean next() throws IOException {
+                while (true) {
+                    if (data == null || !data.hasRemaining()) {
+                        if (block >= firstKeys.length) {
+                            return false;
+                        }
+                        data = ByteBuffer.wrap(block(block++, fillCache));
+                    }
+                    try {
+                        int keyLength = data.getInt();
+                        int valueLength = data.getInt();
+                        key = new byte[keyLength];
+                        data.get(key);
+                        value = readValue(data, valueLength);
+                    } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                        throw new IOException("Malformed block " + (block - 1) + " in " + path, e);
+                    }
+                    if (LsmStore.KEY_ORDER.compare(key, from) >= 0) {
+                        return true;
+                    }
+                }
+            }
+
+            @Override
+            public byte[] key() {
+                return key;
+            }
+
+            @Override
+            public byte[] value() {
+                return value;
+            }
+        };
+    }
+
+    private static byte[] readValue(ByteBuffer data, int valueLength) {
+        if (valueLength < 0) {
+            return LsmStore.TOMBSTONE;
+        }
+        byte[] value = new byte[valueLength];
+        data.get(value);
+        return value;
+    }
+
+    /**
+     * Finds the last block whose first key is not greater than {@code key}.
+     *
+     * @return The block index, or -1 if the key sorts before the first block.
+     */
+    private int blockFor(byte[] key) {
+        int low = 0;
+        int high = firstKeys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (LsmStore.KEY_ORDER.compare(firstKeys[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private byte[] block(int block, boolean fillCache) throws IOException {
+        byte[] data = cache.get(number, block);
+        if (data == null) {
+            data = read(channel, offsets[block], lengths[block]).array();
+            CRC32C crc = new CRC32C();
+            crc.update(data);
+            if ((int) crc.getValue() != crcs[block]) {
+                throw new IOException("Corrupt block " + block + " at offset " + offsets[block] + " in " + path);
+            }
+            if (fillCache) {
+                cache.put(number, block, data);
+            }
+        }
+        return data;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of table.");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
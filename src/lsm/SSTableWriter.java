@@ -0,0 +1,161 @@
+package lsm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes a table from entries added in strictly ascending key order. See
+ * {@link SSTable} for the layout. The file is forced to disk by {@link #finish};
+ * {@link #abandon()} deletes an unfinished file.
+ */
+final class SSTableWriter {
+
+    static final int BLOCK_SIZE = 4096;
+
+    private final Path path;
+    private final long number;
+    private final int bloomBitsPerKey;
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private final List<byte[]> firstKeys = new ArrayList<>();
+    private final List<long[]> blockExtents = new ArrayList<>();
+    private long[] keyHashes = new long[1024];
+    private byte[] blockFirstKey;
+    private byte[] lastKey;
+    private long entryCount;
+    private long position;
+
+    SSTableWriter(Path directory, long number, int bloomBitsPerKey) throws IOException {
+        this.path = LsmStore.fileName(directory, number, LsmStore.TABLE_SUFFIX);
+        this.number = number;
+        this.bloomBitsPerKey = bloomBitsPerKey;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param key   The key, greater than every key added before.
+     * @param value The value, or {@link LsmStore#TOMBSTONE}.
+     */
+    void add(byte[] key, byte[] value) throws IOException {
+        if (lastKey != null && LsmStore.KEY_ORDER.compare(lastKey, key) >= 0) {
+            throw new IllegalArgumentException("Keys must be added in ascending order.");
+        }
+        if (blockFirstKey == null) {
+            blockFirstKey = key;
+        }
+        blockOut.writeInt(key.length);
+        if (value == LsmStore.TOMBSTONE) {
+            blockOut.writeInt(-1);
+            blockOut.write(key);
+        } else {
+            blockOut.writeInt(value.length);
+            blockOut.write(key);
+            blockOut.write(value);
+        }
+        if (entryCount == keyHashes.length) {
+            keyHashes = Arrays.copyOf(keyHashes, keyHashes.length * 2);
+        }
+        keyHashes[(int) entryCount++] = BloomFilter.hash(key);
+        lastKey = key;
+        if (block.size() >= BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Gets the bytes written so far plus the open block, which compaction uses to split its output.
+     */
+    long estimatedSize() {
+        return position + block.size();
+    }
+
+    long entryCount() {
+        return entryCount;
+    }
+
+    private void writeBlock() throws IOException {
+        firstKeys.add(blockFirstKey);
+        CRC32C crc = new CRC32C();
+        crc.update(block.toByteArray());
+        blockExtents.add(new long[] {position, block.size(), (int) crc.getValue()});
+        block.writeTo(out);
+        position += block.size();
+        block.reset();
+        blockFirstKey = null;
+    }
+
+    /**
+     * Writes the index, bloom filter and footer, forces the file and opens it for reading.
+     *
+     * @return The finished table.
+     */
+    SSTable finish(BlockCache cache) throws IOException {
+        if (entryCount == 0) {
+            throw new IllegalStateException("A table needs at least one entry.");
+        }
+        try {
+            if (block.size() > 0) {
+                writeBlock();
+            }
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream indexOut = new DataOutputStream(index);
+            indexOut.writeInt(firstKeys.size());
+            for (int i = 0; i < firstKeys.size(); i++) {
+                indexOut.writeInt(firstKeys.get(i).length);
+                indexOut.write(firstKeys.get(i));
+                indexOut.writeLong(blockExtents.get(i)[0]);
+                indexOut.writeInt((int) blockExtents.get(i)[1]);
+                indexOut.writeInt((int) blockExtents.get(i)[2]);
+            }
+            indexOut.writeInt(lastKey.length);
+            indexOut.write(lastKey);
+            byte[] bloom = BloomFilter.build(keyHashes, (int) entryCount, bloomBitsPerKey).toBytes();
+            long indexOffset = position;
+            long bloomOffset = indexOffset + index.size();
+            CRC32C crc = new CRC32C();
+            crc.update(index.toByteArray());
+            crc.update(bloom);
+            index.writeTo(out);
+            out.write(bloom);
+            out.writeLong(indexOffset);
+            out.writeInt(index.size());
+            out.writeLong(bloomOffset);
+            out.writeInt(bloom.length);
+            out.writeLong(entryCount);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(SSTable.MAGIC);
+            out.flush();
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+        return SSTable.open(path, number, cache);
+    }
+
+    /**
+     * Closes and deletes an unfinished table.
+     */
+    void abandon() throws IOException {
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
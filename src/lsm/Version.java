@@ -0,0 +1,120 @@
+package lsm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set of live tables, by level. Level 0 holds flushed memtables, newest
+ * first, whose key ranges may overlap; every deeper level holds tables with
+ * disjoint key ranges sorted by key. A version is immutable: flushes and
+ * compactions install a new one.
+ */
+final class Version {
+
+    static final int LEVELS = 7;
+
+    private final List<List<SSTable>> levels;
+
+    private Version(List<List<SSTable>> levels) {
+        this.levels = levels;
+    }
+
+    static Version empty() {
+        List<List<SSTable>> levels = new ArrayList<>();
+        for (int i = 0; i < LEVELS; i++) {
+            levels.add(List.of());
+        }
+        return new Version(Collections.unmodifiableList(levels));
+    }
+
+    /**
+     * Creates a version from tables listed level by level, as in the manifest.
+     * Level 0 is ordered newest first and the other levels by key.
+     */
+    static Version of(List<List<SSTable>> tables) {
+        Version version = empty();
+        for (int level = 0; level < LEVELS; level++) {
+            version = version.replace(level, tables.get(level));
+        }
+        return version;
+    }
+
+    List<SSTable> level(int level) {
+        return levels.get(level);
+    }
+
+    long levelBytes(int level) {
+        long bytes = 0;
+        for (SSTable table : levels.get(level)) {
+            bytes += table.fileSize();
+        }
+        return bytes;
+    }
+
+    List<SSTable> all() {
+        List<SSTable> all = new ArrayList<>();
+        levels.forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * Finds the table of a level 1 or deeper whose key range covers a key.
+     *
+     * @return The table, or null if none covers the key.
+     */
+    SSTable find(int level, byte[] key) {
+        List<SSTable> tables = levels.get(level);
+        int low = 0;
+        int high = tables.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (LsmStore.KEY_ORDER.compare(tables.get(mid).largestKey(), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low < tables.size() && tables.get(low).covers(key) ? tables.get(low) : null;
+    }
+
+    List<SSTable> overlapping(int level, byte[] from, byte[] to) {
+        List<SSTable> overlapping = new ArrayList<>();
+        for (SSTable table : levels.get(level)) {
+            if (table.overlaps(from, to)) {
+                overlapping.add(table);
+            }
+        }
+        return overlapping;
+    }
+
+    Version withFlushed(SSTable table) {
+        List<SSTable> level0 = new ArrayList<>(levels.get(0));
+        level0.add(0, table);
+        return replace(0, level0);
+    }
+
+    /**
+     * Replaces the inputs of a compaction, wherever they are, with its outputs on {@code outputLevel}.
+     */
+    Version withCompaction(Collection<SSTable> inputs, int outputLevel, List<SSTable> outputs) {
+        Version version = this;
+        for (int level = 0; level < LEVELS; level++) {
+            List<SSTable> kept = new ArrayList<>(levels.get(level));
+            kept.removeAll(inputs);
+            if (level == outputLevel) {
+                kept.addAll(outputs);
+                kept.sort((a, b) -> LsmStore.KEY_ORDER.compare(a.smallestKey(), b.smallestKey()));
+            }
+            version = version.replace(level, kept);
+        }
+        return version;
+    }
+
+    private Version replace(int level, List<SSTable> tables) {
+        List<List<SSTable>> copy = new ArrayList<>(levels);
+        copy.set(level, List.copyOf(tables));
+        return new Version(Collections.unmodifiableList(copy));
+    }
+}
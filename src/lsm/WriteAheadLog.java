@@ -0,0 +1,104 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * The log that makes the memtable durable. Each {@link WriteBatch} is one
+ * record: a 4-byte payload length, the CRC32C of the payload, then the encoded
+ * batch. Replay stops at the first incomplete or corrupt record, which is
+ * where a crash cut the log short. Not thread-safe; the store appends under its write lock.
+ */
+final class WriteAheadLog implements AutoCloseable {
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final long number;
+    private final FileChannel channel;
+    private long position;
+
+    private WriteAheadLog(long number, FileChannel channel) {
+        this.number = number;
+        this.channel = channel;
+    }
+
+    static WriteAheadLog create(Path directory, long number) throws IOException {
+        return new WriteAheadLog(number, FileChannel.open(LsmStore.fileName(directory, number, LsmStore.LOG_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Appends a batch and, if {@code sync} is set, forces it to disk.
+     *
+     * @return The size of the record in bytes.
+     */
+    int append(WriteBatch batch, boolean sync) throws IOException {
+        byte[] payload = batch.encode();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+        return record.capacity();
+    }
+
+    /**
+     * Replays the complete records of a log file.
+     *
+     * @return The number of bytes replayed; the rest of the file is a torn or corrupt tail.
+     */
+    static long replay(Path path, Consumer<WriteBatch> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int length = header.flip().getInt();
+                int expectedCrc = header.getInt();
+                if (length < 4 || position + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, position + RECORD_HEADER_SIZE);
+                CRC32C crc = new CRC32C();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                consumer.accept(WriteBatch.decode(payload.flip()));
+                position += RECORD_HEADER_SIZE + length;
+            }
+            return position;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log.");
+            }
+        }
+    }
+
+    long number() {
+        return number;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,121 @@
+package lsm;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Puts and deletes that an {@link LsmStore} applies atomically: they are
+ * logged as one record, so after a crash either all or none of them are
+ * recovered. Keys and values are copied when they are added.
+ */
+public final class WriteBatch {
+
+    private final List<byte[]> keys = new ArrayList<>();
+    private final List<byte[]> values = new ArrayList<>();
+    private long dataBytes;
+
+    /**
+     * Adds a put of a key.
+     *
+     * @param key   The key. Must not be null or empty.
+     * @param value The value. Must not be null.
+     * @return This batch.
+     */
+    public WriteBatch put(byte[] key, byte[] value) {
+        Objects.requireNonNull(value, "Value must not be null.");
+        add(key, value.clone());
+        return this;
+    }
+
+    /**
+     * Adds a delete of a key.
+     *
+     * @param key The key. Must not be null or empty.
+     * @return This batch.
+     */
+    public WriteBatch delete(byte[] key) {
+        add(key, LsmStore.TOMBSTONE);
+        return this;
+    }
+
+    private void add(byte[] key, byte[] value) {
+        if (Objects.requireNonNull(key, "Key must not be null.").length == 0) {
+            throw new IllegalArgumentException("Key must not be empty.");
+        }
+        keys.add(key.clone());
+        values.add(value);
+        dataBytes += key.length + value.length;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    byte[] key(int index) {
+        return keys.get(index);
+    }
+
+    /**
+     * Gets the value of an operation, {@link LsmStore#TOMBSTONE} for a delete.
+     */
+    byte[] value(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Gets the total size of the keys and values, the user data that write amplification is measured against.
+     */
+    long dataBytes() {
+        return dataBytes;
+    }
+
+    /**
+     * Encodes the batch as an operation count followed by, per operation, the
+     * key length and key, then the value length (-1 for a delete) and value.
+     */
+    byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(4 + 8L * keys.size() + dataBytes));
+        buffer.putInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = values.get(i);
+            buffer.putInt(keys.get(i).length).put(keys.get(i));
+            if (value == LsmStore.TOMBSTONE) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(value.length).put(value);
+            }
+        }
+        return buffer.array();
+    }
+
+    static WriteBatch decode(ByteBuffer buffer) throws IOException {
+        try {
+            WriteBatch batch = new WriteBatch();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                int valueLength = buffer.getInt();
+                byte[] value = LsmStore.TOMBSTONE;
+                if (valueLength >= 0) {
+                    value = new byte[valueLength];
+                    buffer.get(value);
+                }
+                batch.keys.add(key);
+                batch.values.add(value);
+                batch.dataBytes += key.length + value.length;
+            }
+            return batch;
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Malformed write batch.", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package raft;
+
+import java.io.IOException;
+import ledger.VersionedLedger;
+import utility.*;
+
+/**
+ * The kinds of ledger command replicated through the Raft log, each knowing how to run against the ledger.
+ */
+public enum CommandType {
+
+    OPEN(1) {
+        @Override
+        Money apply(LedgerCommand command, VersionedLedger ledger) {
+            ledger.open(command.getHolder(), command.getAccount());
+            return ledger.getBalance(command.getAccount());
+        }
+    },
+
+    DEPOSIT(2) {
+        @Override
+        Money apply(LedgerCommand command, VersionedLedger ledger) {
+            return ledger.deposit(command.getAccount(), command.getAmount());
+        }
+    },
+
+    WITHDRAW(3) {
+        @Override
+        Money apply(LedgerCommand command, VersionedLedger ledger) {
+            return ledger.withdraw(command.getAccount(), command.getAmount());
+        }
+    },
+
+    TRANSFER(4) {
+        @Override
+        Money apply(LedgerCommand command, VersionedLedger ledger) {
+            return ledger.transfer(command.getAccount(), command.getCounterparty(), command.getAmount());
+        }
+    };
+
+    private final int code;
+
+    CommandType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    static CommandType fromCode(int code) throws IOException {
+        for (CommandType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IOException("Unknown command type: " + code);
+    }
+
+    /**
+     * Runs a command against a replica's ledger. Every replica gets the same
+     * outcome, rejection included, because it applies the same commands in the
+     * same order.
+     *
+     * @return The resulting balance of the command's account.
+     * @throws IllegalArgumentException if the ledger rejects the command.
+     * @throws IllegalStateException if the ledger rejects the command.
+     */
+    abstract Money apply(LedgerCommand command, VersionedLedger ledger);
+}
@@ -0,0 +1,145 @@
+package raft;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import utility.*;
+
+/**
+ * One ledger operation as submitted by a client and stored in the Raft log. This class is immutable.
+ *
+ * <p>Binary layout, big-endian: type (1 byte), amount in cents (8), account ID,
+ * then a second string holding the counterparty of a transfer or the holder of
+ * an opened account. Strings are a 2-byte length followed by UTF-8 bytes; an
+ * absent string has length 0.
+ */
+public final class LedgerCommand {
+
+    private static final int FIXED_SIZE = 1 + 8 + 2 + 2;
+
+    private final CommandType type;
+    private final AccountID account;
+    private final AccountID counterparty;
+    private final AccountHolder holder;
+    private final Money amount;
+
+    private LedgerCommand(CommandType type, AccountID account, AccountID counterparty, AccountHolder holder,
+                          Money amount) {
+        this.type = type;
+        this.account = Objects.requireNonNull(account, "Account ID must not be null.");
+        this.counterparty = counterparty;
+        this.holder = holder;
+        this.amount = Objects.requireNonNull(amount, "Amount must not be null.");
+    }
+
+    public static LedgerCommand open(AccountHolder holder, AccountID account) {
+        Objects.requireNonNull(holder, "Account holder must not be null.");
+        return new LedgerCommand(CommandType.OPEN, account, null, holder, Money.ofCents(0));
+    }
+
+    public static LedgerCommand deposit(AccountID account, Money amount) {
+        return new LedgerCommand(CommandType.DEPOSIT, account, null, null, amount);
+    }
+
+    public static LedgerCommand withdrawal(AccountID account, Money amount) {
+        return new LedgerCommand(CommandType.WITHDRAW, account, null, null, amount);
+    }
+
+    public static LedgerCommand transfer(AccountID from, AccountID to, Money amount) {
+        Objects.requireNonNull(to, "Destination account must not be null.");
+        return new LedgerCommand(CommandType.TRANSFER, from, to, null, amount);
+    }
+
+    /**
+     * Encodes this command in the log's binary layout.
+     *
+     * @return The encoded bytes.
+     */
+    public byte[] toBytes() {
+        byte[] accountBytes = account.getValue().getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = secondString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + accountBytes.length + secondBytes.length);
+        buffer.put((byte) type.getCode());
+        buffer.putLong(amount.getAmountInCents());
+        buffer.putShort((short) accountBytes.length);
+        buffer.put(accountBytes);
+        buffer.putShort((short) secondBytes.length);
+        buffer.put(secondBytes);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a command from the log's binary layout.
+     *
+     * @param buffer A buffer positioned at the start of the command; it is advanced past it.
+     * @return The decoded command.
+     * @throws IOException if the bytes are not a valid command.
+     */
+    public static LedgerCommand readFrom(ByteBuffer buffer) throws IOException {
+        try {
+            CommandType type = CommandType.fromCode(buffer.get());
+            Money amount = Money.ofCents(buffer.getLong());
+            AccountID account = new AccountID(readString(buffer));
+            String second = readString(buffer);
+            AccountID counterparty = type == CommandType.TRANSFER ? new AccountID(second) : null;
+            AccountHolder holder = type == CommandType.OPEN ? new AccountHolder(second) : null;
+            return new LedgerCommand(type, account, counterparty, holder, amount);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed ledger command.", e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String secondString() {
+        if (counterparty != null) {
+            return counterparty.getValue();
+        }
+        return holder == null ? "" : holder.getName();
+    }
+
+    public CommandType getType() {
+        return type;
+    }
+
+    public AccountID getAccount() {
+        return account;
+    }
+
+    /**
+     * Gets the destination of a transfer.
+     *
+     * @return The destination account, or null unless this is a transfer.
+     */
+    public AccountID getCounterparty() {
+        return counterparty;
+    }
+
+    /**
+     * Gets the holder of an opened account.
+     *
+     * @return The holder, or null unless this opens an account.
+     */
+    public AccountHolder getHolder() {
+        return holder;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerCommand[type=" + type +
+               ", account=" + account +
+               (counterparty == null ? "" : ", counterparty=" + counterparty) +
+               (holder == null ? "" : ", holder=" + holder) +
+               ", amount=" + amount + "]";
+    }
+}
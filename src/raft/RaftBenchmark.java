@@ -0,0 +1,234 @@
+package raft;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import utility.*;
+
+public class RaftBenchmark {
+
+    private static final Duration CLIENT_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final double READ_SHARE = 0.1;
+
+    /**
+     * Runs a group of {@link RaftNode}s as separate JVMs on localhost and drives
+     * it with concurrent clients making 1-cent deposits and lease reads, printing
+     * throughput and latency each second. At every kill interval a node is killed
+     * outright, alternately the leader and a follower, and restarted half an
+     * interval later. At the end every node is running again and each account's
+     * balance is checked against the deposits acknowledged to the clients: none
+     * may be lost, and at most those whose outcome was unknown may be extra.
+     *
+     * @param args Optional: number of nodes, then seconds, clients, accounts, seconds between kills (0 for none),
+     *             and the snapshot interval in entries.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int accounts = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int killInterval = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        long snapshotInterval = args.length > 5 ? Long.parseLong(args[5]) : 20_000;
+
+        System.out.println("--- Raft Benchmark ---");
+        System.out.printf("%d nodes, %d s, %d clients, %,d accounts, a kill every %d s, snapshot every %,d entries%n",
+                nodes, seconds, clients, accounts, killInterval, snapshotInterval);
+        List<Integer> ports = freePorts(nodes);
+        Path root = Files.createTempDirectory("raft-benchmark");
+        Process[] processes = new Process[nodes];
+        try {
+            for (int i = 0; i < nodes; i++) {
+                processes[i] = launch(root, i, ports, snapshotInterval);
+            }
+            try (RaftClient setup = new RaftClient(ports, CLIENT_TIMEOUT)) {
+                for (int a = 0; a < accounts; a++) {
+                    setup.execute(LedgerCommand.open(new AccountHolder("Holder " + a), id(a)));
+                }
+            }
+
+            AtomicLongArray acked = new AtomicLongArray(accounts);
+            AtomicLongArray unknown = new AtomicLongArray(accounts);
+            LongAdder unknownCount = new LongAdder();
+            Latencies writes = new Latencies();
+            Latencies reads = new Latencies();
+            long start = System.nanoTime();
+            long deadline = start + seconds * 1_000_000_000L;
+            System.out.printf("%-8s%12s%10s%10s%12s%10s%10s  %s%n", "second", "writes/s", "p50 ms", "p99 ms",
+                    "reads/s", "p50 ms", "unknown", "event");
+            try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+                 RaftClient control = new RaftClient(ports, CLIENT_TIMEOUT)) {
+                for (int c = 0; c < clients; c++) {
+                    workers.execute(() -> runClient(ports, accounts, deadline, acked, unknown, unknownCount,
+                            writes, reads));
+                }
+                int kills = 0;
+                int down = -1;
+                long restartAt = 0;
+                for (int second = 1; second <= seconds; second++) {
+                    Thread.sleep(Math.max(0, (start + second * 1_000_000_000L - System.nanoTime()) / 1_000_000));
+                    List<String> events = new ArrayList<>();
+                    if (down >= 0 && System.nanoTime() - restartAt >= 0) {
+                        processes[down] = launch(root, down, ports, snapshotInterval);
+                        events.add("restarted node " + down);
+                        down = -1;
+                    }
+                    if (killInterval > 0 && second % killInterval == 0 && second < seconds && down < 0) {
+                        int leader = findLeader(control);
+                        int victim = kills++ % 2 == 0 ? leader : (leader + 1) % nodes;
+                        processes[victim].destroyForcibly().waitFor();
+                        events.add("killed " + (victim == leader ? "leader " : "follower ") + victim);
+                        down = victim;
+                        restartAt = System.nanoTime() + killInterval * 500_000_000L;
+                    }
+                    long[] writeNanos = writes.drain();
+                    long[] readNanos = reads.drain();
+                    System.out.printf("%-8d%,12d%10.1f%10.1f%,12d%10.1f%,10d  %s%n", second, writeNanos.length,
+                            percentileMillis(writeNanos, 0.5), percentileMillis(writeNanos, 0.99), readNanos.length,
+                            percentileMillis(readNanos, 0.5), unknownCount.sum(), String.join(", ", events));
+                }
+                if (down >= 0) {
+                    processes[down] = launch(root, down, ports, snapshotInterval);
+                }
+            }
+
+            long ackedTotal = 0;
+            long lost = 0;
+            long excess = 0;
+            long total = 0;
+            try (RaftClient check = new RaftClient(ports, CLIENT_TIMEOUT)) {
+                for (int a = 0; a < accounts; a++) {
+                    long balance = check.getBalance(id(a)).getAmountInCents();
+                    total += balance;
+                    ackedTotal += acked.get(a);
+                    lost += Math.max(0, acked.get(a) - balance);
+                    excess += Math.max(0, balance - acked.get(a) - unknown.get(a));
+                }
+                System.out.printf("Leader after restarts: node %d%n", check.getLeader());
+            }
+            System.out.printf("Acknowledged deposits %,d, balances total %,d cents, %,d with unknown outcome%n",
+                    ackedTotal, total, unknownCount.sum());
+            System.out.printf("Lost acknowledged deposits: %,d (expected 0), unexplained extra cents: %,d (expected 0)%n",
+                    lost, excess);
+        } finally {
+            for (Process process : processes) {
+                if (process != null) {
+                    process.destroyForcibly().waitFor();
+                }
+            }
+            delete(root);
+        }
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void runClient(List<Integer> ports, int accounts, long deadline, AtomicLongArray acked,
+                                  AtomicLongArray unknown, LongAdder unknownCount, Latencies writes,
+                                  Latencies reads) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (RaftClient client = new RaftClient(ports, CLIENT_TIMEOUT)) {
+            while (System.nanoTime() < deadline) {
+                int account = random.nextInt(accounts);
+                long begin = System.nanoTime();
+                try {
+                    if (random.nextDouble() < READ_SHARE) {
+                        client.getBalance(id(account));
+                        reads.record(System.nanoTime() - begin);
+                    } else {
+                        client.execute(LedgerCommand.deposit(id(account), Money.ofCents(1)));
+                        acked.incrementAndGet(account);
+                        writes.record(System.nanoTime() - begin);
+                    }
+                } catch (IOException e) {
+                    // Reads never fail this way unless no leader was found; writes may have been applied.
+                    unknown.incrementAndGet(account);
+                    unknownCount.increment();
+                }
+            }
+        }
+    }
+
+    private static int findLeader(RaftClient control) throws IOException {
+        control.getBalance(id(0));
+        return control.getLeader();
+    }
+
+    private static Process launch(Path root, int id, List<Integer> ports, long snapshotInterval) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RaftNode.class.getName(), root.resolve("node-" + id).toString(), String.valueOf(id),
+                ports.stream().map(String::valueOf).collect(Collectors.joining(",")),
+                String.valueOf(snapshotInterval));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(root.resolve("node-" + id + ".log").toFile()));
+        return builder.start();
+    }
+
+    private static List<Integer> freePorts(int count) throws IOException {
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                sockets.add(new ServerSocket(0));
+            }
+            return sockets.stream().map(ServerSocket::getLocalPort).toList();
+        } finally {
+            for (ServerSocket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, percentile * sorted.length)] / 1e6;
+    }
+
+    private static AccountID id(int index) {
+        return new AccountID("ACC" + index);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Request latencies collected since the last drain.
+     */
+    private static final class Latencies {
+
+        private long[] nanos = new long[1024];
+        private int count;
+
+        synchronized void record(long latency) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = latency;
+        }
+
+        synchronized long[] drain() {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            count = 0;
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
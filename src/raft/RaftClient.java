@@ -0,0 +1,201 @@
+package raft;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import utility.*;
+
+/**
+ * A connection to a group of {@link RaftNode}s that sends each request to the
+ * leader, following redirects and moving on when a node stops answering. Not
+ * thread-safe; use one client per thread.
+ *
+ * <p>Reads are retried freely. A command is sent once: if the connection is
+ * lost before the answer, the command may or may not have been applied, and
+ * {@link #execute} reports that as an {@link IOException} rather than retrying
+ * and risking applying it twice.
+ */
+public final class RaftClient implements AutoCloseable {
+
+    private static final long RETRY_PAUSE_MILLIS = 20;
+
+    private final List<Integer> ports;
+    private final Duration timeout;
+    private int node;
+    private long redirects;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    /**
+     * @param ports   The loopback port of every node in the group, by node ID. Must not be null or empty.
+     * @param timeout How long a request may spend finding a leader. Must not be null.
+     */
+    public RaftClient(List<Integer> ports, Duration timeout) {
+        Objects.requireNonNull(ports, "Ports must not be null.");
+        this.timeout = Objects.requireNonNull(timeout, "Timeout must not be null.");
+        if (ports.isEmpty()) {
+            throw new IllegalArgumentException("Ports must not be empty.");
+        }
+        this.ports = List.copyOf(ports);
+    }
+
+    /**
+     * Runs a command on the group.
+     *
+     * @param command The command. Must not be null.
+     * @return The balance of the command's account after it ran.
+     * @throws IllegalArgumentException if the ledger rejected the command.
+     * @throws IOException if no leader answered in time, or if the command's outcome is unknown.
+     */
+    public Money execute(LedgerCommand command) throws IOException {
+        byte[] bytes = Objects.requireNonNull(command, "Command must not be null.").toBytes();
+        return call(out -> {
+            out.writeByte(RaftProtocol.COMMAND);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }, false);
+    }
+
+    /**
+     * Reads a balance from the leader, reflecting every command acknowledged before the read began.
+     *
+     * @param id The account ID. Must not be null.
+     * @return The account's balance.
+     * @throws IllegalArgumentException if the account does not exist.
+     * @throws IOException if no leader answered in time.
+     */
+    public Money getBalance(AccountID id) throws IOException {
+        String account = Objects.requireNonNull(id, "Account ID must not be null.").getValue();
+        return call(out -> {
+            out.writeByte(RaftProtocol.READ);
+            out.writeUTF(account);
+        }, true);
+    }
+
+    /**
+     * Gets the node this client sends its requests to, the leader as far as it knows.
+     *
+     * @return The node ID.
+     */
+    public int getLeader() {
+        return node;
+    }
+
+    /**
+     * Gets the number of times a node redirected this client, or had no leader to redirect it to.
+     *
+     * @return The redirect count.
+     */
+    public long getRedirects() {
+        return redirects;
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+
+    private Money call(Request request, boolean retryable) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("No leader answered within " + timeout.toMillis() + " ms.");
+            }
+            if (socket == null && !connect()) {
+                continue;
+            }
+            int status;
+            try {
+                request.write(out);
+                out.flush();
+                status = in.readUnsignedByte();
+            } catch (IOException e) {
+                int lost = node;
+                disconnect();
+                moveOn(-1);
+                if (!retryable) {
+                    throw new IOException("Lost node " + lost + " before it answered; the command's outcome is unknown.",
+                            e);
+                }
+                continue;
+            }
+            switch (status) {
+                case RaftProtocol.STATUS_OK -> {
+                    return Money.ofCents(in.readLong());
+                }
+                case RaftProtocol.STATUS_REJECTED -> throw new IllegalArgumentException(in.readUTF());
+                case RaftProtocol.STATUS_UNKNOWN -> throw new IOException(in.readUTF());
+                case RaftProtocol.STATUS_NOT_LEADER -> {
+                    redirects++;
+                    moveOn(in.readInt());
+                }
+                default -> {
+                    disconnect();
+                    throw new IOException("Unknown status from node " + node + ": " + status);
+                }
+            }
+        }
+    }
+
+    private boolean connect() throws IOException {
+        Socket candidate = new Socket();
+        try {
+            candidate.setTcpNoDelay(true);
+            candidate.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), ports.get(node)),
+                    (int) Math.max(1, timeout.toMillis()));
+            in = new DataInputStream(new BufferedInputStream(candidate.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(candidate.getOutputStream()));
+            out.writeByte(RaftProtocol.CLIENT);
+            socket = candidate;
+            return true;
+        } catch (IOException e) {
+            candidate.close();
+            moveOn(-1);
+            return false;
+        }
+    }
+
+    /**
+     * Switches to the hinted leader, or to the next node after a pause when there is no hint.
+     */
+    private void moveOn(int leader) throws IOException {
+        if (leader >= 0 && leader < ports.size() && leader != node) {
+            disconnect();
+            node = leader;
+            return;
+        }
+        disconnect();
+        node = (node + 1) % ports.size();
+        try {
+            Thread.sleep(RETRY_PAUSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while looking for a leader.");
+        }
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken.
+            }
+            socket = null;
+        }
+    }
+
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
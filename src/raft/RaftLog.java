@@ -0,0 +1,289 @@
+package raft;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * The entries of a Raft node's log that follow its latest snapshot, kept in
+ * memory and appended to one file.
+ *
+ * <p>Each record in the file is its length (4 bytes) and the CRC32C of the
+ * rest (4), then the entry's index (8), term (8) and command. An empty
+ * command is the no-op a new leader appends. Appends are buffered; they reach
+ * the file with {@link #flush()} and the disk with {@link #sync()}, which may
+ * run without the node's lock. Everything else must be called with it held.
+ */
+final class RaftLog implements AutoCloseable {
+
+    static final String FILE_NAME = "raft.log";
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_HEADER_SIZE = 8 + 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private final Object channelLock = new Object();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32C crc = new CRC32C();
+    private FileChannel channel;
+    private long written;
+    private long snapshotIndex;
+    private long snapshotTerm;
+    private long[] terms = new long[1024];
+    private long[] offsets = new long[1024];
+    private byte[][] commands = new byte[1024][];
+    private int count;
+
+    private RaftLog(Path path, FileChannel channel, long snapshotIndex, long snapshotTerm) {
+        this.path = path;
+        this.channel = channel;
+        this.snapshotIndex = snapshotIndex;
+        this.snapshotTerm = snapshotTerm;
+    }
+
+    /**
+     * Opens the log in a node directory, creating it if missing. Entries up to
+     * the snapshot are skipped; a torn or corrupt tail, which can only hold
+     * entries that were never acknowledged, is cut off.
+     *
+     * @throws IOException if the file cannot be read, or skips entries after the snapshot.
+     */
+    static RaftLog open(Path directory, long snapshotIndex, long snapshotTerm) throws IOException {
+        Path path = directory.resolve(FILE_NAME);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        RaftLog log = new RaftLog(path, channel, snapshotIndex, snapshotTerm);
+        try {
+            log.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return log;
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = in.readInt();
+            int stored = in.readInt();
+            if (length < ENTRY_HEADER_SIZE || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != stored) {
+                break;
+            }
+            ByteBuffer entry = ByteBuffer.wrap(body);
+            long index = entry.getLong();
+            long term = entry.getLong();
+            if (index > snapshotIndex) {
+                if (index != lastIndex() + 1) {
+                    throw new IOException("Raft log skips from " + lastIndex() + " to " + index + " in " + path);
+                }
+                add(term, Arrays.copyOfRange(body, ENTRY_HEADER_SIZE, length), position);
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            channel.force(false);
+        }
+        written = position;
+    }
+
+    long getSnapshotIndex() {
+        return snapshotIndex;
+    }
+
+    long getSnapshotTerm() {
+        return snapshotTerm;
+    }
+
+    long lastIndex() {
+        return snapshotIndex + count;
+    }
+
+    long lastTerm() {
+        return count == 0 ? snapshotTerm : terms[count - 1];
+    }
+
+    /**
+     * Gets the term of an entry.
+     *
+     * @return The term, the snapshot's term for the snapshot index, or -1 if the entry is not in the log.
+     */
+    long term(long index) {
+        if (index == snapshotIndex) {
+            return snapshotTerm;
+        }
+        if (index < snapshotIndex || index > lastIndex()) {
+            return -1;
+        }
+        return terms[(int) (index - snapshotIndex - 1)];
+    }
+
+    /**
+     * Gets the command of an entry after the snapshot.
+     *
+     * @return The encoded command; empty for a no-op.
+     */
+    byte[] command(long index) {
+        return commands[(int) (index - snapshotIndex - 1)];
+    }
+
+    /**
+     * Appends an entry, buffered.
+     *
+     * @return The entry's index.
+     */
+    long append(long term, byte[] command) throws IOException {
+        long index = lastIndex() + 1;
+        ByteBuffer record = encode(index, term, command);
+        long offset = written + buffer.position();
+        if (record.remaining() > buffer.remaining()) {
+            flush();
+            offset = written;
+        }
+        if (record.remaining() > buffer.capacity()) {
+            while (record.hasRemaining()) {
+                written += channel.write(record, written);
+            }
+        } else {
+            buffer.put(record);
+        }
+        add(term, command, offset);
+        return index;
+    }
+
+    /**
+     * Writes buffered entries to the file.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, written);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Forces the entries written by the last {@link #flush()} to disk. May be called without the node's lock.
+     */
+    void sync() throws IOException {
+        synchronized (channelLock) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Removes an entry and all that follow it, from memory and from the file.
+     */
+    void truncateFrom(long index) throws IOException {
+        int from = (int) (index - snapshotIndex - 1);
+        if (from < 0 || from >= count) {
+            return;
+        }
+        flush();
+        synchronized (channelLock) {
+            channel.truncate(offsets[from]);
+        }
+        written = offsets[from];
+        Arrays.fill(commands, from, count, null);
+        count = from;
+    }
+
+    /**
+     * Drops the entries covered by a snapshot and rewrites the file with the rest.
+     * If the log does not hold the snapshot's last entry with the snapshot's term,
+     * everything is dropped, as the snapshot replaces it.
+     */
+    void compact(long index, long term) throws IOException {
+        if (index <= snapshotIndex) {
+            return;
+        }
+        int drop = index <= lastIndex() && term(index) == term ? (int) (index - snapshotIndex) : count;
+        flush();
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        long[] newOffsets = new long[Math.max(1024, (count - drop) * 2)];
+        long position = 0;
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(file), 1 << 16);
+            for (int i = drop; i < count; i++) {
+                ByteBuffer record = encode(index + 1 + i - drop, terms[i], commands[i]);
+                newOffsets[i - drop] = position;
+                out.write(record.array(), 0, record.limit());
+                position += record.limit();
+            }
+            out.flush();
+            file.force(true);
+        }
+        synchronized (channelLock) {
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        int kept = count - drop;
+        long[] newTerms = new long[newOffsets.length];
+        byte[][] newCommands = new byte[newOffsets.length][];
+        System.arraycopy(terms, drop, newTerms, 0, kept);
+        System.arraycopy(commands, drop, newCommands, 0, kept);
+        terms = newTerms;
+        commands = newCommands;
+        offsets = newOffsets;
+        count = kept;
+        written = position;
+        snapshotIndex = index;
+        snapshotTerm = term;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            if (channel.isOpen()) {
+                flush();
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    private void add(long term, byte[] command, long offset) {
+        if (count == terms.length) {
+            terms = Arrays.copyOf(terms, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+            commands = Arrays.copyOf(commands, count * 2);
+        }
+        terms[count] = term;
+        offsets[count] = offset;
+        commands[count] = command;
+        count++;
+    }
+
+    private ByteBuffer encode(long index, long term, byte[] command) {
+        int length = ENTRY_HEADER_SIZE + command.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putInt(length).putInt(0).putLong(index).putLong(term).put(command);
+        crc.reset();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.flip();
+    }
+}
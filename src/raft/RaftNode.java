@@ -0,0 +1,1398 @@
+package raft;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import journal.SnapshotFile;
+import ledger.LedgerSnapshot;
+import ledger.VersionedLedger;
+import utility.*;
+
+/**
+ * One member of a group of 3 to 5 nodes on localhost that replicate a ledger's
+ * command log with Raft, so that a command acknowledged to a client survives
+ * the loss of any minority of nodes.
+ *
+ * <p>Clients send commands to the leader, which appends them to its log and
+ * answers once a majority holds them durably and the command has run against
+ * its {@link VersionedLedger}; every node runs the same commands in the same
+ * order. Each follower has one connection from the leader, on which
+ * AppendEntries requests carry batches of entries and are pipelined, several
+ * in flight at once. The leader forces its own log in groups, concurrently
+ * with replication.
+ *
+ * <p>Balance reads are served by the leader from its own ledger while it holds
+ * a lease: a majority answered it within {@link RaftSettings#getLeaseDuration()},
+ * and a follower that heard from its leader within the election timeout refuses
+ * to vote for anyone else, so no other leader can exist in the meantime.
+ * Every {@link RaftSettings#getSnapshotInterval()} applied entries the ledger is
+ * written as a {@link SnapshotFile} and the log before it is dropped; a follower
+ * that needs dropped entries is sent the snapshot instead.
+ *
+ * <p>If its log, state or snapshot cannot be written, a node stops: it steps
+ * down, fails the commands waiting for their outcome, stops answering peers and
+ * clients, and reports the failure through {@link #getFailure()} and {@link #close()}.
+ */
+public final class RaftNode implements AutoCloseable {
+
+    /**
+     * The part a node plays in its current term.
+     */
+    public enum Role {
+        FOLLOWER, CANDIDATE, LEADER
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int APPLY_BATCH = 1024;
+    private static final String SNAPSHOT_GLOB = "snapshot-*.snap";
+
+    private final int id;
+    private final List<Integer> ports;
+    private final Path directory;
+    private final RaftSettings settings;
+    private final long electionTimeoutNanos;
+    private final long heartbeatNanos;
+    private final long leaseNanos;
+    private final int majority;
+    private final ServerSocket serverSocket;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final RaftLog log;
+    private final Peer[] peers;
+    private final Map<Long, CompletableFuture<Money>> pending = new HashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final List<Thread> threads = new ArrayList<>();
+    private final ExecutorService snapshotter;
+    private VersionedLedger ledger;
+    private long currentTerm;
+    private int votedFor;
+    private String snapshotFile;
+    private Role role = Role.FOLLOWER;
+    private volatile int leaderId = -1;
+    private long commitIndex;
+    private long lastApplied;
+    private long durableIndex;
+    private long termStartIndex;
+    private long electionDeadline;
+    private long lastHeardFromLeader;
+    private boolean snapshotting;
+    private long leaseReads;
+    private volatile boolean closed;
+    private boolean released;
+    private volatile IOException failure;
+
+    private RaftNode(int id, List<Integer> ports, Path directory, RaftSettings settings, RaftState state,
+                     VersionedLedger ledger, RaftLog log, ServerSocket serverSocket) {
+        this.id = id;
+        this.ports = ports;
+        this.directory = directory;
+        this.settings = settings;
+        this.electionTimeoutNanos = settings.getElectionTimeout().toNanos();
+        this.heartbeatNanos = settings.getHeartbeatInterval().toNanos();
+        this.leaseNanos = settings.getLeaseDuration().toNanos();
+        this.majority = ports.size() / 2 + 1;
+        this.currentTerm = state.getTerm();
+        this.votedFor = state.getVotedFor();
+        this.snapshotFile = state.getSnapshotFile();
+        this.ledger = ledger;
+        this.log = log;
+        this.commitIndex = log.getSnapshotIndex();
+        this.lastApplied = log.getSnapshotIndex();
+        this.serverSocket = serverSocket;
+        this.peers = new Peer[ports.size()];
+        this.snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "raft-" + id + "-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resetElectionDeadline();
+        for (int peer = 0; peer < ports.size(); peer++) {
+            if (peer != id) {
+                peers[peer] = new Peer(peer);
+                threads.add(new Thread(peers[peer]::sendLoop, "raft-" + id + "-to-" + peer));
+            }
+        }
+        threads.add(new Thread(this::timerLoop, "raft-" + id + "-timer"));
+        threads.add(new Thread(this::flushLoop, "raft-" + id + "-flusher"));
+        threads.add(new Thread(this::applyLoop, "raft-" + id + "-applier"));
+        threads.add(new Thread(this::acceptLoop, "raft-" + id + "-acceptor"));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Recovers a node from its directory and joins its group.
+     *
+     * @param directory The node's directory; created if missing. Must not be null.
+     * @param id        The node's index in {@code ports}.
+     * @param ports     The loopback port of every node in the group, by node ID; 3 to 5 of them. Must not be null.
+     * @param settings  Timing and batching limits, the same on every node. Must not be null.
+     * @return The running node.
+     * @throws IOException if the node's state cannot be recovered or its port cannot be bound.
+     * @throws IllegalArgumentException if the group size or ID is out of range.
+     */
+    public static RaftNode start(Path directory, int id, List<Integer> ports, RaftSettings settings)
+            throws IOException {
+        Objects.requireNonNull(directory, "Directory must not be null.");
+        Objects.requireNonNull(ports, "Ports must not be null.");
+        Objects.requireNonNull(settings, "Settings must not be null.");
+        if (ports.size() < 3 || ports.size() > 5) {
+            throw new IllegalArgumentException("A group must have 3 to 5 nodes.");
+        }
+        if (id < 0 || id >= ports.size()) {
+            throw new IllegalArgumentException("Node ID must be an index into the ports.");
+        }
+        Files.createDirectories(directory);
+        RaftState state = RaftState.read(directory);
+        VersionedLedger ledger = state.getSnapshotFile() == null ? new VersionedLedger()
+                : loadSnapshot(directory.resolve(state.getSnapshotFile()));
+        RaftLog log = RaftLog.open(directory, state.getSnapshotIndex(), state.getSnapshotTerm());
+        ServerSocket serverSocket = null;
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), ports.get(id)), 256);
+            return new RaftNode(id, List.copyOf(ports), directory, settings, state, ledger, log, serverSocket);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            throw e;
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Role getRole() {
+        lock.lock();
+        try {
+            return role;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTerm() {
+        lock.lock();
+        try {
+            return currentTerm;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the leader this node last heard from.
+     *
+     * @return The leader's node ID, or -1 if unknown.
+     */
+    public int getLeaderId() {
+        return leaderId;
+    }
+
+    public long getCommitIndex() {
+        lock.lock();
+        try {
+            return commitIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastApplied() {
+        lock.lock();
+        try {
+            return lastApplied;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the index of the last entry covered by this node's snapshot; the log holds only later entries.
+     *
+     * @return The snapshot index, or 0 if there is no snapshot.
+     */
+    public long getSnapshotIndex() {
+        lock.lock();
+        try {
+            return log.getSnapshotIndex();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of balance reads this node served under its lease.
+     *
+     * @return The read count.
+     */
+    public long getLeaseReads() {
+        lock.lock();
+        try {
+            return leaseReads;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the reason the node stopped, if it stopped on its own.
+     *
+     * @return The failure to write the node's log, state or snapshot, or null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops the node, failing commands that are waiting for their outcome. Its
+     * state stays in its directory for a restart.
+     *
+     * @throws IOException if the log cannot be closed, or if the node had stopped on a failure.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (!closed) {
+                closed = true;
+                failPending("The node shut down before the command was applied; its outcome is unknown.");
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        serverSocket.close();
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            log.close();
+        } finally {
+            lock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops the node after its log, state or snapshot could not be written, since
+     * it can no longer vouch for what it acknowledges. Called with the lock held.
+     */
+    private void fail(IOException e) {
+        if (closed) {
+            return;
+        }
+        failure = e;
+        closed = true;
+        role = Role.FOLLOWER;
+        leaderId = -1;
+        failPending("The node stopped on a storage failure before the command was applied; its outcome is unknown.");
+        changed.signalAll();
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Already closing.
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    // ---- roles ----
+
+    private void timerLoop() {
+        lock.lock();
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                try {
+                    if (role != Role.LEADER && now - electionDeadline >= 0) {
+                        startElection();
+                    } else if (role == Role.LEADER && now - majorityTime(now, false) > electionTimeoutNanos) {
+                        becomeFollower(currentTerm);
+                        leaderId = -1;
+                    }
+                } catch (IOException e) {
+                    fail(e);
+                }
+                long wait = role == Role.LEADER ? heartbeatNanos : electionDeadline - now;
+                changed.awaitNanos(Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startElection() throws IOException {
+        currentTerm++;
+        votedFor = id;
+        saveState();
+        role = Role.CANDIDATE;
+        leaderId = -1;
+        for (Peer peer : peers) {
+            if (peer != null) {
+                peer.voteRequested = false;
+                peer.voteGranted = false;
+            }
+        }
+        resetElectionDeadline();
+        changed.signalAll();
+    }
+
+    private void countVotes() {
+        int votes = 1;
+        for (Peer peer : peers) {
+            if (peer != null && peer.voteGranted) {
+                votes++;
+            }
+        }
+        if (votes >= majority) {
+            becomeLeader();
+        }
+    }
+
+    private void becomeLeader() {
+        long now = System.nanoTime();
+        role = Role.LEADER;
+        leaderId = id;
+        durableIndex = 0;
+        for (Peer peer : peers) {
+            if (peer != null) {
+                peer.nextIndex = log.lastIndex() + 1;
+                peer.matchIndex = 0;
+                peer.inFlight = 0;
+                peer.ackedProbe = now - leaseNanos - 1;
+                peer.lastContact = now;
+                peer.lastSent = now - heartbeatNanos;
+            }
+        }
+        try {
+            termStartIndex = log.append(currentTerm, new byte[0]);
+        } catch (IOException e) {
+            fail(e);
+        }
+        changed.signalAll();
+    }
+
+    /**
+     * Falls back to follower, in a later term if one was seen.
+     */
+    private void becomeFollower(long term) throws IOException {
+        if (term > currentTerm) {
+            currentTerm = term;
+            votedFor = -1;
+            saveState();
+        }
+        if (role == Role.LEADER) {
+            failPending("Leadership was lost before the command was applied; its outcome is unknown.");
+        }
+        role = Role.FOLLOWER;
+        changed.signalAll();
+    }
+
+    private void acceptLeader(long term, int leader) throws IOException {
+        if (term > currentTerm || role != Role.FOLLOWER) {
+            becomeFollower(term);
+        }
+        leaderId = leader;
+        lastHeardFromLeader = System.nanoTime();
+        resetElectionDeadline();
+    }
+
+    private void resetElectionDeadline() {
+        electionDeadline = System.nanoTime() + electionTimeoutNanos
+                + ThreadLocalRandom.current().nextLong(electionTimeoutNanos);
+    }
+
+    /**
+     * Gets the latest time by which a majority, counting this node at
+     * {@code now}, had answered in this term: with {@code probes}, the send time
+     * of the latest request each answered, else the time of its latest answer.
+     */
+    private long majorityTime(long now, boolean probes) {
+        long[] ages = new long[peers.length];
+        for (int node = 0; node < peers.length; node++) {
+            Peer peer = peers[node];
+            ages[node] = peer == null ? 0 : now - (probes ? peer.ackedProbe : peer.lastContact);
+        }
+        Arrays.sort(ages);
+        return now - ages[majority - 1];
+    }
+
+    private boolean holdsLease(long now) {
+        return role == Role.LEADER && now - majorityTime(now, true) < leaseNanos;
+    }
+
+    private void advanceCommitIndex() {
+        long[] matches = new long[peers.length];
+        for (int node = 0; node < peers.length; node++) {
+            matches[node] = peers[node] == null ? durableIndex : peers[node].matchIndex;
+        }
+        Arrays.sort(matches);
+        long index = matches[peers.length - majority];
+        if (index > commitIndex && log.term(index) == currentTerm) {
+            commitIndex = index;
+            changed.signalAll();
+        }
+    }
+
+    private void failPending(String message) {
+        IOException unknown = new IOException(message);
+        for (CompletableFuture<Money> outcome : pending.values()) {
+            outcome.completeExceptionally(unknown);
+        }
+        pending.clear();
+    }
+
+    private void saveState() throws IOException {
+        new RaftState(currentTerm, votedFor, log.getSnapshotIndex(), log.getSnapshotTerm(), snapshotFile)
+                .save(directory);
+    }
+
+    // ---- log ----
+
+    /**
+     * Runs on the flusher thread: while this node leads, forces its log in groups
+     * and counts the forced entries towards the commit index.
+     */
+    private void flushLoop() {
+        try {
+            while (true) {
+                long target;
+                long term;
+                lock.lock();
+                try {
+                    while (!closed && (role != Role.LEADER || durableIndex >= log.lastIndex())) {
+                        changed.await();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    log.flush();
+                    target = log.lastIndex();
+                    term = currentTerm;
+                } finally {
+                    lock.unlock();
+                }
+                log.sync();
+                lock.lock();
+                try {
+                    if (role == Role.LEADER && currentTerm == term && target > durableIndex) {
+                        durableIndex = target;
+                        advanceCommitIndex();
+                        changed.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                fail(e);
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs on the applier thread: runs committed commands against the ledger in
+     * log order, answers the clients waiting for them and starts snapshots.
+     */
+    private void applyLoop() {
+        try {
+            while (!closed) {
+                lock.lock();
+                try {
+                    while (!closed && lastApplied >= commitIndex) {
+                        changed.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                // Waits without applyLock, which installing a snapshot takes; the snapshot may cover the entries.
+                applyLock.lock();
+                try {
+                    long from;
+                    byte[][] commands;
+                    VersionedLedger target;
+                    lock.lock();
+                    try {
+                        if (closed || lastApplied >= commitIndex) {
+                            continue;
+                        }
+                        from = lastApplied + 1;
+                        commands = new byte[(int) Math.min(commitIndex - lastApplied, APPLY_BATCH)][];
+                        for (int i = 0; i < commands.length; i++) {
+                            commands[i] = log.command(from + i);
+                        }
+                        target = ledger;
+                    } finally {
+                        lock.unlock();
+                    }
+                    Object[] outcomes = new Object[commands.length];
+                    for (int i = 0; i < commands.length; i++) {
+                        outcomes[i] = apply(target, commands[i]);
+                    }
+                    lock.lock();
+                    try {
+                        lastApplied = from + commands.length - 1;
+                        for (int i = 0; i < commands.length; i++) {
+                            CompletableFuture<Money> outcome = pending.remove(from + i);
+                            if (outcome != null && outcomes[i] instanceof Money balance) {
+                                outcome.complete(balance);
+                            } else if (outcome != null) {
+                                outcome.completeExceptionally((Exception) outcomes[i]);
+                            }
+                        }
+                        if (!snapshotting && lastApplied - log.getSnapshotIndex() >= settings.getSnapshotInterval()) {
+                            snapshotting = true;
+                            LedgerSnapshot view = target.snapshot();
+                            long index = lastApplied;
+                            long term = log.term(index);
+                            snapshotter.execute(() -> writeSnapshot(view, index, term));
+                        }
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                } finally {
+                    applyLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @return The resulting balance, the rejection, or null for a no-op.
+     */
+    private static Object apply(VersionedLedger ledger, byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+        try {
+            LedgerCommand command = LedgerCommand.readFrom(ByteBuffer.wrap(bytes));
+            return command.getType().apply(command, ledger);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Runs on the snapshotter thread: writes the ledger as of an applied index,
+     * then drops the log up to it.
+     */
+    private void writeSnapshot(LedgerSnapshot view, long index, long term) {
+        try (view) {
+            Path file = SnapshotFile.write(directory, view);
+            lock.lock();
+            try {
+                if (index > log.getSnapshotIndex()) {
+                    snapshotFile = file.getFileName().toString();
+                    new RaftState(currentTerm, votedFor, index, term, snapshotFile).save(directory);
+                    log.compact(index, term);
+                    deleteOtherSnapshots();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                fail(e);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            lock.lock();
+            try {
+                snapshotting = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void deleteOtherSnapshots() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_GLOB)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(snapshotFile)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static VersionedLedger loadSnapshot(Path path) throws IOException {
+        VersionedLedger loaded = new VersionedLedger();
+        try (SnapshotFile snapshot = SnapshotFile.open(path)) {
+            loaded.advanceSequence(snapshot.getSequence());
+            for (int block = 0; block < snapshot.getBlockCount(); block++) {
+                snapshot.forEachInBlock(block, (id, holder, balance) -> loaded.restore(holder, id, balance));
+            }
+        }
+        return loaded;
+    }
+
+    // ---- incoming connections ----
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread.ofVirtual().name("raft-" + id + "-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                // The connection failed before it was served, or the node is closing.
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            int kind = in.read();
+            if (kind == RaftProtocol.PEER) {
+                in.readInt();
+                servePeer(in, out);
+            } else if (kind == RaftProtocol.CLIENT) {
+                serveClient(in, out);
+            }
+        } catch (IOException e) {
+            // The other side went away or the node is closing.
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void servePeer(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return;
+            }
+            switch (type) {
+                case RaftProtocol.REQUEST_VOTE -> {
+                    long term = in.readLong();
+                    int candidate = in.readInt();
+                    long lastIndex = in.readLong();
+                    long lastTerm = in.readLong();
+                    boolean granted;
+                    long replyTerm;
+                    lock.lock();
+                    try {
+                        granted = handleVote(term, candidate, lastIndex, lastTerm);
+                        replyTerm = currentTerm;
+                    } catch (IOException e) {
+                        fail(e);
+                        throw e;
+                    } finally {
+                        lock.unlock();
+                    }
+                    out.writeByte(RaftProtocol.VOTE);
+                    out.writeLong(replyTerm);
+                    out.writeBoolean(granted);
+                }
+                case RaftProtocol.APPEND_ENTRIES -> {
+                    long term = in.readLong();
+                    int leader = in.readInt();
+                    long prevIndex = in.readLong();
+                    long prevTerm = in.readLong();
+                    long leaderCommit = in.readLong();
+                    long probe = in.readLong();
+                    int count = in.readInt();
+                    long[] terms = new long[count];
+                    byte[][] commands = new byte[count][];
+                    for (int i = 0; i < count; i++) {
+                        terms[i] = in.readLong();
+                        commands[i] = new byte[in.readInt()];
+                        in.readFully(commands[i]);
+                    }
+                    AppendResult result;
+                    lock.lock();
+                    try {
+                        result = handleAppend(term, leader, prevIndex, prevTerm, leaderCommit, terms, commands);
+                    } catch (IOException e) {
+                        fail(e);
+                        throw e;
+                    } finally {
+                        lock.unlock();
+                    }
+                    result.write(out, probe);
+                }
+                case RaftProtocol.INSTALL_SNAPSHOT -> handleSnapshot(in, out);
+                default -> throw new IOException("Unknown Raft message: " + type);
+            }
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+    }
+
+    private boolean handleVote(long term, int candidate, long lastIndex, long lastTerm) throws IOException {
+        if (term < currentTerm) {
+            return false;
+        }
+        if (role == Role.LEADER
+                || (leaderId >= 0 && System.nanoTime() - lastHeardFromLeader < electionTimeoutNanos)) {
+            return false;
+        }
+        if (term > currentTerm) {
+            becomeFollower(term);
+            leaderId = -1;
+        }
+        boolean upToDate = lastTerm > log.lastTerm() || (lastTerm == log.lastTerm() && lastIndex >= log.lastIndex());
+        if ((votedFor == -1 || votedFor == candidate) && upToDate) {
+            votedFor = candidate;
+            saveState();
+            resetElectionDeadline();
+            return true;
+        }
+        return false;
+    }
+
+    private AppendResult handleAppend(long term, int leader, long prevIndex, long prevTerm, long leaderCommit,
+                                      long[] terms, byte[][] commands) throws IOException {
+        if (term < currentTerm) {
+            return new AppendResult(currentTerm, false, log.lastIndex() + 1);
+        }
+        acceptLeader(term, leader);
+        long snapshotIndex = log.getSnapshotIndex();
+        int first = 0;
+        if (prevIndex < snapshotIndex) {
+            long covered = snapshotIndex - prevIndex;
+            if (covered >= terms.length) {
+                return new AppendResult(currentTerm, true, prevIndex + terms.length);
+            }
+            first = (int) covered;
+            prevIndex = snapshotIndex;
+            prevTerm = log.getSnapshotTerm();
+        }
+        if (prevIndex > log.lastIndex()) {
+            return new AppendResult(currentTerm, false, log.lastIndex() + 1);
+        }
+        long conflictTerm = log.term(prevIndex);
+        if (conflictTerm != prevTerm) {
+            long retry = prevIndex;
+            while (retry - 1 > snapshotIndex && log.term(retry - 1) == conflictTerm) {
+                retry--;
+            }
+            return new AppendResult(currentTerm, false, retry);
+        }
+        long index = prevIndex;
+        boolean appended = false;
+        for (int i = first; i < terms.length; i++) {
+            index++;
+            if (index <= log.lastIndex()) {
+                if (log.term(index) == terms[i]) {
+                    continue;
+                }
+                log.truncateFrom(index);
+            }
+            log.append(terms[i], commands[i]);
+            appended = true;
+        }
+        if (appended) {
+            log.flush();
+            log.sync();
+        }
+        if (leaderCommit > commitIndex && Math.min(leaderCommit, index) > commitIndex) {
+            commitIndex = Math.min(leaderCommit, index);
+            changed.signalAll();
+        }
+        return new AppendResult(currentTerm, true, index);
+    }
+
+    /**
+     * Receives a snapshot from the leader, loads it and replaces the log with it
+     * unless the log already holds everything it covers.
+     */
+    private void handleSnapshot(DataInputStream in, DataOutputStream out) throws IOException {
+        long term = in.readLong();
+        int leader = in.readInt();
+        long lastIndex = in.readLong();
+        long lastTerm = in.readLong();
+        long probe = in.readLong();
+        String name = Path.of(in.readUTF()).getFileName().toString();
+        long length = in.readLong();
+        Path temp = directory.resolve(name + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] chunk = new byte[BUFFER_SIZE];
+            long copied = 0;
+            while (copied < length) {
+                int size = (int) Math.min(chunk.length, length - copied);
+                in.readFully(chunk, 0, size);
+                ByteBuffer bytes = ByteBuffer.wrap(chunk, 0, size);
+                while (bytes.hasRemaining()) {
+                    file.write(bytes);
+                }
+                copied += size;
+            }
+            file.force(true);
+        }
+        VersionedLedger loaded = loadSnapshot(temp);
+        AppendResult result;
+        applyLock.lock();
+        lock.lock();
+        try {
+            if (term < currentTerm) {
+                Files.deleteIfExists(temp);
+                result = new AppendResult(currentTerm, false, log.lastIndex() + 1);
+            } else {
+                acceptLeader(term, leader);
+                if (lastIndex <= commitIndex) {
+                    Files.deleteIfExists(temp);
+                } else {
+                    Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                    snapshotFile = name;
+                    new RaftState(currentTerm, votedFor, lastIndex, lastTerm, snapshotFile).save(directory);
+                    log.compact(lastIndex, lastTerm);
+                    ledger = loaded;
+                    commitIndex = lastIndex;
+                    lastApplied = lastIndex;
+                    deleteOtherSnapshots();
+                    changed.signalAll();
+                }
+                result = new AppendResult(currentTerm, true, lastIndex);
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            lock.unlock();
+            applyLock.unlock();
+        }
+        result.write(out, probe);
+    }
+
+    // ---- clients ----
+
+    private void serveClient(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return;
+            }
+            CompletableFuture<Money> outcome;
+            if (type == RaftProtocol.READ) {
+                String account = in.readUTF();
+                try {
+                    outcome = read(new AccountID(account));
+                } catch (IllegalArgumentException e) {
+                    outcome = CompletableFuture.failedFuture(e);
+                }
+            } else if (type == RaftProtocol.COMMAND) {
+                byte[] command = new byte[in.readInt()];
+                in.readFully(command);
+                outcome = submit(command);
+            } else {
+                throw new IOException("Unknown client request: " + type);
+            }
+            if (outcome == null) {
+                out.writeByte(RaftProtocol.STATUS_NOT_LEADER);
+                out.writeInt(leaderId == id ? -1 : leaderId);
+            } else {
+                writeOutcome(out, outcome);
+            }
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Appends a command to the log if this node leads.
+     *
+     * @return The command's outcome once applied, or null if this node does not lead.
+     */
+    private CompletableFuture<Money> submit(byte[] command) throws IOException {
+        try {
+            LedgerCommand.readFrom(ByteBuffer.wrap(command));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(e.getMessage()));
+        }
+        lock.lock();
+        try {
+            if (closed || role != Role.LEADER) {
+                return null;
+            }
+            CompletableFuture<Money> outcome = new CompletableFuture<>();
+            pending.put(log.append(currentTerm, command), outcome);
+            changed.signalAll();
+            return outcome;
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a balance from this node's ledger once it holds the lease and has
+     * applied everything committed, waiting up to an election timeout for that.
+     *
+     * @return The balance, or null if this node does not lead.
+     */
+    private CompletableFuture<Money> read(AccountID account) {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() + electionTimeoutNanos;
+            long readIndex = -1;
+            while (!closed && role == Role.LEADER) {
+                long now = System.nanoTime();
+                if (readIndex < 0 && holdsLease(now)) {
+                    readIndex = Math.max(commitIndex, termStartIndex);
+                }
+                if (readIndex >= 0 && lastApplied >= readIndex) {
+                    leaseReads++;
+                    try {
+                        return CompletableFuture.completedFuture(ledger.getBalance(account));
+                    } catch (IllegalArgumentException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                }
+                if (now - deadline >= 0) {
+                    return null;
+                }
+                changed.awaitNanos(deadline - now);
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void writeOutcome(DataOutputStream out, CompletableFuture<Money> outcome) throws IOException {
+        try {
+            Money balance = outcome.join();
+            out.writeByte(RaftProtocol.STATUS_OK);
+            out.writeLong(balance.getAmountInCents());
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            out.writeByte(cause instanceof IOException ? RaftProtocol.STATUS_UNKNOWN : RaftProtocol.STATUS_REJECTED);
+            out.writeUTF(String.valueOf(cause.getMessage()));
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closing.
+        }
+    }
+
+    /**
+     * The answer to an AppendEntries or InstallSnapshot request.
+     */
+    private static final class AppendResult {
+
+        private final long term;
+        private final boolean success;
+        private final long index;
+
+        private AppendResult(long term, boolean success, long index) {
+            this.term = term;
+            this.success = success;
+            this.index = index;
+        }
+
+        private void write(DataOutputStream out, long probe) throws IOException {
+            out.writeByte(RaftProtocol.APPEND_RESULT);
+            out.writeLong(term);
+            out.writeBoolean(success);
+            out.writeLong(index);
+            out.writeLong(probe);
+        }
+    }
+
+    /**
+     * A request ready to go to a peer: an encoded message, possibly followed by a snapshot file.
+     */
+    private static final class Outgoing {
+
+        private final byte[] message;
+        private final FileChannel snapshot;
+
+        private Outgoing(byte[] message, FileChannel snapshot) {
+            this.message = message;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * The leader's or candidate's view of another node, and the connection it
+     * sends its requests on. Fields are guarded by the node's lock.
+     */
+    private final class Peer {
+
+        private final int peerId;
+        private long nextIndex = 1;
+        private long matchIndex;
+        private int inFlight;
+        private long ackedProbe;
+        private long lastContact;
+        private long lastSent;
+        private boolean voteRequested;
+        private boolean voteGranted;
+
+        private Peer(int peerId) {
+            this.peerId = peerId;
+        }
+
+        /**
+         * Runs on this peer's sender thread: keeps a connection open and sends
+         * vote requests, entries, heartbeats and snapshots on it.
+         */
+        private void sendLoop() {
+            while (!closed) {
+                Socket socket = new Socket();
+                try {
+                    socket.setTcpNoDelay(true);
+                    socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), ports.get(peerId)),
+                            (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(electionTimeoutNanos)));
+                } catch (IOException e) {
+                    closeQuietly(socket);
+                    pause();
+                    continue;
+                }
+                connections.add(socket);
+                Thread receiver = Thread.ofVirtual().name("raft-" + id + "-from-" + peerId)
+                        .start(() -> receiveLoop(socket));
+                try {
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+                    out.writeByte(RaftProtocol.PEER);
+                    out.writeInt(id);
+                    Outgoing next;
+                    while ((next = nextRequest(socket)) != null) {
+                        out.write(next.message);
+                        if (next.snapshot != null) {
+                            try (FileChannel snapshot = next.snapshot;
+                                 InputStream file = Channels.newInputStream(snapshot)) {
+                                file.transferTo(out);
+                            }
+                        }
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // The peer went away; reconnect.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    closeQuietly(socket);
+                    connections.remove(socket);
+                    lock.lock();
+                    try {
+                        inFlight = 0;
+                        nextIndex = matchIndex + 1;
+                        voteRequested = false;
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    try {
+                        receiver.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        private void pause() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    changed.awaitNanos(heartbeatNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Waits until there is something to send to this peer and encodes it.
+         *
+         * @return The request, or null once the connection or the node is closed.
+         */
+        private Outgoing nextRequest(Socket socket) throws IOException, InterruptedException {
+            lock.lock();
+            try {
+                while (!closed && !socket.isClosed()) {
+                    long now = System.nanoTime();
+                    if (role == Role.CANDIDATE && !voteRequested) {
+                        voteRequested = true;
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+                        DataOutputStream out = new DataOutputStream(bytes);
+                        out.writeByte(RaftProtocol.REQUEST_VOTE);
+                        out.writeLong(currentTerm);
+                        out.writeInt(id);
+                        out.writeLong(log.lastIndex());
+                        out.writeLong(log.lastTerm());
+                        return new Outgoing(bytes.toByteArray(), null);
+                    }
+                    if (role == Role.LEADER) {
+                        if (nextIndex <= log.getSnapshotIndex()) {
+                            if (inFlight == 0) {
+                                return snapshotRequest(now);
+                            }
+                        } else if (inFlight < settings.getMaxInFlight()
+                                && (nextIndex <= log.lastIndex() || now - lastSent >= heartbeatNanos)) {
+                            return appendRequest(now);
+                        }
+                    }
+                    long wait = role == Role.LEADER ? heartbeatNanos - (now - lastSent) : heartbeatNanos;
+                    changed.awaitNanos(Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)));
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Outgoing appendRequest(long now) throws IOException {
+            long prevIndex = nextIndex - 1;
+            int count = (int) Math.min(settings.getMaxBatchEntries(), log.lastIndex() - prevIndex);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + count * 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RaftProtocol.APPEND_ENTRIES);
+            out.writeLong(currentTerm);
+            out.writeInt(id);
+            out.writeLong(prevIndex);
+            out.writeLong(log.term(prevIndex));
+            out.writeLong(commitIndex);
+            out.writeLong(now);
+            out.writeInt(count);
+            for (long index = prevIndex + 1; index <= prevIndex + count; index++) {
+                byte[] command = log.command(index);
+                out.writeLong(log.term(index));
+                out.writeInt(command.length);
+                out.write(command);
+            }
+            nextIndex = prevIndex + count + 1;
+            inFlight++;
+            lastSent = now;
+            return new Outgoing(bytes.toByteArray(), null);
+        }
+
+        private Outgoing snapshotRequest(long now) throws IOException {
+            FileChannel snapshot = FileChannel.open(directory.resolve(snapshotFile), StandardOpenOption.READ);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RaftProtocol.INSTALL_SNAPSHOT);
+            out.writeLong(currentTerm);
+            out.writeInt(id);
+            out.writeLong(log.getSnapshotIndex());
+            out.writeLong(log.getSnapshotTerm());
+            out.writeLong(now);
+            out.writeUTF(snapshotFile);
+            out.writeLong(snapshot.size());
+            nextIndex = log.getSnapshotIndex() + 1;
+            inFlight++;
+            lastSent = now;
+            return new Outgoing(bytes.toByteArray(), snapshot);
+        }
+
+        /**
+         * Runs on this peer's receiver thread: handles the answers to the requests sent on a connection.
+         */
+        private void receiveLoop(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+                while (true) {
+                    int type = in.read();
+                    if (type < 0) {
+                        return;
+                    }
+                    if (type == RaftProtocol.VOTE) {
+                        long term = in.readLong();
+                        boolean granted = in.readBoolean();
+                        lock.lock();
+                        try {
+                            if (term > currentTerm) {
+                                becomeFollower(term);
+                                leaderId = -1;
+                            } else if (role == Role.CANDIDATE && term == currentTerm && granted) {
+                                voteGranted = true;
+                                countVotes();
+                            }
+                        } catch (IOException e) {
+                            fail(e);
+                            throw e;
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else if (type == RaftProtocol.APPEND_RESULT) {
+                        long term = in.readLong();
+                        boolean success = in.readBoolean();
+                        long index = in.readLong();
+                        long probe = in.readLong();
+                        lock.lock();
+                        try {
+                            onAppendResult(term, success, index, probe);
+                        } catch (IOException e) {
+                            fail(e);
+                            throw e;
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else {
+                        throw new IOException("Unknown Raft answer: " + type);
+                    }
+                }
+            } catch (IOException e) {
+                // The connection closed; the sender reconnects.
+            } finally {
+                closeQuietly(socket);
+                lock.lock();
+                try {
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void onAppendResult(long term, boolean success, long index, long probe) throws IOException {
+            inFlight = Math.max(0, inFlight - 1);
+            if (term > currentTerm) {
+                becomeFollower(term);
+                leaderId = -1;
+                return;
+            }
+            if (role != Role.LEADER || term != currentTerm) {
+                return;
+            }
+            lastContact = System.nanoTime();
+            ackedProbe = Math.max(ackedProbe, probe);
+            if (success) {
+                if (index > matchIndex) {
+                    matchIndex = index;
+                    advanceCommitIndex();
+                }
+                nextIndex = Math.max(nextIndex, matchIndex + 1);
+            } else {
+                nextIndex = Math.max(matchIndex + 1, Math.min(nextIndex, index));
+            }
+            changed.signalAll();
+        }
+    }
+
+    /**
+     * Runs one node until the process is killed or the node stops on a failure,
+     * printing its state every second.
+     *
+     * @param args The node directory, the node ID, the comma-separated ports of all nodes, then optionally the
+     *             snapshot interval in entries and the election timeout in milliseconds.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: RaftNode <directory> <id> <port,port,port[,...]> [snapshot interval]"
+                    + " [election timeout ms]");
+            return;
+        }
+        List<Integer> ports = Arrays.stream(args[2].split(",")).map(Integer::valueOf).toList();
+        long snapshotInterval = args.length > 3 ? Long.parseLong(args[3]) : 100_000;
+        long electionMillis = args.length > 4 ? Long.parseLong(args[4]) : 300;
+        RaftSettings settings = new RaftSettings(Duration.ofMillis(electionMillis),
+                Duration.ofMillis(Math.max(10, electionMillis / 6)), 512, 8, snapshotInterval);
+        try (RaftNode node = start(Path.of(args[0]), Integer.parseInt(args[1]), ports, settings)) {
+            System.out.println("Node " + node.getId() + " listening on 127.0.0.1:" + ports.get(node.getId()));
+            while (node.getFailure() == null) {
+                Thread.sleep(1000);
+                System.out.printf("term %d %s leader %d commit %,d applied %,d snapshot %,d lease reads %,d%n",
+                        node.getTerm(), node.getRole(), node.getLeaderId(), node.getCommitIndex(),
+                        node.getLastApplied(), node.getSnapshotIndex(), node.getLeaseReads());
+            }
+        }
+    }
+}
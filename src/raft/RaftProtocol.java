@@ -0,0 +1,50 @@
+package raft;
+
+/**
+ * The messages exchanged by {@link RaftNode}s and with {@link RaftClient}s,
+ * all on each node's one port.
+ *
+ * <p>A connection starts with {@link #PEER} and the sender's node ID, or with
+ * {@link #CLIENT}. On a peer connection the connecting node sends requests
+ * and the other answers each in order, so requests are pipelined:
+ * <ul>
+ *   <li>{@link #REQUEST_VOTE}: term, candidate, index and term of the candidate's last entry;
+ *       answered by {@link #VOTE}: term, granted flag;</li>
+ *   <li>{@link #APPEND_ENTRIES}: term, leader, index and term of the entry before the
+ *       batch, the leader's commit index, the leader's send time, the entry count, then
+ *       each entry's term, command length and command. Answered by {@link #APPEND_RESULT}:
+ *       term, success flag, the index up to which the log matches the leader's on
+ *       success or the index to retry from on failure, and the echoed send time;</li>
+ *   <li>{@link #INSTALL_SNAPSHOT}: term, leader, index and term of the snapshot's last
+ *       entry, the send time, the snapshot file name and length, then the file; also
+ *       answered by {@link #APPEND_RESULT}.</li>
+ * </ul>
+ * On a client connection each request is {@link #READ} and an account ID, or
+ * {@link #COMMAND}, a length and an encoded {@link LedgerCommand}. Each is
+ * answered by a status byte: {@link #STATUS_OK} and a balance in cents,
+ * {@link #STATUS_REJECTED} and a message, {@link #STATUS_NOT_LEADER} and the
+ * leader's node ID or -1, or {@link #STATUS_UNKNOWN} and a message. Strings are
+ * modified UTF-8; everything is big-endian.
+ */
+final class RaftProtocol {
+
+    static final int PEER = 1;
+    static final int CLIENT = 2;
+
+    static final int REQUEST_VOTE = 1;
+    static final int VOTE = 2;
+    static final int APPEND_ENTRIES = 3;
+    static final int APPEND_RESULT = 4;
+    static final int INSTALL_SNAPSHOT = 5;
+
+    static final int READ = 1;
+    static final int COMMAND = 2;
+
+    static final int STATUS_OK = 0;
+    static final int STATUS_REJECTED = 1;
+    static final int STATUS_NOT_LEADER = 2;
+    static final int STATUS_UNKNOWN = 3;
+
+    private RaftProtocol() {
+    }
+}
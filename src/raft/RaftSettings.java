@@ -0,0 +1,96 @@
+package raft;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Timing, batching and snapshot limits of a {@link RaftNode}. This class is immutable.
+ */
+public final class RaftSettings {
+
+    private final Duration electionTimeout;
+    private final Duration heartbeatInterval;
+    private final int maxBatchEntries;
+    private final int maxInFlight;
+    private final long snapshotInterval;
+
+    /**
+     * @param electionTimeout   Shortest time a follower waits for its leader before standing for election; each
+     *                          wait is drawn between this and twice this. Must be longer than the heartbeat interval.
+     * @param heartbeatInterval Longest time a leader stays silent towards a follower. Must be positive.
+     * @param maxBatchEntries   Entries sent in one AppendEntries request at most. Must be positive.
+     * @param maxInFlight       AppendEntries requests sent to one follower without waiting for an answer.
+     *                          Must be positive.
+     * @param snapshotInterval  Entries applied after which the state is snapshotted and the log truncated.
+     *                          Must be positive.
+     * @throws IllegalArgumentException if a value is out of range.
+     */
+    public RaftSettings(Duration electionTimeout, Duration heartbeatInterval, int maxBatchEntries, int maxInFlight,
+                        long snapshotInterval) {
+        Objects.requireNonNull(electionTimeout, "Election timeout must not be null.");
+        Objects.requireNonNull(heartbeatInterval, "Heartbeat interval must not be null.");
+        if (heartbeatInterval.isNegative() || heartbeatInterval.isZero()) {
+            throw new IllegalArgumentException("Heartbeat interval must be positive.");
+        }
+        if (electionTimeout.compareTo(heartbeatInterval) <= 0) {
+            throw new IllegalArgumentException("Election timeout must be longer than the heartbeat interval.");
+        }
+        if (maxBatchEntries <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive.");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Maximum requests in flight must be positive.");
+        }
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive.");
+        }
+        this.electionTimeout = electionTimeout;
+        this.heartbeatInterval = heartbeatInterval;
+        this.maxBatchEntries = maxBatchEntries;
+        this.maxInFlight = maxInFlight;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Creates settings with a 300 ms election timeout, 50 ms heartbeats, batches
+     * of up to 512 entries, 8 requests in flight per follower and a snapshot
+     * every 100,000 entries.
+     *
+     * @return The default settings.
+     */
+    public static RaftSettings defaults() {
+        return new RaftSettings(Duration.ofMillis(300), Duration.ofMillis(50), 512, 8, 100_000);
+    }
+
+    public Duration getElectionTimeout() {
+        return electionTimeout;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public int getMaxBatchEntries() {
+        return maxBatchEntries;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Gets how long a leader may serve reads locally after a majority last
+     * answered it: nine tenths of the election timeout, leaving the rest as a
+     * margin for clock drift between nodes. No other node can be elected
+     * within the election timeout of hearing from the leader.
+     *
+     * @return The lease duration.
+     */
+    public Duration getLeaseDuration() {
+        return electionTimeout.multipliedBy(9).dividedBy(10);
+    }
+}
@@ -0,0 +1,139 @@
+package raft;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * What a Raft node must remember across restarts besides its log: the current
+ * term, its vote in that term and the snapshot its log starts after. This class
+ * is immutable.
+ *
+ * <p>File layout, big-endian: magic, format version, term (8 bytes), vote (4,
+ * -1 for none), snapshot index (8), snapshot term (8), snapshot file name as
+ * modified UTF-8 (empty for none), and finally the CRC32C of everything before it.
+ */
+final class RaftState {
+
+    static final String FILE_NAME = "raft-state.dat";
+    private static final int MAGIC = 0x52414654;
+    private static final int FORMAT_VERSION = 1;
+
+    private final long term;
+    private final int votedFor;
+    private final long snapshotIndex;
+    private final long snapshotTerm;
+    private final String snapshotFile;
+
+    RaftState(long term, int votedFor, long snapshotIndex, long snapshotTerm, String snapshotFile) {
+        this.term = term;
+        this.votedFor = votedFor;
+        this.snapshotIndex = snapshotIndex;
+        this.snapshotTerm = snapshotTerm;
+        this.snapshotFile = snapshotFile;
+    }
+
+    long getTerm() {
+        return term;
+    }
+
+    /**
+     * @return The node voted for in the current term, or -1.
+     */
+    int getVotedFor() {
+        return votedFor;
+    }
+
+    long getSnapshotIndex() {
+        return snapshotIndex;
+    }
+
+    long getSnapshotTerm() {
+        return snapshotTerm;
+    }
+
+    /**
+     * @return The snapshot's file name within the node directory, or null if the log starts at the beginning.
+     */
+    String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Writes this state to a directory, durably, replacing the previous one atomically.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    void save(Path directory) throws IOException {
+        Path target = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(term);
+            out.writeInt(votedFor);
+            out.writeLong(snapshotIndex);
+            out.writeLong(snapshotTerm);
+            out.writeUTF(snapshotFile == null ? "" : snapshotFile);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the state saved in a directory.
+     *
+     * @return The saved state, or the state of a node that never ran if none was saved.
+     * @throws IOException if the file cannot be read or is not a Raft state.
+     */
+    static RaftState read(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return new RaftState(0, -1, 0, 0, null);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length >= 4) {
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, 0, bytes.length - 4);
+            if ((int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - 4)) {
+                throw new IOException("Corrupt Raft state: " + file);
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a Raft state: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported Raft state format " + version + " in " + file);
+            }
+            long term = in.readLong();
+            int votedFor = in.readInt();
+            long snapshotIndex = in.readLong();
+            long snapshotTerm = in.readLong();
+            String snapshotFile = in.readUTF();
+            return new RaftState(term, votedFor, snapshotIndex, snapshotTerm,
+                    snapshotFile.isEmpty() ? null : snapshotFile);
+        } catch (EOFException e) {
+            throw new IOException("Truncated Raft state: " + file, e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import ledger.PartitionedLedger;
+import utility.*;
+
+public class LoadClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    private static final long OPEN_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Drives a {@link TransactionServer} with many concurrent connections, each
+     * on its own virtual thread, and reports throughput and batch latency.
+     * Without a port argument an embedded server is started first. A connection
+     * that is not accepted or answered in time counts as failed, and the others
+     * start their load without waiting for it.
+     *
+     * @param args Optional: connections (default 10000), requests per connection,
+     *             pipeline depth, then the port of a running server.
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        TransactionServer embedded = null;
+        int port;
+        if (args.length > 3) {
+            port = Integer.parseInt(args[3]);
+        } else {
+            embedded = new TransactionServer(new PartitionedLedger(Runtime.getRuntime().availableProcessors()), 0);
+            embedded.start();
+            port = embedded.getPort();
+        }
+
+        System.out.println("--- Transaction Server Load Test ---");
+        System.out.println(connections + " connections x " + requests + " requests, pipeline depth " + depth);
+
+        CountDownLatch opened = new CountDownLatch(connections);
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        String[] firstFailure = new String[1];
+        long[][] latencies = new long[connections][];
+        List<Thread> clients = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int client = c;
+            clients.add(Thread.ofVirtual().start(() -> {
+                try {
+                    latencies[client] = runClient(port, client, connections, requests, depth, opened, rejected);
+                } catch (IOException | InterruptedException e) {
+                    if (failed.getAndIncrement() == 0) {
+                        firstFailure[0] = "client " + client + ": " + e;
+                    }
+                    latencies[client] = new long[0];
+                }
+            }));
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long total = (connections - failed.get()) * (requests + 1);
+        System.out.printf("Throughput: %,.0f requests/s (%d rejected)%n", total / (elapsed / 1e9), rejected.get());
+        System.out.printf("Failed connections: %,d of %,d%s%n", failed.get(), connections,
+                failed.get() == 0 ? "" : " (first: " + firstFailure[0] + ")");
+        if (all.length > 0) {
+            System.out.printf("Batch round trip: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6, all[all.length - 1] / 1e6);
+        }
+        System.out.println("--- End of Load Test ---");
+        if (embedded != null) {
+            embedded.close();
+        }
+    }
+
+    private static long[] runClient(int port, int client, int connections, int requests, int depth,
+                                    CountDownLatch opened, AtomicLong rejected)
+            throws IOException, InterruptedException {
+        try (Socket socket = new Socket()) {
+            AccountID own = accountId(client);
+            DataOutputStream out;
+            DataInputStream in;
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                Operation.writeOpen(out, own, new AccountHolder("Load Client " + client));
+                Operation.writeDeposit(out, own, Money.ofCents(1_000_000));
+                out.flush();
+                readResponse(in, rejected);
+                readResponse(in, rejected);
+            } finally {
+                opened.countDown();
+            }
+            opened.await(OPEN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Money amount = Money.ofCents(1);
+            long[] latencies = new long[(requests + depth - 1) / depth];
+            int sent = 0;
+            for (int batch = 0; sent < requests; batch++) {
+                int size = Math.min(depth, requests - sent);
+                long batchStart = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    writeRequest(out, own, accountId(random.nextInt(connections)), amount, sent + i);
+                }
+                out.flush();
+                for (int i = 0; i < size; i++) {
+                    readResponse(in, rejected);
+                }
+                latencies[batch] = System.nanoTime() - batchStart;
+                sent += size;
+            }
+            return latencies;
+        }
+    }
+
+    private static void writeRequest(DataOutputStream out, AccountID own, AccountID other, Money amount, int sequence)
+            throws IOException {
+        switch (sequence & 3) {
+            case 0:
+                Operation.writeDeposit(out, own, amount);
+                break;
+            case 1:
+                Operation.writeWithdraw(out, own, amount);
+                break;
+            case 2:
+                Operation.writeTransfer(out, own, other, amount);
+                break;
+            default:
+                Operation.writeBalance(out, own);
+        }
+    }
+
+    private static void readResponse(DataInputStream in, AtomicLong rejected) throws IOException {
+        if (in.readUnsignedByte() == Operation.STATUS_OK) {
+            in.readLong();
+        } else {
+            in.readUTF();
+            rejected.incrementAndGet();
+        }
+    }
+
+    private static AccountID accountId(int client) {
+        return new AccountID("LOAD" + client);
+    }
+}
@@ -0,0 +1,207 @@
+package server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import ledger.IdempotencyStore;
+import ledger.PartitionedLedger;
+import utility.*;
+
+/**
+ * The operations of the binary transaction protocol.
+ *
+ * <p>A request is one opcode byte followed by the operation's fields:
+ * account IDs and holder names as {@link DataOutput#writeUTF modified UTF-8},
+ * amounts as a signed 64-bit count of cents. Every request is answered, in
+ * order, by one response: a status byte, then the resulting balance in cents
+ * for {@link #STATUS_OK} or a UTF-8 message for {@link #STATUS_REJECTED}.
+ *
+ * <p>All fields of a request are read before any of them is validated, so a
+ * rejected request never leaves the stream out of step.
+ *
+ * <p>An {@link #IDEMPOTENT} request carries a client-chosen 64-bit transaction
+ * ID followed by another request. The first request with a given ID runs; a
+ * retry within the server's idempotency window is answered with the outcome of
+ * the first, rejection included, and does not run again.
+ */
+public enum Operation {
+
+    OPEN(1) {
+        @Override
+        Request read(DataInput in) throws IOException {
+            String id = in.readUTF();
+            String holder = in.readUTF();
+            return (ledger, outcomes) -> ledger.open(new AccountHolder(holder), new AccountID(id));
+        }
+    },
+
+    DEPOSIT(2) {
+        @Override
+        Request read(DataInput in) throws IOException {
+            String id = in.readUTF();
+            long cents = in.readLong();
+            return (ledger, outcomes) -> ledger.deposit(new AccountID(id), Money.ofCents(cents));
+        }
+    },
+
+    WITHDRAW(3) {
+        @Override
+        Request read(DataInput in) throws IOException {
+            String id = in.readUTF();
+            long cents = in.readLong();
+            return (ledger, outcomes) -> ledger.withdraw(new AccountID(id), Money.ofCents(cents));
+        }
+    },
+
+    TRANSFER(4) {
+        @Override
+        Request read(DataInput in) throws IOException {
+            String from = in.readUTF();
+            String to = in.readUTF();
+            long cents = in.readLong();
+            return (ledger, outcomes) -> ledger.transfer(new AccountID(from), new AccountID(to),
+                    Money.ofCents(cents));
+        }
+    },
+
+    BALANCE(5) {
+        @Override
+        Request read(DataInput in) throws IOException {
+            String id = in.readUTF();
+            return (ledger, outcomes) -> ledger.getBalance(new AccountID(id));
+        }
+    },
+
+    IDEMPOTENT(6) {
+        @Override
+        Request read(DataInput in) throws IOException {
+            long transactionId = in.readLong();
+            Operation operation = fromCode(in.readUnsignedByte());
+            if (operation == IDEMPOTENT) {
+                throw new IOException("Idempotent requests cannot be nested.");
+            }
+            Request request = operation.read(in);
+            return (ledger, outcomes) -> outcomes.execute(transactionId, () -> {
+                try {
+                    return request.submit(ledger, outcomes);
+                } catch (IllegalArgumentException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            });
+        }
+    };
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_REJECTED = 1;
+
+    private static final Operation[] BY_CODE = new Operation[7];
+
+    static {
+        for (Operation operation : values()) {
+            BY_CODE[operation.code] = operation;
+        }
+    }
+
+    private final int code;
+
+    Operation(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Looks up an operation by its opcode.
+     *
+     * @param code The opcode read from the wire.
+     * @return The matching operation.
+     * @throws IOException if the opcode is unknown; the stream cannot be resynchronized.
+     */
+    public static Operation fromCode(int code) throws IOException {
+        if (code <= 0 || code >= BY_CODE.length) {
+            throw new IOException("Unknown opcode: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Reads the fields of this operation and submits it to the ledger.
+     *
+     * @param in       The stream positioned just after the opcode.
+     * @param ledger   The ledger to run the operation against.
+     * @param outcomes The recorded outcomes of idempotent requests.
+     * @return A future completing with the resulting balance.
+     * @throws IOException if the fields cannot be read.
+     * @throws IllegalArgumentException if a field is not a valid value.
+     */
+    CompletableFuture<Money> execute(DataInput in, PartitionedLedger ledger,
+                                     IdempotencyStore<CompletableFuture<Money>> outcomes) throws IOException {
+        return read(in).submit(ledger, outcomes);
+    }
+
+    /**
+     * Reads the fields of this operation, without validating them.
+     *
+     * @param in The stream positioned just after the opcode.
+     * @return The request, ready to be submitted.
+     * @throws IOException if the fields cannot be read.
+     */
+    abstract Request read(DataInput in) throws IOException;
+
+    /**
+     * A request whose fields have been read.
+     */
+    @FunctionalInterface
+    interface Request {
+
+        /**
+         * @throws IllegalArgumentException if a field is not a valid value.
+         */
+        CompletableFuture<Money> submit(PartitionedLedger ledger, IdempotencyStore<CompletableFuture<Money>> outcomes);
+    }
+
+    // ---- client-side encoding ----
+
+    public static void writeOpen(DataOutput out, AccountID id, AccountHolder holder) throws IOException {
+        out.writeByte(OPEN.code);
+        out.writeUTF(id.getValue());
+        out.writeUTF(holder.getName());
+    }
+
+    public static void writeDeposit(DataOutput out, AccountID id, Money amount) throws IOException {
+        out.writeByte(DEPOSIT.code);
+        out.writeUTF(id.getValue());
+        out.writeLong(amount.getAmountInCents());
+    }
+
+    public static void writeWithdraw(DataOutput out, AccountID id, Money amount) throws IOException {
+        out.writeByte(WITHDRAW.code);
+        out.writeUTF(id.getValue());
+        out.writeLong(amount.getAmountInCents());
+    }
+
+    public static void writeTransfer(DataOutput out, AccountID from, AccountID to, Money amount) throws IOException {
+        out.writeByte(TRANSFER.code);
+        out.writeUTF(from.getValue());
+        out.writeUTF(to.getValue());
+        out.writeLong(amount.getAmountInCents());
+    }
+
+    public static void writeBalance(DataOutput out, AccountID id) throws IOException {
+        out.writeByte(BALANCE.code);
+        out.writeUTF(id.getValue());
+    }
+
+    /**
+     * Writes the prefix of an idempotent request; the request itself must be written next.
+     *
+     * @param transactionId The client's ID for the transaction, the same for every retry.
+     */
+    public static void writeIdempotent(DataOutput out, long transactionId) throws IOException {
+        out.writeByte(IDEMPOTENT.code);
+        out.writeLong(transactionId);
+    }
+}
@@ -0,0 +1,266 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import ledger.IdempotencyStore;
+import ledger.PartitionedLedger;
+import utility.*;
+
+/**
+ * Serves account operations over TCP on the loopback interface.
+ *
+ * <p>Each connection is read on its own virtual thread and answered by a
+ * second one. Requests are pipelined: the reader submits every request to the
+ * ledger as soon as it is decoded, and the writer sends the responses back in
+ * request order, flushing only when no further response is ready.
+ *
+ * <p>When accepting fails, typically because the process ran out of file
+ * descriptors, the acceptor backs off before retrying, up to
+ * {@value #MAX_ACCEPT_BACKOFF_MILLIS} ms. Failures are counted rather than
+ * printed; see {@link #getAcceptFailures()}.
+ */
+public final class TransactionServer implements AutoCloseable {
+
+    private static final int MAX_PIPELINE_DEPTH = 256;
+    private static final int BUFFER_SIZE = 8192;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+    private static final CompletableFuture<Money> END_OF_STREAM = new CompletableFuture<>();
+
+    private final PartitionedLedger ledger;
+    private final IdempotencyStore<CompletableFuture<Money>> outcomes;
+    private final ServerSocket serverSocket;
+    private final LongAdder acceptFailures = new LongAdder();
+    private final LongAdder protocolErrors = new LongAdder();
+    private volatile IOException lastAcceptFailure;
+    private volatile boolean closed;
+
+    /**
+     * Binds a server to a loopback port, remembering the outcomes of idempotent
+     * requests for one minute, up to a million of them.
+     *
+     * @param ledger The ledger serving the requests. Must not be null.
+     * @param port   The port to listen on, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public TransactionServer(PartitionedLedger ledger, int port) throws IOException {
+        this(ledger, port, new IdempotencyStore<>(Duration.ofMinutes(1), 1 << 20));
+    }
+
+    /**
+     * Binds a server to a loopback port.
+     *
+     * @param ledger   The ledger serving the requests. Must not be null.
+     * @param port     The port to listen on, or 0 for any free port.
+     * @param outcomes Where the outcomes of idempotent requests are recorded. Must not be null.
+     * @throws IOException if the port cannot be bound.
+     */
+    public TransactionServer(PartitionedLedger ledger, int port, IdempotencyStore<CompletableFuture<Money>> outcomes)
+            throws IOException {
+        this.ledger = Objects.requireNonNull(ledger, "Ledger must not be null.");
+        this.outcomes = Objects.requireNonNull(outcomes, "Idempotency store must not be null.");
+        this.serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Starts accepting connections on a virtual thread.
+     */
+    public void start() {
+        Thread.ofVirtual().name("transaction-server-acceptor").start(this::acceptLoop);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of times accepting a connection failed.
+     *
+     * @return The failure count.
+     */
+    public long getAcceptFailures() {
+        return acceptFailures.sum();
+    }
+
+    /**
+     * Gets the latest failure to accept a connection.
+     *
+     * @return The failure, or null if accepting never failed.
+     */
+    public IOException getLastAcceptFailure() {
+        return lastAcceptFailure;
+    }
+
+    /**
+     * Gets the number of connections closed because a request could not be decoded.
+     *
+     * @return The error count.
+     */
+    public long getProtocolErrors() {
+        return protocolErrors.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                backoffMillis = 0;
+                socket.setTcpNoDelay(true);
+                Thread.ofVirtual().start(() -> serve(socket));
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                acceptFailures.increment();
+                lastAcceptFailure = e;
+                backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoffMillis * 2));
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        BlockingQueue<CompletableFuture<Money>> responses = new ArrayBlockingQueue<>(MAX_PIPELINE_DEPTH);
+        Thread writer = Thread.ofVirtual().start(() -> writeResponses(socket, responses));
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            readRequests(in, responses);
+        } catch (EOFException | SocketException e) {
+            // The client went away; the writer closes the socket.
+        } catch (IOException e) {
+            protocolErrors.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            signalEndOfStream(responses, writer);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readRequests(DataInputStream in, BlockingQueue<CompletableFuture<Money>> responses)
+            throws IOException, InterruptedException {
+        while (true) {
+            int code = in.read();
+            if (code < 0) {
+                return;
+            }
+            Operation operation = Operation.fromCode(code);
+            CompletableFuture<Money> response;
+            try {
+                response = operation.execute(in, ledger, outcomes);
+            } catch (IllegalArgumentException e) {
+                response = CompletableFuture.failedFuture(e);
+            }
+            responses.put(response);
+        }
+    }
+
+    private void writeResponses(Socket socket, BlockingQueue<CompletableFuture<Money>> responses) {
+        try (socket) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            while (true) {
+                CompletableFuture<Money> response = responses.poll();
+                if (response == null) {
+                    out.flush();
+                    response = responses.take();
+                }
+                if (response == END_OF_STREAM) {
+                    out.flush();
+                    return;
+                }
+                writeResponse(out, response);
+            }
+        } catch (IOException e) {
+            // The client went away; nothing left to answer.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeResponse(DataOutputStream out, CompletableFuture<Money> response) throws IOException {
+        try {
+            Money balance = response.join();
+            out.writeByte(Operation.STATUS_OK);
+            out.writeLong(balance.getAmountInCents());
+        } catch (CompletionException e) {
+            out.writeByte(Operation.STATUS_REJECTED);
+            out.writeUTF(String.valueOf(e.getCause().getMessage()));
+        }
+    }
+
+    /**
+     * Hands the end-of-stream marker to the writer, giving up if the writer has
+     * already stopped because the client went away.
+     */
+    private static void signalEndOfStream(BlockingQueue<CompletableFuture<Money>> responses, Thread writer) {
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                if (responses.offer(END_OF_STREAM, 100, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a standalone server until the process is killed, printing accept
+     * failures at most once a second.
+     *
+     * @param args Optional: port (default 7070), then number of ledger shards.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        PartitionedLedger ledger = new PartitionedLedger(shards);
+        TransactionServer server = new TransactionServer(ledger, port);
+        server.start();
+        System.out.println("Transaction server listening on 127.0.0.1:" + server.getPort()
+                + " with " + shards + " shards");
+        long reported = 0;
+        while (true) {
+            Thread.sleep(1000);
+            long failures = server.getAcceptFailures();
+            if (failures > reported) {
+                System.err.printf("%,d accept failures, latest: %s%n", failures - reported,
+                        server.getLastAcceptFailure().getMessage());
+                reported = failures;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package storage;
+
+/**
+ * The lifecycle state of an account stored in an {@link OffHeapAccountTable}.
+ */
+public enum AccountStatus {
+
+    ACTIVE(0),
+    FROZEN(1),
+    CLOSED(2);
+
+    private static final AccountStatus[] BY_CODE = {ACTIVE, FROZEN, CLOSED};
+
+    private final int code;
+
+    AccountStatus(int code) {
+        this.code = code;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    static AccountStatus fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalStateException("Corrupt account status: " + code);
+        }
+        return BY_CODE[code];
+    }
+}
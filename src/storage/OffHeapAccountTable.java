@@ -0,0 +1,340 @@
+package storage;
+
+import clean.TransactionStatus;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import utility.*;
+
+/**
+ * A table of account balances stored outside the Java heap, so that tens of
+ * millions of accounts add nothing for the garbage collector to trace.
+ *
+ * <p>Every account is one fixed-width 32-byte row, addressed by its surrogate
+ * ID, which is its row number starting at 1:
+ * <pre>
+ *   0  long  surrogate ID (0 marks an unused row)
+ *   8  long  balance in cents
+ *  16  int   status code
+ *  20  int   account type, defined by the caller
+ *  24  int   flags, defined by the caller
+ *  28  int   reserved
+ * </pre>
+ * Row 0 is a header; the magic and capacity are checked when a file is reopened:
+ * <pre>
+ *   0  long  row count
+ *   8  long  format magic
+ *  16  long  capacity in rows
+ * </pre>
+ * Rows live in chunks of up to 1 GiB,
+ * either direct buffers or regions of a memory-mapped file; with a file, the
+ * table is reopened with its balances intact. Balances and flags are updated
+ * with atomic {@link VarHandle} operations on the buffers, so the table is
+ * thread-safe without locks.
+ *
+ * <p>The table stores no names. Callers that need {@link AccountID}s and
+ * {@link AccountHolder}s keep their own mapping to surrogate IDs and pass them
+ * to {@link #view(long, AccountHolder, AccountID)}.
+ */
+public final class OffHeapAccountTable implements AutoCloseable {
+
+    static final int ROW_SIZE = 32;
+    private static final int ID = 0;
+    private static final int BALANCE = 8;
+    private static final int STATUS = 16;
+    private static final int TYPE = 20;
+    private static final int FLAGS = 24;
+    private static final int HEADER_MAGIC = 8;
+    private static final int HEADER_CAPACITY = 16;
+    private static final long MAGIC = 0x4F4854424C310000L;
+    private static final int ROWS_PER_CHUNK_SHIFT = 25;
+    private static final int ROWS_PER_CHUNK = 1 << ROWS_PER_CHUNK_SHIFT;
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+    private final long capacity;
+    private final FileChannel channel;
+
+    private OffHeapAccountTable(ByteBuffer[] chunks, long capacity, FileChannel channel) {
+        this.chunks = chunks;
+        this.capacity = capacity;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an empty table in direct memory. The memory is released when the table becomes unreachable.
+     *
+     * @param capacity Maximum number of accounts. Must be positive.
+     * @return The table.
+     */
+    public static OffHeapAccountTable allocate(long capacity) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(capacity)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkBytes(capacity, i)).order(ByteOrder.nativeOrder());
+        }
+        OffHeapAccountTable table = new OffHeapAccountTable(chunks, capacity, null);
+        table.writeHeader();
+        return table;
+    }
+
+    /**
+     * Opens a table backed by a memory-mapped file, creating the file if it does not exist.
+     * The file uses the platform's byte order, so it is not portable between platforms.
+     *
+     * @param file     The backing file. Must not be null.
+     * @param capacity Maximum number of accounts; must match the capacity of an existing file.
+     * @return The table.
+     * @throws IOException if the file cannot be mapped or was created with another capacity.
+     */
+    public static OffHeapAccountTable mapped(Path file, long capacity) throws IOException {
+        Objects.requireNonNull(file, "File must not be null.");
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(capacity)];
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            boolean existing = channel.size() > 0;
+            long offset = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                int bytes = chunkBytes(capacity, i);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes).order(ByteOrder.nativeOrder());
+                offset += bytes;
+            }
+            OffHeapAccountTable table = new OffHeapAccountTable(chunks, capacity, channel);
+            if (!existing) {
+                table.writeHeader();
+            } else if ((long) LONG.getVolatile(chunks[0], HEADER_MAGIC) != MAGIC
+                    || (long) LONG.getVolatile(chunks[0], HEADER_CAPACITY) != capacity) {
+                throw new IOException("Not an account table of capacity " + capacity + ": " + file);
+            }
+            return table;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds an active account with a zero balance.
+     *
+     * @param type  The account type, defined by the caller.
+     * @param flags The initial flags, defined by the caller.
+     * @return The surrogate ID of the new account.
+     * @throws IllegalStateException if the table is full.
+     */
+    public long insert(int type, int flags) {
+        long id = (long) LONG.getAndAdd(chunks[0], ID, 1L) + 1;
+        if (id > capacity) {
+            LONG.getAndAdd(chunks[0], ID, -1L);
+            throw new IllegalStateException("Account table is full.");
+        }
+        ByteBuffer chunk = chunk(id);
+        int row = offset(id);
+        INT.setVolatile(chunk, row + STATUS, AccountStatus.ACTIVE.getCode());
+        INT.setVolatile(chunk, row + TYPE, type);
+        INT.setVolatile(chunk, row + FLAGS, flags);
+        LONG.setVolatile(chunk, row + BALANCE, 0L);
+        LONG.setVolatile(chunk, row + ID, id);
+        return id;
+    }
+
+    /**
+     * Adds an amount to an account's balance.
+     *
+     * @param id    The surrogate ID.
+     * @param cents The amount in cents.
+     * @return {@link TransactionStatus#SUCCESS}, or {@link TransactionStatus#INVALID_AMOUNT}
+     *         if the amount is not positive.
+     */
+    public TransactionStatus tryDeposit(long id, long cents) {
+        if (cents <= 0) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+        LONG.getAndAdd(chunk(requireRow(id)), offset(id) + BALANCE, cents);
+        return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Subtracts an amount from an account's balance unless that would make it negative.
+     *
+     * @param id    The surrogate ID.
+     * @param cents The amount in cents.
+     * @return {@link TransactionStatus#SUCCESS}, {@link TransactionStatus#INVALID_AMOUNT}
+     *         or {@link TransactionStatus#INSUFFICIENT_FUNDS}.
+     */
+    public TransactionStatus tryWithdraw(long id, long cents) {
+        if (cents <= 0) {
+            return TransactionStatus.INVALID_AMOUNT;
+        }
+        ByteBuffer chunk = chunk(requireRow(id));
+        int field = offset(id) + BALANCE;
+        long balance = (long) LONG.getVolatile(chunk, field);
+        while (true) {
+            if (balance < cents) {
+                return TransactionStatus.INSUFFICIENT_FUNDS;
+            }
+            long witness = (long) LONG.compareAndExchange(chunk, field, balance, balance - cents);
+            if (witness == balance) {
+                return TransactionStatus.SUCCESS;
+            }
+            balance = witness;
+        }
+    }
+
+    /**
+     * Sets an account's balance to zero.
+     *
+     * @param id The surrogate ID.
+     * @return The balance before, in cents.
+     */
+    public long withdrawAll(long id) {
+        return (long) LONG.getAndSet(chunk(requireRow(id)), offset(id) + BALANCE, 0L);
+    }
+
+    public long getBalanceCents(long id) {
+        return (long) LONG.getVolatile(chunk(requireRow(id)), offset(id) + BALANCE);
+    }
+
+    public AccountStatus getStatus(long id) {
+        return AccountStatus.fromCode((int) INT.getVolatile(chunk(requireRow(id)), offset(id) + STATUS));
+    }
+
+    public void setStatus(long id, AccountStatus status) {
+        Objects.requireNonNull(status, "Status must not be null.");
+        INT.setVolatile(chunk(requireRow(id)), offset(id) + STATUS, status.getCode());
+    }
+
+    public int getType(long id) {
+        return (int) INT.getVolatile(chunk(requireRow(id)), offset(id) + TYPE);
+    }
+
+    public int getFlags(long id) {
+        return (int) INT.getVolatile(chunk(requireRow(id)), offset(id) + FLAGS);
+    }
+
+    /**
+     * Atomically sets the given flag bits, leaving the others unchanged.
+     *
+     * @param id    The surrogate ID.
+     * @param flags The bits to set.
+     * @return The flags before.
+     */
+    public int setFlags(long id, int flags) {
+        return (int) INT.getAndBitwiseOr(chunk(requireRow(id)), offset(id) + FLAGS, flags);
+    }
+
+    /**
+     * Atomically clears the given flag bits, leaving the others unchanged.
+     *
+     * @param id    The surrogate ID.
+     * @param flags The bits to clear.
+     * @return The flags before.
+     */
+    public int clearFlags(long id, int flags) {
+        return (int) INT.getAndBitwiseAnd(chunk(requireRow(id)), offset(id) + FLAGS, ~flags);
+    }
+
+    /**
+     * Creates a {@link clean.BankAccount}-compatible view of one account. Views
+     * hold no state of their own and may be created and dropped freely.
+     *
+     * @param id            The surrogate ID.
+     * @param accountHolder The holder to report for the account. Must not be null.
+     * @param accountId     The ID to report for the account. Must not be null.
+     * @return The view.
+     */
+    public OffHeapBankAccount view(long id, AccountHolder accountHolder, AccountID accountId) {
+        return new OffHeapBankAccount(this, requireRow(id), accountHolder, accountId);
+    }
+
+    /**
+     * Gets the number of accounts inserted so far.
+     *
+     * @return The highest surrogate ID in use.
+     */
+    public long size() {
+        return Math.min(capacity, (long) LONG.getVolatile(chunks[0], ID));
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Sums every balance. Accounts updated during the scan may be counted before or after the update.
+     *
+     * @return The total in cents.
+     */
+    public long totalBalanceCents() {
+        long total = 0;
+        long size = size();
+        for (long id = 1; id <= size; id++) {
+            total += (long) LONG.getVolatile(chunk(id), offset(id) + BALANCE);
+        }
+        return total;
+    }
+
+    /**
+     * Writes the rows of a file-backed table to the storage device. Does nothing for a table in direct memory.
+     */
+    public void force() {
+        if (channel != null) {
+            for (ByteBuffer chunk : chunks) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+
+    /**
+     * Forces a file-backed table and closes its file.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            force();
+            channel.close();
+        }
+    }
+
+    private void writeHeader() {
+        LONG.setVolatile(chunks[0], HEADER_MAGIC, MAGIC);
+        LONG.setVolatile(chunks[0], HEADER_CAPACITY, capacity);
+    }
+
+    private long requireRow(long id) {
+        if (id < 1 || id > capacity || (long) LONG.getVolatile(chunk(id), offset(id) + ID) != id) {
+            throw new IllegalArgumentException("Unknown account: " + id);
+        }
+        return id;
+    }
+
+    private ByteBuffer chunk(long id) {
+        return chunks[(int) (id >>> ROWS_PER_CHUNK_SHIFT)];
+    }
+
+    private static int offset(long id) {
+        return (int) (id & (ROWS_PER_CHUNK - 1)) * ROW_SIZE;
+    }
+
+    private static int chunkCount(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        return (int) ((capacity + 1 + ROWS_PER_CHUNK - 1) >>> ROWS_PER_CHUNK_SHIFT);
+    }
+
+    private static int chunkBytes(long capacity, int chunk) {
+        long rows = Math.min(ROWS_PER_CHUNK, capacity + 1 - ((long) chunk << ROWS_PER_CHUNK_SHIFT));
+        return (int) (rows * ROW_SIZE);
+    }
+}
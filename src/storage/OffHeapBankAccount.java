@@ -0,0 +1,122 @@
+package storage;
+
+import clean.TransactionStatus;
+import java.util.Objects;
+import utility.*;
+
+/**
+ * A view of one account of an {@link OffHeapAccountTable} with the operations
+ * of {@link clean.BankAccount}, for callers written against that class. The
+ * balance lives in the table; the view only holds the account's surrogate ID
+ * and the holder and ID it was created with. This class is thread-safe.
+ */
+public final class OffHeapBankAccount {
+
+    private final OffHeapAccountTable table;
+    private final long surrogateId;
+    private final AccountHolder accountHolder;
+    private final AccountID accountId;
+
+    OffHeapBankAccount(OffHeapAccountTable table, long surrogateId, AccountHolder accountHolder,
+                       AccountID accountId) {
+        this.table = table;
+        this.surrogateId = surrogateId;
+        this.accountHolder = Objects.requireNonNull(accountHolder, "Account holder must not be null.");
+        this.accountId = Objects.requireNonNull(accountId, "Account ID must not be null.");
+    }
+
+    /**
+     * Deposits a specified amount into the account.
+     *
+     * @param amount The amount to deposit. Must be positive.
+     * @throws IllegalArgumentException if the amount is not positive.
+     */
+    public void deposit(Money amount) {
+        tryDeposit(amount).throwIfFailed();
+    }
+
+    /**
+     * Withdraws a specified amount from the account.
+     *
+     * @param amount The amount to withdraw. Must be positive and not exceed the balance.
+     * @throws IllegalArgumentException if the amount is not positive.
+     * @throws IllegalStateException    if the account has insufficient funds.
+     */
+    public void withdraw(Money amount) {
+        tryWithdraw(amount).throwIfFailed();
+    }
+
+    /**
+     * Transfers a specified amount to another account of any table.
+     *
+     * @param otherAccount The account to transfer money to. Must not be null.
+     * @param amount       The amount to transfer.
+     * @throws IllegalArgumentException if the amount is not positive.
+     * @throws IllegalStateException    if this account has insufficient funds.
+     */
+    public void transferTo(OffHeapBankAccount otherAccount, Money amount) {
+        tryTransferTo(otherAccount, amount).throwIfFailed();
+    }
+
+    public TransactionStatus tryDeposit(Money amount) {
+        return table.tryDeposit(surrogateId, amount.getAmountInCents());
+    }
+
+    public TransactionStatus tryWithdraw(Money amount) {
+        return table.tryWithdraw(surrogateId, amount.getAmountInCents());
+    }
+
+    /**
+     * Transfers a specified amount without throwing when it is declined: a
+     * withdrawal here followed by a deposit there, so the amount is briefly in neither account.
+     *
+     * @param otherAccount The account to transfer money to. Must not be null.
+     * @param amount       The amount to transfer.
+     * @return The outcome of the withdrawal; the deposit cannot fail after it succeeded.
+     */
+    public TransactionStatus tryTransferTo(OffHeapBankAccount otherAccount, Money amount) {
+        Objects.requireNonNull(otherAccount, "Destination account must not be null.");
+        TransactionStatus status = tryWithdraw(amount);
+        if (status.isSuccess()) {
+            otherAccount.tryDeposit(amount);
+        }
+        return status;
+    }
+
+    /**
+     * Withdraws all money from the account, leaving it with zero balance.
+     *
+     * @return The amount withdrawn (previous balance).
+     */
+    public Money withdrawAll() {
+        return Money.ofCents(table.withdrawAll(surrogateId));
+    }
+
+    public Money getBalance() {
+        return Money.ofCents(table.getBalanceCents(surrogateId));
+    }
+
+    public AccountHolder getAccountHolder() {
+        return accountHolder;
+    }
+
+    public AccountID getAccountId() {
+        return accountId;
+    }
+
+    public long getSurrogateId() {
+        return surrogateId;
+    }
+
+    public AccountStatus getStatus() {
+        return table.getStatus(surrogateId);
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapBankAccount[accountId=" + accountId +
+               ", accountHolder=" + accountHolder +
+               ", surrogateId=" + surrogateId +
+               ", balance=" + getBalance() + " cents]";
+    }
+}
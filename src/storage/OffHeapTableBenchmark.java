@@ -0,0 +1,90 @@
+package storage;
+
+import clean.BankAccount;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import utility.*;
+
+public class OffHeapTableBenchmark {
+
+    /**
+     * Compares heap footprint, full-collection time and update throughput of
+     * plain {@link BankAccount} objects with an {@link OffHeapAccountTable}
+     * holding the same accounts. Run each variant with the same heap size.
+     *
+     * @param args Optional: number of accounts, then number of random updates.
+     */
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+
+        System.out.println("--- Off-Heap Table Benchmark ---");
+        System.out.printf("%,d accounts, %,d updates%n", accounts, updates);
+        System.out.printf("%-12s%14s%16s%16s%n", "storage", "heap MB", "full GC ms", "updates/s");
+        measureObjects(accounts, updates);
+        measureTable(accounts, updates);
+        System.out.println("--- End of Benchmark ---");
+    }
+
+    private static void measureObjects(int accounts, int updates) {
+        BankAccount[] objects = new BankAccount[accounts];
+        for (int i = 0; i < accounts; i++) {
+            objects[i] = new BankAccount(new AccountHolder("Holder " + i), new AccountID("ACC" + i));
+            objects[i].deposit(Money.ofCents(10_000));
+        }
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            BankAccount account = objects[random.nextInt(accounts)];
+            if ((i & 1) == 0) {
+                account.tryDeposit(Money.ofCents(1 + random.nextInt(100)));
+            } else {
+                account.tryWithdraw(Money.ofCents(1 + random.nextInt(100)));
+            }
+        }
+        double rate = updates / ((System.nanoTime() - start) / 1e9);
+        report("objects", rate);
+        objects[0].getBalance();
+    }
+
+    private static void measureTable(int accounts, int updates) {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(accounts);
+        for (int i = 0; i < accounts; i++) {
+            table.tryDeposit(table.insert(0, 0), 10_000);
+        }
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            long id = 1 + random.nextInt(accounts);
+            if ((i & 1) == 0) {
+                table.tryDeposit(id, 1 + random.nextInt(100));
+            } else {
+                table.tryWithdraw(id, 1 + random.nextInt(100));
+            }
+        }
+        double rate = updates / ((System.nanoTime() - start) / 1e9);
+        report("off-heap", rate);
+        table.size();
+    }
+
+    /**
+     * Prints the live heap and the time of one full collection, which has to trace every live account object.
+     */
+    private static void report(String label, double rate) {
+        long gcBefore = totalGcMillis();
+        System.gc();
+        long gcMillis = totalGcMillis() - gcBefore;
+        Runtime runtime = Runtime.getRuntime();
+        long heapMb = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        System.out.printf("%-12s%,14d%,16d%,16.0f%n", label, heapMb, gcMillis, rate);
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+}